@@ -0,0 +1,87 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Runner of the compiler benchmarks, with the command line of the JMH
+   runner (see 'BenchmarkRunner -h'). For example:
+
+     BenchmarkRunner -wi 2 -i 5 -p input=test/graph/src/DoG.kg Parse
+
+   runs the ParseBenchmark on a single input. Unless the 'input'
+   parameter is given with -p, benchmarks on real inputs are run on all
+   inputs of the examples and of the test-suite which compile with the
+   preprocessing flags of their makefile.
+*/
+
+package bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmdOptions;
+    try {
+      cmdOptions=new CommandLineOptions(args);
+    }
+    catch (CommandLineOptionException e) {
+      System.err.println("Error parsing command line: "+e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    // Requests which do not run benchmarks are handled by JMH
+    if (cmdOptions.shouldHelp() || cmdOptions.shouldList()
+        || cmdOptions.shouldListWithParams() || cmdOptions.shouldListProfilers()
+        || cmdOptions.shouldListResultFormats()) {
+      Main.main(args);
+      return;
+    }
+
+    ChainedOptionsBuilder builder=new OptionsBuilder().parent(cmdOptions);
+    if (!cmdOptions.getParameter("input").hasValue()) {
+      CompilerContext.init();
+      builder.param("input",CompilerContext.getInputNames());
+    }
+
+    try {
+      new Runner(builder.build()).run();
+    }
+    catch (NoBenchmarksException e) {
+      System.err.println("No matching benchmarks. Miss-spelled regexp?");
+      System.exit(1);
+    }
+    catch (RunnerException e) {
+      System.err.println("ERROR: "+e.getMessage());
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Full OpenCL code generation of real inputs: OpenCL-C code and host
+   wrapper, emitted in memory */
+
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import codegen.OpenCL.CLGenHostWrapper;
+import codegen.OpenCL.Generator;
+import common.CompilerError;
+import ir.base.Kernel;
+import ir.base.Program;
+
+public class CodegenBenchmark extends InputBenchmark {
+  private Program prog = null;
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024*1024);
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    CompilerContext.resetIR();
+    prog=CompilerContext.check(ikgFile);
+    for(Kernel k:prog.getKernelList()) {
+      k.analyze(CompilerError.GLOBAL);
+    }
+    CompilerError.GLOBAL.exitIfError();
+    buffer.reset();
+  }
+
+  @Benchmark
+  public int codegen() {
+    PrintStream ps=new PrintStream(buffer);
+    Generator.generateOpenCLC_Program(prog,ps);
+    CLGenHostWrapper.generateHostWrapperC(prog,ps);
+    CLGenHostWrapper.generateHostWrapperH(prog,ps);
+    ps.flush();
+    return buffer.size();
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Common settings of the JMH benchmarks of the compiler.
+
+   A trial is run per value of the benchmark parameters, in a forked
+   JVM which inherits the 'kg.home' property of the BenchmarkRunner.
+   Preparations of operations ('@Setup(Level.Invocation)') are not
+   measured. The defaults below can be overridden on the command line
+   of the runner (-wi, -i, -r, -f, ..).
+*/
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public abstract class CompilerBenchmark {
+
+  // Compiler options are thread local, they are set again in case the
+  // worker thread changed since the trial setup
+  @Setup(Level.Iteration)
+  public void setUpOptions() {
+    CompilerContext.init();
+  }
+
+}
@@ -0,0 +1,392 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Compiler state shared by the benchmarks: options and target device
+   as set by the kgenc driver for the OpenCL 'cpu' target, preprocessed
+   input files and synthetic programs.
+
+   The KernelGenius installation directory is given by the 'kg.home'
+   system property (current directory by default).
+*/
+
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import common.CompilerError;
+import common.ResourceManager;
+import driver.DriverHelper;
+import driver.options.CodegenOptions;
+import driver.options.DriverOptions;
+import driver.options.GeneralOptions;
+import ir.algorithms.Filter;
+import ir.base.FunctionNode;
+import ir.base.Kernel;
+import ir.base.Program;
+import parser.DeviceParser;
+import parser.ProgramParser;
+import target.ComputeDevice;
+import utility.thread.ThreadOutput;
+
+public class CompilerContext {
+
+  private static File homeDir = null;
+  private static File tempDir = null;
+  private static final HashMap<String,File> ikgFileMap = new HashMap<String,File>();
+  private static String[] inputNames = null;
+  private static ComputeDevice targetDevice = null;
+
+
+  //==================================================================
+  // Initialization
+  //==================================================================
+
+  // Sets the compiler options for the calling thread, the installation
+  // directory and temporary files being initialized once per JVM
+  public static synchronized void init() {
+    if (homeDir==null) {
+      homeDir=new File(System.getProperty("kg.home","."));
+      DriverOptions.setInstallDir(homeDir.getPath());
+      DeviceParser dp=new DeviceParser(0,new File(homeDir,"targets/cpu.cfg"));
+      dp.parse();
+      targetDevice=dp.getDevice();
+
+      tempDir=new File(System.getProperty("java.io.tmpdir"),"_KGbench"+UUID.randomUUID().toString());
+      tempDir.mkdirs();
+      ResourceManager.registerTempDirectory(tempDir);
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          ResourceManager.shutdown();
+        }
+      });
+    }
+
+    // Options of the driver for 'kgenc --target_language OpenCL --target_device cpu'
+    DriverOptions.setInstallDir(homeDir.getPath());
+    GeneralOptions.setOptimizationLevel(0);
+    CodegenOptions.setTargetLanguage("OpenCL");
+    CodegenOptions.setTargetDeviceName("cpu");
+    CodegenOptions.setKernelGranularityMode(CodegenOptions.KERNEL_GRANULARITY_MODE.IMAGE);
+    CodegenOptions.setInternalTilingMode(CodegenOptions.KERNEL_INTERNAL_TILING_MODE.LINE);
+    CodegenOptions.setMergeMode(CodegenOptions.NODE_MERGE_MODE.SYNC);
+    CodegenOptions.setTargetDevice(targetDevice);
+  }
+
+
+  //==================================================================
+  // Real inputs
+  //==================================================================
+
+  // Kernel sources of the examples and of the test-suite, relative to
+  // the installation directory. Sources which do not compile, even with
+  // the preprocessing flags of their makefile, are skipped
+  public static synchronized String[] getInputNames() {
+    if (inputNames!=null) {
+      return inputNames;
+    }
+    List<String> list=new ArrayList<String>();
+    addInputNames(new File(homeDir,"examples/OpenCL"),"examples/OpenCL",list);
+    addInputNames(new File(homeDir,"test"),"test",list);
+    Collections.sort(list);
+
+    List<String> compilableList=new ArrayList<String>();
+    for(String name:list) {
+      // Messages of the compiler are discarded
+      ThreadOutput.setCapture(new ThreadOutput.Capture());
+      try {
+        resetIR();
+        Program prog=check(getPreprocessedFile(name));
+        for(Kernel k:prog.getKernelList()) {
+          k.analyze(CompilerError.GLOBAL);
+        }
+        CompilerError.GLOBAL.exitIfError();
+        compilableList.add(name);
+      }
+      catch (Throwable e) {
+        System.err.println("skipping '"+name+"': does not compile with the flags "+getMakefileFlags(name));
+      }
+      finally {
+        ThreadOutput.setCapture(null);
+      }
+    }
+    inputNames=compilableList.toArray(new String[compilableList.size()]);
+    return inputNames;
+  }
+
+  private static void addInputNames(File dir, String name, List<String> list) {
+    File[] projectArray=dir.listFiles();
+    if (projectArray==null) {
+      return;
+    }
+    for(File project:projectArray) {
+      File[] sourceArray=new File(project,"src").listFiles();
+      if (sourceArray==null) {
+        continue;
+      }
+      for(File source:sourceArray) {
+        if (source.getName().endsWith(".kg")) {
+          list.add(name+"/"+project.getName()+"/src/"+source.getName());
+        }
+      }
+    }
+  }
+
+  // Preprocessing flags (-D, -U and -I) given to an input by the
+  // makefile of its test or example: KGFLAGS of the makefile named after
+  // the source if any, else of the first one with 'KG_SOURCE = <source>',
+  // with the default values of the make variables it references
+  public static List<String> getMakefileFlags(String name) {
+    File source=new File(homeDir,name);
+    File projectDir=source.getParentFile().getParentFile();
+    String sourceName=source.getName().substring(0,source.getName().length()-".kg".length());
+
+    String[] makefileArray=projectDir.list();
+    if (makefileArray==null) {
+      return new ArrayList<String>();
+    }
+    Arrays.sort(makefileArray);
+    HashMap<String,String> variables=null;
+    for(String makefile:makefileArray) {
+      if (!makefile.equals("Makefile") && !makefile.endsWith(".mk")) {
+        continue;
+      }
+      HashMap<String,String> v=readMakefileVariables(new File(projectDir,makefile));
+      if (sourceName.equals(v.get("KG_SOURCE"))) {
+        if ((variables==null) || makefile.equals(sourceName+".mk")) {
+          variables=v;
+        }
+      }
+    }
+
+    List<String> flagList=new ArrayList<String>();
+    if ((variables==null) || (variables.get("KGFLAGS")==null)) {
+      return flagList;
+    }
+    String flags=variables.get("KGFLAGS");
+    Matcher m=MAKE_REFERENCE.matcher(flags);
+    for(int i=0;(i<8) && m.find();i++) {
+      String value=variables.get(m.group(1));
+      flags=m.replaceFirst(Matcher.quoteReplacement((value==null)?"":value));
+      m=MAKE_REFERENCE.matcher(flags);
+    }
+    for(String word:splitShellWords(flags)) {
+      if (word.startsWith("-D") || word.startsWith("-U") || word.startsWith("-I")) {
+        flagList.add(word);
+      }
+    }
+    return flagList;
+  }
+
+  private static final Pattern MAKE_ASSIGNMENT =
+      Pattern.compile("^\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*([?:+]?)=\\s*(.*?)\\s*$");
+  private static final Pattern MAKE_REFERENCE =
+      Pattern.compile("\\$[({]([A-Za-z_][A-Za-z0-9_]*)[)}]");
+
+  // Variables assigned at the top level of a makefile. Conditional
+  // assignments only set a variable not yet defined, as for a make
+  // command without variables on its command line
+  private static HashMap<String,String> readMakefileVariables(File makefile) {
+    HashMap<String,String> variables=new HashMap<String,String>();
+    try {
+      BufferedReader br=new BufferedReader(new FileReader(makefile));
+      try {
+        String line;
+        while((line=br.readLine())!=null) {
+          Matcher m=MAKE_ASSIGNMENT.matcher(line);
+          if (!m.matches()) {
+            continue;
+          }
+          String name=m.group(1);
+          String kind=m.group(2);
+          String value=m.group(3);
+          if (kind.equals("?")) {
+            if (!variables.containsKey(name)) {
+              variables.put(name,value);
+            }
+          }
+          else if (kind.equals("+") && variables.containsKey(name)) {
+            variables.put(name,variables.get(name)+" "+value);
+          }
+          else {
+            variables.put(name,value);
+          }
+        }
+      }
+      finally {
+        br.close();
+      }
+    }
+    catch (IOException e) {
+      // No flag from an unreadable makefile
+    }
+    return variables;
+  }
+
+  // Words of a shell command line, after quote removal
+  private static List<String> splitShellWords(String line) {
+    List<String> words=new ArrayList<String>();
+    StringBuilder word=null;
+    char quote=0;
+    for(int i=0;i<line.length();i++) {
+      char c=line.charAt(i);
+      if (quote=='\'') {
+        if (c=='\'') {
+          quote=0;
+        }
+        else {
+          word.append(c);
+        }
+      }
+      else if ((c=='\\') && (i+1<line.length())
+          && ((quote==0) || ("\"\\$`".indexOf(line.charAt(i+1))>=0))) {
+        if (word==null) {
+          word=new StringBuilder();
+        }
+        word.append(line.charAt(++i));
+      }
+      else if (quote=='"') {
+        if (c=='"') {
+          quote=0;
+        }
+        else {
+          word.append(c);
+        }
+      }
+      else if (Character.isWhitespace(c)) {
+        if (word!=null) {
+          words.add(word.toString());
+          word=null;
+        }
+      }
+      else {
+        if (word==null) {
+          word=new StringBuilder();
+        }
+        if ((c=='\'') || (c=='"')) {
+          quote=c;
+        }
+        else {
+          word.append(c);
+        }
+      }
+    }
+    if (word!=null) {
+      words.add(word.toString());
+    }
+    return words;
+  }
+
+  // Preprocessed version of an input, with the flags of its makefile
+  public static synchronized File getPreprocessedFile(String name) {
+    File ikgFile=ikgFileMap.get(name);
+    if (ikgFile==null) {
+      File dir=new File(tempDir,"input"+ikgFileMap.size());
+      dir.mkdirs();
+      LinkedList<File> kgFileList=new LinkedList<File>();
+      kgFileList.add(new File(homeDir,name));
+      ikgFile=DriverHelper.runPreprocessor(kgFileList,"kg","ikg",dir,"gcc",
+          new LinkedList<String>(getMakefileFlags(name)),null).getFirst();
+      ikgFileMap.put(name,ikgFile);
+    }
+    return ikgFile;
+  }
+
+
+  //==================================================================
+  // Synthetic programs
+  //==================================================================
+
+  // Program made of a single kernel with 'nbNodes' nodes: a chain of
+  // point-wise operators, joined two by two and with a convolution every
+  // 50 nodes
+  public static File getSyntheticFile(int nbNodes) throws IOException {
+    File ikgFile=new File(tempDir,"Synthetic"+nbNodes+".ikg");
+    if (ikgFile.exists()) {
+      return ikgFile;
+    }
+    PrintWriter pw=new PrintWriter(new FileWriter(ikgFile));
+    pw.println("kernel Synthetic"+nbNodes+"(int width=[1:1920], int height=[1:1080], float in[height][width]) {");
+    for(int i=0;i<nbNodes;i++) {
+      String in=(i==0)?"in":("n"+(i-1));
+      if (i%50==0) {
+        pw.println("  Convolution<float> n"+i+"("+in+") { .border = mirror; "
+            +".coefficients= (float[-1:1][-1:1]) { {1., 2., 1.}, {2., 4., 2.}, {1., 2., 1.} }; };");
+      }
+      else if (i%2==0) {
+        pw.println("  Add<float> n"+i+"("+in+", n"+(i-2)+");");
+      }
+      else {
+        pw.println("  Operator<float> n"+i+"("+in+") { .function = ${ @n"+i+" = $"+in+"*0.5f; }$; };");
+      }
+    }
+    pw.println("  return n"+(nbNodes-1)+";");
+    pw.println("}");
+    pw.close();
+    return ikgFile;
+  }
+
+
+  //==================================================================
+  // Compilation phases
+  //==================================================================
+
+  // Resets the state of the IR shared by programs, so that operations
+  // do not depend on the previous ones
+  public static void resetIR() {
+    FunctionNode.resetGlobalId();
+    Filter.resetRuntimeFunctions();
+  }
+
+  public static ProgramParser parse(File ikgFile) {
+    String fileName=ikgFile.getName();
+    ProgramParser mp=new ProgramParser(0,ikgFile,fileName.substring(0,fileName.length()-".ikg".length()));
+    mp.parse();
+    mp.getCompilerError().exitIfError();
+    return mp;
+  }
+
+  // Parsed and checked program
+  public static Program check(File ikgFile) {
+    ProgramParser mp=parse(ikgFile);
+    CompilerError ce=mp.getCompilerError();
+    mp.getProgram().completeAndCheck(ce);
+    ce.exitIfError();
+    return mp.getProgram();
+  }
+
+}
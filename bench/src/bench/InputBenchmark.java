@@ -0,0 +1,51 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Benchmarks on the real inputs of CompilerContext.getInputNames, one
+   trial per input */
+
+package bench;
+
+import java.io.File;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+public abstract class InputBenchmark extends CompilerBenchmark {
+
+  // Input name, relative to the installation directory. Set by the
+  // BenchmarkRunner to all compilable inputs unless given with -p, the
+  // default value being only used when run by the JMH main class
+  @Param({"examples/OpenCL/sobel/src/Sobel.kg"})
+  public String input;
+
+  protected File ikgFile = null;
+
+  @Setup(Level.Trial)
+  public void setUpInput() {
+    CompilerContext.init();
+    ikgFile=CompilerContext.getPreprocessedFile(input);
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* MatrixIndexes/MatrixSize algebra used by the analysis: union, lcm
+   and inflateToMultipleOf over a set of 2D access patterns */
+
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+import ir.types.kg.MatrixIndexes;
+import ir.types.kg.MatrixSize;
+
+public class MatrixAlgebraBenchmark extends CompilerBenchmark {
+  private static final int NB_MATRIXES = 256;
+
+  private final List<MatrixIndexes> indexList = new ArrayList<MatrixIndexes>();
+  // Non null indexes, for lcm
+  private final List<MatrixIndexes> nonNullIndexList = new ArrayList<MatrixIndexes>();
+  private final List<MatrixSize> sizeList = new ArrayList<MatrixSize>();
+
+  @Setup
+  public void setUp() {
+    for(int i=0;i<NB_MATRIXES;i++) {
+      int e0=1+(i%7);
+      int e1=1+((i*3)%5);
+      nonNullIndexList.add(new MatrixIndexes(Arrays.asList(1+(i%4),1+(i%3)),Arrays.asList(e0,e1)));
+      indexList.add(new MatrixIndexes(Arrays.asList(-e0,-e1),Arrays.asList(e1,e0)));
+      sizeList.add(new MatrixSize(1+(i%4),1+((i*5)%6)));
+    }
+  }
+
+  @Benchmark
+  public MatrixIndexes union() {
+    MatrixIndexes r=new MatrixIndexes(indexList.get(0));
+    for(MatrixIndexes mi:indexList) {
+      r.union(mi);
+    }
+    return r;
+  }
+
+  @Benchmark
+  public MatrixIndexes lcm() {
+    MatrixIndexes r=new MatrixIndexes(nonNullIndexList.get(0));
+    for(MatrixIndexes mi:nonNullIndexList) {
+      r.lcm(mi);
+    }
+    return r;
+  }
+
+  @Benchmark
+  public MatrixSize sizeLcm() {
+    MatrixSize r=new MatrixSize(sizeList.get(0));
+    for(MatrixSize ms:sizeList) {
+      r.lcm(ms);
+    }
+    return r;
+  }
+
+  @Benchmark
+  public MatrixIndexes inflateToMultipleOf() {
+    MatrixIndexes r=null;
+    for(int i=0;i<NB_MATRIXES;i++) {
+      r=new MatrixIndexes(indexList.get(i)).inflateToMultipleOf(sizeList.get(i));
+    }
+    return r;
+  }
+
+}
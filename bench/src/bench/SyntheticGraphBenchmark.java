@@ -0,0 +1,87 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Synthetic kernels from 10 to 10,000 nodes, to expose the scaling of
+   the compiler with the size of graphs. Either the front-end (parse and
+   check) or the analysis passes of Kernel.analyze are measured */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import common.CompilerError;
+import ir.base.Kernel;
+import ir.base.Program;
+
+public class SyntheticGraphBenchmark extends CompilerBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int nbNodes;
+
+  private File ikgFile = null;
+
+  @Setup(Level.Trial)
+  public void setUpInput() throws IOException {
+    CompilerContext.init();
+    ikgFile=CompilerContext.getSyntheticFile(nbNodes);
+  }
+
+  // Program parsed and checked before each 'analyze' operation
+  @State(Scope.Thread)
+  public static class CheckedProgram {
+    Program prog = null;
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation(SyntheticGraphBenchmark b) {
+      CompilerContext.resetIR();
+      prog=CompilerContext.check(b.ikgFile);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    CompilerContext.resetIR();
+  }
+
+  @Benchmark
+  public Program parse() {
+    return CompilerContext.check(ikgFile);
+  }
+
+  @Benchmark
+  public Program analyze(CheckedProgram p) {
+    for(Kernel k:p.prog.getKernelList()) {
+      k.analyze(CompilerError.GLOBAL);
+    }
+    return p.prog;
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Kernel.tileAnalysis on real inputs */
+
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import ir.base.Kernel;
+import ir.base.Program;
+
+public class TileAnalysisBenchmark extends InputBenchmark {
+  private Program prog = null;
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    CompilerContext.resetIR();
+    prog=CompilerContext.check(ikgFile);
+  }
+
+  @Benchmark
+  public Program tileAnalysis() {
+    for(Kernel k:prog.getKernelList()) {
+      k.tileAnalysis();
+    }
+    return prog;
+  }
+
+}
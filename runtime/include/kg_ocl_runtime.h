@@ -24,6 +24,7 @@
 #ifndef KG_OCL_RUNTIME_H
 #define KG_OCL_RUNTIME_H
 
+#include <stdio.h>
 #include <CL/cl.h>
 
 //=====================================================================================
@@ -60,6 +61,13 @@ extern cl_command_queue oclCreateCommandQueue(cl_context context, cl_device_id d
  */
 extern cl_command_queue oclCreateCommandQueueOOO(cl_context context, cl_device_id device);
 
+/**
+ * Create a command queue with profiling enabled for a given device in a context,
+ * out-of-order if 'out_of_order' is not 0
+ */
+extern cl_command_queue oclCreateProfilingCommandQueue(cl_context context, cl_device_id device,
+		int out_of_order);
+
 extern void * oclCreateMapBuffer(cl_context context,
 		cl_command_queue queue,
 		cl_mem_flags create_flags,
@@ -69,6 +77,163 @@ extern void * oclCreateMapBuffer(cl_context context,
 		cl_mem *buffer);
 
 
+//=====================================================================================
+//                           Device buffer pool
+//=====================================================================================
+
+/*
+ * Buffers acquired from a pool are returned to it when released and reused by
+ * the next acquisitions of the same size class (sizes are rounded up to steps of
+ * an eighth of the next power of two), which avoids device allocations at each
+ * frame. A buffer is released with the event of the last command using it, and
+ * is only reused once this event is complete. The pool keeps at most a maximum
+ * amount of memory: reusable buffers are freed from the least recently used
+ * when it is exceeded.
+ * A pool must not be used concurrently by several threads.
+ */
+
+typedef struct oclBufferPool_s oclBufferPool;
+
+typedef struct oclPooledBuffer_s {
+	cl_mem mem;                // Device buffer
+	void *host;                // Host pointer of mapped buffers, NULL otherwise
+	size_t size;               // Size in bytes, at least the requested size
+	// Internal to the pool
+	cl_mem_flags create_flags;
+	cl_map_flags map_flags;
+	cl_event event;
+	struct oclPooledBuffer_s *prev, *next;
+} oclPooledBuffer;
+
+/**
+ * Create a buffer pool keeping at most 'max_bytes' of device memory (0 for no
+ * limit). Mapped buffers are mapped and unmapped in the command queue
+ */
+extern oclBufferPool *oclCreateBufferPool(cl_context context, cl_command_queue queue,
+		size_t max_bytes);
+
+/**
+ * Release a pool and all its buffers, including acquired ones, after waiting for
+ * the events of released buffers
+ */
+extern void oclReleaseBufferPool(oclBufferPool *pool);
+
+/**
+ * Acquire a device buffer of at least 'size' bytes
+ */
+extern oclPooledBuffer *oclAcquireBuffer(oclBufferPool *pool, cl_mem_flags create_flags,
+		size_t size);
+
+/**
+ * Acquire a pinned buffer of at least 'size' bytes, allocated in host memory and
+ * mapped. Its host pointer stays valid while it is kept in the pool
+ */
+extern oclPooledBuffer *oclAcquireMapBuffer(oclBufferPool *pool, cl_mem_flags create_flags,
+		cl_map_flags map_flags, size_t size);
+
+/**
+ * Return a buffer to its pool. 'event' is the event of the last command using the
+ * buffer (the commands of an out-of-order queue may need to be chained by a
+ * marker), the buffer is reused or freed only once it is complete. The pool
+ * retains the event, NULL means that no command uses the buffer anymore
+ */
+extern void oclReleasePooledBuffer(oclBufferPool *pool, oclPooledBuffer *buffer,
+		cl_event event);
+
+/**
+ * Free released buffers of a pool whose event is complete, from the least
+ * recently used, until the pool keeps at most 'max_bytes' of device memory
+ */
+extern void oclTrimBufferPool(oclBufferPool *pool, size_t max_bytes);
+
+/**
+ * Device memory kept by a pool, for acquired and released buffers
+ */
+extern size_t oclGetBufferPoolSize(oclBufferPool *pool);
+
+
+//=====================================================================================
+//                           Command graph
+//=====================================================================================
+
+/*
+ * A command graph enqueues commands with the wait list given by the buffers
+ * they read and write: a command waits for the last command writing one of its
+ * input buffers, and for the commands reading or writing one of its output
+ * buffers since then. Independent commands are not ordered, so that they run
+ * concurrently on an out-of-order command queue. Events of the commands are
+ * kept by the graph and released together when it is finished.
+ * A graph must not be used concurrently by several threads.
+ */
+
+typedef struct oclGraph_s oclGraph;
+
+/**
+ * Create an empty command graph
+ */
+extern oclGraph *oclCreateGraph();
+
+/**
+ * Release a graph, after waiting for its commands
+ */
+extern void oclReleaseGraph(oclGraph *graph);
+
+/**
+ * Get the wait list of a command reading the 'inputs' buffers and writing the
+ * 'outputs' buffers. The list is valid until the next call on the graph
+ */
+extern cl_uint oclGetGraphWaitList(oclGraph *graph,
+		cl_uint nb_inputs, const cl_mem *inputs,
+		cl_uint nb_outputs, const cl_mem *outputs,
+		const cl_event **wait_list);
+
+/**
+ * Add to the graph a command enqueued with its wait list. The graph takes the
+ * ownership of its event
+ */
+extern void oclAddGraphCommand(oclGraph *graph, cl_event event,
+		cl_uint nb_inputs, const cl_mem *inputs,
+		cl_uint nb_outputs, const cl_mem *outputs);
+
+/**
+ * Wait for all commands of the graph and release their events. The graph is
+ * then empty
+ */
+extern void oclFinishGraph(oclGraph *graph);
+
+
+//=====================================================================================
+//                           Kernel profiling
+//=====================================================================================
+
+/*
+ * Host wrappers generated with the --profile option record the execution of
+ * each kernel. Times are read from the profiling information of the event of
+ * the kernel once it is complete, which requires a command queue created with
+ * profiling enabled (launches on other queues are only counted). Statistics are
+ * aggregated per kernel name, for the execution time (START to END), the
+ * latency (QUEUED to END) and its queuing parts on the host (QUEUED to SUBMIT)
+ * and on the device (SUBMIT to START): count, min, max, mean and 99th
+ * percentile (within 1/16 of an octave).
+ */
+
+/**
+ * Record a kernel execution, whose event may not be complete yet. The event is
+ * retained until it is complete. 'bytes' is the size of the buffers processed
+ */
+extern void oclProfileKernel(const char *name, cl_event event, cl_ulong bytes);
+
+/**
+ * Dump per-kernel statistics in JSON, after waiting for recorded executions
+ */
+extern void oclDumpProfileJSON(FILE *file);
+
+/**
+ * Clear the recorded statistics
+ */
+extern void oclResetProfile();
+
+
 //=====================================================================================
 //                           Program and Kernel creation
 //=====================================================================================
@@ -90,6 +255,15 @@ extern unsigned char *oclGetProgramBinFromFile(const char *fileName, size_t *siz
 extern cl_program oclCreateProgramFromSource(cl_context context, cl_device_id device,
 		const char *filename, const char *options);
 		
+/**
+ * Read an OpenCL program from a source file and create it from the binary kept in
+ * the program cache by a previous build, or build it and store its binary in the
+ * cache. The cache directory is given by the KG_OCL_CACHE_DIR environment variable
+ * ($HOME/.cache/kgenius by default, an empty variable disabling the cache)
+ */
+extern cl_program oclCreateProgramFromSourceCached(cl_context context, cl_device_id device,
+		const char *filename, const char *options);
+
 /**
  * Read and build an OpenCL program from a binary file
  */
@@ -32,6 +32,18 @@
 #include <stdlib.h>
 #include <string.h>
 
+#include <sys/types.h>
+#include <sys/stat.h>
+#ifdef _WIN32
+#include <windows.h>
+#include <direct.h>
+#include <process.h>
+#define mkdir(path,mode) _mkdir(path)
+#else
+#include <unistd.h>
+#include <pthread.h>
+#endif
+
 
 
 void oclCheckStatus(cl_int status, char *message);
@@ -169,6 +181,25 @@ cl_command_queue oclCreateCommandQueueOOO(cl_context context, cl_device_id devic
   return commandQueue;
 }
 
+/**
+ * Create a command queue with profiling enabled for a given device in a context
+ */
+cl_command_queue oclCreateProfilingCommandQueue(cl_context context, cl_device_id device,
+		int out_of_order) {
+  cl_int status;
+  cl_command_queue_properties properties=CL_QUEUE_PROFILING_ENABLE;
+  if (out_of_order) {
+    properties|=CL_QUEUE_OUT_OF_ORDER_EXEC_MODE_ENABLE;
+  }
+  cl_command_queue commandQueue =
+    clCreateCommandQueue(context, 
+			 device, 
+			 properties, 
+			 &status);
+  oclCheckStatus(status,"clCreateCommandQueue (profiling) failed.");
+  return commandQueue;
+}
+
 void * oclCreateMapBuffer(cl_context context,
 		cl_command_queue queue,
 		cl_mem_flags create_flags,
@@ -200,6 +231,402 @@ void * oclCreateMapBuffer(cl_context context,
 }
 
 
+//=====================================================================================
+//                           Device buffer pool
+//=====================================================================================
+
+#define POOL_MIN_SIZE 4096
+
+struct oclBufferPool_s {
+	cl_context context;
+	cl_command_queue queue;
+	size_t max_bytes;
+	size_t nb_bytes;            // Memory of all buffers of the pool
+	oclPooledBuffer *used;      // Acquired buffers
+	oclPooledBuffer *pending;   // Released buffers whose event is not complete
+	oclPooledBuffer *free;      // Released buffers, most recently used first
+	oclPooledBuffer *free_last; // Least recently used released buffer
+};
+
+/**
+ * Size class of a buffer: steps of an eighth of the next power of two, which
+ * wastes at most 25% of the memory
+ */
+static size_t oclPoolSizeClass(size_t size) {
+	size_t c=POOL_MIN_SIZE;
+	while (c<size) {
+		c<<=1;
+	}
+	if (c==POOL_MIN_SIZE) {
+		return c;
+	}
+	size_t r=c/2;
+	while (r<size) {
+		r+=c/8;
+	}
+	return r;
+}
+
+static void oclPoolPush(oclPooledBuffer **list, oclPooledBuffer *buffer) {
+	buffer->prev=NULL;
+	buffer->next=*list;
+	if (*list!=NULL) {
+		(*list)->prev=buffer;
+	}
+	*list=buffer;
+}
+
+static void oclPoolRemove(oclPooledBuffer **list, oclPooledBuffer **last, oclPooledBuffer *buffer) {
+	if (buffer->prev!=NULL) {
+		buffer->prev->next=buffer->next;
+	}
+	else {
+		*list=buffer->next;
+	}
+	if (buffer->next!=NULL) {
+		buffer->next->prev=buffer->prev;
+	}
+	else if (last!=NULL) {
+		*last=buffer->prev;
+	}
+}
+
+/**
+ * Free a buffer of the pool, which is not in a list
+ */
+static void oclPoolDestroy(oclBufferPool *pool, oclPooledBuffer *buffer) {
+	cl_int status;
+	if (buffer->host!=NULL) {
+		status=clEnqueueUnmapMemObject(pool->queue,buffer->mem,buffer->host,0,NULL,NULL);
+		oclCheckStatus(status,"clEnqueueUnmapMemObject failed.");
+	}
+	status=clReleaseMemObject(buffer->mem);
+	oclCheckStatus(status,"clReleaseMemObject failed.");
+	pool->nb_bytes-=buffer->size;
+	free(buffer);
+}
+
+/**
+ * Make released buffers whose event is complete reusable, waiting for all events
+ * when 'wait' is not 0
+ */
+static void oclPoolHarvest(oclBufferPool *pool, int wait) {
+	oclPooledBuffer *buffer=pool->pending;
+	while (buffer!=NULL) {
+		oclPooledBuffer *next=buffer->next;
+		cl_int execution_status=CL_COMPLETE;
+		if (wait) {
+			clWaitForEvents(1,&buffer->event);
+		}
+		else {
+			clGetEventInfo(buffer->event,CL_EVENT_COMMAND_EXECUTION_STATUS,
+					sizeof(cl_int),&execution_status,NULL);
+		}
+		// Negative status for aborted commands
+		if (execution_status<=CL_COMPLETE) {
+			clReleaseEvent(buffer->event);
+			buffer->event=NULL;
+			oclPoolRemove(&pool->pending,NULL,buffer);
+			oclPoolPush(&pool->free,buffer);
+			if (pool->free_last==NULL) {
+				pool->free_last=buffer;
+			}
+		}
+		buffer=next;
+	}
+}
+
+oclBufferPool *oclCreateBufferPool(cl_context context, cl_command_queue queue,
+		size_t max_bytes) {
+	oclBufferPool *pool=(oclBufferPool *)calloc(1,sizeof(oclBufferPool));
+	if (pool==NULL) {
+		oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclCreateBufferPool failed.");
+	}
+	pool->context=context;
+	pool->queue=queue;
+	pool->max_bytes=max_bytes;
+	return pool;
+}
+
+void oclReleaseBufferPool(oclBufferPool *pool) {
+	oclPoolHarvest(pool,1);
+	oclTrimBufferPool(pool,0);
+	while (pool->used!=NULL) {
+		oclPooledBuffer *buffer=pool->used;
+		pool->used=buffer->next;
+		oclPoolDestroy(pool,buffer);
+	}
+	free(pool);
+}
+
+void oclTrimBufferPool(oclBufferPool *pool, size_t max_bytes) {
+	oclPoolHarvest(pool,0);
+	while ((pool->nb_bytes>max_bytes) && (pool->free_last!=NULL)) {
+		oclPooledBuffer *buffer=pool->free_last;
+		oclPoolRemove(&pool->free,&pool->free_last,buffer);
+		oclPoolDestroy(pool,buffer);
+	}
+}
+
+size_t oclGetBufferPoolSize(oclBufferPool *pool) {
+	return pool->nb_bytes;
+}
+
+/**
+ * Acquire a buffer from the released ones, or create it
+ */
+static oclPooledBuffer *oclPoolAcquire(oclBufferPool *pool, cl_mem_flags create_flags,
+		cl_map_flags map_flags, int mapped, size_t size) {
+	size = oclPoolSizeClass(size);
+	oclPoolHarvest(pool,0);
+
+	// Most recently used buffer of the same class
+	oclPooledBuffer *buffer;
+	for(buffer=pool->free;buffer!=NULL;buffer=buffer->next) {
+		if ((buffer->size==size) && (buffer->create_flags==create_flags) &&
+				((buffer->host!=NULL)==mapped) && (buffer->map_flags==map_flags)) {
+			oclPoolRemove(&pool->free,&pool->free_last,buffer);
+			oclPoolPush(&pool->used,buffer);
+			return buffer;
+		}
+	}
+
+	// Make room for the new buffer
+	if (pool->max_bytes!=0) {
+		oclTrimBufferPool(pool, (pool->max_bytes>size)?pool->max_bytes-size:0);
+	}
+	cl_int status;
+	cl_mem mem = clCreateBuffer(pool->context,
+			create_flags,
+			size,
+			NULL,
+			&status);
+	if ((status==CL_MEM_OBJECT_ALLOCATION_FAILURE) || (status==CL_OUT_OF_RESOURCES)) {
+		// Retry without the released buffers, once their commands are complete
+		oclPoolHarvest(pool,1);
+		oclTrimBufferPool(pool,0);
+		mem = clCreateBuffer(pool->context,
+				create_flags,
+				size,
+				NULL,
+				&status);
+	}
+	oclCheckStatus(status,"clCreateBuffer failed.");
+
+	buffer=(oclPooledBuffer *)calloc(1,sizeof(oclPooledBuffer));
+	if (buffer==NULL) {
+		oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclAcquireBuffer failed.");
+	}
+	buffer->mem=mem;
+	buffer->size=size;
+	buffer->create_flags=create_flags;
+	buffer->map_flags=map_flags;
+	if (mapped) {
+		buffer->host = clEnqueueMapBuffer(pool->queue,
+				mem,
+				CL_TRUE,
+				map_flags,
+				0,
+				size,
+				0, NULL,
+				NULL,
+				&status
+				);
+		oclCheckStatus(status,"clEnqueueMapBuffer failed.");
+	}
+	pool->nb_bytes+=size;
+	oclPoolPush(&pool->used,buffer);
+	return buffer;
+}
+
+oclPooledBuffer *oclAcquireBuffer(oclBufferPool *pool, cl_mem_flags create_flags,
+		size_t size) {
+	return oclPoolAcquire(pool,create_flags,0,0,size);
+}
+
+oclPooledBuffer *oclAcquireMapBuffer(oclBufferPool *pool, cl_mem_flags create_flags,
+		cl_map_flags map_flags, size_t size) {
+	return oclPoolAcquire(pool,create_flags|CL_MEM_ALLOC_HOST_PTR,map_flags,1,size);
+}
+
+void oclReleasePooledBuffer(oclBufferPool *pool, oclPooledBuffer *buffer,
+		cl_event event) {
+	oclPoolRemove(&pool->used,NULL,buffer);
+	if (event!=NULL) {
+		// Reused once the commands using it are complete
+		clRetainEvent(event);
+		buffer->event=event;
+		oclPoolPush(&pool->pending,buffer);
+	}
+	else {
+		oclPoolPush(&pool->free,buffer);
+		if (pool->free_last==NULL) {
+			pool->free_last=buffer;
+		}
+	}
+	if (pool->max_bytes!=0) {
+		oclTrimBufferPool(pool,pool->max_bytes);
+	}
+}
+
+
+//=====================================================================================
+//                           Command graph
+//=====================================================================================
+
+typedef struct {
+	cl_mem mem;
+	cl_event writer;      // Last command writing the buffer, NULL if none
+	cl_event *readers;    // Commands reading the buffer since its last write
+	cl_uint nb_readers;
+	cl_uint max_readers;
+} oclGraphBuffer;
+
+struct oclGraph_s {
+	oclGraphBuffer *buffers;
+	cl_uint nb_buffers;
+	cl_uint max_buffers;
+	cl_event *events;     // Events of all commands
+	cl_uint nb_events;
+	cl_uint max_events;
+	cl_event *wait_list;
+	cl_uint max_wait_list;
+};
+
+/**
+ * Make room for 'nb' elements of size 'size' in an array
+ */
+static void *oclGraphReserve(void *array, cl_uint *max, cl_uint nb, size_t size) {
+	if (nb<=*max) {
+		return array;
+	}
+	cl_uint m=(*max==0)?8:*max;
+	while (m<nb) {
+		m*=2;
+	}
+	array=realloc(array,m*size);
+	if (array==NULL) {
+		oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclGraph allocation failed.");
+	}
+	*max=m;
+	return array;
+}
+
+static oclGraphBuffer *oclGraphGetBuffer(oclGraph *graph, cl_mem mem, int create) {
+	cl_uint i;
+	for(i=0;i<graph->nb_buffers;i++) {
+		if (graph->buffers[i].mem==mem) {
+			return &graph->buffers[i];
+		}
+	}
+	if (!create) {
+		return NULL;
+	}
+	graph->buffers=oclGraphReserve(graph->buffers,&graph->max_buffers,
+			graph->nb_buffers+1,sizeof(oclGraphBuffer));
+	oclGraphBuffer *buffer=&graph->buffers[graph->nb_buffers++];
+	memset(buffer,0,sizeof(oclGraphBuffer));
+	buffer->mem=mem;
+	return buffer;
+}
+
+static cl_uint oclGraphAddWait(oclGraph *graph, cl_uint nb, cl_event event) {
+	cl_uint i;
+	if (event==NULL) {
+		return nb;
+	}
+	for(i=0;i<nb;i++) {
+		if (graph->wait_list[i]==event) {
+			return nb;
+		}
+	}
+	graph->wait_list=oclGraphReserve(graph->wait_list,&graph->max_wait_list,
+			nb+1,sizeof(cl_event));
+	graph->wait_list[nb]=event;
+	return nb+1;
+}
+
+oclGraph *oclCreateGraph() {
+	oclGraph *graph=(oclGraph *)calloc(1,sizeof(oclGraph));
+	if (graph==NULL) {
+		oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclCreateGraph failed.");
+	}
+	return graph;
+}
+
+void oclReleaseGraph(oclGraph *graph) {
+	oclFinishGraph(graph);
+	free(graph->buffers);
+	free(graph->events);
+	free(graph->wait_list);
+	free(graph);
+}
+
+cl_uint oclGetGraphWaitList(oclGraph *graph,
+		cl_uint nb_inputs, const cl_mem *inputs,
+		cl_uint nb_outputs, const cl_mem *outputs,
+		const cl_event **wait_list) {
+	cl_uint i, j, nb=0;
+	// Read after write
+	for(i=0;i<nb_inputs;i++) {
+		oclGraphBuffer *buffer=oclGraphGetBuffer(graph,inputs[i],0);
+		if (buffer!=NULL) {
+			nb=oclGraphAddWait(graph,nb,buffer->writer);
+		}
+	}
+	// Write after write and write after read
+	for(i=0;i<nb_outputs;i++) {
+		oclGraphBuffer *buffer=oclGraphGetBuffer(graph,outputs[i],0);
+		if (buffer!=NULL) {
+			nb=oclGraphAddWait(graph,nb,buffer->writer);
+			for(j=0;j<buffer->nb_readers;j++) {
+				nb=oclGraphAddWait(graph,nb,buffer->readers[j]);
+			}
+		}
+	}
+	*wait_list=(nb==0)?NULL:graph->wait_list;
+	return nb;
+}
+
+void oclAddGraphCommand(oclGraph *graph, cl_event event,
+		cl_uint nb_inputs, const cl_mem *inputs,
+		cl_uint nb_outputs, const cl_mem *outputs) {
+	cl_uint i;
+	graph->events=oclGraphReserve(graph->events,&graph->max_events,
+			graph->nb_events+1,sizeof(cl_event));
+	graph->events[graph->nb_events++]=event;
+
+	for(i=0;i<nb_inputs;i++) {
+		oclGraphBuffer *buffer=oclGraphGetBuffer(graph,inputs[i],1);
+		buffer->readers=oclGraphReserve(buffer->readers,&buffer->max_readers,
+				buffer->nb_readers+1,sizeof(cl_event));
+		buffer->readers[buffer->nb_readers++]=event;
+	}
+	for(i=0;i<nb_outputs;i++) {
+		oclGraphBuffer *buffer=oclGraphGetBuffer(graph,outputs[i],1);
+		buffer->writer=event;
+		buffer->nb_readers=0;
+	}
+}
+
+void oclFinishGraph(oclGraph *graph) {
+	cl_int status;
+	cl_uint i;
+	if (graph->nb_events!=0) {
+		status = clWaitForEvents(graph->nb_events, graph->events);
+		oclCheckStatus(status,"clWaitForEvents failed.");
+		for(i=0;i<graph->nb_events;i++) {
+			clReleaseEvent(graph->events[i]);
+		}
+	}
+	for(i=0;i<graph->nb_buffers;i++) {
+		free(graph->buffers[i].readers);
+	}
+	graph->nb_events=0;
+	graph->nb_buffers=0;
+}
+
+
 //=====================================================================================
 //                           Program and Kernel creation
 //=====================================================================================
@@ -276,14 +703,10 @@ unsigned char *oclGetProgramBinFromFile(const char *fileName, size_t *sizeFile)
 }
 
 /**
- * Read and build an OpenCL program from a source file
+ * Build an OpenCL program from its source
  */
-cl_program oclCreateProgramFromSource(cl_context context, cl_device_id device,
-		const char *filename, const char *options) {
-	// Read the program from the file
-	size_t sourceSize;
-	char * source=oclGetProgramSrcFromFile(filename, &sourceSize);
-
+static cl_program oclBuildProgramFromSource(cl_context context, cl_device_id device,
+		const char *filename, const char *source, size_t sourceSize, const char *options) {
 	// Create the program object
 	cl_int status;
 	cl_program program = clCreateProgramWithSource(
@@ -308,6 +731,20 @@ cl_program oclCreateProgramFromSource(cl_context context, cl_device_id device,
 	return program;
 }
 
+/**
+ * Read and build an OpenCL program from a source file
+ */
+cl_program oclCreateProgramFromSource(cl_context context, cl_device_id device,
+		const char *filename, const char *options) {
+	// Read the program from the file
+	size_t sourceSize;
+	char * source=oclGetProgramSrcFromFile(filename, &sourceSize);
+
+	cl_program program=oclBuildProgramFromSource(context,device,filename,source,sourceSize,options);
+	free(source);
+	return program;
+}
+
 /**
  * Read and build an OpenCL program from a binary file
  */
@@ -367,6 +804,546 @@ char *oclGetProgramPath(char *path, char *name, size_t path_size) {
 }
 
 
+//=====================================================================================
+//                           Program binary cache
+//=====================================================================================
+
+/*
+ * Programs built from source are kept as binaries in the directory given by the
+ * KG_OCL_CACHE_DIR environment variable ($HOME/.cache/kgenius by default, an empty
+ * variable disabling the cache). The key of an entry is made of the source, the
+ * build options and the platform, device and driver identification. It is stored
+ * in the entry and compared on load, entries being only named after a hash of it.
+ */
+
+#define CACHE_MAGIC "KGOCLB2"
+
+typedef struct {
+	char magic[8];
+	cl_ulong keySize;
+	cl_ulong binarySize;
+} oclCacheHeader;
+
+typedef struct {
+	unsigned char *data;
+	size_t size;
+	size_t capacity;
+} oclCacheKey;
+
+/**
+ * Append data to a cache key
+ */
+static void oclAppendKey(oclCacheKey *key, const void *data, size_t size) {
+	if (key->size+size>key->capacity) {
+		size_t capacity=2*(key->size+size);
+		unsigned char *new_data=realloc(key->data,capacity);
+		if (new_data==NULL) {
+			oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclCreateProgramFromSourceCached failed.");
+		}
+		key->data=new_data;
+		key->capacity=capacity;
+	}
+	memcpy(key->data+key->size,data,size);
+	key->size+=size;
+}
+
+/**
+ * Append a string to a cache key, with its terminating zero separating it from
+ * the next one
+ */
+static void oclAppendKeyString(oclCacheKey *key, const char *s) {
+	if (s==NULL) {
+		s="";
+	}
+	oclAppendKey(key,s,strlen(s)+1);
+}
+
+/**
+ * Build the cache key of a program
+ */
+static void oclBuildCacheKey(oclCacheKey *key, const char *source, size_t sourceSize,
+		const char *options, cl_device_id device) {
+	char buffer[1024];
+	cl_platform_id platform;
+	cl_ulong size=sourceSize;
+
+	key->data=NULL;
+	key->size=0;
+	key->capacity=0;
+	oclAppendKey(key,&size,sizeof(size));
+	oclAppendKey(key,source,sourceSize);
+	oclAppendKeyString(key,options);
+
+	// Platform, device and driver identification
+	buffer[0]='\0';
+	if (clGetDeviceInfo(device,CL_DEVICE_PLATFORM,sizeof(platform),&platform,NULL)==CL_SUCCESS) {
+		clGetPlatformInfo(platform,CL_PLATFORM_NAME,sizeof(buffer),buffer,NULL);
+	}
+	oclAppendKeyString(key,buffer);
+	buffer[0]='\0';
+	if (clGetDeviceInfo(device,CL_DEVICE_PLATFORM,sizeof(platform),&platform,NULL)==CL_SUCCESS) {
+		clGetPlatformInfo(platform,CL_PLATFORM_VERSION,sizeof(buffer),buffer,NULL);
+	}
+	oclAppendKeyString(key,buffer);
+	buffer[0]='\0';
+	clGetDeviceInfo(device,CL_DEVICE_NAME,sizeof(buffer),buffer,NULL);
+	oclAppendKeyString(key,buffer);
+	buffer[0]='\0';
+	clGetDeviceInfo(device,CL_DEVICE_VENDOR,sizeof(buffer),buffer,NULL);
+	oclAppendKeyString(key,buffer);
+	buffer[0]='\0';
+	clGetDeviceInfo(device,CL_DRIVER_VERSION,sizeof(buffer),buffer,NULL);
+	oclAppendKeyString(key,buffer);
+	buffer[0]='\0';
+	clGetDeviceInfo(device,CL_DEVICE_VERSION,sizeof(buffer),buffer,NULL);
+	oclAppendKeyString(key,buffer);
+}
+
+/**
+ * FNV-1a hash of a cache key, naming its entry
+ */
+static cl_ulong oclHashKey(const oclCacheKey *key) {
+	cl_ulong hash=0xcbf29ce484222325ULL;
+	size_t i;
+	for(i=0;i<key->size;i++) {
+		hash=(hash^key->data[i])*0x100000001b3ULL;
+	}
+	return hash;
+}
+
+/**
+ * Get the cache directory, creating it if necessary. Returns 0 if the cache is
+ * disabled
+ */
+static int oclGetCacheDir(char *path, size_t path_size) {
+	char *dir=getenv("KG_OCL_CACHE_DIR");
+	if (dir!=NULL) {
+		if (dir[0]=='\0') {
+			return 0;
+		}
+		snprintf(path, path_size, "%s", dir);
+	}
+	else {
+		char *home=getenv("HOME");
+		if (home==NULL) {
+			return 0;
+		}
+		snprintf(path, path_size, "%s/.cache/kgenius", home);
+	}
+
+	// Create the directory and its parents
+	char *p;
+	for(p=path+1;*p!='\0';p++) {
+		if (*p=='/') {
+			*p='\0';
+			mkdir(path,0755);
+			*p='/';
+		}
+	}
+	mkdir(path,0755);
+	return 1;
+}
+
+/**
+ * Create a program from a cached binary. Returns NULL if there is no entry with
+ * the same key
+ */
+static cl_program oclLoadCachedProgram(cl_context context, cl_device_id device,
+		const char *cacheFile, const oclCacheKey *key, const char *options) {
+	FILE *file=fopen(cacheFile,"rb");
+	if (file==NULL) {
+		return NULL;
+	}
+	oclCacheHeader header;
+	unsigned char *binary=NULL;
+	if ((fread(&header,sizeof(header),1,file)==1) &&
+			(memcmp(header.magic,CACHE_MAGIC,sizeof(header.magic))==0) &&
+			(header.keySize==key->size) && (header.binarySize!=0)) {
+		// Same key, not only the same hash
+		unsigned char *entryKey=malloc(key->size);
+		if ((entryKey!=NULL) && (fread(entryKey,key->size,1,file)==1) &&
+				(memcmp(entryKey,key->data,key->size)==0)) {
+			binary=malloc(header.binarySize);
+			if ((binary!=NULL) && (fread(binary,header.binarySize,1,file)!=1)) {
+				free(binary);
+				binary=NULL;
+			}
+		}
+		free(entryKey);
+	}
+	fclose(file);
+	if (binary==NULL) {
+		return NULL;
+	}
+
+	// Create the program object
+	size_t length=header.binarySize;
+	cl_int status;
+	cl_int binary_status;
+	cl_program program = clCreateProgramWithBinary(
+			context,
+			(cl_uint)1,
+			&device,
+			(const size_t *)&length,
+			(const unsigned char **)&binary,
+			&binary_status,
+			&status);
+	free(binary);
+	if ((status!=CL_SUCCESS) || (binary_status!=CL_SUCCESS)) {
+		if (program!=NULL) {
+			clReleaseProgram(program);
+		}
+		return NULL;
+	}
+
+	/* Build the CL program (the driver may reject an outdated binary) */
+	status = clBuildProgram(program, 1, &device, options, NULL, NULL);
+	if (status!=CL_SUCCESS) {
+		clReleaseProgram(program);
+		return NULL;
+	}
+	return program;
+}
+
+/**
+ * Store the binary of a program built for a device in the cache. The entry is
+ * written to a temporary file then renamed, so that concurrent processes never
+ * read a partial binary
+ */
+static void oclStoreCachedProgram(cl_program program, cl_device_id device,
+		const char *cacheFile, const oclCacheKey *key) {
+	cl_uint nbDevices;
+	if (clGetProgramInfo(program,CL_PROGRAM_NUM_DEVICES,sizeof(nbDevices),&nbDevices,NULL)!=CL_SUCCESS) {
+		return;
+	}
+	cl_device_id devices[nbDevices];
+	size_t sizes[nbDevices];
+	unsigned char *binaries[nbDevices];
+	if ((clGetProgramInfo(program,CL_PROGRAM_DEVICES,sizeof(devices),devices,NULL)!=CL_SUCCESS) ||
+			(clGetProgramInfo(program,CL_PROGRAM_BINARY_SIZES,sizeof(sizes),sizes,NULL)!=CL_SUCCESS)) {
+		return;
+	}
+
+	// Only the binary of the device is retrieved
+	cl_uint i;
+	int index=-1;
+	for(i=0;i<nbDevices;i++) {
+		binaries[i]=NULL;
+		if ((devices[i]==device) && (sizes[i]!=0)) {
+			index=i;
+		}
+	}
+	if (index<0) {
+		return;
+	}
+	binaries[index]=malloc(sizes[index]);
+	if ((binaries[index]==NULL) ||
+			(clGetProgramInfo(program,CL_PROGRAM_BINARIES,sizeof(binaries),binaries,NULL)!=CL_SUCCESS)) {
+		free(binaries[index]);
+		return;
+	}
+
+	oclCacheHeader header;
+	memset(&header,0,sizeof(header));
+	memcpy(header.magic,CACHE_MAGIC,sizeof(header.magic));
+	header.keySize=key->size;
+	header.binarySize=sizes[index];
+
+	char tempFile[INTERN_BUF_SIZE+32];
+	snprintf(tempFile, sizeof(tempFile), "%s.%d.tmp", cacheFile, (int)getpid());
+	FILE *file=fopen(tempFile,"wb");
+	if (file!=NULL) {
+		int ok=(fwrite(&header,sizeof(header),1,file)==1) &&
+				(fwrite(key->data,key->size,1,file)==1) &&
+				(fwrite(binaries[index],sizes[index],1,file)==1);
+		ok=(fclose(file)==0) && ok;
+		if (!ok || (rename(tempFile,cacheFile)!=0)) {
+			remove(tempFile);
+		}
+	}
+	free(binaries[index]);
+}
+
+/**
+ * Read an OpenCL program from a source file and create it from the program cache,
+ * or build it and store its binary in the cache
+ */
+cl_program oclCreateProgramFromSourceCached(cl_context context, cl_device_id device,
+		const char *filename, const char *options) {
+	// Read the program from the file
+	size_t sourceSize;
+	char * source=oclGetProgramSrcFromFile(filename, &sourceSize);
+
+	char cacheFile[INTERN_BUF_SIZE];
+	oclCacheKey key;
+	cl_program program=NULL;
+	int cached=oclGetCacheDir(cacheFile, INTERN_BUF_SIZE-40);
+	if (cached) {
+		oclBuildCacheKey(&key,source,sourceSize,options,device);
+		size_t l=strlen(cacheFile);
+		snprintf(cacheFile+l, INTERN_BUF_SIZE-l, "/%016llx.bin",
+				(unsigned long long)oclHashKey(&key));
+		program=oclLoadCachedProgram(context,device,cacheFile,&key,options);
+	}
+
+	if (program==NULL) {
+		program=oclBuildProgramFromSource(context,device,filename,source,sourceSize,options);
+		if (cached) {
+			oclStoreCachedProgram(program,device,cacheFile,&key);
+		}
+	}
+	if (cached) {
+		free(key.data);
+	}
+	free(source);
+	return program;
+}
+
+
+//=====================================================================================
+//                           Kernel profiling
+//=====================================================================================
+
+// Histogram of durations in ns: exact below 16, then 16 buckets per octave
+#define PROFILE_NB_BUCKETS 976
+
+typedef struct {
+	cl_ulong min;
+	cl_ulong max;
+	double sum;
+	cl_ulong buckets[PROFILE_NB_BUCKETS];
+} oclProfileTime;
+
+typedef struct oclProfileKernelStats_s {
+	char *name;
+	cl_ulong count;        // Executions
+	cl_ulong nb_timed;     // Executions with profiling information
+	cl_ulong bytes;
+	oclProfileTime exec;   // START to END
+	oclProfileTime latency; // QUEUED to END
+	oclProfileTime queue;  // QUEUED to SUBMIT (host side queuing)
+	oclProfileTime submit; // SUBMIT to START (device side queuing)
+	struct oclProfileKernelStats_s *next;
+} oclProfileKernelStats;
+
+typedef struct {
+	oclProfileKernelStats *stats;
+	cl_event event;
+} oclProfilePending;
+
+static oclProfileKernelStats *profile_stats=NULL;
+static oclProfilePending *profile_pending=NULL;
+static cl_uint profile_nb_pending=0;
+static cl_uint profile_max_pending=0;
+#ifndef _WIN32
+static pthread_mutex_t profile_mutex=PTHREAD_MUTEX_INITIALIZER;
+#define PROFILE_LOCK() pthread_mutex_lock(&profile_mutex)
+#define PROFILE_UNLOCK() pthread_mutex_unlock(&profile_mutex)
+#else
+static CRITICAL_SECTION profile_mutex;
+static INIT_ONCE profile_mutex_once=INIT_ONCE_STATIC_INIT;
+static BOOL CALLBACK oclProfileInitLock(PINIT_ONCE once, PVOID parameter, PVOID *context) {
+	InitializeCriticalSection(&profile_mutex);
+	return TRUE;
+}
+#define PROFILE_LOCK() (InitOnceExecuteOnce(&profile_mutex_once,oclProfileInitLock,NULL,NULL), \
+		EnterCriticalSection(&profile_mutex))
+#define PROFILE_UNLOCK() LeaveCriticalSection(&profile_mutex)
+#endif
+
+static int oclProfileBucket(cl_ulong v) {
+	if (v<16) {
+		return (int)v;
+	}
+	int msb=4;
+	while ((v>>(msb+1))!=0) {
+		msb++;
+	}
+	return (msb-3)*16+(int)((v>>(msb-4))&15);
+}
+
+// Largest duration of a bucket
+static cl_ulong oclProfileBucketMax(int b) {
+	if (b<16) {
+		return b;
+	}
+	int msb=b/16+3;
+	cl_ulong low=((cl_ulong)(16+b%16))<<(msb-4);
+	return low+(((cl_ulong)1)<<(msb-4))-1;
+}
+
+static void oclProfileAddTime(oclProfileTime *t, cl_ulong v, cl_ulong count) {
+	if ((count==0) || (v<t->min)) {
+		t->min=v;
+	}
+	if (v>t->max) {
+		t->max=v;
+	}
+	t->sum+=(double)v;
+	t->buckets[oclProfileBucket(v)]++;
+}
+
+/**
+ * Record the profiling information of a complete event and release it
+ */
+static void oclProfileRecord(oclProfilePending *p) {
+	cl_ulong queued, submit, start, end;
+	if ((clGetEventProfilingInfo(p->event,CL_PROFILING_COMMAND_QUEUED,sizeof(cl_ulong),&queued,NULL)==CL_SUCCESS) &&
+			(clGetEventProfilingInfo(p->event,CL_PROFILING_COMMAND_SUBMIT,sizeof(cl_ulong),&submit,NULL)==CL_SUCCESS) &&
+			(clGetEventProfilingInfo(p->event,CL_PROFILING_COMMAND_START,sizeof(cl_ulong),&start,NULL)==CL_SUCCESS) &&
+			(clGetEventProfilingInfo(p->event,CL_PROFILING_COMMAND_END,sizeof(cl_ulong),&end,NULL)==CL_SUCCESS)) {
+		oclProfileKernelStats *stats=p->stats;
+		oclProfileAddTime(&stats->exec,(end>start)?end-start:0,stats->nb_timed);
+		oclProfileAddTime(&stats->latency,(end>queued)?end-queued:0,stats->nb_timed);
+		oclProfileAddTime(&stats->queue,(submit>queued)?submit-queued:0,stats->nb_timed);
+		oclProfileAddTime(&stats->submit,(start>submit)?start-submit:0,stats->nb_timed);
+		stats->nb_timed++;
+	}
+	clReleaseEvent(p->event);
+}
+
+/**
+ * Record the complete pending events, or all of them when 'wait' is not 0
+ */
+static void oclProfileHarvest(int wait) {
+	cl_uint i, n=0;
+	for(i=0;i<profile_nb_pending;i++) {
+		oclProfilePending *p=&profile_pending[i];
+		cl_int execution_status=CL_COMPLETE;
+		if (wait) {
+			clWaitForEvents(1,&p->event);
+		}
+		else {
+			clGetEventInfo(p->event,CL_EVENT_COMMAND_EXECUTION_STATUS,sizeof(cl_int),&execution_status,NULL);
+		}
+		if (execution_status==CL_COMPLETE) {
+			oclProfileRecord(p);
+		}
+		else if (execution_status<0) {
+			// Aborted command
+			clReleaseEvent(p->event);
+		}
+		else {
+			profile_pending[n++]=*p;
+		}
+	}
+	profile_nb_pending=n;
+}
+
+void oclProfileKernel(const char *name, cl_event event, cl_ulong bytes) {
+	PROFILE_LOCK();
+	oclProfileHarvest(0);
+
+	oclProfileKernelStats *stats;
+	for(stats=profile_stats;stats!=NULL;stats=stats->next) {
+		if (strcmp(stats->name,name)==0) {
+			break;
+		}
+	}
+	if (stats==NULL) {
+		stats=(oclProfileKernelStats *)calloc(1,sizeof(oclProfileKernelStats));
+		if ((stats==NULL) || ((stats->name=strdup(name))==NULL)) {
+			oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclProfileKernel failed.");
+		}
+		stats->next=profile_stats;
+		profile_stats=stats;
+	}
+	stats->count++;
+	stats->bytes+=bytes;
+
+	if (profile_nb_pending==profile_max_pending) {
+		profile_max_pending=(profile_max_pending==0)?64:profile_max_pending*2;
+		profile_pending=realloc(profile_pending,profile_max_pending*sizeof(oclProfilePending));
+		if (profile_pending==NULL) {
+			oclCheckStatus(CL_OUT_OF_HOST_MEMORY,"oclProfileKernel failed.");
+		}
+	}
+	clRetainEvent(event);
+	profile_pending[profile_nb_pending].stats=stats;
+	profile_pending[profile_nb_pending].event=event;
+	profile_nb_pending++;
+	PROFILE_UNLOCK();
+}
+
+static void oclDumpProfileTime(FILE *file, const char *name, oclProfileTime *t, cl_ulong count) {
+	cl_ulong p99=0;
+	if (count!=0) {
+		// Smallest duration greater or equal to 99% of the executions
+		cl_ulong rank=(count*99+99)/100;
+		cl_ulong n=0;
+		int b;
+		for(b=0;b<PROFILE_NB_BUCKETS;b++) {
+			n+=t->buckets[b];
+			if (n>=rank) {
+				break;
+			}
+		}
+		p99=oclProfileBucketMax(b);
+		if (p99>t->max) {
+			p99=t->max;
+		}
+	}
+	fprintf(file,"      \"%s\": {\"min\": %llu, \"max\": %llu, \"mean\": %.1f, \"p99\": %llu}",
+			name,(unsigned long long)t->min,(unsigned long long)t->max,
+			(count!=0)?t->sum/count:0.0,(unsigned long long)p99);
+}
+
+static void oclDumpJSONString(FILE *file, const char *s) {
+	fputc('"',file);
+	for(;*s!='\0';s++) {
+		if ((*s=='"') || (*s=='\\')) {
+			fprintf(file,"\\%c",*s);
+		}
+		else if ((unsigned char)*s<0x20) {
+			fprintf(file,"\\u%04x",(unsigned char)*s);
+		}
+		else {
+			fputc(*s,file);
+		}
+	}
+	fputc('"',file);
+}
+
+void oclDumpProfileJSON(FILE *file) {
+	PROFILE_LOCK();
+	oclProfileHarvest(1);
+	fprintf(file,"{\n  \"kernels\": [");
+	oclProfileKernelStats *stats;
+	for(stats=profile_stats;stats!=NULL;stats=stats->next) {
+		fprintf(file,"%s\n    {\n",(stats==profile_stats)?"":",");
+		fprintf(file,"      \"name\": ");
+		oclDumpJSONString(file,stats->name);
+		fprintf(file,",\n");
+		fprintf(file,"      \"count\": %llu,\n",(unsigned long long)stats->count);
+		fprintf(file,"      \"timed\": %llu,\n",(unsigned long long)stats->nb_timed);
+		fprintf(file,"      \"bytes\": %llu,\n",(unsigned long long)stats->bytes);
+		oclDumpProfileTime(file,"exec_ns",&stats->exec,stats->nb_timed);
+		fprintf(file,",\n");
+		oclDumpProfileTime(file,"latency_ns",&stats->latency,stats->nb_timed);
+		fprintf(file,",\n");
+		oclDumpProfileTime(file,"queued_to_submit_ns",&stats->queue,stats->nb_timed);
+		fprintf(file,",\n");
+		oclDumpProfileTime(file,"submit_to_start_ns",&stats->submit,stats->nb_timed);
+		fprintf(file,"\n    }");
+	}
+	fprintf(file,"\n  ]\n}\n");
+	fflush(file);
+	PROFILE_UNLOCK();
+}
+
+void oclResetProfile() {
+	PROFILE_LOCK();
+	oclProfileHarvest(1);
+	while (profile_stats!=NULL) {
+		oclProfileKernelStats *stats=profile_stats;
+		profile_stats=stats->next;
+		free(stats->name);
+		free(stats);
+	}
+	PROFILE_UNLOCK();
+}
+
+
 //=====================================================================================
 //Debug and checks facilities
 //=====================================================================================
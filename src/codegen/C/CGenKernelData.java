@@ -31,6 +31,7 @@ import parser.KernelGeniusEmitter;
 import codegen.CodegenDataPattern;
 import common.CompilerError;
 import driver.options.CodegenOptions;
+import utility.thread.ThreadOutput;
 
 public class CGenKernelData {
 
@@ -104,7 +105,7 @@ public class CGenKernelData {
       emitter.declSpecifiers();
     } catch (RecognitionException e) {
       // TODO Auto-generated catch block
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
   }
 
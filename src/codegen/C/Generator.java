@@ -28,8 +28,6 @@ import ir.base.Kernel;
 import ir.base.Program;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -41,12 +39,14 @@ import parser.KernelGeniusEmitter;
 import parser.TNode;
 
 import common.CompilerError;
-import common.ResourceManager;
+import common.TimeReport;
 
 import codegen.CodeGenerator;
+import codegen.GeneratedFile;
 import driver.DriverHelper;
 import driver.options.CodegenOptions;
 import driver.options.GeneralOptions;
+import utility.thread.ThreadOutput;
 
 public class Generator extends CodeGenerator {
   
@@ -54,41 +54,29 @@ public class Generator extends CodeGenerator {
   // Main entry point
   //=================================================
   
-  public void generate(Program prog, List<File> generatedFiles, File tempDir) {
+  public void generate(Program prog, List<File> generatedFiles, File outputDir) {
     // The C code
-    generateC(prog,generatedFiles,tempDir);
+    generateC(prog,generatedFiles,outputDir);
   }
 
   //=================================================
   // C program
   //=================================================
   
-  public static void generateC(Program prog, List<File> generatedFiles, File tempDir) {
+  public static void generateC(Program prog, List<File> generatedFiles, File outputDir) {
     // Debug messages
-    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".c", tempDir);
+    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".c", outputDir);
     generatedFiles.add(fileToGenerate);
     
     if (GeneralOptions.getDebugLevel() > 0) {
       CompilerError.GLOBAL.raiseMessage("  ... generating file '"
           + fileToGenerate.getName() + "'");
     }
-    PrintStream ps=null;
-    try {
-      ps = new PrintStream(fileToGenerate);
-    } catch (FileNotFoundException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-    ResourceManager.registerStream(ps);
+    GeneratedFile generatedFile=new GeneratedFile(fileToGenerate);
     // Generate the program
-    Generator.generateC_Program(prog,ps);
-    // Close the file
-    try {
-      ResourceManager.closeStream(ps);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
+    Generator.generateC_Program(prog,generatedFile.getPrintStream());
+    // Write the file
+    generatedFile.write();
   }
   
   static public void generateC_Program(Program prog, PrintStream ps) {
@@ -105,8 +93,10 @@ public class Generator extends CodeGenerator {
         ps.println((String)o);
       }
       else if (o instanceof Kernel) {
+        TimeReport.Phase phase=TimeReport.start("C code",((Kernel)o).getName());
         generateC_Kernel(((Kernel)o), ps);
         ps.println();
+        TimeReport.stop(phase);
       }
       else if (o instanceof TNode) {
         // This is a declaration
@@ -120,7 +110,7 @@ public class Generator extends CodeGenerator {
           emitter.declaration();
         } catch (RecognitionException e) {
           // TODO Auto-generated catch block
-          e.printStackTrace();
+          e.printStackTrace(ThreadOutput.err());
         }
         ps.println();
         ps.println();
@@ -35,7 +35,7 @@ abstract public class CodeGenerator {
   //=================================================
   // Main entry point
   //=================================================
-  public abstract void generate(Program prog, List<File> generatedFiles, File tempDir);
+  public abstract void generate(Program prog, List<File> generatedFiles, File outputDir);
   public abstract void generateReport(Program prog, PrintStream ps);
   
   //=================================================
@@ -25,6 +25,8 @@
 
 package codegen;
 
+import ir.base.BorderMode;
+import utility.thread.ThreadOutput;
 
 public class CodegenDataPattern {
   // Tiling patterns
@@ -52,6 +54,17 @@ public class CodegenDataPattern {
   int schedulingTime=-1;
   int nbBufferSlot=0;
 
+  // Work-group barrier needed after the computation of the data
+  boolean barrierAfter=false;
+
+  // Borders materialized in the local buffer (columns of dim 0)
+  BorderMode paddingBorderMode=null;
+  int paddingLeft=0;
+  int paddingRight=0;
+  // Lines allocated after the slots of the local buffer, holding the
+  // border rows (dim 1) of constant and exponential borders
+  int nbBorderLine=0;
+
   
   //========================================================
   // Building
@@ -95,6 +108,41 @@ public class CodegenDataPattern {
    public int getNbBufferSlot() {
     return nbBufferSlot;
   }
+  // Number of lines of the local buffer, including border lines
+  public int getNbBufferLine() {
+    return nbBufferSlot+nbBorderLine;
+  }
+
+  public void setBarrierAfter(boolean b) {
+    barrierAfter=b;
+  }
+  public boolean hasBarrierAfter() {
+    return barrierAfter;
+  }
+
+  public void setBorderPadding(BorderMode bm, int left, int right) {
+    paddingBorderMode=bm;
+    paddingLeft=left;
+    paddingRight=right;
+  }
+  public boolean hasBorderPadding() {
+    return paddingBorderMode!=null;
+  }
+  public BorderMode getPaddingBorderMode() {
+    return paddingBorderMode;
+  }
+  public int getPaddingLeft() {
+    return paddingLeft;
+  }
+  public int getPaddingRight() {
+    return paddingRight;
+  }
+  public void setNbBorderLine(int n) {
+    nbBorderLine=n;
+  }
+  public int getNbBorderLine() {
+    return nbBorderLine;
+  }
    
   
   //========================================================
@@ -127,7 +175,7 @@ public class CodegenDataPattern {
     case D2_INTRINSIC :
       break;
     default:
-      System.err.println("generateDeclaration: Not supported pattern "+accessType);
+      ThreadOutput.err().println("generateDeclaration: Not supported pattern "+accessType);
     }
 
     baseCType.generate(ps);
@@ -146,7 +194,7 @@ public class CodegenDataPattern {
       ps.print(" **");
       break;
     default:
-      System.err.println("generateDeclaration: Not supported pattern "+accessType);
+      ThreadOutput.err().println("generateDeclaration: Not supported pattern "+accessType);
     }
     ps.print(" ");
     ps.print(name);
@@ -163,6 +211,12 @@ public class CodegenDataPattern {
     sb.append(" ").append(accessType.toString());
     sb.append(" sched=").append(schedulingTime);
     sb.append(" slots=").append(nbBufferSlot);
+    if (barrierAfter) {
+      sb.append(" barrier");
+    }
+    if (paddingBorderMode!=null) {
+      sb.append(" padding=[").append(paddingLeft).append(":").append(paddingRight).append("]");
+    }
     return sb.toString();
   }
 }
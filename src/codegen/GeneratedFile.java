@@ -0,0 +1,138 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* File generated by a code generator. The code is emitted in memory
+   and written to the file at once, and not at all if the file already
+   has this content, so that its date only changes with its content.
+   A thread can also keep its generated files in memory, without any
+   file being written
+*/
+
+package codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import common.CompilerError;
+
+public class GeneratedFile {
+  // Growable buffer giving access to its content without copy
+  private static class Buffer extends ByteArrayOutputStream {
+    Buffer() {
+      super(64*1024);
+    }
+    ByteBuffer getByteBuffer() {
+      return ByteBuffer.wrap(buf,0,count);
+    }
+  }
+
+  // Content of the files generated by the current thread (and the
+  // threads it creates) by file name, null when files are written
+  private static final InheritableThreadLocal<Map<String,String>> memoryOutput = new InheritableThreadLocal<Map<String,String>>();
+
+  // Keeps the files generated by the current thread in map 'm' instead
+  // of writing them (null to write them again)
+  public static void setMemoryOutput(Map<String,String> m) {
+    memoryOutput.set(m);
+  }
+
+  private final File file;
+  private final Buffer buffer = new Buffer();
+  private final PrintStream ps = new PrintStream(buffer);
+
+  public GeneratedFile(File f) {
+    file=f;
+  }
+
+  public File getFile() {
+    return file;
+  }
+  public PrintStream getPrintStream() {
+    return ps;
+  }
+
+
+  //==================================================================
+  // Writing
+  //==================================================================
+
+  private boolean hasSameContent(ByteBuffer content) throws IOException {
+    if (!file.isFile() || (file.length()!=content.remaining())) {
+      return false;
+    }
+    ByteBuffer existing=ByteBuffer.allocate(content.remaining());
+    FileChannel fc=new FileInputStream(file).getChannel();
+    try {
+      while (existing.hasRemaining() && (fc.read(existing)>=0)) {
+        // Read until the end
+      }
+    }
+    finally {
+      fc.close();
+    }
+    existing.flip();
+    return existing.equals(content);
+  }
+
+  // Writes the emitted code to the file, unless the file already has
+  // this content. Returns true if the file has been written (or kept in
+  // memory)
+  public boolean write() {
+    ps.flush();
+    Map<String,String> m=memoryOutput.get();
+    if (m!=null) {
+      synchronized (m) {
+        m.put(file.getName(),buffer.toString());
+      }
+      return true;
+    }
+    ByteBuffer content=buffer.getByteBuffer();
+    try {
+      if (hasSameContent(content)) {
+        return false;
+      }
+      FileChannel fc=new FileOutputStream(file).getChannel();
+      try {
+        while (content.hasRemaining()) {
+          fc.write(content);
+        }
+      }
+      finally {
+        fc.close();
+      }
+    }
+    catch (IOException e) {
+      CompilerError.GLOBAL.raiseFatalError("can not write file '"
+          + file.getPath() + "': " + e.getMessage());
+    }
+    return true;
+  }
+
+}
@@ -28,8 +28,6 @@ import ir.base.KernelData;
 import ir.base.Program;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -41,65 +39,44 @@ import parser.KernelGeniusEmitter;
 import parser.TNode;
 
 import common.CompilerError;
-import common.ResourceManager;
+import common.TimeReport;
 
+import codegen.GeneratedFile;
 import driver.DriverHelper;
+import driver.options.CodegenOptions;
 import driver.options.GeneralOptions;
+import utility.thread.ThreadOutput;
 
 public class CLGenHostWrapper {
 
-  public static void generateHostWrapper(Program prog, List<File> generatedFiles, File tempDir) {
+  public static void generateHostWrapper(Program prog, List<File> generatedFiles, File outputDir) {
     //==> .c wrapper file
-    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".c", tempDir);
+    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".c", outputDir);
     generatedFiles.add(fileToGenerate);
   
     if (GeneralOptions.getDebugLevel() > 0) {
       CompilerError.GLOBAL.raiseMessage("  ... generating file '"
           + fileToGenerate.getName() + "'");
     }
-    PrintStream ps=null;
-    try {
-      ps = new PrintStream(fileToGenerate);
-    } catch (FileNotFoundException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-    ResourceManager.registerStream(ps);
+    GeneratedFile generatedFile=new GeneratedFile(fileToGenerate);
     // Generate the program
-    CLGenHostWrapper.generateHostWrapperC(prog,ps);
-    // Close the file
-    try {
-      ResourceManager.closeStream(ps);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
+    CLGenHostWrapper.generateHostWrapperC(prog,generatedFile.getPrintStream());
+    // Write the file
+    generatedFile.write();
   
     //==> .h wrapper file
-    fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".h", tempDir);
+    fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".h", outputDir);
     generatedFiles.add(fileToGenerate);
   
     if (GeneralOptions.getDebugLevel() > 0) {
       CompilerError.GLOBAL.raiseMessage("  ... generating file '"
           + fileToGenerate.getName() + "'");
     }
-    ps=null;
-    try {
-      ps = new PrintStream(fileToGenerate);
-    } catch (FileNotFoundException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-    ResourceManager.registerStream(ps);
+    generatedFile=new GeneratedFile(fileToGenerate);
     // Generate the program
-    CLGenHostWrapper.generateHostWrapperH(prog,ps);
-    // Close the file
-    try {
-      ResourceManager.closeStream(ps);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
+    CLGenHostWrapper.generateHostWrapperH(prog,generatedFile.getPrintStream());
+    // Write the file
+    generatedFile.write();
   }
 
   static public void generateHostWrapperC(Program prog, PrintStream ps) {
@@ -113,6 +90,8 @@ public class CLGenHostWrapper {
     ps.println("//");
     ps.println("// ====================================================================");
     ps.println();
+    ps.println("#include <stdlib.h>");
+    ps.println("#include <string.h>");
     ps.println("#include <CL/cl.h>");
     ps.println("#include \"kg_ocl_runtime.h\"");
     
@@ -135,7 +114,7 @@ public class CLGenHostWrapper {
           emitter.declaration();
         } catch (RecognitionException e) {
           // TODO Auto-generated catch block
-          e.printStackTrace();
+          e.printStackTrace(ThreadOutput.err());
         }
         ps.println();
       }
@@ -144,10 +123,16 @@ public class CLGenHostWrapper {
   
     // Kernel functions
     for(Kernel k:prog.getKernelList()) {
+      TimeReport.Phase phase=TimeReport.start("host wrapper (.c)",k.getName());
       ps.println();
       CLGenHostWrapper.generateHostWrapperC(k, ps);
       ps.println();
+      TimeReport.stop(phase);
     }
+
+    // Kernel graph
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_Graph(prog, ps);
   }
 
   public static void generateHostWrapperCProgramInit(Program prog, PrintStream ps) {
@@ -169,17 +154,26 @@ public class CLGenHostWrapper {
     // Source  version
     ps.println("/**");
     ps.println(" * Read the source  program file, create an OpenCL program object,");
-    ps.println(" * build it and check if everything is fine.");
+    ps.println(" * build it and check if everything is fine. The binary is kept");
+    ps.println(" * in the program cache of the runtime, so that next executions");
+    ps.println(" * do not build the program again.");
     ps.println(" * This function exists in case of error.");
     ps.println("*/");
     ps.print("cl_program create");
     ps.print(prog.getName());
     ps.println("ProgramFromSource(cl_context context, cl_device_id device, char *options) {");
     ps.println("  char path[256];");
-    ps.print("  return oclCreateProgramFromSource(context,device,oclGetProgramPath(path, \"");
+    ps.print("  return oclCreateProgramFromSourceCached(context,device,oclGetProgramPath(path, \"");
     ps.print(prog.getName());
     ps.println(".cl\", 256), options);");
     ps.println("}");
+
+    if (isProfile()) {
+      generateProfilingQueueHeader(prog, ps);
+      ps.println(" {");
+      ps.println("  return oclCreateProfilingCommandQueue(context,device,outOfOrder);");
+      ps.println("}");
+    }
   }
 
   static public void generateHostWrapperH(Program prog, PrintStream ps) {
@@ -215,10 +209,16 @@ public class CLGenHostWrapper {
     
     // Kernel functions
     for(Kernel k:prog.getKernelList()) {
+      TimeReport.Phase phase=TimeReport.start("host wrapper (.h)",k.getName());
       ps.println();
       CLGenHostWrapper.generateHostWrapperH(k, ps);
       ps.println();
+      TimeReport.stop(phase);
     }
+
+    // Kernel graph
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_Graph(prog, ps);
   
     ps.println();
     ps.print("#endif"); 
@@ -238,12 +238,19 @@ public class CLGenHostWrapper {
     // Source  version
     ps.println("/**");
     ps.println(" * Read the source  program file, create an OpenCL program object,");
-    ps.println(" * build it and check if everything is fine.");
+    ps.println(" * build it and check if everything is fine. The binary is kept");
+    ps.println(" * in the program cache of the runtime, so that next executions");
+    ps.println(" * do not build the program again.");
     ps.println(" * This function exists in case of error.");
     ps.println("*/");
     ps.print("cl_program create");
     ps.print(prog.getName());
     ps.println("ProgramFromSource(cl_context context, cl_device_id device, char *options);");
+
+    if (isProfile()) {
+      generateProfilingQueueHeader(prog, ps);
+      ps.println(";");
+    }
   }
 
   public static void generateHostWrapperC(Kernel k, PrintStream ps) {
@@ -258,6 +265,24 @@ public class CLGenHostWrapper {
     CLGenHostWrapper.generateHostWrapperC_setKernelArgs(k, ps);
     ps.println();
     CLGenHostWrapper.generateHostWrapperC_run(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_Handle(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_setHandleArgs(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_runAsync(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_runPooled(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_runAsyncPooled(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperC_Stream(k, ps);
+    if (isAutoFit()) {
+      ps.println();
+      CLGenHostWrapper.generateHostWrapper_autoFitDefines(k, ps);
+      ps.println();
+      CLGenHostWrapper.generateHostWrapperC_runAuto(k, ps);
+    }
   }
 
   public static void generateHostWrapperC_CreateKernel(Kernel k, PrintStream ps) {
@@ -418,51 +443,119 @@ public class CLGenHostWrapper {
     ps.print(  "  oclCheckStatus(status,\"clWaitForEvent (");
     ps.print(k.getName());
     ps.println(") failed.\");");    
+    if (isProfile()) {
+      generateProfileKernel(k, ps);
+    }
   
     ps.println("  clReleaseEvent(event);");
     ps.println("}");
   }
 
-  public static void generateHostWrapperH(Kernel k, PrintStream ps) {
-    ps.println("// #########################################################");
-    ps.print(  "// Kernel '");
-    ps.println(k.getName());
-    ps.println("// #########################################################");
-    ps.println();
-    
-    CLGenHostWrapper.generateHostWrapperH_CreateKernel(k, ps);
-    ps.println();
-    CLGenHostWrapper.generateHostWrapperH_setKernelArgs(k, ps);
-    ps.println();
-    CLGenHostWrapper.generateHostWrapperH_run(k, ps);
+  //==================================================================
+  // Persistent kernel handle and asynchronous launch
+  //
+  // The handle keeps the kernel object alive between launches and
+  // caches the last values bound to each argument, so that
+  // clSetKernelArg is only called for arguments that changed
+  //==================================================================
+
+  static String getHandleTypeName(Kernel k) {
+    return k.getName()+"_handle";
   }
 
-  public static void generateHostWrapperH_CreateKernel(Kernel k, PrintStream ps) {
+  public static void generateHostWrapperC_Handle(Kernel k, PrintStream ps) {
+    String handleType=getHandleTypeName(k);
+
+    // Structure definition (opaque in the .h file)
+    ps.print("typedef struct ");
+    ps.print(handleType);
+    ps.println("_s {");
+    ps.println("  cl_kernel kernel;");
+    ps.println("  int argsSet;");
+    ps.println("  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", "+CLGenVarNames.getNbWGVarName(1)+
+        ", "+CLGenVarNames.getLocalSizeVarName(0)+";");
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print("  ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+      ps.println(";");
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print("  ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+      ps.println(";");
+    }
+    ps.print("} ");
+    ps.print(handleType);
+    ps.println(";");
+    ps.println();
+
+    // Creation
     ps.println("/*");
-    ps.print(" * Creates a '");
+    ps.print(" * Creates a persistent handle on a '");
     ps.print(k.getName());
     ps.println("' kernel.");
     ps.println(" * This function exits in case of error.");
     ps.println("*/");
-    ps.print("cl_kernel createKernel_");
+    ps.print(handleType);
+    ps.print(" *createHandle_");
     ps.print(k.getName());
-    ps.println("(cl_program program);");
+    ps.println("(cl_program program) {");
+    ps.print("  ");
+    ps.print(handleType);
+    ps.print(" *handle=(");
+    ps.print(handleType);
+    ps.print(" *)calloc(1,sizeof(");
+    ps.print(handleType);
+    ps.println("));");
+    ps.println("  if (handle==NULL) {");
+    ps.print(  "    oclCheckStatus(CL_OUT_OF_HOST_MEMORY,\"createHandle (");
+    ps.print(k.getName());
+    ps.println(") failed.\");");
+    ps.println("  }");
+    ps.print("  handle->kernel=createKernel_");
+    ps.print(k.getName());
+    ps.println("(program);");
+    ps.println("  return handle;");
+    ps.println("}");
+    ps.println();
+
+    // Release
+    ps.println("/*");
+    ps.print(" * Releases a '");
+    ps.print(k.getName());
+    ps.println("' kernel handle.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void releaseHandle_");
+    ps.print(k.getName());
+    ps.print("(");
+    ps.print(handleType);
+    ps.println(" *handle) {");
+    ps.println("  cl_int status = clReleaseKernel(handle->kernel);");
+    ps.print(  "  oclCheckStatus(status,\"clReleaseKernel (");
+    ps.print(k.getName());
+    ps.println(") failed.\");");
+    ps.println("  free(handle);");
+    ps.println("}");
   }
 
-  public static void generateHostWrapperH_setKernelArgs(Kernel k, PrintStream ps) {
+  public static void generateHostWrapperC_setHandleArgs(Kernel k, PrintStream ps) {
     ps.println("/*");
-    ps.println(" * Sets parameters to a kernel object");
+    ps.println(" * Sets parameters to the kernel object of a handle, only for");
+    ps.println(" * parameters whose value changed since the previous call.");
     ps.println(" * This function exists in case of error.");
     ps.println("*/");
-    ps.print("void setKernelArgs_");
+    ps.print("static void setHandleArgs_");
     ps.print(k.getName());
-    ps.print("(cl_kernel kernel");
-
-    ps.println(",  int "+CLGenVarNames.getNbWGVarName(0)+
+    ps.print("(");
+    ps.print(getHandleTypeName(k));
+    ps.print(" *handle");
+    ps.println(", int "+CLGenVarNames.getNbWGVarName(0)+
         ", int "+CLGenVarNames.getNbWGVarName(1)+
         ", int "+CLGenVarNames.getLocalSizeVarName(0));
-
-    // ============= Parameters ==============
     // Output first
     for(KernelData kd:k.getComputationalOutputList()) {
       ps.print(", ");
@@ -473,23 +566,72 @@ public class CLGenHostWrapper {
       ps.print(", ");
       CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
     }
-    ps.println(");");
+    ps.println(") {");
+    ps.println("  cl_int status;");
+    ps.println("  cl_kernel kernel=handle->kernel;");
+
+    // Local buffer sizes depend on the work-group geometry and on the
+    // values of scalar parameters
+    ps.print("  int resizeLocal=(!handle->argsSet)");
+    for(int i=0;i<2;i++) {
+      ps.print(" || (handle->"+CLGenVarNames.getNbWGVarName(i)+
+          "!="+CLGenVarNames.getNbWGVarName(i)+")");
+    }
+    ps.println(" || (handle->"+CLGenVarNames.getLocalSizeVarName(0)+
+        "!="+CLGenVarNames.getLocalSizeVarName(0)+");");
+    ps.println();
+
+    // ============= Set kernel parameters ==============
+    // Output first
+    int n=0;
+    for(KernelData kd:k.getComputationalOutputList()) {
+      CLGenHostWrapper.generateKernelWrapperParamCachedSetting(kd,n,"  ", ps);
+      n++;
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      CLGenHostWrapper.generateKernelWrapperParamCachedSetting(kd,n,"  ", ps);
+      n++;
+    }
+
+    // Then local variables
+    ps.println("  if (resizeLocal) {");
+    ps.println("    handle->"+CLGenVarNames.getNbWGVarName(0)+"="+CLGenVarNames.getNbWGVarName(0)+";");
+    ps.println("    handle->"+CLGenVarNames.getNbWGVarName(1)+"="+CLGenVarNames.getNbWGVarName(1)+";");
+    ps.println("    handle->"+CLGenVarNames.getLocalSizeVarName(0)+"="+CLGenVarNames.getLocalSizeVarName(0)+";");
+    // Compute WG slicing infos (dim 0 only)
+    CLGenKernel.generateWGSliceGeneralInfos(k,0,ps,"    ");
+    CLGenKernel.generateWGSliceDataInfos(k,0,ps,"    ");
+    for(KernelData kd:k.getComputationalDataList()) {
+      CLGenHostWrapper.generateKernelWrapperLocalParamSetting(kd,n,"    ", ps);
+      n++;
+    }
+    for(KernelData kd:k.getControlParameterList()) {
+      if (kd.shouldBeCached()) {
+        CLGenHostWrapper.generateKernelWrapperLocalParamSetting(kd,n,"    ", ps);
+        n++;
+      }
+    }
+    ps.println("  }");
+    ps.println("  handle->argsSet=1;");
+    ps.println("}");
   }
 
-  public static void generateHostWrapperH_run(Kernel k, PrintStream ps) {
+  public static void generateHostWrapperC_runAsync(Kernel k, PrintStream ps) {
     ps.println("/*");
-    ps.println(" * Sets parameters to a kernel object");
+    ps.println(" * Enqueues the kernel of a handle after the events of the wait list");
+    ps.println(" * and returns the event of the kernel execution without waiting for it.");
+    ps.println(" * The caller is responsible for releasing the returned event.");
     ps.println(" * This function exists in case of error.");
     ps.println("*/");
-    ps.print("void run_");
+    ps.print("cl_event run_");
     ps.print(k.getName());
-    ps.println("(cl_command_queue commandQueue, cl_program program");     
-    ps.println(", int "+CLGenVarNames.getNbWGVarName(0)+
+    ps.print("_async(cl_command_queue commandQueue, ");
+    ps.print(getHandleTypeName(k));
+    ps.println(" *handle,");
+    ps.println("  int "+CLGenVarNames.getNbWGVarName(0)+
         ", int "+CLGenVarNames.getNbWGVarName(1)+
         ", int "+CLGenVarNames.getLocalSizeVarName(0));
-    ps.print("  ");
- 
-    // ============= Parameters ==============
     // Output first
     for(KernelData kd:k.getComputationalOutputList()) {
       ps.print(", ");
@@ -500,68 +642,1212 @@ public class CLGenHostWrapper {
       ps.print(", ");
       CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
     }
+    ps.println(",");
+    ps.println("  cl_uint num_events_in_wait_list, const cl_event *event_wait_list) {");
+    ps.println("  cl_int status;");
+
+    // Set arguments
+    ps.print("  setHandleArgs_");
+    ps.print(k.getName());
+    ps.print("(handle");
+    ps.println(","+CLGenVarNames.getNbWGVarName(0));
+    ps.println(","+CLGenVarNames.getNbWGVarName(1));
+    ps.println(","+CLGenVarNames.getLocalSizeVarName(0));
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
     ps.println(");");
+
+    // Call
+    ps.println("  size_t globalThreads[2] = {"+
+    CLGenVarNames.getLocalSizeVarName(0)+"*"+CLGenVarNames.getNbWGVarName(0)+
+    ","+CLGenVarNames.getNbWGVarName(1)+"};");
+    ps.println("  size_t localThreads[2]  = {"+CLGenVarNames.getLocalSizeVarName(0)+", 1};");
+    ps.println("  cl_event event;");
+    ps.println("  status = clEnqueueNDRangeKernel(");
+    ps.println("    commandQueue,");
+    ps.println("    handle->kernel,");
+    ps.println("    2,NULL,globalThreads,localThreads,");
+    ps.println("    num_events_in_wait_list,event_wait_list, &event);");
+    ps.print(  "  oclCheckStatus(status,\"clEnqueueNDRangeKernel (");
+    ps.print(k.getName());
+    ps.println(") failed.\");");
+    if (isProfile()) {
+      generateProfileKernel(k, ps);
+    }
+    ps.println("  return event;");
+    ps.println("}");
   }
 
-  static public void generateKernelWrapperLocalParamSetting(KernelData kd, int n, String prefix, PrintStream ps) {
-    ps.print(prefix);
-    ps.print("status = clSetKernelArg(kernel,");
-    ps.print(n);
-    ps.print(",");
-  
-    if (kd.isIterative()) {
-      int slot=kd.getCodegenDataPattern().getNbBufferSlot();
-      // Size in bytes
-      ps.print("sizeof(");
-      CLGenKernelData.generateBaseCType(kd,ps);
-      ps.print(")");
-      ps.print("*");
-      if (slot!=1) {
-        ps.print(slot);
-        ps.print("*");
-      }
-      CLGenVarNames.generateFullSliceSizePixUnit(kd,0,ps);
-      //kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+  //==================================================================
+  // Launch on pooled buffers
+  //
+  // Variants of the launch functions taking buffers acquired from a
+  // buffer pool of the runtime instead of cl_mem objects
+  //==================================================================
+
+  static void generateHostWrapperPooledRunHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Runs the kernel on buffers acquired from a buffer pool");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("void run_");
+    ps.print(k.getName());
+    ps.println("_pooled(cl_command_queue commandQueue, cl_program program,");
+    ps.print("  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    generateKernelWrapperPooledParamDeclarationList(k, ps);
+    ps.print(")");
+  }
+
+  static void generateHostWrapperAsyncPooledRunHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Enqueues the kernel of a handle on buffers acquired from a buffer");
+    ps.println(" * pool, after the events of the wait list, and returns the event of");
+    ps.println(" * the kernel execution without waiting for it.");
+    ps.println(" * The caller is responsible for releasing the returned event, and");
+    ps.println(" * for returning the buffers to their pool with this event (or the");
+    ps.println(" * event of a later command using them).");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("cl_event run_");
+    ps.print(k.getName());
+    ps.print("_async_pooled(cl_command_queue commandQueue, ");
+    ps.print(getHandleTypeName(k));
+    ps.println(" *handle,");
+    ps.print("  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    generateKernelWrapperPooledParamDeclarationList(k, ps);
+    ps.println(",");
+    ps.print("  cl_uint num_events_in_wait_list, const cl_event *event_wait_list)");
+  }
+
+  public static void generateHostWrapperH_runPooled(Kernel k, PrintStream ps) {
+    generateHostWrapperPooledRunHeader(k, ps);
+    ps.println(";");
+  }
+
+  public static void generateHostWrapperH_runAsyncPooled(Kernel k, PrintStream ps) {
+    generateHostWrapperAsyncPooledRunHeader(k, ps);
+    ps.println(";");
+  }
+
+  public static void generateHostWrapperC_runPooled(Kernel k, PrintStream ps) {
+    generateHostWrapperPooledRunHeader(k, ps);
+    ps.println(" {");
+    ps.print("  run_");
+    ps.print(k.getName());
+    ps.print("(commandQueue, program, "+CLGenVarNames.getNbWGVarName(0)+
+        ", "+CLGenVarNames.getNbWGVarName(1)+
+        ", "+CLGenVarNames.getLocalSizeVarName(0));
+    generateKernelWrapperPooledArgList(k, ps);
+    ps.println(");");
+    ps.println("}");
+  }
+
+  public static void generateHostWrapperC_runAsyncPooled(Kernel k, PrintStream ps) {
+    generateHostWrapperAsyncPooledRunHeader(k, ps);
+    ps.println(" {");
+    ps.print("  return run_");
+    ps.print(k.getName());
+    ps.print("_async(commandQueue, handle, "+CLGenVarNames.getNbWGVarName(0)+
+        ", "+CLGenVarNames.getNbWGVarName(1)+
+        ", "+CLGenVarNames.getLocalSizeVarName(0));
+    generateKernelWrapperPooledArgList(k, ps);
+    ps.println(",");
+    ps.println("    num_events_in_wait_list, event_wait_list);");
+    ps.println("}");
+  }
+
+  static void generateKernelWrapperPooledParamDeclarationList(Kernel k, PrintStream ps) {
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperPooledParamDeclaration(kd, ps);
     }
-    else {
-      ps.print(prefix);
-      kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperPooledParamDeclaration(kd, ps);
     }
-  
-    // NULL pointer since local buffer
-    ps.println(",(void *)NULL);");
-    // Check
-    ps.print(prefix);
-    ps.print("oclCheckStatus(status,\"clSetKernelArg (local ");
-    ps.print(kd.getName());
-    ps.println(") failed.\");");
   }
 
-  static public void generateKernelWrapperParamSetting(KernelData kd, int n, String prefix, PrintStream ps) {
-    ps.print(prefix);
-    ps.print("status = clSetKernelArg(kernel,");
-    ps.print(n);
-    ps.print(",");
-  
+  static void generateKernelWrapperPooledArgList(Kernel k, PrintStream ps) {
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperPooledArg(kd, ps);
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperPooledArg(kd, ps);
+    }
+  }
+
+  static void generateKernelWrapperPooledParamDeclaration(KernelData kd, PrintStream ps) {
     if (kd.shouldBeCached()) {
-      // It will be passed as a buffer
-      ps.print("sizeof(cl_mem)");
+      ps.print("oclPooledBuffer *");
+      ps.print(kd.getName());
     }
     else {
-      // It will be passed by value
-      ps.print("sizeof(");
-      CLGenKernelData.generateBaseCType(kd,ps);
-      ps.print(")");
+      generateKernelWrapperParamDeclaration(kd, ps);
     }
-  
-    ps.print(",");    
-    ps.print("(void *)&");
-    ps.print(kd.getName());
-    ps.println(");");
-    ps.print(prefix);
-    ps.print("oclCheckStatus(status,\"clSetKernelArg (");
+  }
+
+  static void generateKernelWrapperPooledArg(KernelData kd, PrintStream ps) {
     ps.print(kd.getName());
-    ps.println(") failed.\");");
+    if (kd.shouldBeCached()) {
+      ps.print("->mem");
+    }
+  }
+
+  //==================================================================
+  // Streaming
+  //
+  // A stream keeps a ring of frames in flight, each with its own
+  // buffers taken from a buffer pool. Pushing a frame enqueues the
+  // upload of its inputs, the kernel and the download of its outputs,
+  // chained by events, and returns without waiting. Frames are popped
+  // in push order, once their outputs are downloaded. On an out-of-order
+  // command queue, the transfers and the kernel executions of different
+  // frames overlap
+  //==================================================================
+
+  static String getStreamTypeName(Kernel k) {
+    return k.getName()+"_stream";
+  }
+
+  // Number of outputs passed as buffers
+  static int getNbStreamOutputs(Kernel k) {
+    int n=0;
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  // Number of inputs passed as buffers
+  static int getNbStreamInputs(Kernel k) {
+    int n=0;
+    for(KernelData kd:k.getParameterList()) {
+      if (kd.shouldBeCached()) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  static void generateStreamCreateHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Creates a stream of '");
+    ps.print(k.getName());
+    ps.println("' kernel executions, with at most");
+    ps.println(" * 'nbFrames' frames in flight.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print(getStreamTypeName(k));
+    ps.print(" *createStream_");
+    ps.print(k.getName());
+    ps.print("(cl_context context, cl_command_queue commandQueue, cl_program program, int nbFrames)");
+  }
+
+  static void generateStreamReleaseHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Releases a '");
+    ps.print(k.getName());
+    ps.println("' stream, after waiting for the frames in flight.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void releaseStream_");
+    ps.print(k.getName());
+    ps.print("(");
+    ps.print(getStreamTypeName(k));
+    ps.print(" *stream)");
+  }
+
+  static void generateStreamPushHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Enqueues a frame: the upload of its inputs, the kernel execution");
+    ps.println(" * and the download of its outputs. Host data of the frame must stay");
+    ps.println(" * valid until it is popped. Returns 0 without enqueuing anything when");
+    ps.println(" * the stream is full, a frame must then be popped first.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("int stream_");
+    ps.print(k.getName());
+    ps.print("_push(");
+    ps.print(getStreamTypeName(k));
+    ps.println(" *stream,");
+    ps.print("  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      if (kd.shouldBeCached()) {
+        ps.print("void *");
+        ps.print(kd.getName());
+      }
+      else {
+        generateKernelWrapperParamDeclaration(kd, ps);
+      }
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      if (kd.shouldBeCached()) {
+        ps.print("const void *");
+        ps.print(kd.getName());
+      }
+      else {
+        generateKernelWrapperParamDeclaration(kd, ps);
+      }
+    }
+    ps.println(",");
+    ps.print("  void *userData)");
+  }
+
+  static void generateStreamPopHeader(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Waits for the oldest frame in flight and sets 'userData' (if not");
+    ps.println(" * NULL) to the value given when it was pushed. Returns 0 if there is");
+    ps.println(" * no frame in flight.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("int stream_");
+    ps.print(k.getName());
+    ps.print("_pop(");
+    ps.print(getStreamTypeName(k));
+    ps.print(" *stream, void **userData)");
+  }
+
+  public static void generateHostWrapperH_Stream(Kernel k, PrintStream ps) {
+    String streamType=getStreamTypeName(k);
+
+    ps.println("/*");
+    ps.print(" * Stream of '");
+    ps.print(k.getName());
+    ps.println("' kernel executions");
+    ps.println("*/");
+    ps.print("typedef struct ");
+    ps.print(streamType);
+    ps.print("_s ");
+    ps.print(streamType);
+    ps.println(";");
+    ps.println();
+    generateStreamCreateHeader(k, ps);
+    ps.println(";");
+    ps.println();
+    generateStreamReleaseHeader(k, ps);
+    ps.println(";");
+    ps.println();
+    generateStreamPushHeader(k, ps);
+    ps.println(";");
+    ps.println();
+    generateStreamPopHeader(k, ps);
+    ps.println(";");
+  }
+
+  public static void generateHostWrapperC_Stream(Kernel k, PrintStream ps) {
+    String streamType=getStreamTypeName(k);
+    String slotType=streamType+"_slot";
+    int nbOutputs=getNbStreamOutputs(k);
+    int nbInputs=getNbStreamInputs(k);
+
+    // Structure definitions (opaque in the .h file)
+    ps.print("typedef struct ");
+    ps.print(slotType);
+    ps.println("_s {");
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        ps.println("  oclPooledBuffer *"+kd.getName()+";");
+      }
+    }
+    for(KernelData kd:k.getParameterList()) {
+      if (kd.shouldBeCached()) {
+        ps.println("  oclPooledBuffer *"+kd.getName()+";");
+      }
+    }
+    // Completion of the downloads of outputs
+    ps.println("  cl_event events["+Math.max(nbOutputs,1)+"];");
+    ps.println("  void *userData;");
+    ps.print("} ");
+    ps.print(slotType);
+    ps.println(";");
+    ps.println();
+    ps.print("typedef struct ");
+    ps.print(streamType);
+    ps.println("_s {");
+    ps.println("  cl_command_queue commandQueue;");
+    ps.print("  ");
+    ps.print(getHandleTypeName(k));
+    ps.println(" *handle;");
+    ps.println("  oclBufferPool *pool;");
+    ps.println("  int nbSlots;");
+    ps.println("  // Ring of frames in flight");
+    ps.println("  int first;");
+    ps.println("  int nbInFlight;");
+    ps.print("  ");
+    ps.print(slotType);
+    ps.println(" *slots;");
+    ps.print("} ");
+    ps.print(streamType);
+    ps.println(";");
+    ps.println();
+
+    // Creation
+    generateStreamCreateHeader(k, ps);
+    ps.println(" {");
+    ps.print("  ");
+    ps.print(streamType);
+    ps.print(" *stream=(");
+    ps.print(streamType);
+    ps.print(" *)calloc(1,sizeof(");
+    ps.print(streamType);
+    ps.println("));");
+    ps.println("  if (nbFrames<1) {");
+    ps.println("    nbFrames=1;");
+    ps.println("  }");
+    ps.println("  if (stream!=NULL) {");
+    ps.print("    stream->slots=(");
+    ps.print(slotType);
+    ps.print(" *)calloc(nbFrames,sizeof(");
+    ps.print(slotType);
+    ps.println("));");
+    ps.println("  }");
+    ps.println("  if ((stream==NULL) || (stream->slots==NULL)) {");
+    ps.print(  "    oclCheckStatus(CL_OUT_OF_HOST_MEMORY,\"createStream (");
+    ps.print(k.getName());
+    ps.println(") failed.\");");
+    ps.println("  }");
+    ps.println("  stream->commandQueue=commandQueue;");
+    ps.print("  stream->handle=createHandle_");
+    ps.print(k.getName());
+    ps.println("(program);");
+    ps.println("  stream->pool=oclCreateBufferPool(context,commandQueue,0);");
+    ps.println("  stream->nbSlots=nbFrames;");
+    ps.println("  return stream;");
+    ps.println("}");
+    ps.println();
+
+    // Push
+    generateStreamPushHeader(k, ps);
+    ps.println(" {");
+    ps.println("  cl_int status;");
+    ps.println("  if (stream->nbInFlight==stream->nbSlots) {");
+    ps.println("    return 0;");
+    ps.println("  }");
+    ps.print("  ");
+    ps.print(slotType);
+    ps.println(" *slot=&stream->slots[(stream->first+stream->nbInFlight)%stream->nbSlots];");
+    ps.println("  slot->userData=userData;");
+    // Upload of inputs
+    if (nbInputs!=0) {
+      ps.println("  cl_event uploadEvents["+nbInputs+"];");
+    }
+    int n=0;
+    for(KernelData kd:k.getParameterList()) {
+      if (kd.shouldBeCached()) {
+        ps.print("  slot->"+kd.getName()+"=oclAcquireBuffer(stream->pool,CL_MEM_READ_ONLY,");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        ps.println(");");
+        ps.print("  status = clEnqueueWriteBuffer(stream->commandQueue,slot->"+kd.getName()+"->mem,CL_FALSE,0,");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        ps.println(","+kd.getName()+",0,NULL,&uploadEvents["+n+"]);");
+        ps.print(  "  oclCheckStatus(status,\"clEnqueueWriteBuffer (");
+        ps.print(kd.getName());
+        ps.println(") failed.\");");
+        n++;
+      }
+    }
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        ps.print("  slot->"+kd.getName()+"=oclAcquireBuffer(stream->pool,CL_MEM_WRITE_ONLY,");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        ps.println(");");
+      }
+    }
+
+    // Kernel execution, after the uploads
+    ps.print("  cl_event kernelEvent=run_");
+    ps.print(k.getName());
+    ps.print("_async(stream->commandQueue, stream->handle, "+CLGenVarNames.getNbWGVarName(0)+
+        ", "+CLGenVarNames.getNbWGVarName(1)+
+        ", "+CLGenVarNames.getLocalSizeVarName(0));
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      ps.print(kd.shouldBeCached()?"slot->"+kd.getName()+"->mem":kd.getName());
+    }
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      ps.print(kd.shouldBeCached()?"slot->"+kd.getName()+"->mem":kd.getName());
+    }
+    ps.println(",");
+    if (nbInputs!=0) {
+      ps.println("    "+nbInputs+", uploadEvents);");
+      for(int i=0;i<nbInputs;i++) {
+        ps.println("  clReleaseEvent(uploadEvents["+i+"]);");
+      }
+    }
+    else {
+      ps.println("    0, NULL);");
+    }
+
+    // Download of outputs, after the kernel execution
+    n=0;
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        ps.print("  status = clEnqueueReadBuffer(stream->commandQueue,slot->"+kd.getName()+"->mem,CL_FALSE,0,");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        ps.println(","+kd.getName()+",1,&kernelEvent,&slot->events["+n+"]);");
+        ps.print(  "  oclCheckStatus(status,\"clEnqueueReadBuffer (");
+        ps.print(kd.getName());
+        ps.println(") failed.\");");
+        n++;
+      }
+    }
+    if (nbOutputs==0) {
+      ps.println("  slot->events[0]=kernelEvent;");
+    }
+    else {
+      ps.println("  clReleaseEvent(kernelEvent);");
+    }
+    ps.println("  status = clFlush(stream->commandQueue);");
+    ps.println("  oclCheckStatus(status,\"clFlush failed.\");");
+    ps.println("  stream->nbInFlight++;");
+    ps.println("  return 1;");
+    ps.println("}");
+    ps.println();
+
+    // Pop
+    int nbEvents=Math.max(nbOutputs,1);
+    generateStreamPopHeader(k, ps);
+    ps.println(" {");
+    ps.println("  cl_int status;");
+    ps.println("  int i;");
+    ps.println("  if (stream->nbInFlight==0) {");
+    ps.println("    return 0;");
+    ps.println("  }");
+    ps.print("  ");
+    ps.print(slotType);
+    ps.println(" *slot=&stream->slots[stream->first];");
+    ps.println("  status = clWaitForEvents("+nbEvents+", slot->events);");
+    ps.print(  "  oclCheckStatus(status,\"clWaitForEvent (");
+    ps.print(k.getName());
+    ps.println(") failed.\");");
+    ps.println("  for(i=0;i<"+nbEvents+";i++) {");
+    ps.println("    clReleaseEvent(slot->events[i]);");
+    ps.println("  }");
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        ps.println("  oclReleasePooledBuffer(stream->pool,slot->"+kd.getName()+",NULL);");
+      }
+    }
+    for(KernelData kd:k.getParameterList()) {
+      if (kd.shouldBeCached()) {
+        ps.println("  oclReleasePooledBuffer(stream->pool,slot->"+kd.getName()+",NULL);");
+      }
+    }
+    ps.println("  if (userData!=NULL) {");
+    ps.println("    *userData=slot->userData;");
+    ps.println("  }");
+    ps.println("  stream->first=(stream->first+1)%stream->nbSlots;");
+    ps.println("  stream->nbInFlight--;");
+    ps.println("  return 1;");
+    ps.println("}");
+    ps.println();
+
+    // Release
+    generateStreamReleaseHeader(k, ps);
+    ps.println(" {");
+    ps.print("  while (stream_");
+    ps.print(k.getName());
+    ps.println("_pop(stream,NULL));");
+    ps.print("  releaseHandle_");
+    ps.print(k.getName());
+    ps.println("(stream->handle);");
+    ps.println("  oclReleaseBufferPool(stream->pool);");
+    ps.println("  free(stream->slots);");
+    ps.println("  free(stream);");
+    ps.println("}");
+  }
+
+  //==================================================================
+  // Kernel graph
+  //
+  // The graph of a program enqueues kernels of the program in a command
+  // queue, each kernel waiting for the kernels of the graph it depends
+  // on. Dependencies follow the buffers passed to the kernels, the
+  // dataflow between kernels being declared by passing the output
+  // buffer of a kernel as input of another. Intermediate buffers stay
+  // on the device and independent kernels run concurrently on an
+  // out-of-order command queue
+  //==================================================================
+
+  static String getGraphTypeName(Program prog) {
+    return prog.getName()+"_graph";
+  }
+
+  static void generateGraphCreateHeader(Program prog, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Creates a graph of the kernels of the '");
+    ps.print(prog.getName());
+    ps.println("' program, enqueued");
+    ps.println(" * in a command queue.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print(getGraphTypeName(prog));
+    ps.print(" *createGraph_");
+    ps.print(prog.getName());
+    ps.print("(cl_command_queue commandQueue, cl_program program)");
+  }
+
+  static void generateGraphReleaseHeader(Program prog, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Releases a '");
+    ps.print(prog.getName());
+    ps.println("' graph, after waiting for its kernels.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void releaseGraph_");
+    ps.print(prog.getName());
+    ps.print("(");
+    ps.print(getGraphTypeName(prog));
+    ps.print(" *graph)");
+  }
+
+  static void generateGraphFinishHeader(Program prog, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Waits for the kernels enqueued in a graph and releases their");
+    ps.println(" * events. The graph can then be used again.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void finishGraph_");
+    ps.print(prog.getName());
+    ps.print("(");
+    ps.print(getGraphTypeName(prog));
+    ps.print(" *graph)");
+  }
+
+  static void generateGraphKernelHeader(Program prog, Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Enqueues the '");
+    ps.print(k.getName());
+    ps.println("' kernel in a graph, after the kernels of the graph");
+    ps.println(" * writing its input buffers, or reading or writing its output buffers.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void graph_");
+    ps.print(prog.getName());
+    ps.print("_");
+    ps.print(k.getName());
+    ps.print("(");
+    ps.print(getGraphTypeName(prog));
+    ps.println(" *graph,");
+    ps.print("  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    generateKernelWrapperParamDeclarationList(k, ps);
+    ps.print(")");
+  }
+
+  public static void generateHostWrapperH_Graph(Program prog, PrintStream ps) {
+    String graphType=getGraphTypeName(prog);
+
+    ps.println("// #########################################################");
+    ps.print(  "// Kernel graph of program '");
+    ps.println(prog.getName());
+    ps.println("// #########################################################");
+    ps.println();
+    ps.println("/*");
+    ps.print(" * Graph of the kernels of the '");
+    ps.print(prog.getName());
+    ps.println("' program");
+    ps.println("*/");
+    ps.print("typedef struct ");
+    ps.print(graphType);
+    ps.print("_s ");
+    ps.print(graphType);
+    ps.println(";");
+    ps.println();
+    generateGraphCreateHeader(prog, ps);
+    ps.println(";");
+    ps.println();
+    generateGraphReleaseHeader(prog, ps);
+    ps.println(";");
+    for(Kernel k:prog.getKernelList()) {
+      ps.println();
+      generateGraphKernelHeader(prog, k, ps);
+      ps.println(";");
+    }
+    ps.println();
+    generateGraphFinishHeader(prog, ps);
+    ps.println(";");
+  }
+
+  public static void generateHostWrapperC_Graph(Program prog, PrintStream ps) {
+    String graphType=getGraphTypeName(prog);
+
+    ps.println("// #########################################################");
+    ps.print(  "// Kernel graph of program '");
+    ps.println(prog.getName());
+    ps.println("// #########################################################");
+    ps.println();
+
+    // Structure definition (opaque in the .h file)
+    ps.print("typedef struct ");
+    ps.print(graphType);
+    ps.println("_s {");
+    ps.println("  cl_command_queue commandQueue;");
+    ps.println("  oclGraph *graph;");
+    for(Kernel k:prog.getKernelList()) {
+      ps.print("  ");
+      ps.print(getHandleTypeName(k));
+      ps.print(" *handle_");
+      ps.print(k.getName());
+      ps.println(";");
+    }
+    ps.print("} ");
+    ps.print(graphType);
+    ps.println(";");
+    ps.println();
+
+    // Creation
+    generateGraphCreateHeader(prog, ps);
+    ps.println(" {");
+    ps.print("  ");
+    ps.print(graphType);
+    ps.print(" *graph=(");
+    ps.print(graphType);
+    ps.print(" *)calloc(1,sizeof(");
+    ps.print(graphType);
+    ps.println("));");
+    ps.println("  if (graph==NULL) {");
+    ps.print(  "    oclCheckStatus(CL_OUT_OF_HOST_MEMORY,\"createGraph (");
+    ps.print(prog.getName());
+    ps.println(") failed.\");");
+    ps.println("  }");
+    ps.println("  graph->commandQueue=commandQueue;");
+    ps.println("  graph->graph=oclCreateGraph();");
+    for(Kernel k:prog.getKernelList()) {
+      ps.print("  graph->handle_");
+      ps.print(k.getName());
+      ps.print("=createHandle_");
+      ps.print(k.getName());
+      ps.println("(program);");
+    }
+    ps.println("  return graph;");
+    ps.println("}");
+    ps.println();
+
+    // Release
+    generateGraphReleaseHeader(prog, ps);
+    ps.println(" {");
+    ps.println("  oclReleaseGraph(graph->graph);");
+    for(Kernel k:prog.getKernelList()) {
+      ps.print("  releaseHandle_");
+      ps.print(k.getName());
+      ps.print("(graph->handle_");
+      ps.print(k.getName());
+      ps.println(");");
+    }
+    ps.println("  free(graph);");
+    ps.println("}");
+
+    // Kernels
+    for(Kernel k:prog.getKernelList()) {
+      ps.println();
+      generateHostWrapperC_GraphKernel(prog, k, ps);
+    }
+    ps.println();
+
+    // Completion
+    generateGraphFinishHeader(prog, ps);
+    ps.println(" {");
+    ps.println("  oclFinishGraph(graph->graph);");
+    ps.println("}");
+  }
+
+  static void generateHostWrapperC_GraphKernel(Program prog, Kernel k, PrintStream ps) {
+    int nbOutputs=getNbStreamOutputs(k);
+    int nbInputs=getNbStreamInputs(k);
+
+    generateGraphKernelHeader(prog, k, ps);
+    ps.println(" {");
+
+    // Buffers read and written by the kernel
+    if (nbInputs!=0) {
+      ps.print("  cl_mem graphInputs["+nbInputs+"]={");
+      String sep="";
+      for(KernelData kd:k.getParameterList()) {
+        if (kd.shouldBeCached()) {
+          ps.print(sep+kd.getName());
+          sep=", ";
+        }
+      }
+      ps.println("};");
+    }
+    if (nbOutputs!=0) {
+      ps.print("  cl_mem graphOutputs["+nbOutputs+"]={");
+      String sep="";
+      for(KernelData kd:k.getComputationalOutputList()) {
+        if (kd.shouldBeCached()) {
+          ps.print(sep+kd.getName());
+          sep=", ";
+        }
+      }
+      ps.println("};");
+    }
+    String buffers=nbInputs+", "+((nbInputs!=0)?"graphInputs":"NULL")+", "+
+        nbOutputs+", "+((nbOutputs!=0)?"graphOutputs":"NULL");
+
+    ps.println("  const cl_event *waitList;");
+    ps.println("  cl_uint nbWaitEvents=oclGetGraphWaitList(graph->graph, "+buffers+", &waitList);");
+    ps.print("  cl_event event=run_");
+    ps.print(k.getName());
+    ps.print("_async(graph->commandQueue, graph->handle_");
+    ps.print(k.getName());
+    ps.print(", "+CLGenVarNames.getNbWGVarName(0)+
+        ", "+CLGenVarNames.getNbWGVarName(1)+
+        ", "+CLGenVarNames.getLocalSizeVarName(0));
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
+    ps.println(",");
+    ps.println("    nbWaitEvents, waitList);");
+    ps.println("  oclAddGraphCommand(graph->graph, event, "+buffers+");");
+    ps.println("}");
+  }
+
+  //==================================================================
+  // Kernel profiling
+  //
+  // Each kernel execution is recorded by the runtime with the size of
+  // the buffers it processes. Times are available for kernels enqueued
+  // in a command queue with profiling enabled
+  //==================================================================
+
+  static boolean isProfile() {
+    return CodegenOptions.getProfile();
+  }
+
+  static void generateProfilingQueueHeader(Program prog, PrintStream ps) {
+    ps.println("/**");
+    ps.println(" * Create a command queue with profiling enabled, in which the");
+    ps.println(" * execution time of kernels is recorded (out-of-order if");
+    ps.println(" * 'outOfOrder' is not 0).");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("cl_command_queue create");
+    ps.print(prog.getName());
+    ps.print("CommandQueue(cl_context context, cl_device_id device, int outOfOrder)");
+  }
+
+  static void generateProfileKernel(Kernel k, PrintStream ps) {
+    ps.print("  oclProfileKernel(\"");
+    ps.print(k.getName());
+    ps.print("\", event, ");
+    // Size of the buffers processed by the kernel
+    String sep="";
+    for(KernelData kd:k.getComputationalOutputList()) {
+      if (kd.shouldBeCached()) {
+        ps.print(sep+"(cl_ulong)");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        sep="+";
+      }
+    }
+    for(KernelData kd:k.getParameterList()) {
+      if (kd.shouldBeCached()) {
+        ps.print(sep+"(cl_ulong)");
+        kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+        sep="+";
+      }
+    }
+    if (sep.length()==0) {
+      ps.print("0");
+    }
+    ps.println(");");
+  }
+
+  //==================================================================
+  // NDRange chosen at compile time
+  //
+  // The work-group slice width in dim 0 is bounded so that the local
+  // buffers of the kernel fit in the local memory of the target compute
+  // unit. The number of work-groups in dim 0 is deduced at run time
+  // from the image width, remaining target work-groups go to dim 1
+  //==================================================================
+
+  static boolean isAutoFit() {
+    return CodegenOptions.getAutoFit() && CodegenOptions.isImageKernelMode();
+  }
+
+  static String getAutoFitDefineName(Kernel k, String suffix) {
+    return "KG_"+k.getName().toUpperCase()+"_"+suffix;
+  }
+
+  public static void generateHostWrapper_autoFitDefines(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * NDRange fitting the target local memory for the '");
+    ps.print(k.getName());
+    ps.println("' kernel");
+    ps.println(" * (slice width in grains, 0 if not bounded)");
+    ps.println("*/");
+    ps.print("#define ");
+    ps.print(getAutoFitDefineName(k,"SLICE_WIDTH"));
+    ps.print(" ");
+    ps.println(k.getAutoFitSliceWidth());
+    ps.print("#define ");
+    ps.print(getAutoFitDefineName(k,"NBWI"));
+    ps.print(" ");
+    ps.println(k.getAutoFitNbWI());
+    ps.print("#define ");
+    ps.print(getAutoFitDefineName(k,"NBWG"));
+    ps.print(" ");
+    ps.println(k.getAutoFitNbWG());
+  }
+
+  public static void generateHostWrapperH_runAuto(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Runs the kernel with the NDRange fitting the target local memory");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("void run_");
+    ps.print(k.getName());
+    ps.print("_auto(cl_command_queue commandQueue, cl_program program");
+    generateKernelWrapperParamDeclarationList(k, ps);
+    ps.println(");");
+  }
+
+  public static void generateHostWrapperC_runAuto(Kernel k, PrintStream ps) {
+    String sliceWidth=getAutoFitDefineName(k,"SLICE_WIDTH");
+    String nbWG0=CLGenVarNames.getNbWGVarName(0);
+    String nbWG1=CLGenVarNames.getNbWGVarName(1);
+
+    ps.println("/*");
+    ps.println(" * Runs the kernel with the NDRange fitting the target local memory");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("void run_");
+    ps.print(k.getName());
+    ps.print("_auto(cl_command_queue commandQueue, cl_program program");
+    generateKernelWrapperParamDeclarationList(k, ps);
+    ps.println(") {");
+
+    // Work-groups in dim 0 so that slices are not wider than the bound
+    CLGenKernel.generateNbGrainsDeclaration(k,0,ps,"  ");
+    ps.println("  int "+nbWG0+"=1;");
+    ps.println("  int "+nbWG1+"=1;");
+    ps.println("  if ("+sliceWidth+">0) {");
+    ps.print("    "+nbWG0+"=(");
+    CLGenVarNames.generateNbGrains(0,ps);
+    ps.println("+"+sliceWidth+"-1)/"+sliceWidth+";");
+    ps.println("  }");
+    // Remaining target work-groups in dim 1
+    ps.println("  if ("+getAutoFitDefineName(k,"NBWG")+">"+nbWG0+") {");
+    ps.println("    "+nbWG1+"="+getAutoFitDefineName(k,"NBWG")+"/"+nbWG0+";");
+    ps.println("  }");
+
+    // Call
+    ps.print("  run_");
+    ps.print(k.getName());
+    ps.print("(commandQueue, program, "+nbWG0+", "+nbWG1+", ");
+    ps.print(getAutoFitDefineName(k,"NBWI"));
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      ps.print(kd.getName());
+    }
+    ps.println(");");
+    ps.println("}");
+  }
+
+  static void generateKernelWrapperParamDeclarationList(Kernel k, PrintStream ps) {
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+  }
+
+  public static void generateHostWrapperH(Kernel k, PrintStream ps) {
+    ps.println("// #########################################################");
+    ps.print(  "// Kernel '");
+    ps.println(k.getName());
+    ps.println("// #########################################################");
+    ps.println();
+    
+    CLGenHostWrapper.generateHostWrapperH_CreateKernel(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_setKernelArgs(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_run(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_Handle(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_runAsync(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_runPooled(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_runAsyncPooled(k, ps);
+    ps.println();
+    CLGenHostWrapper.generateHostWrapperH_Stream(k, ps);
+    if (isAutoFit()) {
+      ps.println();
+      CLGenHostWrapper.generateHostWrapper_autoFitDefines(k, ps);
+      ps.println();
+      CLGenHostWrapper.generateHostWrapperH_runAuto(k, ps);
+    }
+  }
+
+  public static void generateHostWrapperH_CreateKernel(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.print(" * Creates a '");
+    ps.print(k.getName());
+    ps.println("' kernel.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("cl_kernel createKernel_");
+    ps.print(k.getName());
+    ps.println("(cl_program program);");
+  }
+
+  public static void generateHostWrapperH_setKernelArgs(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Sets parameters to a kernel object");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("void setKernelArgs_");
+    ps.print(k.getName());
+    ps.print("(cl_kernel kernel");
+
+    ps.println(",  int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+
+    // ============= Parameters ==============
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    ps.println(");");
+  }
+
+  public static void generateHostWrapperH_run(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Sets parameters to a kernel object");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("void run_");
+    ps.print(k.getName());
+    ps.println("(cl_command_queue commandQueue, cl_program program");     
+    ps.println(", int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    ps.print("  ");
+ 
+    // ============= Parameters ==============
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    ps.println(");");
+  }
+
+  public static void generateHostWrapperH_Handle(Kernel k, PrintStream ps) {
+    String handleType=getHandleTypeName(k);
+
+    ps.println("/*");
+    ps.print(" * Persistent handle on a '");
+    ps.print(k.getName());
+    ps.println("' kernel");
+    ps.println("*/");
+    ps.print("typedef struct ");
+    ps.print(handleType);
+    ps.print("_s ");
+    ps.print(handleType);
+    ps.println(";");
+    ps.println();
+
+    ps.println("/*");
+    ps.print(" * Creates a persistent handle on a '");
+    ps.print(k.getName());
+    ps.println("' kernel.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print(handleType);
+    ps.print(" *createHandle_");
+    ps.print(k.getName());
+    ps.println("(cl_program program);");
+    ps.println();
+
+    ps.println("/*");
+    ps.print(" * Releases a '");
+    ps.print(k.getName());
+    ps.println("' kernel handle.");
+    ps.println(" * This function exits in case of error.");
+    ps.println("*/");
+    ps.print("void releaseHandle_");
+    ps.print(k.getName());
+    ps.print("(");
+    ps.print(handleType);
+    ps.println(" *handle);");
+  }
+
+  public static void generateHostWrapperH_runAsync(Kernel k, PrintStream ps) {
+    ps.println("/*");
+    ps.println(" * Enqueues the kernel of a handle after the events of the wait list");
+    ps.println(" * and returns the event of the kernel execution without waiting for it.");
+    ps.println(" * The caller is responsible for releasing the returned event.");
+    ps.println(" * This function exists in case of error.");
+    ps.println("*/");
+    ps.print("cl_event run_");
+    ps.print(k.getName());
+    ps.print("_async(cl_command_queue commandQueue, ");
+    ps.print(getHandleTypeName(k));
+    ps.println(" *handle");
+    ps.println(", int "+CLGenVarNames.getNbWGVarName(0)+
+        ", int "+CLGenVarNames.getNbWGVarName(1)+
+        ", int "+CLGenVarNames.getLocalSizeVarName(0));
+    ps.print("  ");
+    // Output first
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    // Then inputs
+    for(KernelData kd:k.getParameterList()) {
+      ps.print(", ");
+      CLGenHostWrapper.generateKernelWrapperParamDeclaration(kd, ps);
+    }
+    ps.println(",");
+    ps.println("  cl_uint num_events_in_wait_list, const cl_event *event_wait_list);");
+  }
+
+  static public void generateKernelWrapperLocalParamSetting(KernelData kd, int n, String prefix, PrintStream ps) {
+    ps.print(prefix);
+    ps.print("status = clSetKernelArg(kernel,");
+    ps.print(n);
+    ps.print(",");
+  
+    if (kd.isIterative()) {
+      int slot=kd.getCodegenDataPattern().getNbBufferLine();
+      // Size in bytes
+      ps.print("sizeof(");
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.print(")");
+      ps.print("*");
+      if (slot!=1) {
+        ps.print(slot);
+        ps.print("*");
+      }
+      CLGenVarNames.generateFullSliceSizePixUnit(kd,0,ps);
+      //kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+    }
+    else {
+      ps.print(prefix);
+      kd.getMatrixType().generateSizeInBytes(ps, kd.getBaseCTypeNode());
+    }
+  
+    // NULL pointer since local buffer
+    ps.println(",(void *)NULL);");
+    // Check
+    ps.print(prefix);
+    ps.print("oclCheckStatus(status,\"clSetKernelArg (local ");
+    ps.print(kd.getName());
+    ps.println(") failed.\");");
+  }
+
+  static public void generateKernelWrapperParamSetting(KernelData kd, int n, String prefix, PrintStream ps) {
+    ps.print(prefix);
+    ps.print("status = clSetKernelArg(kernel,");
+    ps.print(n);
+    ps.print(",");
+  
+    if (kd.shouldBeCached()) {
+      // It will be passed as a buffer
+      ps.print("sizeof(cl_mem)");
+    }
+    else {
+      // It will be passed by value
+      ps.print("sizeof(");
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.print(")");
+    }
+  
+    ps.print(",");    
+    ps.print("(void *)&");
+    ps.print(kd.getName());
+    ps.println(");");
+    ps.print(prefix);
+    ps.print("oclCheckStatus(status,\"clSetKernelArg (");
+    ps.print(kd.getName());
+    ps.println(") failed.\");");
+  }
+
+  static public void generateKernelWrapperParamCachedSetting(KernelData kd, int n, String prefix, PrintStream ps) {
+    // Only set the argument if its value differs from the one cached in the handle
+    ps.print(prefix);
+    ps.print("if ((!handle->argsSet) || (memcmp(&handle->");
+    ps.print(kd.getName());
+    ps.print(",&");
+    ps.print(kd.getName());
+    ps.print(",sizeof(");
+    ps.print(kd.getName());
+    ps.println("))!=0)) {");
+    CLGenHostWrapper.generateKernelWrapperParamSetting(kd,n,prefix+"  ",ps);
+    ps.print(prefix);
+    ps.print("  handle->");
+    ps.print(kd.getName());
+    ps.print("=");
+    ps.print(kd.getName());
+    ps.println(";");
+    if (!kd.shouldBeCached()) {
+      // Scalar parameters may size local buffers
+      ps.print(prefix);
+      ps.println("  resizeLocal=1;");
+    }
+    ps.print(prefix);
+    ps.println("}");
   }
 
   static public void generateKernelWrapperParamDeclaration(KernelData kd, PrintStream ps) {
@@ -95,10 +95,18 @@ public class CLGenKernel {
       generateWGMySliceGeneralInfos(k,i,ps,"  ");
     }
 
+    // With 2D internal tiling, the WG slice in dim 0 is a partition
+    // processed tile by tile
+    boolean tiling2D=isInternalTiling2D(k);
 
     // Special case for the last WG
     ps.print("  if ((");
-    CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+    if (tiling2D) {
+      CLGenVarNames.generateMyWGPartPositionGrainUnit(0,ps);
+    }
+    else {
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+    }
     ps.print(">=");
     CLGenVarNames.generateNbGrains(0,ps);
     ps.print(") || (");
@@ -112,10 +120,16 @@ public class CLGenKernel {
     generateWGSliceDataInfos(k,0,ps,"  ");
 
     // My slice data info per data
-    for(int i=0;i<nbDims;i++) {
-      generateWGMySliceDataInfos(k,i,ps,"  ");
-      if (i==0) {
-        generateSkipDataInfos(k,i,ps,"  ");
+    if (tiling2D) {
+      // Dim 0 is computed per tile
+      generateWGMySliceDataInfos(k,1,ps,"  ");
+    }
+    else {
+      for(int i=0;i<nbDims;i++) {
+        generateWGMySliceDataInfos(k,i,ps,"  ");
+        if (i==0) {
+          generateSkipDataInfos(k,i,ps,"  ");
+        }
       }
     }
 
@@ -150,8 +164,32 @@ public class CLGenKernel {
       }
     }
 
+    String loopPrefix="  ";
+    if (tiling2D) {
+      // Keep the global pointers, repositioned for each tile
+      generateInternalTileBasePtrDeclaration(k,ps,"  ");
+
+      // Tile loop
+      generateInternalTileLoopHeader(ps,"  ");
+      loopPrefix="    ";
+      generateWGMySliceDataInfos(k,0,ps,loopPrefix);
+      generateSkipDataInfos(k,0,ps,loopPrefix);
+      generateInternalTileInOutReset(k,ps,loopPrefix);
+    }
+
     // Position global pointers to the slice
-    generateWGSliceInOutPositioning(k,ps,"  ");
+    generateWGSliceInOutPositioning(k,ps,loopPrefix);
+
+    // Constant borders materialized in local buffers
+    if (CodegenOptions.isImageKernelMode()) {
+      boolean fill=false;
+      for(KernelData kd:k.getComputationalDataList()) {
+        fill|=CLGenKernelData.generateBorderPaddingFill(kd,loopPrefix,ps);
+      }
+      if (fill) {
+        ps.println(loopPrefix+"barrier(CLK_LOCAL_MEM_FENCE);");
+      }
+    }
 
     //==============================================================
     // TODO: consider now that all inputs have coherent formats
@@ -192,12 +230,12 @@ public class CLGenKernel {
       // Position tile input/output pointers
       for(KernelData kd:k.getComputationalInputList()) {
         // sched-1 since no double buffering in tile mode
-        CLGenKernelData.generateTilePositioning(kd,"  ",minSched-1, ps);
+        CLGenKernelData.generateTilePositioning(kd,loopPrefix,minSched-1, ps);
       }
       // TODO: should position tile output pointers also when it will be supported (ex: Integral image)
     }
 
-    ps.print("  for(int ");
+    ps.print(loopPrefix+"for(int ");
     CLGenVarNames.generateSchedulerLoopCounter(ps);
     ps.print("= 0");
     ps.print("-");
@@ -229,18 +267,19 @@ public class CLGenKernel {
     ps.print("; ");
     CLGenVarNames.generateSchedulerLoopCounter(ps);
     ps.println("++ ) {");
+    String bodyPrefix=loopPrefix+"  ";
     // Schedule input and outputs
     if (CodegenOptions.isTileKernelMode()) {
       //** Tile mode **
 
       // Schedule algos
       for(FunctionNode fn:k.getFunctionNodeList()) {
-        CLGenKernel.generateTileComputeCall(fn,"    ",minSched,
+        CLGenKernel.generateTileComputeCall(fn,bodyPrefix,minSched,
             ps);
       }
       // Increment input and output pointers
       for(KernelData kd:k.getComputationalInputList()) {
-        CLGenKernelData.generateTileIncrement(kd,"    ", ps);
+        CLGenKernelData.generateTileIncrement(kd,bodyPrefix, ps);
       }
     }
     else {
@@ -248,35 +287,57 @@ public class CLGenKernel {
 
       // Schedule input copies
       for(KernelData kd:k.getComputationalInputList()) {
-        CLGenKernelData.generateInputCopy(kd,"    ",ps);
+        CLGenKernelData.generateInputCopy(kd,bodyPrefix,ps);
       }
       // Schedule output copies
       for(KernelData kd:k.getComputationalOutputList()) {
-        CLGenKernelData.generateOutputCopy(kd,"    ",ps);
+        CLGenKernelData.generateOutputCopy(kd,bodyPrefix,ps);
       }
 
       // Schedule computation
       for(FunctionNode fn:k.getFunctionNodeList()) {
-        CLGenKernel.generateImageComputeCall(fn,"    ",ps);
+        CLGenKernel.generateImageComputeCall(fn,bodyPrefix,ps);
+        // Exp border columns of the lines just computed
+        CLGenKernelData.generateBorderPaddingExpFill(fn,true,bodyPrefix,ps);
+        // Node synchro in synchronous merge mode, only where a node reads
+        // data produced in the same iteration (out of the scheduler if
+        // so that it is reached whatever the activity of the node)
+        if (CodegenOptions.isSyncMergeMode() &&
+            fn.getCodegenDataPattern().hasBarrierAfter()) {
+          ps.println(bodyPrefix+"barrier(CLK_LOCAL_MEM_FENCE);");
+        }
       }
 
-      // Global synchro needed in asynchronous merge mode
-      if (CodegenOptions.isAsyncMergeMode()) {
-        ps.println("    barrier(CLK_LOCAL_MEM_FENCE);");
-      }
+      // Global synchro at the end of the iteration
+      ps.println(bodyPrefix+"barrier(CLK_LOCAL_MEM_FENCE);");
 
       // Schedule wait for input
       for(KernelData kd:k.getComputationalInputList()) {
-        CLGenKernelData.generateInputWait(kd,"    ",ps);
+        CLGenKernelData.generateInputWait(kd,bodyPrefix,ps);
+      }
+      // Exp border columns of the lines just copied
+      boolean expFill=false;
+      for(KernelData kd:k.getComputationalInputList()) {
+        expFill|=CLGenKernelData.generateBorderPaddingExpFill(kd,false,bodyPrefix,ps);
+      }
+      if (expFill) {
+        ps.println(bodyPrefix+"barrier(CLK_LOCAL_MEM_FENCE);");
       }
       // Schedule wait for outputs
       for(KernelData kd:k.getComputationalOutputList()) {
-        CLGenKernelData.generateOutputWait(kd,"    ",ps);
+        CLGenKernelData.generateOutputWait(kd,bodyPrefix,ps);
       }
     }
 
     // === end of Main loop ===
-    ps.println("  }");
+    ps.println(loopPrefix+"}");
+
+    if (tiling2D) {
+      // Local buffers are reused by the next tile
+      ps.println(loopPrefix+"barrier(CLK_LOCAL_MEM_FENCE);");
+      // === end of Tile loop ===
+      ps.println("  }");
+    }
 
     // === end of kernel ====
     ps.println("}");
@@ -288,10 +349,51 @@ public class CLGenKernel {
   //===========================================================================
 
   static void generateWGSliceGeneralInfos(Kernel k, int dim, PrintStream ps, String prefix ) {
+    // Compute the nb of grains in the slice
+    generateNbGrainsDeclaration(k,dim,ps,prefix);
+
+    // Compute the common slice size (unit = grain)
+    boolean tiling2D=(dim==0) && isInternalTiling2D(k);
+    ps.print(prefix);
+    ps.print("int ");
+    if (tiling2D) {
+      CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+    }
+    else {
+      CLGenVarNames.generateWGSliceSizeGrainUnit(dim,ps);
+    }
+    ps.print("= (");
+    CLGenVarNames.generateNbGrains(dim,ps);
+    ps.print("+");
+    ps.print(CLGenVarNames.getNbWGVarName(dim));
+    ps.print("-1)/");
+    ps.print(CLGenVarNames.getNbWGVarName(dim));
+    ps.println( ";");
+
+    if (tiling2D) {
+      // The common slice is a tile of the WG partition, bounded by
+      // the local memory
+      int tileWidth=k.getInternalTileWidth();
+      ps.print(prefix);
+      ps.print("int ");
+      CLGenVarNames.generateWGSliceSizeGrainUnit(dim,ps);
+      ps.print("= ");
+      CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+      ps.print("<");
+      ps.print(tileWidth);
+      ps.print("?");
+      CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+      ps.print(":");
+      ps.print(tileWidth);
+      ps.println(";");
+    }
+  }
+
+  // Compute the nb of grains in dimension 'dim' of the reference input
+  static void generateNbGrainsDeclaration(Kernel k, int dim, PrintStream ps, String prefix ) {
     // Pick an iterative input as reference
     KernelData kdRef=k.getComputationalInputList().get(0);
 
-    // Compute the nb of grains in the slice
     ps.print(prefix);
     ps.print("int ");
     CLGenVarNames.generateNbGrains(dim,ps);
@@ -309,21 +411,20 @@ public class CLGenKernel {
       kdRef.getMatrixType().generateLastIndexPlusOne(dim,ps);
     }
     ps.println(";");
+  }
 
-    // Compute the common slice size (unit = grain)
-    ps.print(prefix);
-    ps.print("int ");
-    CLGenVarNames.generateWGSliceSizeGrainUnit(dim,ps);
-    ps.print("= (");
-    CLGenVarNames.generateNbGrains(dim,ps);
-    ps.print("+");
-    ps.print(CLGenVarNames.getNbWGVarName(dim));
-    ps.print("-1)/");
-    ps.print(CLGenVarNames.getNbWGVarName(dim));
-    ps.println( ";");
+  static boolean isInternalTiling2D(Kernel k) {
+    return CodegenOptions.isImageKernelMode() && 
+        CodegenOptions.isTileKernelInternalTiling() &&
+        (k.getInternalTileWidth()>0);
   }
 
   static void generateWGMySliceGeneralInfos(Kernel k, int dim, PrintStream ps, String prefix ) {
+    if ((dim==0) && isInternalTiling2D(k)) {
+      generateWGMyPartGeneralInfos(k,dim,ps,prefix);
+      return;
+    }
+
     // Compute my own tile position (unit = grain)
     ps.print(prefix);
     ps.print("int ");
@@ -356,6 +457,134 @@ public class CLGenKernel {
     ps.println();
   }
 
+  static void generateWGMyPartGeneralInfos(Kernel k, int dim, PrintStream ps, String prefix ) {
+    // Compute my own partition position (unit = grain)
+    ps.print(prefix);
+    ps.print("int ");
+    CLGenVarNames.generateMyWGPartPositionGrainUnit(dim,ps);
+    ps.print("= ");
+    CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+    ps.print("*");
+    ps.print(CLGenVarNames.getGroupIdVarName(dim));
+    ps.println( ";");
+
+    // Compute my own partition size (unit = grain)
+    ps.print(prefix);
+    ps.print("int ");
+    CLGenVarNames.generateMyWGPartSizeGrainUnit(dim,ps);
+    ps.print("= ");
+    CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+    ps.print("*(");
+    ps.print(CLGenVarNames.getGroupIdVarName(dim));
+    ps.print("+1) >");
+    CLGenVarNames.generateNbGrains(dim,ps);
+    ps.print("?");
+    CLGenVarNames.generateNbGrains(dim,ps);
+    ps.print("-");
+    CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+    ps.print("*");
+    ps.print(CLGenVarNames.getGroupIdVarName(dim));
+    ps.print(":");
+    CLGenVarNames.generateWGPartSizeGrainUnit(dim,ps);
+    ps.println(";");
+    ps.println();
+  }
+
+  //===========================================================================
+  // 2D internal tiling
+  //===========================================================================
+
+  static void generateInternalTileBasePtrDeclaration(Kernel k, PrintStream ps, String prefix) {
+    for(KernelData kd:k.getComputationalInputList()) {
+      ps.print(prefix);
+      ps.print("global ");
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.print(" *");
+      CLGenVarNames.generateInternalTileBasePtrName(kd,ps);
+      ps.print("= ");
+      ps.print(kd.getName());
+      ps.println(";");
+    }
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(prefix);
+      ps.print("global ");
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.print(" *");
+      CLGenVarNames.generateInternalTileBasePtrName(kd,ps);
+      ps.print("= ");
+      ps.print(kd.getName());
+      ps.println(";");
+    }
+    ps.println();
+  }
+
+  // Iterate over the tiles of my partition, the tile becomes my slice
+  static void generateInternalTileLoopHeader(PrintStream ps, String prefix) {
+    ps.print(prefix);
+    ps.print("for(int ");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.print("= 0; ");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.print(" < ");
+    CLGenVarNames.generateMyWGPartSizeGrainUnit(0,ps);
+    ps.print("; ");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.print("+=");
+    CLGenVarNames.generateWGSliceSizeGrainUnit(0,ps);
+    ps.println(" ) {");
+
+    // Tile position (unit = grain)
+    ps.print(prefix+"  ");
+    ps.print("int ");
+    CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+    ps.print("= ");
+    CLGenVarNames.generateMyWGPartPositionGrainUnit(0,ps);
+    ps.print("+");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.println(";");
+
+    // Tile size (unit = grain), the last one may be smaller
+    ps.print(prefix+"  ");
+    ps.print("int ");
+    CLGenVarNames.generateMyWGSliceSizeGrainUnit(0,ps);
+    ps.print("= ");
+    CLGenVarNames.generateMyWGPartSizeGrainUnit(0,ps);
+    ps.print("-");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.print("<");
+    CLGenVarNames.generateWGSliceSizeGrainUnit(0,ps);
+    ps.print("?");
+    CLGenVarNames.generateMyWGPartSizeGrainUnit(0,ps);
+    ps.print("-");
+    CLGenVarNames.generateInternalTileCounter(0,ps);
+    ps.print(":");
+    CLGenVarNames.generateWGSliceSizeGrainUnit(0,ps);
+    ps.println(";");
+    ps.println();
+  }
+
+  static void generateInternalTileInOutReset(Kernel k, PrintStream ps, String prefix) {
+    for(KernelData kd:k.getComputationalInputList()) {
+      ps.print(prefix);
+      ps.print(kd.getName());
+      ps.print("= ");
+      CLGenVarNames.generateInternalTileBasePtrName(kd,ps);
+      ps.println(";");
+    }
+    for(KernelData kd:k.getComputationalOutputList()) {
+      ps.print(prefix);
+      ps.print(kd.getName());
+      ps.print("= ");
+      CLGenVarNames.generateInternalTileBasePtrName(kd,ps);
+      ps.println(";");
+    }
+  }
+
+
+  //===========================================================================
+  // Slice data infos
+  //===========================================================================
+
   static void generateWGSliceDataInfos(Kernel k, int dim, PrintStream ps, String prefix ) {
     for(KernelData kd:k.getComputationalDataList()) {
       CLGenKernelData.generateWGFullSliceSizePixInfos(kd, dim, ps, prefix );
@@ -450,6 +679,10 @@ public class CLGenKernel {
           // Iterative data
           // TODO: Not adapted to the tiling (rate+pop should be replaced by the tile grain)
           CLGenKernelData.generateKernelCircLocalAccess(kd,sched,fn.getRate(),fn.getInputEdge(kd).getPop(),i, ps);
+          if (fn.getInputEdge(kd).getBorderLine()>=0) {
+            ps.print(", ");
+            CLGenVarNames.generateBorderLineName(fn,kd,ps);
+          }
         }
         else {
           // Control data   
@@ -500,11 +733,6 @@ public class CLGenKernel {
       ps.println(");");
     }
 
-    // Node synchro needed only in synchronous merge mode
-    if (CodegenOptions.isSyncMergeMode()) {
-      ps.println(prefix+"  barrier(CLK_LOCAL_MEM_FENCE);");
-    }
-
     // Close the if
     ps.print(prefix);
     ps.println("}");
@@ -522,6 +750,13 @@ public class CLGenKernel {
       ps.print(", ");
       if (kd.isIterative()) {
         CLGenKernelData.generateComputeFunctionParamDeclaration(kd, fn.getInputEdge(kd).getReadPattern(), ps);
+        if (fn.getInputEdge(kd).getBorderLine()>=0) {
+          // Border lines (top, bottom)
+          ps.print(", local ");
+          CLGenKernelData.generateBaseCType(kd,ps);
+          ps.print(" **");
+          CLGenVarNames.generateBorderLineParamName(kd,ps);
+        }
       }
       else {
         CLGenKernelData.generateComputeFunctionParamDeclaration(kd, null, ps);
@@ -23,14 +23,18 @@
 
 package codegen.OpenCL;
 
+import ir.base.BorderMode;
+import ir.base.DataEdge;
 import ir.base.KernelData;
 import ir.types.kg.MatrixIndexes;
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import org.antlr.runtime.RecognitionException;
 import parser.KernelGeniusEmitter;
 import codegen.CodegenDataPattern;
 import common.CompilerError;
 import driver.options.CodegenOptions;
+import utility.thread.ThreadOutput;
 
 public class CLGenKernelData {
 
@@ -366,9 +370,40 @@ public class CLGenKernelData {
       ps.print("[");
       ps.print(-circBufferBegin);
       ps.println("];");
+
+      // Border lines (top, bottom) of users, after the slots
+      for(DataEdge de:kd.getUserEdgeList()) {
+        if (de.getBorderLine()<0) {
+          continue;
+        }
+        int top=nbSubBuf+de.getBorderLine();
+        int bottom=top+(codegenPattern.getPaddingBorderMode().isExp()?1:0);
+        ps.print(prefix);
+        ps.print("local ");
+        generateBaseCType(kd, ps);
+        ps.print(" *");
+        CLGenVarNames.generateBorderLineName(de.getTargetFunctionNode(),kd,ps);
+        ps.print("[2] = {");
+        generateKernelLocalBufferLine(kd,top,ps);
+        ps.print(",");
+        generateKernelLocalBufferLine(kd,bottom,ps);
+        ps.println("};");
+      }
     } 
   }
 
+  // Pointer to the line 'j' of the local buffer, centered to the tile
+  // coordinate [0,0]
+  static void generateKernelLocalBufferLine(KernelData kd, int j, PrintStream ps) {
+    CLGenVarNames.generateKernelLocalBufferName(kd, ps);
+    ps.print("+");
+    ps.print(-kd.getTileNbhForSuccessors().getFirstIndex(0));
+    ps.print("+");
+    ps.print(j);
+    ps.print("*");
+    CLGenVarNames.generateFullSliceSizePixUnit(kd,0,ps);
+  }
+
   static public void generateKernelEventDeclarationOutput(KernelData kd, PrintStream ps, String prefix) {
     ps.print(prefix);
     ps.print("event_t ");
@@ -730,6 +765,9 @@ public class CLGenKernelData {
       ps.println(",0);");
       //      }
 
+      // Border columns copied with the line
+      generateBorderPaddingCopy(kd,i,prefix+"  ",ps);
+
       // Close the if
       ps.print(prefix);
       ps.println("}");
@@ -747,6 +785,338 @@ public class CLGenKernelData {
     ps.println("}");
   }
   
+  // Copies the border columns (dim 0) of a kernel input line in the padding
+  // of the local buffer, as part of the line copy (same event). Only
+  // columns falling in the local buffer of the work-group are copied
+  static void generateBorderPaddingCopy(KernelData kd, int offset,
+      String prefix, PrintStream ps) {
+    CodegenDataPattern codegenPattern=kd.getCodegenDataPattern();
+    if (!codegenPattern.hasBorderPadding()) {
+      return;
+    }
+    BorderMode bm=codegenPattern.getPaddingBorderMode();
+    if (!(bm.isDuplicate()||bm.isMirror())) {
+      // Constant borders are set once
+      return;
+    }
+    int sched=codegenPattern.getSchedulingCycle();
+    int nbhLeft=-kd.getTileNbhForSuccessors().getFirstIndex(0);
+    int nbhRight=kd.getTileNbhForSuccessors().getLastIndex(0);
+
+    // Left border
+    for(int k=0;k<codegenPattern.getPaddingLeft();k++) {
+      ps.print(prefix);
+      ps.print("if (");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("<=");
+      ps.print(nbhLeft-k-1);
+      ps.print(") ");
+      generateBorderPaddingCopyCall(kd,sched,offset,ps);
+      ps.print("-");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("-");
+      ps.print(k+1);
+      generateBorderPaddingCopyCallSource(kd,ps);
+      ps.print("+");
+      ps.print(bm.isMirror()?k:0);
+      generateBorderPaddingCopyCallEnd(kd,offset,ps);
+    }
+
+    // Right border
+    for(int k=0;k<codegenPattern.getPaddingRight();k++) {
+      ps.print(prefix);
+      ps.print("if (");
+      kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+      ps.print("+");
+      ps.print(k);
+      ps.print("<");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("+");
+      CLGenVarNames.generateMyWGSliceSizeGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("+");
+      ps.print(nbhRight);
+      ps.print(") ");
+      generateBorderPaddingCopyCall(kd,sched,offset,ps);
+      ps.print("+");
+      kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+      ps.print("+");
+      ps.print(k);
+      ps.print("-");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      generateBorderPaddingCopyCallSource(kd,ps);
+      ps.print("+");
+      kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+      ps.print("-");
+      ps.print(bm.isMirror()?k+1:1);
+      generateBorderPaddingCopyCallEnd(kd,offset,ps);
+    }
+  }
+
+  static void generateBorderPaddingCopyCall(KernelData kd, int sched, int offset, PrintStream ps) {
+    CLGenVarNames.generateKernelEventName(kd,offset,ps);
+    ps.print(" = async_work_group_copy(");
+    if (CodegenOptions.getFixDMA()) {
+      // Fake inputs as outputs
+      ps.print("(global char*)(");
+    }
+    else {
+      ps.print("(local char*)(");
+    }
+    generateKernelLocalAccess(kd,sched,kd.getRate(),kd.getPush(),offset,ps);
+  }
+
+  static void generateBorderPaddingCopyCallSource(KernelData kd, PrintStream ps) {
+    if (CodegenOptions.getFixDMA()) {
+      // Fake inputs as outputs
+      ps.print("),(local char*)(");
+    }
+    else {
+      ps.print("),(global char*)(");
+    }
+    ps.print(kd.getName());
+    ps.print("-");
+    CLGenVarNames.generateMyFullSlicePositionPixUnit(kd,0,ps);
+  }
+
+  static void generateBorderPaddingCopyCallEnd(KernelData kd, int offset, PrintStream ps) {
+    ps.print("),sizeof(");
+    generateBaseCType(kd,ps);
+    ps.print("),");
+    CLGenVarNames.generateKernelEventName(kd,offset,ps);
+    ps.println(");");
+  }
+
+  // Sets the constant border columns (dim 0) in all slots of the local
+  // buffer, and the border line of rows (dim 1). They are never overwritten
+  // by line copies or computations
+  static public boolean generateBorderPaddingFill(KernelData kd, String prefix, PrintStream ps) {
+    CodegenDataPattern codegenPattern=kd.getCodegenDataPattern();
+    if ((!codegenPattern.hasBorderPadding()) ||
+        (!codegenPattern.getPaddingBorderMode().isConstValue())) {
+      return false;
+    }
+    BorderMode bm=codegenPattern.getPaddingBorderMode();
+    int nbhLeft=-kd.getTileNbhForSuccessors().getFirstIndex(0);
+    int nbhRight=kd.getTileNbhForSuccessors().getLastIndex(0);
+    int nbSlot=codegenPattern.getNbBufferSlot();
+
+    // Left border
+    if (codegenPattern.getPaddingLeft()>0) {
+      ps.print(prefix);
+      ps.print("for (int ");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("=get_local_id(0);");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      ps.print(codegenPattern.getPaddingLeft());
+      ps.print(";");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("+=get_local_size(0)) {");
+      ps.print(prefix+"  ");
+      ps.print("if (");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("+");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      ps.print(nbhLeft);
+      ps.println(") {");
+      for(int s=0;s<nbSlot;s++) {
+        ps.print(prefix+"    ");
+        CLGenVarNames.generateKernelLocalName(kd,ps);
+        ps.print("[");
+        ps.print(s);
+        ps.print("][-");
+        CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+        generateTileGrainMultiply(kd,0,ps);
+        ps.print("-");
+        CLGenVarNames.generateBorderPaddingCounter(ps);
+        ps.print("-1]=");
+        bm.generateValueLiteral(ps);
+        ps.println(";");
+      }
+      ps.println(prefix+"  }");
+      ps.println(prefix+"}");
+    }
+
+    // Right border
+    if (codegenPattern.getPaddingRight()>0) {
+      ps.print(prefix);
+      ps.print("for (int ");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("=get_local_id(0);");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      ps.print(codegenPattern.getPaddingRight());
+      ps.print(";");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("+=get_local_size(0)) {");
+      ps.print(prefix+"  ");
+      ps.print("if (");
+      kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+      ps.print("+");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("+");
+      CLGenVarNames.generateMyWGSliceSizeGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.print("+");
+      ps.print(nbhRight);
+      ps.println(") {");
+      for(int s=0;s<nbSlot;s++) {
+        ps.print(prefix+"    ");
+        CLGenVarNames.generateKernelLocalName(kd,ps);
+        ps.print("[");
+        ps.print(s);
+        ps.print("][");
+        kd.getMatrixType().generateLastIndexPlusOne(0,ps);
+        ps.print("+");
+        CLGenVarNames.generateBorderPaddingCounter(ps);
+        ps.print("-");
+        CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,ps);
+        generateTileGrainMultiply(kd,0,ps);
+        ps.print("]=");
+        bm.generateValueLiteral(ps);
+        ps.println(";");
+      }
+      ps.println(prefix+"  }");
+      ps.println(prefix+"}");
+    }
+
+    // Border line shared by users reading out of the data in dim 1
+    if (codegenPattern.getNbBorderLine()>0) {
+      ps.print(prefix);
+      ps.print("for (int ");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("=get_local_id(0);");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      CLGenVarNames.generateFullSliceSizePixUnit(kd,0,ps);
+      ps.print(";");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("+=get_local_size(0)) {");
+      ps.print(prefix+"  (");
+      generateKernelLocalBufferLine(kd,nbSlot,ps);
+      ps.print(")[");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("-");
+      ps.print(nbhLeft);
+      ps.print("]=");
+      bm.generateValueLiteral(ps);
+      ps.println(";");
+      ps.println(prefix+"}");
+    }
+    return true;
+  }
+
+  // Computes the exp border columns (dim 0) of the lines of a data just
+  // copied (kernel input) or computed (node), from the pixels at distance
+  // k of the edge in the same line. The producer needs a barrier since
+  // the pixels are computed by other work-items
+  static public boolean generateBorderPaddingExpFill(KernelData kd, boolean barrierBefore,
+      String prefix, PrintStream ps) {
+    CodegenDataPattern codegenPattern=kd.getCodegenDataPattern();
+    if ((!codegenPattern.hasBorderPadding()) ||
+        (!codegenPattern.getPaddingBorderMode().isExp()) ||
+        ((codegenPattern.getPaddingLeft()==0) && (codegenPattern.getPaddingRight()==0))) {
+      return false;
+    }
+    int sched=codegenPattern.getSchedulingCycle();
+
+    // If condition
+    generateSchedulerIfCondition(kd,sched,true,prefix, ps);
+    if (barrierBefore) {
+      ps.println(prefix+"  barrier(CLK_LOCAL_MEM_FENCE);");
+    }
+    for(int i=0;i<kd.getRate();i++) {
+      ByteArrayOutputStream bos=new ByteArrayOutputStream();
+      PrintStream tps=new PrintStream(bos);
+      generateKernelCircLocalAccess(kd,sched,kd.getRate(),kd.getPush(),i,tps);
+      tps.flush();
+      for(int r=0;r<kd.getPush();r++) {
+        generateBorderPaddingExpFillLine(kd,"("+bos.toString()+")["+r+"]",prefix+"  ",ps);
+      }
+    }
+
+    // Close the if
+    ps.print(prefix);
+    ps.println("}");
+    return true;
+  }
+
+  static void generateBorderPaddingExpFillLine(KernelData kd, String line,
+      String prefix, PrintStream ps) {
+    CodegenDataPattern codegenPattern=kd.getCodegenDataPattern();
+    BorderMode bm=codegenPattern.getPaddingBorderMode();
+    int nbhLeft=-kd.getTileNbhForSuccessors().getFirstIndex(0);
+    int nbhRight=kd.getTileNbhForSuccessors().getLastIndex(0);
+    ByteArrayOutputStream bos=new ByteArrayOutputStream();
+    PrintStream tps=new PrintStream(bos);
+    CLGenVarNames.generateMyWGSlicePositionGrainUnit(0,tps);
+    generateTileGrainMultiply(kd,0,tps);
+    tps.flush();
+    String pos=bos.toString();
+    String width=kd.getMatrixType().getLastIndexPlusOneString(0);
+
+    // Left border
+    if (codegenPattern.getPaddingLeft()>0) {
+      ps.print(prefix);
+      ps.print("for (int ");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("=get_local_id(0);");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      ps.print(codegenPattern.getPaddingLeft());
+      ps.print(";");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("+=get_local_size(0)) {");
+      ps.print(prefix+"  if ("+pos+"+");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("<"+nbhLeft+") {");
+      ps.print(prefix+"    "+line+"[-"+pos+"-");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("-1]=");
+      bm.generateBorderFunction(line+"[-"+pos+"+#]",ps);
+      ps.println(";");
+      ps.println(prefix+"  }");
+      ps.println(prefix+"}");
+    }
+
+    // Right border
+    if (codegenPattern.getPaddingRight()>0) {
+      ps.print(prefix);
+      ps.print("for (int ");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("=get_local_id(0);");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<");
+      ps.print(codegenPattern.getPaddingRight());
+      ps.print(";");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.println("+=get_local_size(0)) {");
+      ps.print(prefix+"  if ("+width+"+");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("<"+pos+"+");
+      CLGenVarNames.generateMyWGSliceSizeGrainUnit(0,ps);
+      generateTileGrainMultiply(kd,0,ps);
+      ps.println("+"+nbhRight+") {");
+      ps.print(prefix+"    "+line+"["+width+"+");
+      CLGenVarNames.generateBorderPaddingCounter(ps);
+      ps.print("-"+pos+"]=");
+      bm.generateBorderFunction(line+"["+width+"-1-"+pos+"-#]",ps);
+      ps.println(";");
+      ps.println(prefix+"  }");
+      ps.println(prefix+"}");
+    }
+  }
+
   static public void generateInputWait(KernelData kd,
       String prefix,
       PrintStream ps) { 
@@ -770,7 +1140,7 @@ public class CLGenKernelData {
   
   static public void generateLocalBufferSizeFormula(KernelData kd, PrintStream ps) {
     if (kd.isIterative()) {
-      int slot=kd.getCodegenDataPattern().getNbBufferSlot();
+      int slot=kd.getCodegenDataPattern().getNbBufferLine();
       // Size in bytes
       ps.print("sizeof(");
       generateBaseCType(kd, ps);
@@ -790,7 +1160,7 @@ public class CLGenKernelData {
       emitter.declSpecifiers();
     } catch (RecognitionException e) {
       // TODO Auto-generated catch block
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
   }
 
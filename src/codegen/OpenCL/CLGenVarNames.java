@@ -27,6 +27,7 @@ import ir.base.FunctionNode;
 import ir.base.KernelData;
 
 import java.io.PrintStream;
+import java.util.List;
 
 public class CLGenVarNames {
 
@@ -48,6 +49,9 @@ public class CLGenVarNames {
   public static void appendComputeLoopCounterPix(KernelData kd, StringBuffer ps) {
     ps.append(getKGPrefix()+getComputeLoopCounterBaseName()+"Pix_"+kd.getName());
   }
+  public static void appendComputeLoopBlockCounter(StringBuffer ps) {
+    ps.append(getKGPrefix()+getComputeLoopCounterBaseName()+"Block");
+  }
   static String getComputeLoopCounterBaseName() {
     return "counter";
   }
@@ -136,6 +140,86 @@ public class CLGenVarNames {
     ps.print(getMyWGSliceBaseName());
     ps.print("SizeGrain"+dim);
   }
+  // --> 2D internal tiling: the WG slice is a partition processed tile by tile
+  static String getWGPartBaseName() {
+    return "WGPart_";
+  }
+  static String getMyWGPartBaseName() {
+    return "MyWGPart_";
+  }
+  public static void generateWGPartSizeGrainUnit(int dim, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print(getWGPartBaseName());
+    ps.print("size"+dim);
+  }
+  public static void generateMyWGPartPositionGrainUnit(int dim, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print(getMyWGPartBaseName());
+    ps.print("PosGrain"+dim);
+  }
+  public static void generateMyWGPartSizeGrainUnit(int dim, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print(getMyWGPartBaseName());
+    ps.print("SizeGrain"+dim);
+  }
+  public static void generateInternalTileCounter(int dim, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print("tile"+dim);
+  }
+  static public void generateInternalTileBasePtrName(KernelData kd, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print("tileBase_");
+    ps.print(kd.getName());
+  }
+
+  // --> Border padding
+  public static void generateBorderPaddingCounter(PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print("pad");
+  }
+  public static void appendBorderPaddingCounter(StringBuffer sb) {
+    sb.append(getKGPrefix());
+    sb.append("pad");
+  }
+  // Border lines (top, bottom) of a user, in the kernel
+  public static void generateBorderLineName(FunctionNode fn, KernelData kd, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print("borderline_"+fn.getName()+"_"+kd.getName());
+  }
+  // Border lines (top, bottom) of an input, in a compute function
+  public static void generateBorderLineParamName(KernelData kd, PrintStream ps) {
+    ps.print(getKGPrefix());
+    ps.print("borderline_"+kd.getName());
+  }
+  public static void appendBorderLineParamName(KernelData kd, StringBuffer sb) {
+    sb.append(getKGPrefix());
+    sb.append("borderline_"+kd.getName());
+  }
+  // Remapped rows of an input, in a compute function
+  public static void appendBorderRowName(KernelData kd, StringBuffer sb) {
+    sb.append(getKGPrefix());
+    sb.append("rows_"+kd.getName());
+  }
+
+  // --> Input loads shared in a macro-node
+  public static String getSharedLoadName(KernelData kd, int i) {
+    return getKGPrefix()+"load_"+kd.getName()+"_"+i;
+  }
+
+  // --> Register sliding window
+  public static String getSlidingWindowVarName(String s) {
+    return getKGPrefix()+"sw"+s;
+  }
+  public static String getSlidingWindowRegisterName(KernelData kd, List<Object> rowIndexList, int x) {
+    StringBuffer sb=new StringBuffer();
+    sb.append(getKGPrefix()).append("sw_").append(kd.getName());
+    for (Object i:rowIndexList) {
+      sb.append("_").append(i.toString().replace('-','m'));
+    }
+    sb.append("_").append(Integer.toString(x).replace('-','m'));
+    return sb.toString();
+  }
+
   public static void generateNbGrains(int dim, PrintStream ps) {
     ps.print(getKGPrefix());
     ps.print("nbGrain"+dim);
@@ -152,6 +236,16 @@ public class CLGenVarNames {
     ps.print(getMyWGSliceBaseName());
     ps.print("SizeBlock"+dim+"_"+kd.getName());
   }
+  public static void appendMyWGSlicePositionBlockUnit(KernelData kd, int dim, StringBuffer ps) {
+    ps.append(getKGPrefix());
+    ps.append(getMyWGSliceBaseName());
+    ps.append("PosBlock"+dim+"_"+kd.getName());
+  }
+  public static void appendMyWGSliceSizeBlockUnit(KernelData kd, int dim, StringBuffer ps) {
+    ps.append(getKGPrefix());
+    ps.append(getMyWGSliceBaseName());
+    ps.append("SizeBlock"+dim+"_"+kd.getName());
+  }
   public static void generatePositionPixUnit(KernelData kd, int dim, PrintStream ps) {
     ps.print(getKGPrefix()+"posPix");
     ps.print(dim+"_"+kd.getName());
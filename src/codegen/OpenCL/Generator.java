@@ -28,8 +28,6 @@ import ir.base.Kernel;
 import ir.base.Program;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -41,12 +39,14 @@ import parser.KernelGeniusEmitter;
 import parser.TNode;
 
 import common.CompilerError;
-import common.ResourceManager;
+import common.TimeReport;
 
 import codegen.CodeGenerator;
+import codegen.GeneratedFile;
 import driver.DriverHelper;
 import driver.options.CodegenOptions;
 import driver.options.GeneralOptions;
+import utility.thread.ThreadOutput;
 
 public class Generator extends CodeGenerator {
   
@@ -54,43 +54,31 @@ public class Generator extends CodeGenerator {
   // Main entry point
   //=================================================
   
-  public void generate(Program prog, List<File> generatedFiles, File tempDir) {
+  public void generate(Program prog, List<File> generatedFiles, File outputDir) {
     // The OpenCL-C code
-    generateOpenCLC(prog,generatedFiles,tempDir);
+    generateOpenCLC(prog,generatedFiles,outputDir);
     // The C (host) code
-    CLGenHostWrapper.generateHostWrapper(prog,generatedFiles,tempDir);
+    CLGenHostWrapper.generateHostWrapper(prog,generatedFiles,outputDir);
   }
 
   //=================================================
   // OpenCL-C program
   //=================================================
   
-  public static void generateOpenCLC(Program prog, List<File> generatedFiles, File tempDir) {
+  public static void generateOpenCLC(Program prog, List<File> generatedFiles, File outputDir) {
     // Debug messages
-    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".cl", tempDir);
+    File fileToGenerate = DriverHelper.makeOutputFile(prog.getName()+".cl", outputDir);
     generatedFiles.add(fileToGenerate);
     
     if (GeneralOptions.getDebugLevel() > 0) {
       CompilerError.GLOBAL.raiseMessage("  ... generating file '"
           + fileToGenerate.getName() + "'");
     }
-    PrintStream ps=null;
-    try {
-      ps = new PrintStream(fileToGenerate);
-    } catch (FileNotFoundException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-    ResourceManager.registerStream(ps);
+    GeneratedFile generatedFile=new GeneratedFile(fileToGenerate);
     // Generate the program
-    Generator.generateOpenCLC_Program(prog,ps);
-    // Close the file
-    try {
-      ResourceManager.closeStream(ps);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
+    Generator.generateOpenCLC_Program(prog,generatedFile.getPrintStream());
+    // Write the file
+    generatedFile.write();
   }
   
   static public void generateOpenCLC_Program(Program prog, PrintStream ps) {
@@ -107,8 +95,10 @@ public class Generator extends CodeGenerator {
         ps.println((String)o);
       }
       else if (o instanceof Kernel) {
+        TimeReport.Phase phase=TimeReport.start("OpenCL-C code",((Kernel)o).getName());
         generateOpenCLC_Kernel(((Kernel)o), ps);
         ps.println();
+        TimeReport.stop(phase);
       }
       else if (o instanceof TNode) {
         // This is a declaration
@@ -122,7 +112,7 @@ public class Generator extends CodeGenerator {
           emitter.declaration();
         } catch (RecognitionException e) {
           // TODO Auto-generated catch block
-          e.printStackTrace();
+          e.printStackTrace(ThreadOutput.err());
         }
         ps.println();
         ps.println();
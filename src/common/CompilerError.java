@@ -26,9 +26,11 @@
 package common;
 
 import java.io.File;
+import java.util.List;
 
 import parser.MyToken;
 import parser.TNode;
+import utility.thread.ThreadOutput;
 
 public class CompilerError {
   // Global error manager
@@ -81,8 +83,24 @@ public class CompilerError {
 
   // maximum number of errors allowed
   private int nbMaxErrors = 5;
-  // error counter
-  private int nb_errors   = 0;
+  // error counter (per thread, so that compilations run by a server in
+  // different threads do not see the errors of each other)
+  private final InheritableThreadLocal<int[]> nb_errors = new InheritableThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  // ******************************************************************
+  // initThread :
+  //
+  // Gives the current thread its own error counter, instead of the one
+  // inherited from the thread which created it
+  // ******************************************************************
+  public void initThread() {
+    nb_errors.set(new int[1]);
+  }
 
 
   // ******************************************************************
@@ -100,7 +118,7 @@ public class CompilerError {
   // Returns 'true' if at least one error has been raised.
   // ******************************************************************
   public boolean isAnError() {
-    return(nb_errors>0);
+    return(nb_errors.get()[0]>0);
   }
 
   // ******************************************************************
@@ -108,9 +126,11 @@ public class CompilerError {
   //
   // Increment the counter error and exit if too much errors
   // ******************************************************************
-  private void addAnError() {
-    if (++nb_errors >= nbMaxErrors) {
-      System.err.print("Too many errors, ");
+  private synchronized void addAnError() {
+    if (++nb_errors.get()[0] >= nbMaxErrors) {
+      if (diagnosticList.get()==null) {
+        ThreadOutput.err().print("Too many errors, ");
+      }
       exitWithError();
     }
   }
@@ -121,12 +141,16 @@ public class CompilerError {
   // Display a message and stop the compilation process
   // ******************************************************************
   public static void exitWithError() {
-    System.err.println("stopping the compilation process");
+    if (diagnosticList.get()==null) {
+      ThreadOutput.err().println("stopping the compilation process");
+    }
     // Exit the program execution
     throw new CompilerExit(1);
   }
   public static void exitWithError(int i) {
-    System.err.println("stopping the compilation process");
+    if (diagnosticList.get()==null) {
+      ThreadOutput.err().println("stopping the compilation process");
+    }
     // Exit the program execution
     throw new CompilerExit(i);
   }
@@ -148,49 +172,82 @@ public class CompilerError {
 
 
   // ##################################################################
-  // Various error/warning/messages
+  // Diagnostic capture
   // ##################################################################
 
+  // Diagnostics raised by the current thread (and the threads it
+  // creates), null when they are printed
+  private static final InheritableThreadLocal<List<Diagnostic>> diagnosticList = new InheritableThreadLocal<List<Diagnostic>>();
 
   // ******************************************************************
-  // printPrefix :
+  // setDiagnosticList :
   //
-  // Prints "<filename>" if filename is set, nothing otherwise
+  // Keeps the diagnostics of the current thread in list 'l' instead
+  // of printing them (null to print them again)
   // ******************************************************************
-  private void printPrefix() {
-    if (fileName!=null) {
-      System.err.print(fileName + ":");
-    }
-  }
-  private void printPrefix(String s) {
-    System.err.print(s + ":");
+  public static void setDiagnosticList(List<Diagnostic> l) {
+    diagnosticList.set(l);
   }
 
   // ******************************************************************
-  // printPrefix :
+  // report :
   //
-  // Prints "<filename>:<line num>: " where the line number has been
-  // extracted from the TNode if the filename is set or "<line num>: "
-  // otherwise
+  // Prints or keeps a diagnostic. Messages are printed on the standard
+  // output, their location being printed on the error output as the
+  // other diagnostics
   // ******************************************************************
-  @SuppressWarnings("unused")
-  private void printPrefix(TNode tn) {
-    printPrefix(tn,0);
+  private static void report(Diagnostic d) {
+    List<Diagnostic> l=diagnosticList.get();
+    if (l!=null) {
+      synchronized (l) {
+        l.add(d);
+      }
+    }
+    else if (d.getKind()==Diagnostic.KIND.MESSAGE) {
+      ThreadOutput.err().print(d.getLocation());
+      ThreadOutput.out().println(d.getMessage());
+    }
+    else {
+      ThreadOutput.err().println(d);
+    }
   }
-  private void printPrefix(TNode tn, int lineOffset) {
-    if (tn==null) {return;}
 
-    String s;
-    s=(String)tn.getSource();
-    if (s==null) {
-      printPrefix();
+
+  // ##################################################################
+  // Various error/warning/messages
+  // ##################################################################
+
+
+  // ******************************************************************
+  // getFileName :
+  //
+  // Returns the name of the file of AST node 'tn', which is the file
+  // name of the error manager if the node does not have any (null if
+  // there is no node)
+  // ******************************************************************
+  private String getFileName(TNode tn) {
+    if (tn==null) {
+      return null;
     }
-    else {
-      printPrefix(s);
+    String s=(String)tn.getSource();
+    return (s==null)?fileName:s;
+  }
+  private String getFileName(MyToken tn) {
+    if (tn==null) {
+      return null;
     }
-    System.err.print((tn.getLine()+lineOffset)+ ": ");
+    String s=(String)tn.getSource();
+    return (s==null)?fileName:s;
   }
 
+  // ******************************************************************
+  // getLine :
+  //
+  // Returns the line number of AST node 'tn', -1 if there is no node
+  // ******************************************************************
+  private static int getLine(TNode tn, int lineOffset) {
+    return (tn==null)?-1:(tn.getLine()+lineOffset);
+  }
 
 
   // ******************************************************************
@@ -216,8 +273,7 @@ public class CompilerError {
   }
   public void raiseMessage(int level, TNode tn, int lineOffset, String message) {
     if (verboseLevel>=level) {
-      printPrefix(tn,lineOffset);
-      System.out.println(message);
+      report(new Diagnostic(Diagnostic.KIND.MESSAGE,getFileName(tn),getLine(tn,lineOffset),message));
     }
   }
 
@@ -244,10 +300,13 @@ public class CompilerError {
   }
   public void raiseWarning(int level, TNode tn, int lineOffset, String message) {
     if (verboseLevel>=level) {
-      printPrefix(tn,lineOffset);
-      System.err.println("warning: " + message);
+      report(new Diagnostic(Diagnostic.KIND.WARNING,getFileName(tn),getLine(tn,lineOffset),message));
     }
   }
+  // For line 'line' of file 's', which are not an AST node
+  public void raiseWarning(String s, int line, String message) {
+    report(new Diagnostic(Diagnostic.KIND.WARNING,s,line,message));
+  }
 
 
   // ******************************************************************
@@ -257,14 +316,18 @@ public class CompilerError {
   // number is taken). Exit after 5 errors.
   // ******************************************************************
   public void raiseError(String message) {
-    raiseError(null,0,message);
+    raiseError((TNode)null,0,message);
   }
   public void raiseError(TNode tn, String message) {
     raiseError(tn,0,message);
   }
   public void raiseError(TNode tn, int lineOffset, String message) {
-    printPrefix(tn,lineOffset);
-    System.err.println("error: " + message);
+    report(new Diagnostic(Diagnostic.KIND.ERROR,getFileName(tn),getLine(tn,lineOffset),message));
+    addAnError();
+  }
+  // For line 'line' of file 's', which are not an AST node
+  public void raiseError(String s, int line, String message) {
+    report(new Diagnostic(Diagnostic.KIND.ERROR,s,line,message));
     addAnError();
   }
 
@@ -281,8 +344,7 @@ public class CompilerError {
     raiseFatalError(tn,0,message);
   }
   public void raiseFatalError(TNode tn, int lineOffset, String message) {
-    printPrefix(tn,lineOffset);
-    System.err.println("fatal error: " + message);
+    report(new Diagnostic(Diagnostic.KIND.FATAL_ERROR,getFileName(tn),getLine(tn,lineOffset),message));
     exitWithError();
   }
 
@@ -299,8 +361,7 @@ public class CompilerError {
     raiseInternalError(tn,0,message);
   }
   public void raiseInternalError(TNode tn, int lineOffset, String message) {
-    printPrefix(tn,lineOffset);
-    System.err.println("fatal error: " + message);
+    report(new Diagnostic(Diagnostic.KIND.FATAL_ERROR,getFileName(tn),getLine(tn,lineOffset),message));
     exitWithError();
   }
   
@@ -309,21 +370,6 @@ public class CompilerError {
   // Syntax error handling
   // ##################################################################
   
-  private void printPrefix(MyToken tn) {
-    if (tn==null) {return;}
-
-    String s;
-    s=(String)tn.getSource();
-    if (s==null) {
-      printPrefix();
-    }
-    else {
-      printPrefix(s);
-    }
-    System.err.print(tn.getLine()+ ": ");
-  }
-
-  
   // ******************************************************************
   // raiseSyntaxError :
   //
@@ -331,8 +377,7 @@ public class CompilerError {
   // error recovery
   // ******************************************************************
   public void raiseSyntaxError(MyToken tn, String message) {
-    printPrefix(tn);
-    System.err.println("syntax error: " + message);
+    report(new Diagnostic(Diagnostic.KIND.SYNTAX_ERROR,getFileName(tn),(tn==null)?-1:tn.getLine(),message));
     exitWithError();
   }
 
@@ -0,0 +1,92 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Message, warning or error raised by the compiler */
+
+package common;
+
+public class Diagnostic {
+  public enum KIND {
+    MESSAGE(""),
+    WARNING("warning: "),
+    ERROR("error: "),
+    FATAL_ERROR("fatal error: "),
+    SYNTAX_ERROR("syntax error: ");
+
+    private final String prefix;
+    KIND(String s) {
+      prefix=s;
+    }
+    public String getPrefix() {
+      return prefix;
+    }
+  };
+
+  private final KIND kind;
+  // Location, null file name and negative line when unknown
+  private final String fileName;
+  private final int line;
+  private final String message;
+
+  public Diagnostic(KIND k, String f, int l, String m) {
+    kind=k;
+    fileName=f;
+    line=l;
+    message=m;
+  }
+
+  public KIND getKind() {
+    return kind;
+  }
+  public String getFileName() {
+    return fileName;
+  }
+  public int getLine() {
+    return line;
+  }
+  public String getMessage() {
+    return message;
+  }
+
+  public boolean isError() {
+    return (kind!=KIND.MESSAGE) && (kind!=KIND.WARNING);
+  }
+
+  // Location as displayed before the message: "<file>:<line>: "
+  public String getLocation() {
+    StringBuffer sb=new StringBuffer();
+    if (fileName!=null) {
+      sb.append(fileName).append(':');
+    }
+    if (line>=0) {
+      sb.append(line).append(": ");
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getLocation()+kind.getPrefix()+message;
+  }
+
+}
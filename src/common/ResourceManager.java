@@ -37,6 +37,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 
 import utility.env.FileUtilities;
+import utility.thread.ThreadOutput;
 
 public class ResourceManager {
 
@@ -108,21 +109,49 @@ public class ResourceManager {
   public static void shutdown() {
       /* System.err.println("System shutdown"); */
 	  // Close all open streams
-	  for(Closeable c:getOpenStreams()) {
-		  try { c.close(); }
-		  catch (Exception e) {
-			  System.err.print("shutdown: could not close an open stream");
-		  }
-	  }
-	  getOpenStreams().clear();
+	  closeOpenStreams();
 	  
 	  // Delete temporary directories
 	  for(File tempDir:getTempDirList()) {
 		  if (!FileUtilities.recursiveDelete(tempDir)) {
-			  System.err.print("shutdown: could not delete temporary directory: "+tempDir.getPath());
+			  ThreadOutput.err().print("shutdown: could not delete temporary directory: "+tempDir.getPath());
 		  }
 	  }
 	  getTempDirList().clear();
   }
+
+  private static void closeOpenStreams() {
+	  for(Closeable c:getOpenStreams()) {
+		  try { c.close(); }
+		  catch (Exception e) {
+			  ThreadOutput.err().print("shutdown: could not close an open stream");
+		  }
+	  }
+	  getOpenStreams().clear();
+  }
+
+
+  //==================================================================
+  // Worker threads
+  //==================================================================
+
+  // A thread of a pool inherits the stream set of the thread which
+  // created it. Give the current worker its own set, temporary
+  // directories remaining the ones of the creating thread
+  public static void initWorkerThread() {
+    openStreams.set(new HashSet<Closeable>());
+  }
+
+  // Close the streams left open by the current worker
+  public static void shutdownWorkerThread() {
+    closeOpenStreams();
+  }
+
+  // Gives the current thread its own resources, for an independent
+  // compilation (released by shutdown)
+  public static void initThread() {
+    tempDirList.set(new LinkedList<File>());
+    openStreams.set(new HashSet<Closeable>());
+  }
   
 }
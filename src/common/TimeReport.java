@@ -0,0 +1,373 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* Measurement of the time spent in the compilation phases.
+
+   A report is attached to the thread running the compilation (and
+   inherited by its worker threads). Each phase records its wall time,
+   the CPU time and the bytes allocated by the thread running it, for
+   the input file being compiled by the thread and optionally for a
+   kernel. Phases are nested, a phase including its sub-phases. When no
+   report is active, measuring a phase does nothing.
+
+   The CPU time and the bytes allocated by the whole compilation are the
+   sum of the ones of the thread owning the report and of the work of
+   its worker threads (-j).
+*/
+
+package common;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+
+public class TimeReport {
+
+  //==================================================================
+  // Measurements
+  //==================================================================
+
+  private static class Record {
+    final String kernel;
+    final String phase;
+    final int depth;
+    long wallTime = 0;
+    long cpuTime = -1;
+    long allocatedBytes = -1;
+
+    Record(String k, String p, int d) {
+      kernel=k;
+      phase=p;
+      depth=d;
+    }
+  }
+
+  // Phase being measured
+  public static class Phase {
+    private final Record record;
+    private final long startWallTime;
+    private final long startCpuTime;
+    private final long startAllocatedBytes;
+
+    private Phase(Record r) {
+      record=r;
+      startWallTime=System.nanoTime();
+      startCpuTime=getCpuTime();
+      startAllocatedBytes=getAllocatedBytes();
+    }
+
+    private void finish() {
+      long cpuTime=getCpuTime();
+      long allocatedBytes=getAllocatedBytes();
+      record.wallTime=System.nanoTime()-startWallTime;
+      if ((cpuTime>=0)&&(startCpuTime>=0)) {
+        record.cpuTime=cpuTime-startCpuTime;
+      }
+      if ((allocatedBytes>=0)&&(startAllocatedBytes>=0)) {
+        record.allocatedBytes=allocatedBytes-startAllocatedBytes;
+      }
+    }
+  }
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  // Allocation counter of the HotSpot JVM, not part of the standard API
+  private static final Method allocatedBytesMethod;
+  static {
+    Method m=null;
+    try {
+      Class<?> c=Class.forName("com.sun.management.ThreadMXBean");
+      if (c.isInstance(threadBean)) {
+        m=c.getMethod("getThreadAllocatedBytes",long.class);
+      }
+    }
+    catch (Exception e) {
+      // Not available
+    }
+    allocatedBytesMethod=m;
+  }
+
+  private static long getCpuTime() {
+    if (threadBean.isCurrentThreadCpuTimeSupported()) {
+      return threadBean.getCurrentThreadCpuTime();
+    }
+    return -1;
+  }
+
+  private static long getAllocatedBytes() {
+    if (allocatedBytesMethod!=null) {
+      try {
+        return (Long)allocatedBytesMethod.invoke(threadBean,Thread.currentThread().getId());
+      }
+      catch (Exception e) {
+        // Not available
+      }
+    }
+    return -1;
+  }
+
+
+  //==================================================================
+  // Report
+  //==================================================================
+
+  // Records per input file (null for the phases not related to a file)
+  private final Map<String,LinkedList<Record>> recordMap = new LinkedHashMap<String,LinkedList<Record>>();
+  // Whole compilation, as measured by the thread owning the report
+  private final Phase total = new Phase(new Record(null,"total",0));
+  // Work of the worker threads, added to the whole compilation
+  private long workerCpuTime = 0;
+  private long workerAllocatedBytes = 0;
+
+  private static InheritableThreadLocal<TimeReport> currentReport = new InheritableThreadLocal<TimeReport>();
+  private static InheritableThreadLocal<String> currentFile = new InheritableThreadLocal<String>();
+  private static ThreadLocal<int[]> currentDepth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private TimeReport() {
+    recordMap.put(null,new LinkedList<Record>());
+  }
+
+  // Attaches a new report to the current thread
+  public static void begin() {
+    currentReport.set(new TimeReport());
+    currentFile.set(null);
+  }
+
+  // Detaches the report of the current thread and returns it
+  public static TimeReport end() {
+    TimeReport r=currentReport.get();
+    if (r!=null) {
+      r.total.finish();
+      synchronized(r) {
+        r.total.record.cpuTime=sum(r.total.record.cpuTime,r.workerCpuTime);
+        r.total.record.allocatedBytes=sum(r.total.record.allocatedBytes,r.workerAllocatedBytes);
+      }
+    }
+    currentReport.set(null);
+    currentFile.set(null);
+    return r;
+  }
+
+  public static boolean isActive() {
+    return currentReport.get()!=null;
+  }
+
+  // Declares an input file, files being reported in the order of their
+  // declaration
+  public static void addFile(String file) {
+    TimeReport r=currentReport.get();
+    if (r!=null) {
+      synchronized(r) {
+        if (!r.recordMap.containsKey(file)) {
+          r.recordMap.put(file,new LinkedList<Record>());
+        }
+      }
+    }
+  }
+
+  // Sets the input file compiled by the current thread (null when the
+  // phases are not related to a single file)
+  public static void setCurrentFile(String file) {
+    addFile(file);
+    currentFile.set(file);
+    // Phases interrupted by an error are never stopped
+    currentDepth.get()[0]=0;
+  }
+
+
+  //==================================================================
+  // Phases
+  //==================================================================
+
+  // Starts the measurement of a phase. Returns null if no report is
+  // active
+  public static Phase start(String phase) {
+    return start(phase,null);
+  }
+  public static Phase start(String phase, String kernel) {
+    TimeReport r=currentReport.get();
+    if (r==null) {
+      return null;
+    }
+    Record record=new Record(kernel,phase,currentDepth.get()[0]++);
+    synchronized(r) {
+      String file=currentFile.get();
+      if (!r.recordMap.containsKey(file)) {
+        r.recordMap.put(file,new LinkedList<Record>());
+      }
+      r.recordMap.get(file).add(record);
+    }
+    return new Phase(record);
+  }
+
+  // Stops the measurement of a phase started by the current thread
+  public static void stop(Phase p) {
+    if (p==null) {
+      return;
+    }
+    p.finish();
+    currentDepth.get()[0]--;
+  }
+
+  // Starts the measurement of the work of a worker thread. Returns null
+  // if no report is active
+  public static Phase startWorker() {
+    if (currentReport.get()==null) {
+      return null;
+    }
+    return new Phase(new Record(null,"worker",0));
+  }
+
+  // Stops the measurement of the work of a worker thread and adds it to
+  // the whole compilation
+  public static void stopWorker(Phase p) {
+    TimeReport r=currentReport.get();
+    if ((p==null)||(r==null)) {
+      return;
+    }
+    p.finish();
+    synchronized(r) {
+      r.workerCpuTime=sum(r.workerCpuTime,p.record.cpuTime);
+      r.workerAllocatedBytes=sum(r.workerAllocatedBytes,p.record.allocatedBytes);
+    }
+  }
+
+  // Sum of two measurements, unavailable if one of them is
+  private static long sum(long a, long b) {
+    return ((a<0)||(b<0))?-1:a+b;
+  }
+
+
+  //==================================================================
+  // Printing
+  //==================================================================
+
+  private static String formatTime(long t) {
+    return (t<0)?"n/a":String.format(Locale.US,"%.3f",t/1e6);
+  }
+
+  private static String formatBytes(long b) {
+    return (b<0)?"n/a":String.valueOf((b+1023)/1024);
+  }
+
+  private static String getName(Record record) {
+    StringBuffer sb=new StringBuffer();
+    for(int i=0;i<record.depth;i++) {
+      sb.append("  ");
+    }
+    sb.append(record.phase);
+    if (record.kernel!=null) {
+      sb.append(" [").append(record.kernel).append("]");
+    }
+    return sb.toString();
+  }
+
+  // Human readable report
+  public synchronized void print(PrintStream ps) {
+    String format="%-48s %12s %12s %14s%n";
+    ps.println("-----------------------------------------------------------------------------------------");
+    ps.println("Time report");
+    ps.format(Locale.US,format,"phase","wall (ms)","cpu (ms)","alloc (KB)");
+    ps.format(Locale.US,format,getName(total.record),formatTime(total.record.wallTime),
+        formatTime(total.record.cpuTime),formatBytes(total.record.allocatedBytes));
+    for(Map.Entry<String,LinkedList<Record>> entry:recordMap.entrySet()) {
+      String indent="";
+      if (entry.getKey()!=null) {
+        if (entry.getValue().isEmpty()) {
+          continue;
+        }
+        ps.println("file '"+entry.getKey()+"'");
+        indent="  ";
+      }
+      for(Record record:entry.getValue()) {
+        ps.format(Locale.US,format,indent+getName(record),formatTime(record.wallTime),
+            formatTime(record.cpuTime),formatBytes(record.allocatedBytes));
+      }
+    }
+    ps.println("-----------------------------------------------------------------------------------------");
+  }
+
+  private static String quote(String s) {
+    if (s==null) {
+      return "null";
+    }
+    StringBuffer sb=new StringBuffer("\"");
+    for(char c:s.toCharArray()) {
+      if ((c=='"')||(c=='\\')) {
+        sb.append('\\').append(c);
+      }
+      else if (c<0x20) {
+        sb.append(String.format("\\u%04x",(int)c));
+      }
+      else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static String toJson(String file, Record record) {
+    return "{\"file\": "+quote(file)
+        +", \"kernel\": "+quote(record.kernel)
+        +", \"phase\": "+quote(record.phase)
+        +", \"depth\": "+record.depth
+        +", \"wall_ns\": "+record.wallTime
+        +", \"cpu_ns\": "+((record.cpuTime<0)?"null":String.valueOf(record.cpuTime))
+        +", \"allocated_bytes\": "+((record.allocatedBytes<0)?"null":String.valueOf(record.allocatedBytes))
+        +"}";
+  }
+
+  // JSON report: the whole compilation and the list of phases in the
+  // order they started. Times are in nanoseconds, unavailable
+  // measurements are null
+  public synchronized void printJson(PrintStream ps) {
+    ps.println("{");
+    ps.println("  \"total\": "+toJson(null,total.record)+",");
+    ps.println("  \"phases\": [");
+    boolean first=true;
+    for(Map.Entry<String,LinkedList<Record>> entry:recordMap.entrySet()) {
+      for(Record record:entry.getValue()) {
+        if (!first) {
+          ps.println(",");
+        }
+        first=false;
+        ps.print("    "+toJson(entry.getKey(),record));
+      }
+    }
+    if (!first) {
+      ps.println();
+    }
+    ps.println("  ]");
+    ps.println("}");
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+
+/* Cache of compilations on disk.
+
+   An entry is a directory named after a hash of everything the
+   generated code depends on: the preprocessed program, the program
+   name, the general and code generation options, the target device
+   configuration and the compiler build. It contains the generated files
+   and the messages displayed during the compilation, so that restoring
+   an entry has the same visible effect as compiling the program.
+
+   Entries are created in a temporary directory renamed once complete,
+   so that concurrent compilations sharing the cache never see partial
+   entries.
+*/
+
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.UUID;
+
+import common.CompilerError;
+import driver.options.CodegenOptions;
+import driver.options.DriverOptions;
+import driver.options.GeneralOptions;
+import utility.env.FileUtilities;
+import utility.thread.ThreadOutput;
+
+public class CompileCache {
+
+  // File of an entry keeping the messages of the compilation
+  private static final String MESSAGE_FILE_NAME = "kgcache.messages";
+
+  // Identification of the compiler build, computed once
+  private static String buildStamp = null;
+
+  private final File cacheDir;
+
+
+  //==================================================================
+  // Building
+  //==================================================================
+
+  private CompileCache(File dir) {
+    cacheDir=dir;
+  }
+
+  // Returns the cache of the current compilation, or null if it is not
+  // enabled or not applicable. Debug messages show the internals of the
+  // compilation, so that they disable the cache
+  public static CompileCache getCache() {
+    String dirName=DriverOptions.getCacheDir();
+    if ((dirName==null) ||
+        (DriverOptions.getStopStage()!=DriverHelper.STAGE.C2C) ||
+        DriverOptions.getNoEmit() ||
+        (GeneralOptions.getDebugLevel()>0)) {
+      return null;
+    }
+    File dir=new File(dirName);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      CompilerError.GLOBAL.raiseWarning("can not create the cache directory '"
+          + dir.getPath() + "', the cache is disabled");
+      return null;
+    }
+    return new CompileCache(dir);
+  }
+
+
+  //==================================================================
+  // Key
+  //==================================================================
+
+  // Compiler version, and the date of the compiler classes so that a
+  // rebuilt compiler does not reuse entries of the previous build
+  private static synchronized String getBuildStamp() {
+    if (buildStamp==null) {
+      StringBuffer sb=new StringBuffer();
+      sb.append(KernelGenius.versionMajor).append('.').append(KernelGenius.versionMinor)
+      .append('.').append(KernelGenius.versionSubMinor);
+      try {
+        File codeSource=new File(KernelGenius.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        sb.append(':').append(getLastModified(codeSource));
+      }
+      catch (Exception e) {
+        // Version only
+      }
+      buildStamp=sb.toString();
+    }
+    return buildStamp;
+  }
+
+  private static long getLastModified(File f) {
+    long date=f.lastModified();
+    File[] children=f.listFiles();
+    if (children!=null) {
+      for(File child:children) {
+        date=Math.max(date,getLastModified(child));
+      }
+    }
+    return date;
+  }
+
+  private static void update(MessageDigest md, byte[] b) {
+    int l=b.length;
+    md.update(new byte[]{(byte)(l>>>24),(byte)(l>>>16),(byte)(l>>>8),(byte)l});
+    md.update(b);
+  }
+
+  private static byte[] readFile(File f) throws IOException {
+    byte[] b=new byte[(int)f.length()];
+    DataInputStream dis=new DataInputStream(new FileInputStream(f));
+    try {
+      dis.readFully(b);
+    }
+    finally {
+      dis.close();
+    }
+    return b;
+  }
+
+  // Computes the key of the compilation of preprocessed file 'ikgFile'
+  // into program 'programName'. The content of the file is 'ikgText'
+  // when it was preprocessed in memory. Returns null if it can not be
+  // computed
+  public String computeKey(File ikgFile, String ikgText, String programName, File targetFile) {
+    try {
+      MessageDigest md=MessageDigest.getInstance("SHA-1");
+      update(md,getBuildStamp().getBytes("UTF-8"));
+      update(md,programName.getBytes("UTF-8"));
+      update(md,GeneralOptions.getSignature().getBytes("UTF-8"));
+      update(md,CodegenOptions.getSignature().getBytes("UTF-8"));
+      update(md,readFile(targetFile));
+      update(md,(ikgText!=null)?ikgText.getBytes():readFile(ikgFile));
+
+      StringBuffer sb=new StringBuffer();
+      for(byte x:md.digest()) {
+        sb.append(Integer.toHexString((x&0xff)|0x100).substring(1));
+      }
+      return sb.toString();
+    }
+    catch (Exception e) {
+      CompilerError.GLOBAL.raiseWarning("can not compute the cache key of '"
+          + ikgFile.getPath() + "': " + e.getMessage());
+      return null;
+    }
+  }
+
+
+  //==================================================================
+  // Lookup
+  //==================================================================
+
+  // Copies the generated files of entry 'key' to the output directory
+  // and displays the messages of the compilation. Output files which
+  // already have the right content are not rewritten, so that their
+  // date does not change. Returns false if the entry does not exist
+  public boolean restore(String key, String outputDirectoryName) {
+    File entry=new File(cacheDir,key);
+    File messageFile=new File(entry,MESSAGE_FILE_NAME);
+    if (!messageFile.isFile()) {
+      return false;
+    }
+
+    ThreadOutput.Capture capture;
+    try {
+      DataInputStream dis=new DataInputStream(new BufferedInputStream(new FileInputStream(messageFile)));
+      try {
+        capture=ThreadOutput.Capture.load(dis);
+      }
+      finally {
+        dis.close();
+      }
+      File[] fileArray=entry.listFiles();
+      Arrays.sort(fileArray);
+      for(File file:fileArray) {
+        if (!file.getName().equals(MESSAGE_FILE_NAME)) {
+          FileUtilities.copyIfDifferent(file,new File(outputDirectoryName,file.getName()));
+        }
+      }
+    }
+    catch (Exception e) {
+      CompilerError.GLOBAL.raiseWarning("can not restore cache entry '"
+          + entry.getPath() + "', compiling");
+      return false;
+    }
+
+    ThreadOutput.replay(capture);
+    return true;
+  }
+
+
+  //==================================================================
+  // Storage
+  //==================================================================
+
+  // Creates entry 'key' from the generated files and the messages of
+  // the compilation. Failing to create it is not an error
+  public void store(String key, LinkedList<File> generatedFiles, ThreadOutput.Capture capture) {
+    File entry=new File(cacheDir,key);
+    if (entry.exists()) {
+      return;
+    }
+    File tempEntry=new File(cacheDir,key+"."+UUID.randomUUID().toString()+".tmp");
+    try {
+      if (!tempEntry.mkdir()) {
+        throw new IOException();
+      }
+      for(File file:generatedFiles) {
+        FileUtilities.copy(file,new File(tempEntry,file.getName()));
+      }
+      DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(new File(tempEntry,MESSAGE_FILE_NAME))));
+      try {
+        capture.save(dos);
+      }
+      finally {
+        dos.close();
+      }
+      if (tempEntry.renameTo(entry)) {
+        return;
+      }
+      // Entry created concurrently
+    }
+    catch (Exception e) {
+      CompilerError.GLOBAL.raiseWarning("can not create cache entry '"
+          + entry.getPath() + "'");
+    }
+    FileUtilities.recursiveDelete(tempEntry);
+  }
+
+}
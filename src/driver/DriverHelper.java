@@ -31,9 +31,12 @@ import utility.env.OSUtil;
 import utility.thread.ExecHelper;
 
 import java.util.LinkedList;
+import java.util.Map;
 import java.io.File;
 
 import driver.options.GeneralOptions;
+import preprocessor.Preprocessor;
+import utility.thread.ThreadOutput;
 
 
 public abstract class DriverHelper {
@@ -286,6 +289,92 @@ public abstract class DriverHelper {
 
 
 
+  // ******************************************************************
+  // * runEmbeddedPreprocessor :                                      *
+  // *                                                                *
+  // * Preprocesses files within the compiler. The preprocessed text  *
+  // * of each output file is put in 'outputTextMap', output files    *
+  // * are not written.                                               *
+  // *                                                                *
+  // ******************************************************************
+  static public LinkedList<File> runEmbeddedPreprocessor(LinkedList<File> inputFileList, String inputExt,
+      String outputExt, File outDir,
+      LinkedList<String> optionList,
+      LinkedList<String> additionalOptionList,
+      Map<File,String> outputTextMap
+      ) {
+
+    // Generated files
+    LinkedList<File> outputFileList=new LinkedList<File>();
+
+    LinkedList<String> allOptionList=new LinkedList<String>(optionList);
+    if (additionalOptionList!=null) {
+      allOptionList.addAll(additionalOptionList);
+    }
+
+    if (GeneralOptions.getDebugLevel() > 0) {
+      StringBuffer sb=new StringBuffer();
+      boolean flag=false;
+      sb.append("  ... Preprocessing [");
+      for(File file: inputFileList) {
+        if (flag) sb.append(" ");
+        sb.append(file.getName());
+        flag=true;
+      }
+      sb.append("]");
+      CompilerError.GLOBAL.raiseMessage(sb.toString());
+      sb=new StringBuffer();
+      sb.append("   -> embedded preprocessor");
+      for(String s: allOptionList) {
+        sb.append(" ");
+        sb.append(s);
+      }
+      CompilerError.GLOBAL.raiseMessage(sb.toString());
+    }
+
+    boolean firstFile=true;
+    for (File fileToProcess:inputFileList) {
+      // Create the output file
+      String input_name=fileToProcess.getName();
+      File outputTempFile=new File(outDir.getPath()+"/"+input_name.substring(0,input_name.length()-inputExt.length()) + outputExt);
+      outputFileList.add(outputTempFile);
+
+      // Each file is a separate translation unit
+      Preprocessor pp=new Preprocessor();
+      for(String option:allOptionList) {
+        if (!pp.addOption(option) && firstFile) {
+          CompilerError.GLOBAL.raiseWarning("option '"+option+"' ignored by the embedded preprocessor");
+        }
+      }
+      firstFile=false;
+
+      String text=pp.preprocess(fileToProcess);
+      if (text==null) {
+        CompilerError.exitWithError(1);
+      }
+      outputTextMap.put(outputTempFile,text);
+    }
+
+    // Verbosing
+    if (GeneralOptions.getDebugLevel() > 0) {
+      StringBuffer sb=new StringBuffer();
+      boolean flag=false;
+      sb.append("  ... generating [");
+      for(File file: outputFileList) {
+        if (flag) sb.append(" ");
+        sb.append(file.getName());
+        flag=true;
+      }
+      sb.append("] in memory");
+      CompilerError.GLOBAL.raiseMessage(sb.toString());
+    }
+
+    // Returns the list of generated files
+    return outputFileList;
+  }
+
+
+
   // ******************************************************************
   // * runBackendCompilerAsProcess                                    *
   // *                                                                *
@@ -408,14 +497,14 @@ public abstract class DriverHelper {
   //------------------------------------------------------------------
   
   public static void print(Object o, File file, String message) {
-    System.out.println("FILE '" + file.getName() + "'" + message);
-    System.out.print("-------");
+    ThreadOutput.out().println("FILE '" + file.getName() + "'" + message);
+    ThreadOutput.out().print("-------");
     for (int j = 0; j < (file.getName().length() + message.length()); j++) {
-      System.out.print("-");
+      ThreadOutput.out().print("-");
     }
-    System.out.println();
-    System.out.println(o.toString());
-    System.out.flush();
+    ThreadOutput.out().println();
+    ThreadOutput.out().println(o.toString());
+    ThreadOutput.out().flush();
   }
 
 
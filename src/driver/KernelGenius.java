@@ -31,6 +31,9 @@ import codegen.OpenCL.Generator;
 import common.CompilerError;
 import common.CompilerExit;
 import common.ResourceManager;
+import common.TimeReport;
+import ir.algorithms.Filter;
+import ir.base.FunctionNode;
 import ir.base.Kernel;
 import ir.base.Program;
 import driver.options.GeneralOptions;
@@ -38,12 +41,26 @@ import driver.options.DriverOptions;
 import driver.options.CodegenOptions;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import parser.DeviceParser;
 import parser.ProgramParser;
+import target.ComputeDevice;
 import utility.antlr.antlrHelper;
+import utility.thread.ThreadOutput;
 
 
 public class KernelGenius {
@@ -55,6 +72,10 @@ public class KernelGenius {
   //--------------------
   LinkedList<File> inputFileList = new LinkedList<File>();
 
+  // Text of the files preprocessed in memory by the embedded
+  // preprocessor, until they are parsed
+  Map<File,String> preprocessedTextMap = new ConcurrentHashMap<File,String>();
+
   
   // Version
   static public int versionMajor = 1;
@@ -78,6 +99,8 @@ public class KernelGenius {
     CompilerError.GLOBAL.raiseMessage(
         "General options:\n" +
             "  -v                : display compiler version\n" +
+            "  --server          : run a compilation server to which next kgenc commands are forwarded\n" +
+            "  --stop_server     : stop the running compilation server\n" +
             "  --help            : help"
         );
     GeneralOptions.printHelp();
@@ -134,22 +157,10 @@ public class KernelGenius {
   private void processOptions(String[] args) {
     for (int i=0; i<args.length; i++) {
 
-      // General options
-      int nb_general=GeneralOptions.parseOptions(args,i);
-      if (nb_general!=0) {
-        i+=nb_general-1;
-        continue;
-      }
-      // Driver options
-      int nb_driver=DriverOptions.parseOptions(args,i);
-      if (nb_driver!=0) {
-        i+=nb_driver-1;
-        continue;
-      }
-     // Code generation options
-      int nb_codegen=CodegenOptions.parseOptions(args,i);
-      if (nb_codegen!=0) {
-        i+=nb_codegen-1;
+      // Compiler options
+      int nb=parseCompilerOption(args,i);
+      if (nb!=0) {
+        i+=nb-1;
         continue;
       }
  
@@ -200,12 +211,6 @@ public class KernelGenius {
       raiseError("cannot specify -o with multiple files");
     }
 
-    // By default, we stop at the C2C stage
-    if (DriverOptions.getStopStage()==DriverHelper.STAGE.NO) {
-      DriverOptions.setStopStage(DriverHelper.STAGE.C2C);
-    }
-    
-    
     // Code generation options
     // -----------------------
     
@@ -217,6 +222,42 @@ public class KernelGenius {
       CompilerError.GLOBAL. 
       raiseError("No target language defined");
     }
+
+    setDefaultOptions();
+  }
+
+
+  // ******************************************************************
+  //  parseCompilerOption:
+  //
+  //  Parses the general, driver or code generation option at index 'i'
+  //  of 'args'. Returns the number of arguments of the option, 0 if it
+  //  is not one of these options
+  // 
+  // ******************************************************************
+  static int parseCompilerOption(String[] args, int i) {
+    int nb=GeneralOptions.parseOptions(args,i);
+    if (nb==0) {
+      nb=DriverOptions.parseOptions(args,i);
+    }
+    if (nb==0) {
+      nb=CodegenOptions.parseOptions(args,i);
+    }
+    return nb;
+  }
+
+
+  // ******************************************************************
+  //  setDefaultOptions:
+  //
+  //  Sets the default value of options not set by the command line
+  // 
+  // ******************************************************************
+  static void setDefaultOptions() {
+    // By default, we stop at the C2C stage
+    if (DriverOptions.getStopStage()==DriverHelper.STAGE.NO) {
+      DriverOptions.setStopStage(DriverHelper.STAGE.C2C);
+    }
     
     // Kernel Granularity
     if (CodegenOptions.getKernelGranularityMode()==null) {
@@ -247,6 +288,13 @@ public class KernelGenius {
 
   // For execution from external shell
   public static void main(String[] args) {
+    // Compilation server
+    for (String arg:args) {
+      if (arg.equals("--server")) {
+        System.exit(new KernelGeniusServer(KernelGeniusServer.getServerFile()).run());
+      }
+    }
+
     // Hooking the termination in case the code stops with a System.exit() call
     /*    Runtime.getRuntime().addShutdownHook(new Thread() {
       @Override
@@ -289,6 +337,33 @@ public class KernelGenius {
     processOptions(args);
     CompilerError.GLOBAL.exitIfError();
 
+    //==================================================================
+    //  Compilation, optionally measuring the time spent in phases
+    //==================================================================
+    if (!DriverOptions.getTimeReport() && (DriverOptions.getTimeReportJsonFileName()==null)) {
+      compile();
+      return;
+    }
+    TimeReport.begin();
+    try {
+      for (File file:inputFileList) {
+        TimeReport.addFile(file.getPath());
+      }
+      compile();
+    }
+    finally {
+      // The report is printed even when the compilation fails
+      printTimeReport(TimeReport.end());
+    }
+    CompilerError.GLOBAL.exitIfError();
+  } // main()
+
+
+  // ===================================================================
+  // Compilation of the input files
+  // ===================================================================
+
+  private void compile() {
     //==================================================================
     // Check for correct input files
     //==================================================================
@@ -328,15 +403,10 @@ public class KernelGenius {
     // ==================================================================
 
     // Parse the device information
-    String confFilename=DriverOptions.getInstallDir()+"/targets/"+CodegenOptions.getTargetDeviceName()+".cfg";
-    File fileToParse=new File(confFilename);
-    DeviceParser dp=new DeviceParser(GeneralOptions.getVerboseLevel(),fileToParse); 
-    if (GeneralOptions.getDebugLevel() > 0) {
-      CompilerError.GLOBAL.raiseMessage("   -> parsing target device configuration file '"
-          + fileToParse.getName() + "'");
-    }   
-    dp.parse();
-    CodegenOptions.setTargetDevice(dp.getDevice());
+    File fileToParse=getTargetConfigurationFile();
+    TimeReport.Phase phase=TimeReport.start("target configuration");
+    CodegenOptions.setTargetDevice(parseTargetDevice(fileToParse));
+    TimeReport.stop(phase);
     if (GeneralOptions.getDebugLevel() > 2) {
       DriverHelper.print(CodegenOptions.getTargetDevice(), fileToParse, ": target device");
     }
@@ -362,30 +432,52 @@ public class KernelGenius {
       }       
     }
 
-    
+
     //==================================================================
-    // Preprocessing
+    // Parallel compilation: each file goes through the whole
+    // compilation flow in a worker thread
     //==================================================================
 
-    if (!kgFileList.isEmpty()) {
+    if ((DriverOptions.getNbJobs()>1)&&(inputFileList.size()>1)) {
+      compileInParallel(inputFileList,tempDir);
+      return;
+    }
 
-      LinkedList<File> kgPreprocOutputFileList;
-      kgPreprocOutputFileList=DriverHelper.runPreprocessor(kgFileList,"kg","ikg",tempDir,
-          DriverOptions.getPreprocessorTool(),
-          DriverOptions.getPreprocessorOptionList(),
-          additionalPreprocessingOptions
-          );
+    //==================================================================
+    // Cached or multi-file compilation: files are compiled one after the
+    // other through the whole flow, with the per-program state of the IR
+    // reset for each file, so that the generated code of a file does not
+    // depend on the other files of the command line nor on '-j'
+    //==================================================================
 
-      // Copy back temporary files
-      try {
-        DriverHelper.copyBackTempFiles(DriverHelper.STAGE.PREPROC, DriverOptions.getStopStage(), DriverOptions.getKeepIntermediateFiles(),
-            kgPreprocOutputFileList, null,
-            null, DriverOptions.getOutputDirectoryName());
-      } catch (Exception e) {
-        CompilerError.GLOBAL.raiseFatalError("Can not copy back temporary file to "+DriverOptions.getOutputDirectoryName());
+    if ((CompileCache.getCache()!=null)||(inputFileList.size()>1)) {
+      for (File file:inputFileList) {
+        int status=compileFile(file,tempDir);
+        if (status!=0) {
+          throw new CompilerExit(status);
+        }
       }
+      return;
+    }
+
+    
+    //==================================================================
+    // Preprocessing
+    //==================================================================
 
+    // Input file of each preprocessed file, for the time report
+    HashMap<File,String> inputFileMap=new HashMap<File,String>();
+    for (File file:ikgFileList) {
+      inputFileMap.put(file,file.getPath());
+    }
+
+    if (!kgFileList.isEmpty()) {
       // Add the temporary files to the existing ikg file list
+      TimeReport.setCurrentFile((kgFileList.size()==1)?kgFileList.getFirst().getPath():null);
+      LinkedList<File> kgPreprocOutputFileList=preprocess(kgFileList,tempDir);
+      for(int i=0;i<kgFileList.size();i++) {
+        inputFileMap.put(kgPreprocOutputFileList.get(i),kgFileList.get(i).getPath());
+      }
       ikgFileList.addAll(kgPreprocOutputFileList);
     }
 
@@ -400,35 +492,12 @@ public class KernelGenius {
     if ((!ikgFileList.isEmpty())&&(DriverOptions.getStopStage()!=DriverHelper.STAGE.PREPROC)) {
 
       for (File fileToProcess : ikgFileList) { 
-        // Check for correct input file
-        if (!DriverHelper.checkInputFile(fileToProcess)) {
-          continue;
+        TimeReport.setCurrentFile(inputFileMap.get(fileToProcess));
+        ProgramParser mp=parse(fileToProcess);
+        if (mp!=null) {
+          // Keep the parser for later work in the compiler
+          parserList.add(mp);
         }
-
-        String programName=DriverOptions.getOutputFileName();
-        if (programName==null) {
-          // Take the file name radix as default
-          String fileName=fileToProcess.getName();  
-          programName=fileName.substring(0,fileName.length()-".ikg".length());   
-        }
-        ProgramParser mp=new ProgramParser(GeneralOptions.getVerboseLevel(),fileToProcess,programName);
-
-        if (GeneralOptions.getDebugLevel() > 0) {
-          CompilerError.GLOBAL.raiseMessage("   -> parsing input file '"
-              + fileToProcess.getName() + "'");
-        }   
-        try {
-          mp.parse();
-        } catch (Exception e) {
-          mp.getCompilerError().raiseMessage(e.getMessage());
-          mp.getCompilerError().raiseFatalError("parse Error, stopping the compilation process");
-        }
-
-        // We do not continue if some errors occurred and are still pending
-        mp.getCompilerError().exitIfError();
-
-        // Keep the parser for later work in the compiler
-        parserList.add(mp);
       } // for ikgFileList
 
       
@@ -437,49 +506,16 @@ public class KernelGenius {
       // ==================================================================
      
       for(ProgramParser mp:parserList) {
-        Program prog=mp.getProgram();
-        CompilerError ce=mp.getCompilerError();
-
-        // Check for program correctness
-         prog.completeAndCheck(ce);   
-
-        // Optionally print the IR
-        if (GeneralOptions.getDebugLevel() > 2) {
-          System.out.println("============================================================================");
-          DriverHelper.print(mp.getProgram(), mp.getInputFile(), ": IR");
-          System.out.println();
-          DriverHelper.print(mp.getSymbolTable(),mp.getInputFile(),": Symbol Table");
-
-          if (GeneralOptions.getDebugLevel() > 3) {
-            System.out.println();
-            System.out.println("Abstract Syntax Tree");
-            antlrHelper.printTree(mp.getAST(),0);
-          }
-          System.out.println("============================================================================");
-        }
-
-        // We do not continue if some errors occurred and are still pending
-        ce.exitIfError();       
+        TimeReport.setCurrentFile(inputFileMap.get(mp.getInputFile()));
+        check(mp);
       }
       
       // ==================================================================
       // Performs optimizations
       // ==================================================================
       for(ProgramParser mp:parserList) {
-        Program prog=mp.getProgram();
-        CompilerError ce=mp.getCompilerError();
-        
-        if (GeneralOptions.getDebugLevel() > 0) {
-          CompilerError.GLOBAL.raiseMessage("   -> Optimizing program '"+prog.getName()+"'");
-        }
-
-        for(int i=0;i<prog.getNbKernels();i++) {
-          Kernel k=prog.getKernel(i);
-          k.optimize(ce);
-        }
-        
-        // We do not continue if some errors occurred and are still pending
-        ce.exitIfError();
+        TimeReport.setCurrentFile(inputFileMap.get(mp.getInputFile()));
+        optimize(mp);
       }
 
       // ==================================================================
@@ -488,21 +524,8 @@ public class KernelGenius {
 
       // Compute data access pattern for kernel data
       for(ProgramParser mp:parserList) {
-        Program prog=mp.getProgram();
-        CompilerError ce=mp.getCompilerError();
-
-        if (GeneralOptions.getDebugLevel() > 0) {
-          CompilerError.GLOBAL.raiseMessage("   -> Analyzing program '"+prog.getName()+"'");
-        }
-
-        // Kernel Analyze
-        for(int i=0;i<prog.getNbKernels();i++) {
-          Kernel k=prog.getKernel(i);
-          k.analyze(ce);
-        }
-
-        // We do not continue if some errors occurred and are still pending
-        ce.exitIfError();
+        TimeReport.setCurrentFile(inputFileMap.get(mp.getInputFile()));
+        analyze(mp);
       }
 
       
@@ -513,48 +536,467 @@ public class KernelGenius {
       if (!DriverOptions.getNoEmit()) {
         // Generate the OpenCL code for programs
         for(ProgramParser mp:parserList) {
-          final LinkedList<File> generatedFiles= new LinkedList<File>();
-          
-          CodeGenerator gen=Generator.getNewGeneratorFromName(CodegenOptions.getTargetLanguage(),CompilerError.GLOBAL);
-         // Generate Report if needed
-          if (CodegenOptions.getReportGeneration()) {
-            gen.generateReport(mp.getProgram(), System.out);
-          }
-          // Generate output files in the temporary directory
-          gen.generate(mp.getProgram(),generatedFiles,tempDir);
-
-          // Copy back files
-          try {
-            DriverHelper.copyBackTempFiles(DriverHelper.STAGE.C2C, 
-                DriverOptions.getStopStage(), DriverOptions.getKeepIntermediateFiles(),
-                generatedFiles, null,
-                null, DriverOptions.getOutputDirectoryName());
-          } catch (Exception e) {
-            CompilerError.GLOBAL.raiseFatalError("Can not copy back temporary file to "+DriverOptions.getOutputDirectoryName());
-          }
-
+          TimeReport.setCurrentFile(inputFileMap.get(mp.getInputFile()));
+          emit(mp);
         }
       }
 
       // Some verbosing
       if (GeneralOptions.getDebugLevel() > 1) {
         for(ProgramParser mp:parserList) {
-          Program prog=mp.getProgram();
-          CompilerError.GLOBAL.raiseMessage("-----------------------------------------------------------");
-          CompilerError.GLOBAL.raiseMessage("Tiling Analysis report for program '"+prog.getName()+"'");
-          for(int i=0;i<prog.getNbKernels();i++) {
-            Kernel k=prog.getKernel(i);
-            if (GeneralOptions.getDebugLevel() > 1) {
-              k.generateTilingReport();
-            }
-          }
-          CompilerError.GLOBAL.raiseMessage("-----------------------------------------------------------");
+          generateTilingReport(mp);
         }
       }
 
     } // if (optionStage!=STAGE.PREPROC)
 
-  } // main()
+  } // compile()
+
+
+  // ===================================================================
+  // Time report
+  // ===================================================================
+
+  private void printTimeReport(TimeReport report) {
+    if (DriverOptions.getTimeReport()) {
+      report.print(ThreadOutput.out());
+    }
+    String jsonFileName=DriverOptions.getTimeReportJsonFileName();
+    if (jsonFileName!=null) {
+      try {
+        PrintStream ps=new PrintStream(new File(jsonFileName));
+        report.printJson(ps);
+        ps.close();
+      }
+      catch (FileNotFoundException e) {
+        CompilerError.GLOBAL.raiseError("can not write the time report to '"+jsonFileName+"'");
+      }
+    }
+  }
+
+
+  // ===================================================================
+  // Target device
+  // ===================================================================
+
+  // Configuration file of the target device
+  static File getTargetConfigurationFile() {
+    return new File(DriverOptions.getInstallDir()+"/targets/"+CodegenOptions.getTargetDeviceName()+".cfg");
+  }
+
+  // Devices already parsed, with the modification time of their
+  // configuration file. It avoids parsing again the configuration
+  // for each compilation run by the same JVM (compilation server)
+  private static final HashMap<String,ComputeDevice> deviceCache = new HashMap<String,ComputeDevice>();
+  private static final HashMap<String,Long> deviceCacheTime = new HashMap<String,Long>();
+
+  private ComputeDevice parseTargetDevice(File fileToParse) {
+    String key=fileToParse.getAbsolutePath();
+    long time=fileToParse.lastModified();
+    synchronized (deviceCache) {
+      Long cachedTime=deviceCacheTime.get(key);
+      if ((cachedTime!=null) && (cachedTime==time)) {
+        return deviceCache.get(key);
+      }
+    }
+
+    DeviceParser dp=new DeviceParser(GeneralOptions.getVerboseLevel(),fileToParse); 
+    if (GeneralOptions.getDebugLevel() > 0) {
+      CompilerError.GLOBAL.raiseMessage("   -> parsing target device configuration file '"
+          + fileToParse.getName() + "'");
+    }   
+    dp.parse();
+    ComputeDevice device=dp.getDevice();
+
+    synchronized (deviceCache) {
+      deviceCache.put(key,device);
+      deviceCacheTime.put(key,time);
+    }
+    return device;
+  }
+
+
+  // ===================================================================
+  // Compilation phases
+  // ===================================================================
+
+  // Preprocess .kg files and returns the corresponding .ikg files
+  private LinkedList<File> preprocess(LinkedList<File> kgFileList, File tempDir) {
+    TimeReport.Phase phase=TimeReport.start("preprocessing");
+    LinkedList<File> kgPreprocOutputFileList;
+    if (DriverOptions.getEmbeddedPreprocessor()) {
+      kgPreprocOutputFileList=DriverHelper.runEmbeddedPreprocessor(kgFileList,"kg","ikg",tempDir,
+          DriverOptions.getPreprocessorOptionList(),
+          additionalPreprocessingOptions,
+          preprocessedTextMap
+          );
+      // The preprocessed text goes directly to the parser, files are
+      // only written when they are to be copied back
+      if ((DriverOptions.getStopStage()==DriverHelper.STAGE.PREPROC)||DriverOptions.getKeepIntermediateFiles()) {
+        for(File file:kgPreprocOutputFileList) {
+          writePreprocessedFile(file);
+        }
+      }
+    }
+    else {
+      kgPreprocOutputFileList=DriverHelper.runPreprocessor(kgFileList,"kg","ikg",tempDir,
+          DriverOptions.getPreprocessorTool(),
+          DriverOptions.getPreprocessorOptionList(),
+          additionalPreprocessingOptions
+          );
+    }
+
+    // Copy back temporary files
+    try {
+      DriverHelper.copyBackTempFiles(DriverHelper.STAGE.PREPROC, DriverOptions.getStopStage(), DriverOptions.getKeepIntermediateFiles(),
+          kgPreprocOutputFileList, null,
+          null, DriverOptions.getOutputDirectoryName());
+    } catch (Exception e) {
+      CompilerError.GLOBAL.raiseFatalError("Can not copy back temporary file to "+DriverOptions.getOutputDirectoryName());
+    }
+    TimeReport.stop(phase);
+    return kgPreprocOutputFileList;
+  }
+
+  // Writes a file preprocessed in memory
+  private void writePreprocessedFile(File file) {
+    String text=preprocessedTextMap.get(file);
+    if (DriverOptions.getStopStage()==DriverHelper.STAGE.PREPROC) {
+      // It will not be parsed
+      preprocessedTextMap.remove(file);
+    }
+    try {
+      FileOutputStream os=new FileOutputStream(file);
+      try {
+        os.write(text.getBytes());
+      }
+      finally {
+        os.close();
+      }
+    }
+    catch (IOException e) {
+      CompilerError.GLOBAL.raiseFatalError("Can not write file '"+file.getPath()+"': "+e.getMessage());
+    }
+  }
+
+  // Name of the program generated from an input (.kg or .ikg) file
+  private String getProgramName(File inputFile) {
+    String programName=DriverOptions.getOutputFileName();
+    if (programName==null) {
+      // Take the file name radix as default
+      String fileName=inputFile.getName();  
+      programName=fileName.substring(0,fileName.lastIndexOf('.'));   
+    }
+    return programName;
+  }
+
+  // Parsing: syntactic grammar check and semantic check (type, symbol)
+  private ProgramParser parse(File fileToProcess) {
+    // Text of the file when preprocessed in memory
+    String text=preprocessedTextMap.remove(fileToProcess);
+
+    // Check for correct input file
+    if ((text==null) && !DriverHelper.checkInputFile(fileToProcess)) {
+      return null;
+    }
+
+    ProgramParser mp;
+    if (text!=null) {
+      mp=new ProgramParser(GeneralOptions.getVerboseLevel(),fileToProcess,text,getProgramName(fileToProcess));
+    }
+    else {
+      mp=new ProgramParser(GeneralOptions.getVerboseLevel(),fileToProcess,getProgramName(fileToProcess));
+    }
+
+    if (GeneralOptions.getDebugLevel() > 0) {
+      CompilerError.GLOBAL.raiseMessage("   -> parsing input file '"
+          + fileToProcess.getName() + "'");
+    }   
+    TimeReport.Phase phase=TimeReport.start("parse");
+    try {
+      mp.parse();
+    } catch (Exception e) {
+      mp.getCompilerError().raiseMessage(e.getMessage());
+      mp.getCompilerError().raiseFatalError("parse Error, stopping the compilation process");
+    }
+    TimeReport.stop(phase);
+
+    // We do not continue if some errors occurred and are still pending
+    mp.getCompilerError().exitIfError();
+    return mp;
+  }
+
+  // Complete the IR and check it
+  private void check(ProgramParser mp) {
+    Program prog=mp.getProgram();
+    CompilerError ce=mp.getCompilerError();
+
+    // Check for program correctness
+    TimeReport.Phase phase=TimeReport.start("completeAndCheck");
+    prog.completeAndCheck(ce);   
+    TimeReport.stop(phase);
+
+    // Optionally print the IR
+    if (GeneralOptions.getDebugLevel() > 2) {
+      ThreadOutput.out().println("============================================================================");
+      DriverHelper.print(mp.getProgram(), mp.getInputFile(), ": IR");
+      ThreadOutput.out().println();
+      DriverHelper.print(mp.getSymbolTable(),mp.getInputFile(),": Symbol Table");
+
+      if (GeneralOptions.getDebugLevel() > 3) {
+        ThreadOutput.out().println();
+        ThreadOutput.out().println("Abstract Syntax Tree");
+        antlrHelper.printTree(mp.getAST(),0);
+      }
+      ThreadOutput.out().println("============================================================================");
+    }
+
+    // We do not continue if some errors occurred and are still pending
+    ce.exitIfError();       
+  }
+
+  // Performs optimizations
+  private void optimize(ProgramParser mp) {
+    Program prog=mp.getProgram();
+    CompilerError ce=mp.getCompilerError();
+
+    if (GeneralOptions.getDebugLevel() > 0) {
+      CompilerError.GLOBAL.raiseMessage("   -> Optimizing program '"+prog.getName()+"'");
+    }
+
+    for(int i=0;i<prog.getNbKernels();i++) {
+      Kernel k=prog.getKernel(i);
+      TimeReport.Phase phase=TimeReport.start("optimize",k.getName());
+      k.optimize(ce);
+      TimeReport.stop(phase);
+    }
+
+    // We do not continue if some errors occurred and are still pending
+    ce.exitIfError();
+  }
+
+  // Performs analysis, scheduling and buffer allocation
+  private void analyze(ProgramParser mp) {
+    Program prog=mp.getProgram();
+    CompilerError ce=mp.getCompilerError();
+
+    if (GeneralOptions.getDebugLevel() > 0) {
+      CompilerError.GLOBAL.raiseMessage("   -> Analyzing program '"+prog.getName()+"'");
+    }
+
+    // Kernel Analyze
+    for(int i=0;i<prog.getNbKernels();i++) {
+      Kernel k=prog.getKernel(i);
+      TimeReport.Phase phase=TimeReport.start("analyze",k.getName());
+      k.analyze(ce);
+      TimeReport.stop(phase);
+    }
+
+    // We do not continue if some errors occurred and are still pending
+    ce.exitIfError();
+  }
+
+  // Code generation. Returns the generated files
+  private LinkedList<File> emit(ProgramParser mp) {
+    final LinkedList<File> generatedFiles= new LinkedList<File>();
+
+    CodeGenerator gen=Generator.getNewGeneratorFromName(CodegenOptions.getTargetLanguage(),CompilerError.GLOBAL);
+    // Generate Report if needed
+    if (CodegenOptions.getReportGeneration()) {
+      gen.generateReport(mp.getProgram(), ThreadOutput.out());
+    }
+    // Code generation is the last stage, output files are generated
+    // directly in the output directory (files with an unchanged content
+    // are not rewritten)
+    TimeReport.Phase phase=TimeReport.start("codegen");
+    gen.generate(mp.getProgram(),generatedFiles,new File(DriverOptions.getOutputDirectoryName()));
+    TimeReport.stop(phase);
+    return generatedFiles;
+  }
+
+  private void generateTilingReport(ProgramParser mp) {
+    Program prog=mp.getProgram();
+    CompilerError.GLOBAL.raiseMessage("-----------------------------------------------------------");
+    CompilerError.GLOBAL.raiseMessage("Tiling Analysis report for program '"+prog.getName()+"'");
+    for(int i=0;i<prog.getNbKernels();i++) {
+      Kernel k=prog.getKernel(i);
+      k.generateTilingReport();
+    }
+    CompilerError.GLOBAL.raiseMessage("-----------------------------------------------------------");
+  }
+
+
+  // ===================================================================
+  // Parallel compilation
+  // ===================================================================
+
+  // Compiles a single file through the whole flow. Returns the exit
+  // status of the compilation of the file
+  private int compileFile(File file, File tempDir) {
+    // Per thread state of the IR, the same for each file so that the
+    // generated code does not depend on the other files of the command
+    // line
+    ResourceManager.initWorkerThread();
+    FunctionNode.resetGlobalId();
+    Filter.resetRuntimeFunctions();
+    TimeReport.setCurrentFile(file.getPath());
+
+    try {
+      File ikgFile=file;
+      if (file.getPath().endsWith(".kg")) {
+        LinkedList<File> kgFileList=new LinkedList<File>();
+        kgFileList.add(file);
+        ikgFile=preprocess(kgFileList,tempDir).getFirst();
+      }
+      if (DriverOptions.getStopStage()==DriverHelper.STAGE.PREPROC) {
+        return 0;
+      }
+
+      CompileCache cache=CompileCache.getCache();
+      String key=null;
+      if (cache!=null) {
+        key=cache.computeKey(ikgFile,preprocessedTextMap.get(ikgFile),getProgramName(ikgFile),getTargetConfigurationFile());
+      }
+      if (key==null) {
+        compileProgram(ikgFile,tempDir);
+        return 0;
+      }
+      TimeReport.Phase phase=TimeReport.start("cache lookup");
+      boolean hit=cache.restore(key,DriverOptions.getOutputDirectoryName());
+      TimeReport.stop(phase);
+      if (hit) {
+        return 0;
+      }
+
+      // Messages of the compilation are kept in the cache entry, to be
+      // displayed again when the entry is restored
+      ThreadOutput.Capture outerCapture=ThreadOutput.getCapture();
+      ThreadOutput.Capture capture=new ThreadOutput.Capture();
+      LinkedList<File> generatedFiles;
+      ThreadOutput.setCapture(capture);
+      try {
+        generatedFiles=compileProgram(ikgFile,tempDir);
+      }
+      finally {
+        ThreadOutput.setCapture(outerCapture);
+        ThreadOutput.replay(capture);
+      }
+      if (generatedFiles!=null) {
+        cache.store(key,generatedFiles,capture);
+      }
+    }
+    catch (CompilerExit e) {
+      return e.getReturnStatus();
+    }
+    finally {
+      ResourceManager.shutdownWorkerThread();
+    }
+    return 0;
+  }
+
+  // Compiles preprocessed file 'ikgFile' of content 'text', which has
+  // been preprocessed in memory. Returns the generated files
+  LinkedList<File> compileProgram(File ikgFile, String text) {
+    preprocessedTextMap.put(ikgFile,text);
+    return compileProgram(ikgFile,(File)null);
+  }
+
+  // Compiles a preprocessed file. Returns the generated files
+  private LinkedList<File> compileProgram(File ikgFile, File tempDir) {
+    ProgramParser mp=parse(ikgFile);
+    if (mp==null) {
+      return null;
+    }
+    check(mp);
+    optimize(mp);
+    analyze(mp);
+    LinkedList<File> generatedFiles=null;
+    if (!DriverOptions.getNoEmit()) {
+      generatedFiles=emit(mp);
+    }
+    if (GeneralOptions.getDebugLevel() > 1) {
+      generateTilingReport(mp);
+    }
+    return generatedFiles;
+  }
+
+  // Compiles input files on a pool of worker threads. The messages of
+  // each file are captured and displayed in the order of input files,
+  // as soon as the file and the ones before it are processed
+  private void compileInParallel(LinkedList<File> fileList, final File tempDir) {
+    // Generated files are named after the program in the output
+    // directory, intermediate files after the input file: files
+    // generating the same program would be written concurrently
+    HashMap<String,File> nameMap=new HashMap<String,File>();
+    File outDir=new File(DriverOptions.getOutputDirectoryName());
+    for (File file:fileList) {
+      String programPath=DriverHelper.makeOutputFile(getProgramName(file),outDir).getPath();
+      File other=nameMap.put(programPath,file);
+      if (other!=null) {
+        CompilerError.GLOBAL.raiseError("files '"+other.getPath()+"' and '"+file.getPath()
+            +"' generate the same program '"+programPath+"', they cannot be compiled concurrently");
+      }
+    }
+    CompilerError.GLOBAL.exitIfError();
+
+    ExecutorService pool=Executors.newFixedThreadPool(DriverOptions.getNbJobs());
+    LinkedList<Future<Integer>> futureList=new LinkedList<Future<Integer>>();
+    LinkedList<ThreadOutput.Capture> captureList=new LinkedList<ThreadOutput.Capture>();
+    int returnStatus=0;
+
+    try {
+      for (final File file:fileList) {
+        final ThreadOutput.Capture capture=new ThreadOutput.Capture();
+        captureList.add(capture);
+        futureList.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            ThreadOutput.setCapture(capture);
+            TimeReport.Phase work=TimeReport.startWorker();
+            try {
+              return compileFile(file,tempDir);
+            }
+            finally {
+              TimeReport.stopWorker(work);
+              ThreadOutput.setCapture(null);
+            }
+          }
+        }));
+      }
+
+      for(int i=0;i<futureList.size();i++) {
+        int status;
+        Throwable cause=null;
+        try {
+          status=futureList.get(i).get();
+        }
+        catch (ExecutionException e) {
+          status=1;
+          cause=e.getCause();
+        }
+        catch (InterruptedException e) {
+          status=1;
+          cause=e;
+        }
+        ThreadOutput.replay(captureList.get(i));
+        if (cause!=null) {
+          CompilerError.GLOBAL.raiseError("internal error while compiling '"
+              +fileList.get(i).getPath()+"': "+cause);
+          cause.printStackTrace(ThreadOutput.err());
+        }
+        if ((status!=0)&&(returnStatus==0)) {
+          returnStatus=status;
+        }
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    if (returnStatus!=0) {
+      throw new CompilerExit(returnStatus);
+    }
+  }
 
 }
 
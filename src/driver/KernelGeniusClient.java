@@ -0,0 +1,127 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Entry point of the kgenc command. The command line is forwarded to
+   the compilation server when one is running, and compiled in this JVM
+   otherwise (or when KGEN_NO_SERVER is set). This class only depends on
+   the JDK, so that forwarding a command does not load the compiler.
+*/
+
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+public class KernelGeniusClient {
+
+  public static void main(String[] args) {
+    boolean stop=false;
+    for (String arg:args) {
+      if (arg.equals("--server")) {
+        // Start the server
+        KernelGenius.main(args);
+        return;
+      }
+      stop|=arg.equals(KernelGeniusServer.STOP_REQUEST);
+    }
+
+    Socket socket=null;
+    String token=null;
+    if (System.getenv("KGEN_NO_SERVER")==null) {
+      File serverFile=KernelGeniusServer.getServerFile();
+      if (serverFile.exists()) {
+        try {
+          BufferedReader reader=new BufferedReader(new FileReader(serverFile));
+          String[] fields=reader.readLine().trim().split(" ");
+          reader.close();
+          token=fields[1];
+          socket=new Socket(InetAddress.getByName("127.0.0.1"),Integer.valueOf(fields[0]));
+        }
+        catch (Exception e) {
+          // No server running (stale server file)
+          socket=null;
+        }
+      }
+    }
+
+    if (stop) {
+      if (socket==null) {
+        System.err.println("error: no compilation server running");
+        System.exit(1);
+      }
+      // Only the stop request is sent
+      args=new String[]{KernelGeniusServer.STOP_REQUEST};
+    }
+    else if (socket==null) {
+      // Compile in this JVM
+      KernelGenius.main(args);
+      return;
+    }
+
+    System.exit(forward(socket,token,args));
+  }
+
+  // Sends the command line to the server and displays its messages until
+  // the exit status is received
+  static int forward(Socket socket, String token, String[] args) {
+    try {
+      DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      dos.writeUTF(token);
+      dos.writeUTF(System.getProperty("user.dir"));
+      dos.writeInt(args.length);
+      for (String arg:args) {
+        dos.writeUTF(arg);
+      }
+      dos.flush();
+
+      DataInputStream dis=new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (true) {
+        int kind=dis.readByte();
+        if (kind==KernelGeniusServer.FRAME_EXIT) {
+          int status=dis.readInt();
+          socket.close();
+          return status;
+        }
+        byte[] b=new byte[dis.readInt()];
+        dis.readFully(b);
+        PrintStream ps=(kind==KernelGeniusServer.FRAME_ERR)?System.err:System.out;
+        ps.write(b,0,b.length);
+        ps.flush();
+      }
+    }
+    catch (IOException e) {
+      System.err.println("error: lost connection with the compilation server ("+e.getMessage()+")");
+      return 1;
+    }
+  }
+
+}
@@ -0,0 +1,199 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Compilation API for Java programs embedding the compiler.
+
+   A compilation takes the source of a program and of its include files
+   in memory, command line options and the target device, and returns
+   the generated files and the diagnostics. The source is preprocessed
+   by the embedded preprocessor and nothing is written on the file
+   system (files are only read from the include path given with -I).
+
+   The compilation runs in the calling thread, with its own options,
+   error counter and output capture, so that any number of threads can
+   compile concurrently. Options related to files (--outdir, --keep,
+   --cache_dir, -j, time reports) have no effect.
+*/
+
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import codegen.GeneratedFile;
+import common.CompilerError;
+import common.CompilerExit;
+import common.Diagnostic;
+import common.ResourceManager;
+import driver.options.CodegenOptions;
+import driver.options.DriverOptions;
+import driver.options.GeneralOptions;
+import ir.algorithms.Filter;
+import ir.base.FunctionNode;
+import preprocessor.Preprocessor;
+import target.ComputeDevice;
+import utility.thread.ThreadOutput;
+
+public class KernelGeniusCompiler {
+
+  //==================================================================
+  // Compilation result
+  //==================================================================
+
+  public static class Result {
+    private boolean success=false;
+    // Content of generated files by file name, in generation order
+    private final Map<String,String> generatedFileMap = new LinkedHashMap<String,String>();
+    private final List<Diagnostic> diagnosticList = new LinkedList<Diagnostic>();
+    // Text printed by the compiler outside of diagnostics (debug)
+    private String output="";
+
+    // True if the compilation succeeded, even with warnings
+    public boolean isSuccess() {
+      return success;
+    }
+    public Map<String,String> getGeneratedFiles() {
+      return Collections.unmodifiableMap(generatedFileMap);
+    }
+    public String getGeneratedFile(String name) {
+      return generatedFileMap.get(name);
+    }
+    public List<Diagnostic> getDiagnostics() {
+      return Collections.unmodifiableList(diagnosticList);
+    }
+    public String getOutput() {
+      return output;
+    }
+  }
+
+
+  //==================================================================
+  // Compilation
+  //==================================================================
+
+  // Compiles program source 'source' of file 'fileName' (a .kg file
+  // which does not need to exist, it names the generated program), for
+  // device 'device'. Include files given in 'headerMap' (by include
+  // name, may be null) are found before the ones of the include path.
+  // 'optionList' are options of the command line, without input files
+  public static Result compile(String fileName, String source, Map<String,String> headerMap,
+      List<String> optionList, ComputeDevice device) {
+    Result result=new Result();
+
+    // Compiler state of the thread
+    GeneralOptions.initThread();
+    DriverOptions.initThread();
+    CodegenOptions.initThread();
+    CompilerError.GLOBAL.initThread();
+    ResourceManager.initThread();
+    FunctionNode.resetGlobalId();
+    Filter.resetRuntimeFunctions();
+    CompilerError.setDiagnosticList(result.diagnosticList);
+    GeneratedFile.setMemoryOutput(result.generatedFileMap);
+
+    // Messages printed directly by the compiler go to the streams of a
+    // capture owned by the compilation, the standard streams of the
+    // application are left untouched
+    ThreadOutput.Capture outerCapture=ThreadOutput.getCapture();
+    ThreadOutput.Capture capture=new ThreadOutput.Capture();
+    ThreadOutput.setCapture(capture);
+    try {
+      compile(fileName,source,headerMap,optionList,device,result);
+      result.success=!CompilerError.GLOBAL.isAnError();
+    }
+    catch (CompilerExit e) {
+      result.success=(e.getReturnStatus()==0) && !CompilerError.GLOBAL.isAnError();
+    }
+    finally {
+      ThreadOutput.setCapture(outerCapture);
+      CompilerError.setDiagnosticList(null);
+      GeneratedFile.setMemoryOutput(null);
+      ResourceManager.shutdown();
+      // Do not keep the options and the device of the compilation
+      GeneralOptions.initThread();
+      DriverOptions.initThread();
+      CodegenOptions.initThread();
+    }
+
+    ByteArrayOutputStream os=new ByteArrayOutputStream();
+    PrintStream ps=new PrintStream(os);
+    capture.replay(ps,ps);
+    result.output=os.toString();
+    return result;
+  }
+
+  private static void compile(String fileName, String source, Map<String,String> headerMap,
+      List<String> optionList, ComputeDevice device, Result result) {
+    // Options
+    String[] args=optionList.toArray(new String[optionList.size()]);
+    for (int i=0; i<args.length; i++) {
+      int nb=KernelGenius.parseCompilerOption(args,i);
+      if (nb==0) {
+        CompilerError.GLOBAL.raiseError("unsupported option '"+args[i]+"'");
+        nb=1;
+      }
+      i+=nb-1;
+    }
+    if (!fileName.endsWith(".kg")) {
+      CompilerError.GLOBAL.raiseError("Language of file '"+fileName+"' not recognized");
+    }
+    if (CodegenOptions.getTargetLanguage()==null) {
+      CompilerError.GLOBAL.raiseError("No target language defined");
+    }
+    CodegenOptions.setTargetDevice(device);
+    KernelGenius.setDefaultOptions();
+    CompilerError.GLOBAL.exitIfError();
+
+    // Preprocessing
+    Preprocessor pp=new Preprocessor();
+    for(String option:DriverOptions.getPreprocessorOptionList()) {
+      if (!pp.addOption(option)) {
+        CompilerError.GLOBAL.raiseWarning("option '"+option+"' ignored by the embedded preprocessor");
+      }
+    }
+    if (headerMap!=null) {
+      for(Map.Entry<String,String> e:headerMap.entrySet()) {
+        pp.addHeader(e.getKey(),e.getValue());
+      }
+    }
+    String text=pp.preprocess(source,fileName);
+    if (text==null) {
+      CompilerError.exitWithError(1);
+    }
+    File ikgFile=new File(new File(fileName).getName().replaceAll("\\.kg$",".ikg"));
+    if (DriverOptions.getStopStage()==DriverHelper.STAGE.PREPROC) {
+      result.generatedFileMap.put(ikgFile.getName(),text);
+      return;
+    }
+
+    // Compilation, generated files being kept in memory
+    new KernelGenius().compileProgram(ikgFile,text);
+  }
+
+}
@@ -0,0 +1,381 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Compilation server of the KernelGenius compiler.
+
+   The server runs in a long-lived JVM, so that the ANTLR runtime, the
+   parsers and the code generators are loaded and JIT-compiled once, and
+   parsed target device configurations are kept from one request to the
+   other. It listens on a loopback socket whose port is published with
+   an access token in the server file (readable by the owner only).
+
+   Protocol (DataInput/DataOutput encoding):
+   - client: token (UTF), working directory (UTF), nb args (int), args (UTF)
+   - server: frames 'kind (byte), length (int), bytes' where kind is
+     FRAME_OUT or FRAME_ERR, terminated by 'FRAME_EXIT, exit status (int)'
+*/
+
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import common.CompilerError;
+import common.ResourceManager;
+import driver.options.CodegenOptions;
+import driver.options.DriverOptions;
+import driver.options.GeneralOptions;
+import utility.thread.ThreadOutput;
+
+public class KernelGeniusServer {
+
+  // Frame kinds of the server answer
+  static final int FRAME_EXIT = 0;
+  static final int FRAME_OUT  = 1;
+  static final int FRAME_ERR  = 2;
+
+  // Request for stopping the server
+  static final String STOP_REQUEST = "--stop_server";
+
+  // Options taking a value which is a path
+  private static final HashSet<String> pathOptionSet = new HashSet<String>();
+  // Options taking a value which is not a path
+  private static final HashSet<String> valueOptionSet = new HashSet<String>();
+  static {
+    pathOptionSet.add("--install_dir");
+    pathOptionSet.add("--outdir");
+    pathOptionSet.add("--cache_dir");
+    pathOptionSet.add("--time-report-json");
+    valueOptionSet.add("-o");
+    valueOptionSet.add("-j");
+    valueOptionSet.add("--verbose");
+    valueOptionSet.add("--debug");
+    valueOptionSet.add("--target_language");
+    valueOptionSet.add("--target_device");
+    valueOptionSet.add("--target_system");
+    valueOptionSet.add("--nbWI");
+    valueOptionSet.add("--nbWG");
+  }
+
+  private final File serverFile;
+  private final String token;
+  private ServerSocket serverSocket=null;
+  private volatile boolean stopped=false;
+  // Number of compilations served, displayed when the server stops
+  private int nbCompilations=0;
+
+
+  //==================================================================
+  // Server file
+  //==================================================================
+
+  // File publishing the port and the token of the running server
+  static File getServerFile() {
+    String name=System.getenv("KGEN_SERVER_FILE");
+    if (name!=null) {
+      return new File(name);
+    }
+    return new File(System.getProperty("user.home"),".kgenc_server");
+  }
+
+  public KernelGeniusServer(File f) {
+    serverFile=f;
+    byte[] b=new byte[16];
+    new SecureRandom().nextBytes(b);
+    StringBuffer sb=new StringBuffer();
+    for(byte x:b) {
+      sb.append(Integer.toHexString((x&0xff)|0x100).substring(1));
+    }
+    token=sb.toString();
+  }
+
+  // Line of the server file published by this server
+  private String getServerLine() {
+    return serverSocket.getLocalPort()+" "+token;
+  }
+
+  // Restricts the access of a file or a directory to its owner
+  private static void restrictToOwner(File f) throws IOException {
+    if (!(f.setReadable(false,false) && f.setWritable(false,false)
+        && f.setExecutable(false,false)
+        && f.setReadable(true,true) && f.setWritable(true,true)
+        && (!f.isDirectory() || f.setExecutable(true,true)))) {
+      throw new IOException("can not restrict the permissions of "+f.getPath());
+    }
+  }
+
+  private void publish() throws IOException {
+    // The file is written in a new directory private to the owner, so that
+    // nobody else can open it before its permissions are restricted, and
+    // then moved in place
+    File dir=new File(serverFile.getAbsoluteFile().getParentFile(),
+        "."+serverFile.getName()+"."+token+".tmp");
+    if (!dir.mkdir()) {
+      throw new IOException("can not create the directory "+dir.getPath());
+    }
+    File tmpFile=new File(dir,serverFile.getName());
+    try {
+      restrictToOwner(dir);
+      FileOutputStream os=new FileOutputStream(tmpFile);
+      restrictToOwner(tmpFile);
+      PrintStream ps=new PrintStream(os);
+      ps.println(getServerLine());
+      ps.close();
+      if (ps.checkError()) {
+        throw new IOException("can not write "+tmpFile.getPath());
+      }
+      // Replaces the file of a previous server
+      serverFile.delete();
+      if (!tmpFile.renameTo(serverFile)) {
+        throw new IOException("can not create "+serverFile.getPath());
+      }
+    }
+    finally {
+      tmpFile.delete();
+      dir.delete();
+    }
+  }
+
+  // Deletes the server file, unless it has been replaced by another server
+  private void unpublish() {
+    try {
+      BufferedReader reader=new BufferedReader(new FileReader(serverFile));
+      String line=reader.readLine();
+      reader.close();
+      if ((line!=null) && line.trim().equals(getServerLine())) {
+        serverFile.delete();
+      }
+    }
+    catch (IOException e) {
+      // Already deleted
+    }
+  }
+
+
+  //==================================================================
+  // Main loop
+  //==================================================================
+
+  public int run() {
+    try {
+      serverSocket=new ServerSocket(0,50,InetAddress.getByName("127.0.0.1"));
+      publish();
+    }
+    catch (IOException e) {
+      CompilerError.GLOBAL.raiseError("can not start the compilation server: "+e.getMessage());
+      return 1;
+    }
+    CompilerError.GLOBAL.raiseMessage("compilation server listening on port "
+        +serverSocket.getLocalPort()+" ("+serverFile.getPath()+")");
+
+    try {
+      while (!stopped) {
+        final Socket socket;
+        try {
+          socket=serverSocket.accept();
+        }
+        catch (IOException e) {
+          // Closed by a stop request
+          break;
+        }
+        Thread t=new Thread() {
+          @Override
+          public void run() {
+            serve(socket);
+          }
+        };
+        t.start();
+      }
+    }
+    finally {
+      unpublish();
+    }
+    CompilerError.GLOBAL.raiseMessage("compilation server stopped after "
+        +getNbCompilations()+" compilation(s)");
+    return 0;
+  }
+
+  private synchronized int getNbCompilations() {
+    return nbCompilations;
+  }
+
+  private synchronized void stop() {
+    stopped=true;
+    try {
+      serverSocket.close();
+    }
+    catch (IOException e) {
+      // Nothing to do
+    }
+  }
+
+
+  //==================================================================
+  // Requests
+  //==================================================================
+
+  // Capture of a request forwarding messages to the client
+  private static class ClientCapture extends ThreadOutput.Capture {
+    private final DataOutputStream dos;
+
+    ClientCapture(DataOutputStream d) {
+      dos=d;
+    }
+
+    @Override
+    protected synchronized void write(boolean isErr, byte[] b, int off, int len) {
+      try {
+        dos.writeByte(isErr?FRAME_ERR:FRAME_OUT);
+        dos.writeInt(len);
+        dos.write(b,off,len);
+        dos.flush();
+      }
+      catch (IOException e) {
+        // The client is gone, the messages are lost
+      }
+    }
+
+    synchronized void exit(int status) throws IOException {
+      dos.writeByte(FRAME_EXIT);
+      dos.writeInt(status);
+      dos.flush();
+    }
+  }
+
+  private void serve(Socket socket) {
+    try {
+      DataInputStream dis=new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      String clientToken=dis.readUTF();
+      if (!clientToken.equals(token)) {
+        socket.close();
+        return;
+      }
+      String workingDir=dis.readUTF();
+      int nbArgs=dis.readInt();
+      String[] args=new String[nbArgs];
+      for(int i=0;i<nbArgs;i++) {
+        args[i]=dis.readUTF();
+      }
+
+      ClientCapture capture=new ClientCapture(dos);
+      if ((nbArgs==1) && args[0].equals(STOP_REQUEST)) {
+        // The client is answered first, the JVM exits as soon as the
+        // main loop is stopped
+        capture.exit(0);
+        socket.close();
+        stop();
+        return;
+      }
+      capture.exit(compile(workingDir,args,capture));
+      socket.close();
+    }
+    catch (IOException e) {
+      try {
+        socket.close();
+      }
+      catch (IOException e2) {
+        // Nothing to do
+      }
+    }
+  }
+
+  // Runs a compilation in the current thread, with its own options,
+  // error counter and resources
+  private int compile(String workingDir, String[] args, ThreadOutput.Capture capture) {
+    synchronized (this) {
+      nbCompilations++;
+    }
+    GeneralOptions.initThread();
+    DriverOptions.initThread();
+    CodegenOptions.initThread();
+    CompilerError.GLOBAL.initThread();
+    ResourceManager.initThread();
+    ThreadOutput.setCapture(capture);
+    try {
+      return KernelGenius.mainNonExit(resolvePaths(workingDir,args));
+    }
+    finally {
+      ThreadOutput.setCapture(null);
+    }
+  }
+
+  // The server does not run in the working directory of the client:
+  // make paths of the command line absolute and generate files in the
+  // working directory by default. The temporary directory is created
+  // in the working directory of the server
+  static String[] resolvePaths(String workingDir, String[] args) {
+    LinkedList<String> list=new LinkedList<String>();
+    boolean outdir=false;
+    for(int i=0;i<args.length;i++) {
+      String arg=args[i];
+      if (pathOptionSet.contains(arg) && (i+1<args.length)) {
+        outdir|=arg.equals("--outdir");
+        list.add(arg);
+        list.add(resolvePath(workingDir,args[++i]));
+      }
+      else if (valueOptionSet.contains(arg) && (i+1<args.length)) {
+        list.add(arg);
+        list.add(args[++i]);
+      }
+      else if (arg.startsWith("-I") && (arg.length()>2)) {
+        list.add("-I"+resolvePath(workingDir,arg.substring(2)));
+      }
+      else if (arg.startsWith("-")) {
+        list.add(arg);
+      }
+      else {
+        // Input file
+        list.add(resolvePath(workingDir,arg));
+      }
+    }
+    if (!outdir) {
+      list.add("--outdir");
+      list.add(workingDir);
+    }
+    return list.toArray(new String[list.size()]);
+  }
+
+  static String resolvePath(String workingDir, String path) {
+    File f=new File(path);
+    if (f.isAbsolute()) {
+      return path;
+    }
+    return new File(workingDir,path).getPath();
+  }
+
+}
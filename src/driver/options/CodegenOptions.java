@@ -80,6 +80,16 @@ public abstract class CodegenOptions {
     int nbWI=-1;
 
     boolean fixDMA=false;
+
+    boolean borderPadding=false;
+
+    boolean slidingWindow=true;
+
+    boolean forceDirectedScheduling=false;
+
+    boolean autoFit=false;
+
+    boolean profile=false;
   }
 
   private static InheritableThreadLocal<OptionStorage> options = new InheritableThreadLocal<OptionStorage>() {
@@ -89,6 +99,18 @@ public abstract class CodegenOptions {
     }
   };
 
+  // Gives the current thread its own default options, instead of the
+  // ones inherited from the thread which created it
+  public static void initThread() {
+    options.set(new OptionStorage());
+  }
+
+  // Signature of the option values of the current thread (the target
+  // device is identified by its name)
+  public static String getSignature() {
+    return OptionSignature.getSignature(options.get());
+  }
+
   public static String getTargetLanguage() {
     return options.get().targetLanguage;
   }
@@ -162,6 +184,36 @@ public abstract class CodegenOptions {
   public static void setFixDMA() {
     options.get().fixDMA=true;
   }
+  public static boolean getBorderPadding() {
+    return options.get().borderPadding;
+  }
+  public static void setBorderPadding() {
+    options.get().borderPadding=true;
+  }
+  public static boolean getSlidingWindow() {
+    return options.get().slidingWindow;
+  }
+  public static void setSlidingWindow(boolean b) {
+    options.get().slidingWindow=b;
+  }
+  public static boolean getForceDirectedScheduling() {
+    return options.get().forceDirectedScheduling;
+  }
+  public static void setForceDirectedScheduling() {
+    options.get().forceDirectedScheduling=true;
+  }
+  public static boolean getAutoFit() {
+    return options.get().autoFit;
+  }
+  public static void setAutoFit() {
+    options.get().autoFit=true;
+  }
+  public static boolean getProfile() {
+    return options.get().profile;
+  }
+  public static void setProfile() {
+    options.get().profile=true;
+  }
 
 
   
@@ -332,6 +384,49 @@ public abstract class CodegenOptions {
         return 1;
       }
 
+      // Border management
+      else if (option.equals("--border_padding")) {
+        if (getBorderPadding()) {
+          CompilerError.GLOBAL.raiseWarning("Option '" + option + "' defined twice");
+        }
+        setBorderPadding();
+        return 1;
+      }
+      else if (option.equals("--no_sliding_window")) {
+        if (!getSlidingWindow()) {
+          CompilerError.GLOBAL.raiseWarning("Option '" + option + "' defined twice");
+        }
+        setSlidingWindow(false);
+        return 1;
+      }
+
+      // Node scheduling
+      else if (option.equals("--force_scheduling")) {
+        if (getForceDirectedScheduling()) {
+          CompilerError.GLOBAL.raiseWarning("Option '" + option + "' defined twice");
+        }
+        setForceDirectedScheduling();
+        return 1;
+      }
+
+      // NDRange fitting
+      else if (option.equals("--auto_fit")) {
+        if (getAutoFit()) {
+          CompilerError.GLOBAL.raiseWarning("Option '" + option + "' defined twice");
+        }
+        setAutoFit();
+        return 1;
+      }
+
+      // Kernel profiling
+      else if (option.equals("--profile")) {
+        if (getProfile()) {
+          CompilerError.GLOBAL.raiseWarning("Option '" + option + "' defined twice");
+        }
+        setProfile();
+        return 1;
+      }
+
     }
 
     return 0;  
@@ -345,6 +440,10 @@ public abstract class CodegenOptions {
         "  --targetWI  : Generate a code specialized for the target architecture in term of work-items\n" +
         "  --nbWG <n>  : Generate a code specialized for 'n' work-groups\n" +
         "  --targetWG  : Generate a code specialized for the target architecture in term of work-groups\n" +
+        "  --auto_fit  : Choose the NDRange for which local buffers fit in the local memory of the\n" +
+        "                target compute unit, and emit it in the host wrapper\n" +
+        "  --profile   : Generate a host wrapper recording the device time of each kernel\n" +
+        "                execution, reported by the runtime in JSON\n" +
         "  --async     : Merge the kernel graph in async mode"
         );
   }
@@ -359,7 +458,14 @@ public abstract class CodegenOptions {
         "  --tile_input : generate OpenCL kernels which processes a data tile\n"+
         "  --no_internal_tiling   : generate OpenCL kernels which processes inputs directly from the global memory\n" +
         "  --line_internal_tiling : generate OpenCL kernels which processes inputs line-by-line (default)\n" +
-        "  --tile_internal_tiling : generate OpenCL kernels which processes inputs tile-by-tile"
+        "  --tile_internal_tiling : generate OpenCL kernels which processes inputs tile-by-tile, the tile width\n" +
+        "                           being bounded by the local memory of the target compute unit\n" +
+        "  --border_padding : materialize borders in local buffers when lines are copied or computed,\n" +
+        "                     instead of generating border specific versions of the node code\n" +
+        "  --no_sliding_window : do not keep the neighborhood of stencil nodes in private registers\n" +
+        "                        sliding along the x dimension\n" +
+        "  --force_scheduling : schedule nodes with a force-directed scheduler minimizing the local\n" +
+        "                       buffers, instead of the ASAP scheduler"
         );
   }
 
@@ -48,6 +48,13 @@ public abstract class DriverOptions {
     public boolean forceLink = false;
     // Parse, analyze, but does not emit
     public boolean noEmit = false;
+    // Number of files compiled concurrently
+    public int nbJobs = 1;
+    // Directory of the compilation cache (no cache when null)
+    public String cacheDir = null;
+    // Time report of the compilation phases
+    public boolean timeReport = false;
+    public String timeReportJsonFileName = null;
 
     // Regeneration options
     //---------------------
@@ -61,6 +68,8 @@ public abstract class DriverOptions {
     // Preprocessor compiler
     //----------------------
     public String preprocessorTool = "gcc"; // Default preprocessor compiler
+    // Use the embedded preprocessor instead of the external tool
+    public boolean embeddedPreprocessor = false;
     public LinkedList<String> preprocessorOptionList = new LinkedList<String>();
   }
 
@@ -71,6 +80,12 @@ public abstract class DriverOptions {
     }
   };
 
+  // Gives the current thread its own default options, instead of the
+  // ones inherited from the thread which created it
+  public static void initThread() {
+    options.set(new OptionStorage());
+  }
+
   // Option accessors
   public static String getInstallDir() {
     return options.get().installDir;
@@ -108,6 +123,30 @@ public abstract class DriverOptions {
   public static void setNoEmit(boolean s) {
     options.get().noEmit=s;
   }
+  public static int getNbJobs() {
+    return options.get().nbJobs;
+  }
+  public static void setNbJobs(int n) {
+    options.get().nbJobs=n;
+  }
+  public static String getCacheDir() {
+    return options.get().cacheDir;
+  }
+  public static void setCacheDir(String s) {
+    options.get().cacheDir=s;
+  }
+  public static boolean getTimeReport() {
+    return options.get().timeReport;
+  }
+  public static void setTimeReport(boolean b) {
+    options.get().timeReport=b;
+  }
+  public static String getTimeReportJsonFileName() {
+    return options.get().timeReportJsonFileName;
+  }
+  public static void setTimeReportJsonFileName(String s) {
+    options.get().timeReportJsonFileName=s;
+  }
   public static boolean getDebugInformation() {
     return options.get().debugInformation;
   }
@@ -132,6 +171,12 @@ public abstract class DriverOptions {
   public static void setPreprocessorTool(String s) {
     options.get().preprocessorTool=s;
   }
+  public static boolean getEmbeddedPreprocessor() {
+    return options.get().embeddedPreprocessor;
+  }
+  public static void setEmbeddedPreprocessor(boolean b) {
+    options.get().embeddedPreprocessor=b;
+  }
   public static LinkedList<String> getPreprocessorOptionList() {
     return options.get().preprocessorOptionList;
   }
@@ -156,10 +201,14 @@ public abstract class DriverOptions {
 
       
       // Preprocessor device 
-      else if (option.startsWith("-D") || option.startsWith("-I")) {
+      else if (option.startsWith("-D") || option.startsWith("-I") || option.startsWith("-U")) {
         getPreprocessorOptionList().add(args[i]);
         return 1;
       }
+      else if (option.equals("--embedded_preprocessor")) {
+        setEmbeddedPreprocessor(true);
+        return 1;
+      }
 
       // Compilation stages
       else if (option.equals("-E")) {
@@ -189,6 +238,51 @@ public abstract class DriverOptions {
         return 1;
       }
 
+      // Parallel compilation of input files
+      else if (option.equals("-j")) {
+        i++;
+        if (i==args.length) {
+          CompilerError.GLOBAL.raiseFatalError("while parsing options: missing <n> after option '" + option + "'");
+        }
+        try {
+          int optValue=Integer.valueOf(args[i]);
+          if (optValue<=0) {
+            CompilerError.GLOBAL.raiseWarning("while parsing options '"+option+": '" + args[i] + "' is not strictly positive");
+          }
+          else {
+            setNbJobs(optValue);
+          }
+        }
+        catch (NumberFormatException e) {
+          CompilerError.GLOBAL.raiseWarning("while parsing options '"+option+": '" + args[i] + "' is not a number");
+        }
+        return 2;
+      }
+
+      // Compilation cache
+      else if (option.equals("--cache_dir")) {
+        i++;
+        if (i==args.length) {
+          CompilerError.GLOBAL.raiseFatalError("while parsing options: missing <path> after option '" + option + "'");
+        }
+        setCacheDir(args[i]);
+        return 2;
+      }
+
+      // Time report
+      else if (option.equals("--time-report")) {
+        setTimeReport(true);
+        return 1;
+      }
+      else if (option.equals("--time-report-json")) {
+        i++;
+        if (i==args.length) {
+          CompilerError.GLOBAL.raiseFatalError("while parsing options: missing <path> after option '" + option + "'");
+        }
+        setTimeReportJsonFileName(args[i]);
+        return 2;
+      }
+
       // No preprocessor directive in the C2C generated file
       else if (option.equals("--nopreproc")) {
         setNoPreprocessor(true);
@@ -236,7 +330,18 @@ public abstract class DriverOptions {
             "  -E                : stop the compilation process after the preprocessing\n" +
  //          "  -C                : stop the compilation process after the low-level kernel generation\n" +
             "  --keep            : keep intermediate files\n" +
+            "  --embedded_preprocessor\n" +
+            "                    : preprocess files within the compiler instead of running an\n" +
+            "                      external 'gcc -E' (supports -I, -D and -U options)\n" +
+            "  -j <n>            : compile up to 'n' input files concurrently, messages being\n" +
+            "                      displayed in the order of input files\n" +
+            "  --cache_dir <path>: reuse the files generated by previous compilations of the same\n" +
+            "                      preprocessed program with the same options and target\n" +
             "  -o <programName>  : name of the generated program\n" +
+            "  --time-report     : display the wall time, CPU time and memory allocated by each\n" +
+            "                      compilation phase, per file and per kernel\n" +
+            "  --time-report-json <path>\n" +
+            "                    : write the time report in JSON format to file 'path'\n" +
             "  --outdir <name>   : specifies the output directory of generated files"
         );
   }
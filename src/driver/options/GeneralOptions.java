@@ -39,6 +39,17 @@ public abstract class GeneralOptions {
       return new OptionStorage();
     }
   };
+
+  // Gives the current thread its own default options, instead of the
+  // ones inherited from the thread which created it
+  public static void initThread() {
+    options.set(new OptionStorage());
+  }
+
+  // Signature of the option values of the current thread
+  public static String getSignature() {
+    return OptionSignature.getSignature(options.get());
+  }
   
   public static int getVerboseLevel() {
     return options.get().verboseLevel;
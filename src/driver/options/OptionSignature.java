@@ -0,0 +1,73 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+
+/* Textual signature of the values of an option storage, used to
+   identify compilations done with the same options. Fields are taken
+   by reflection so that new options are taken into account without
+   having to update the signature
+*/
+
+package driver.options;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Comparator;
+
+abstract class OptionSignature {
+
+  static String getSignature(Object storage) {
+    Field[] fieldArray=storage.getClass().getDeclaredFields();
+    // Declaration order is not guaranteed by reflection
+    Arrays.sort(fieldArray,new Comparator<Field>() {
+      @Override
+      public int compare(Field f1, Field f2) {
+        return f1.getName().compareTo(f2.getName());
+      }
+    });
+
+    StringBuffer sb=new StringBuffer();
+    for(Field f:fieldArray) {
+      if (f.isSynthetic()) {
+        continue;
+      }
+      Object value;
+      try {
+        f.setAccessible(true);
+        value=f.get(storage);
+      }
+      catch (IllegalAccessException e) {
+        continue;
+      }
+      // Structured values (like the target device) are not options as
+      // such, they derive from other options
+      if ((value!=null) && !(value instanceof Number) && !(value instanceof Boolean)
+          && !(value instanceof String) && !(value instanceof Enum)) {
+        continue;
+      }
+      sb.append(f.getName()).append('=').append(value).append(';');
+    }
+    return sb.toString();
+  }
+
+}
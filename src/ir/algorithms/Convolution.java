@@ -25,10 +25,18 @@
 
 package ir.algorithms;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import parser.KernelGeniusParser;
+import parser.MyToken;
 import parser.TNode;
 
 import common.CompilerError;
+import driver.options.CodegenOptions;
+import ir.base.BorderMode;
+import ir.base.FunctionNode;
 import ir.base.KernelData;
 import ir.literals.Literal;
 import ir.literals.c.ArrayLiteral;
@@ -37,8 +45,10 @@ import ir.literals.c.FloatingPointLiteral;
 import ir.literals.c.IntegerLiteral;
 import ir.types.Type;
 import ir.types.c.Array;
+import ir.types.c.FloatingPointScalar;
 import ir.types.c.IntegerScalar;
 import ir.types.kg.TypedMatrixIndexes;
+import utility.thread.ThreadOutput;
 
 public class Convolution extends Filter {
   static IntegerLiteral defaultMulDiv=new IntegerLiteral(1,IntegerScalar.Tsint);      
@@ -51,6 +61,10 @@ public class Convolution extends Filter {
   ScalarLiteral multiplier=null;
   ScalarLiteral divider=null;
 
+  // Separable decomposition (-O1): coefficients of the vertical pass, the
+  // horizontal pass being performed by the node input
+  Literal[] columnCoefs=null;
+
 
   //==================================================================
   // Setters specific to algos
@@ -202,6 +216,269 @@ public class Convolution extends Filter {
     return super.completeAndCheckNode(ce);
   }
 
+
+  //==================================================================
+  // Separable decomposition (-O1)
+  //==================================================================
+
+  // Rewrites a rank-1 2D convolution into an horizontal pass, which is the
+  // returned Filter node, followed by a vertical pass performed by this node
+  // on the output of the horizontal pass
+  public FunctionNode decompose(CompilerError ce) {
+    if ((coefLiteral==null)||(getNbInputData()!=1)) {
+      return null;
+    }
+
+    // Duplicate and mirror borders are applied independently on each
+    // dimension, so that they give the same result on the two passes
+    KernelData kdIn=getFirstInputData();
+    BorderMode bm=getBorderProperty(kdIn);
+    if ((bm==null)||!(bm.isDuplicate()||bm.isMirror())) {
+      return null;
+    }
+    Type inType=getInputBaseCType(kdIn);
+    if (inType==null) {
+      return null;
+    }
+
+    // Get the coefficient matrix
+    TypedMatrixIndexes ct=new TypedMatrixIndexes(coefLiteral);
+    if ((ct.getNbDims()!=2)||!ct.hasStaticSize()) {
+      return null;
+    }
+    int height=ct.getLastIndex(1)-ct.getFirstIndex(1)+1;
+    int width=ct.getLastIndex(0)-ct.getFirstIndex(0)+1;
+    if ((height<2)||(width<2)) {
+      return null;
+    }
+    double[][] k=new double[height][width];
+    boolean integerCoefs=true;
+    for(int yy=0;yy<height;yy++) {
+      for(int xx=0;xx<width;xx++) {
+        Literal l=getCoefAt(yy,xx);
+        if (l==null) {
+          k[yy][xx]=0;
+        }
+        else if (l instanceof IntegerLiteral) {
+          k[yy][xx]=((IntegerLiteral)l).getValue();
+        }
+        else if (l instanceof FloatingPointLiteral) {
+          k[yy][xx]=((FloatingPointLiteral)l).getValue();
+          integerCoefs=false;
+        }
+        else {
+          return null;
+        }
+      }
+    }
+
+    // Rank-1 factorization, only kept if it saves multiply-adds
+    double[] v=new double[height];
+    double[] h=new double[width];
+    if (!factorize(k,v,h)) {
+      return null;
+    }
+    int nbMacs=0;
+    for(double[] row:k) {
+      nbMacs+=getNbNonZero(row);
+    }
+    if (getNbNonZero(v)+getNbNonZero(h)>=nbMacs) {
+      return null;
+    }
+
+    // The intermediate data must hold horizontal sums without loss
+    Type tType;
+    TNode tTypeNode;
+    if (integerCoefs && inType.unqualify().isIntegralScalar()) {
+      // Integral computation is done on int
+      if (!fitsInInt(inType.unqualify(),h)) {
+        return null;
+      }
+      tType=IntegerScalar.Tsint;
+      tTypeNode=new TNode(new MyToken(KernelGeniusParser.INT,"int"));
+    }
+    else if (inType.unqualify().isFloatingPointScalar()) {
+      tType=inType;
+      tTypeNode=kdIn.getBaseCTypeNode();
+    }
+    else if (getOutputBaseCType().unqualify().isFloatingPointScalar()) {
+      tType=getOutputBaseCType();
+      tTypeNode=getBaseCTypeNode();
+    }
+    else {
+      return null;
+    }
+
+    // Horizontal pass
+    Filter fh=new Filter();
+    fh.setName(getName()+"_kg_row",getNameNode());
+    fh.setOutputBaseCType(tType,tTypeNode);
+    fh.addInputData(kdIn);
+    List<KernelData> noParam=new LinkedList<KernelData>();
+    fh.setPropertyWithIdentifier("indexing",noParam,"c",getNameNode(),ce);
+    fh.setPropertyWithIdentifier("border",noParam,bm.isMirror()?"mirror":"duplicate",getNameNode(),ce);
+
+    List<Literal> coefList=new LinkedList<Literal>();
+    List<String> refList=new LinkedList<String>();
+    for(int x=ct.getFirstIndex(0),xx=0;xx<width;x++,xx++) {
+      addTerm(getSeparableCoef(h[xx],integerCoefs),"$"+kdIn.getName()+"[0]["+x+"]",coefList,refList);
+    }
+    StringBuffer sb=new StringBuffer();
+    sb.append("@").append(fh.getName()).append("[0][0]=");
+    generateCoefExpression(coefList,refList,inType,sb);
+    sb.append(";");
+    fh.setFunction(sb.toString(),null);
+
+    // This node becomes the vertical pass
+    columnCoefs=new Literal[height];
+    for(int yy=0;yy<height;yy++) {
+      columnCoefs[yy]=getSeparableCoef(v[yy],integerCoefs);
+    }
+    replaceInputData(kdIn,fh);
+
+    return fh;
+  }
+
+  Literal getCoefAt(int yy, int xx) {
+    Literal aly=coefLiteral.getAtIndex(yy);
+    if (!(aly instanceof ArrayLiteral)) {
+      return null;
+    }
+    return ((ArrayLiteral)aly).getAtIndex(xx);
+  }
+
+  static Literal getSeparableCoef(double d, boolean integerCoefs) {
+    if (integerCoefs) {
+      return new IntegerLiteral((long)d,IntegerScalar.Tsint);
+    }
+    return new FloatingPointLiteral(d,FloatingPointScalar.Tfloat);
+  }
+
+  static int getNbNonZero(double[] a) {
+    int nb=0;
+    for(double d:a) {
+      if (d!=0) {
+        nb++;
+      }
+    }
+    return nb;
+  }
+
+  // Computes k[y][x]=v[y]*h[x]. Integral coefficients are factorized with
+  // integral vectors (exactly), other coefficients with a relative tolerance
+  static boolean factorize(double[][] k, double[] v, double[] h) {
+    int height=k.length;
+    int width=k[0].length;
+
+    boolean integral=true;
+    double max=0;
+    int yRef=-1, xRef=-1;
+    for(int y=0;y<height;y++) {
+      for(int x=0;x<width;x++) {
+        double d=k[y][x];
+        if ((d!=Math.rint(d))||(Math.abs(d)>Integer.MAX_VALUE)) {
+          integral=false;
+        }
+        if (Math.abs(d)>max) {
+          max=Math.abs(d);
+          yRef=y; xRef=x;
+        }
+      }
+    }
+    if (max==0) {
+      return false;
+    }
+
+    if (integral) {
+      // h is the first non null row divided by the gcd of its elements
+      for(yRef=0;getNbNonZero(k[yRef])==0;yRef++);
+      long gcd=0;
+      for(int x=0;x<width;x++) {
+        gcd=gcd(gcd,Math.abs((long)k[yRef][x]));
+      }
+      for(xRef=0;k[yRef][xRef]==0;xRef++);
+      for(int x=0;x<width;x++) {
+        h[x]=(long)k[yRef][x]/gcd;
+      }
+      for(int y=0;y<height;y++) {
+        long l=(long)k[y][xRef];
+        if (l%(long)h[xRef]!=0) {
+          return false;
+        }
+        v[y]=l/(long)h[xRef];
+        for(int x=0;x<width;x++) {
+          if (k[y][x]!=v[y]*h[x]) {
+            return false;
+          }
+        }
+      }
+    }
+    else {
+      // h is the row of the largest coefficient
+      for(int x=0;x<width;x++) {
+        h[x]=k[yRef][x];
+      }
+      for(int y=0;y<height;y++) {
+        v[y]=k[y][xRef]/k[yRef][xRef];
+        for(int x=0;x<width;x++) {
+          if (Math.abs(k[y][x]-v[y]*h[x])>max*1e-6) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  static long gcd(long a, long b) {
+    while (b!=0) {
+      long t=a%b;
+      a=b;
+      b=t;
+    }
+    return a;
+  }
+
+  // Base type of the input before it is checked
+  static Type getInputBaseCType(KernelData kd) {
+    if (kd instanceof FunctionNode) {
+      return ((FunctionNode)kd).getOutputBaseCType();
+    }
+    if ((kd.getMatrixType()==null)||!kd.getMatrixType().isRealArray()) {
+      return null;
+    }
+    return kd.getBaseCType();
+  }
+
+  // Checks that horizontal sums of an integral input can not overflow int
+  static boolean fitsInInt(Type inType, double[] h) {
+    long[] inRange=getIntPromotedRange(inType);
+    if (inRange==null) {
+      return false;
+    }
+    long min=0,max=0;
+    for(double d:h) {
+      long c=(long)d;
+      min+=Math.min(c*inRange[0],c*inRange[1]);
+      max+=Math.max(c*inRange[0],c*inRange[1]);
+    }
+    return (min>=Integer.MIN_VALUE)&&(max<=Integer.MAX_VALUE);
+  }
+
+  // Range of integer types computed as int, null for other types
+  static long[] getIntPromotedRange(Type t) {
+    if (t.isCharScalar()) {
+      return t.isUnsignedIntegerScalar()?new long[]{0,255}:new long[]{-128,127};
+    }
+    if (t.isShortScalar()) {
+      return t.isUnsignedIntegerScalar()?new long[]{0,65535}:new long[]{-32768,32767};
+    }
+    if (t.isIntScalar() && t.isSignedIntegerScalar()) {
+      return new long[]{Integer.MIN_VALUE,Integer.MAX_VALUE};
+    }
+    return null;
+  }
+
   
   //==================================================================
   // Filter function generation
@@ -234,12 +511,18 @@ public class Convolution extends Filter {
   
   // Dim 1
   void generateFixedCoefExpression(StringBuffer sb) {    
-    sb.append("((");
+    List<Literal> coefList=new LinkedList<Literal>();
+    List<String> refList=new LinkedList<String>();
 
-    boolean first=true;
     //---------------- Fixed coef generation --------------
     ArrayLiteral al=(ArrayLiteral) coefLiteral;
     for(int y=coefType.getFirstIndex(1),yy=0;y<=coefType.getLastIndex(1);y++,yy++) {
+      if (columnCoefs!=null) {
+        // Vertical pass of a separable convolution
+        addTerm(columnCoefs[yy],"$"+getFirstInputData().getName()+"["+y+"][0]",coefList,refList);
+        continue;
+      }
+
       // TODO: should check
       ArrayLiteral aly;
       if (coefType.getNbDims()==1) {
@@ -250,8 +533,11 @@ public class Convolution extends Filter {
       }
 
       //***** center *******
-      first=generateFixedCoefExpression0(aly,y,first,sb);
+      generateFixedCoefExpression0(aly,y,coefList,refList);
     }
+
+    sb.append("((");
+    generateCoefExpression(coefList,refList,getFirstInputData().getMatrixType().getBaseCType(),sb);
     sb.append(")");
 
     // Multiplier
@@ -270,89 +556,158 @@ public class Convolution extends Filter {
 
 
   // Dim 0
-  boolean generateFixedCoefExpression0(
-      ArrayLiteral aly, int y, boolean first,
-      StringBuffer sb) {
+  void generateFixedCoefExpression0(
+      ArrayLiteral aly, int y,
+      List<Literal> coefList, List<String> refList) {
     String inputName=getFirstInputData().getName();
 
     // In case the literal is not fully initialized
     if (aly==null) {
       // Consider 0 as coefficients
-      return first;
+      return;
     }
 
     for(int x=coefType.getFirstIndex(0),xx=0;
         x<=coefType.getLastIndex(0);
         x++,xx++) {   
-      // Coef
-      boolean flag = generateCoef(aly.getAtIndex(xx),first,sb);  
-      // Array
-      if (flag) {
-        sb.append("$").append(inputName);
-        sb.append("[").append(y).append("][").append(x).append("]");
-        first=false;
-      }
+      addTerm(aly.getAtIndex(xx),"$"+inputName+"["+y+"]["+x+"]",coefList,refList);
     }
-
-    return first;
   }
 
 
-  // Coefficient generation
-  boolean generateCoef(Literal alx, boolean first, StringBuffer sb) {
+  // Adds a coefficient*reference term, except for null coefficients
+  void addTerm(Literal alx, String ref, List<Literal> coefList, List<String> refList) {
     // In case the literal is not fully initialized
-    if (alx==null) {
-      return false;
+    if ((alx==null)||(getCoefValue(alx)==0)) {
+      return;
     }
+    coefList.add(alx);
+    refList.add(ref);
+  }
+
+  double getCoefValue(Literal alx) {
     if (alx instanceof FloatingPointLiteral) {
-      double d=((FloatingPointLiteral)alx).getValue();
-      if (d!=0) {
-        if (d<0) {
-          if (d==-1) {
-            sb.append("-");
-          }
-          else {
-            sb.append(""+d+"*");
-          }
-        }
-        else {
-          if (!first) {
-            sb.append("+");
-          }
-          if (d!=1) {
-            sb.append(""+d+"*");
-          }
-        }
-        return true;
-      }       
+      return ((FloatingPointLiteral)alx).getValue();
     }
     else if (alx instanceof IntegerLiteral) {
-      long l=((IntegerLiteral)alx).getValue();
-      if (l!=0) {
-        if (l<0) {
-          if (l==-1) {
-            sb.append("-");
-          }
-          else {
-            sb.append(""+l+"*");
-          }
+      return ((IntegerLiteral)alx).getValue();
+    }
+    ThreadOutput.err().println("Internal Error, coef is not a Scalar Literal : "+alx+","+coefLiteral);
+    CompilerError.exitWithError();      
+    return 0;
+  }
+
+
+  // Generates the sum of coefficient*reference terms:
+  //  - terms with the same coefficient magnitude are factorized,
+  //  - unit coefficients only lead to additions or subtractions,
+  //  - on unsigned integral inputs, a power of two multiplying a sum of
+  //    terms of the same sign becomes a shift,
+  //  - on floating point inputs, products are accumulated with fma() when
+  //    the target executes it natively (the coefficients of an integral
+  //    input may be floating point, its sums of terms are not)
+  void generateCoefExpression(List<Literal> coefList, List<String> refList, Type inType, StringBuffer sb) {
+    Type t=inType.unqualify();
+    boolean integral=t.isIntegralScalar();
+    for(Literal l:coefList) {
+      if (!(l instanceof IntegerLiteral)) {
+        integral=false;
+      }
+    }
+    boolean shift=integral && t.isUnsignedIntegerScalar();
+    boolean fma=t.isFloatingPointScalar() && useFma();
+
+    if (coefList.size()==0) {
+      sb.append("0");
+      return;
+    }
+
+    // Group terms by coefficient magnitude, in order of appearance
+    Map<Double,List<Integer>> groupMap=new LinkedHashMap<Double,List<Integer>>();
+    for(int i=0;i<coefList.size();i++) {
+      double m=Math.abs(getCoefValue(coefList.get(i)));
+      if (!groupMap.containsKey(m)) {
+        groupMap.put(m,new LinkedList<Integer>());
+      }
+      groupMap.get(m).add(i);
+    }
+
+    // With fma(), unit groups come first so that all other groups can be
+    // accumulated on them
+    List<Double> groupOrder=new LinkedList<Double>();
+    for(double m:groupMap.keySet()) {
+      if (!fma || (m==1)) {
+        groupOrder.add(m);
+      }
+    }
+    for(double m:groupMap.keySet()) {
+      if (fma && (m!=1)) {
+        groupOrder.add(m);
+      }
+    }
+
+    String acc="";
+    for(double m:groupOrder) {
+      List<Integer> group=groupMap.get(m);
+
+      // Sum of the group references, relative to the sign of the first term
+      double sign=Math.signum(getCoefValue(coefList.get(group.get(0))));
+      StringBuffer sum=new StringBuffer();
+      boolean sameSign=true;
+      for(int i:group) {
+        double s=Math.signum(getCoefValue(coefList.get(i)))*sign;
+        if (sum.length()!=0) {
+          sum.append(s>0?"+":"-");
+        }
+        sameSign&=(s>0);
+        sum.append(refList.get(i));
+      }
+      String term=(group.size()>1)?"("+sum+")":sum.toString();
+
+      if (fma && (m!=1) && (acc.length()!=0)) {
+        acc="fma("+(sign<0?"-":"")+getFmaCoefString(m,t)+","+sum+","+acc+")";
+        continue;
+      }
+
+      if (m!=1) {
+        Literal l=coefList.get(group.get(0));
+        long lm=(long)m;
+        if (shift && sameSign && ((lm&(lm-1))==0)) {
+          term="("+term+"<<"+Long.numberOfTrailingZeros(lm)+")";
+        }
+        else if (fma) {
+          term=getFmaCoefString(m,t)+"*"+term;
+        }
+        else if (l instanceof IntegerLiteral) {
+          term=lm+"*"+term;
         }
         else {
-          if (!first) {
-            sb.append("+");
-          }
-          if (l!=1) {
-            sb.append(""+l+"*");
-          }
+          term=m+"*"+term;
         }
-        return true;
-      }   
+      }
+      if (sign<0) {
+        acc=acc+"-"+term;
+      }
+      else {
+        acc=(acc.length()==0)?term:acc+"+"+term;
+      }
     }
-    else {
-      System.err.println("Internal Error, coef is not a Scalar Literal : "+alx+","+coefLiteral);
-      CompilerError.exitWithError();      
+    sb.append(acc);
+  }
+
+  // Coefficient literal of the type of fma() operands
+  static String getFmaCoefString(double m, Type t) {
+    if (t.isDoubleScalar()) {
+      return Double.toString(m);
     }
-    return false;
+    return Float.toString((float)m)+"f";
+  }
+
+  // fma() is an OpenCL C builtin, used when the target executes it natively
+  static boolean useFma() {
+    return "OpenCL".equals(CodegenOptions.getTargetLanguage()) &&
+        (CodegenOptions.getTargetDevice()!=null) &&
+        CodegenOptions.getTargetDevice().getComputeElement().hasNativeFma();
   }
 
 
@@ -371,6 +726,9 @@ public class Convolution extends Filter {
     StringBuffer sb = new StringBuffer();
     sb.append(super.toString());
     sb.append("; coefficients=").append(coefLiteral.toString());
+    if (columnCoefs!=null) {
+      sb.append(" (separable)");
+    }
     return sb.toString();
   }
 
@@ -25,6 +25,7 @@
 
 package ir.algorithms;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -51,6 +52,7 @@ import ir.types.kg.MatrixSize;
 import ir.types.kg.MatrixIndexes;
 import ir.types.kg.KernelDataCoordinate;
 import ir.types.kg.TypedMatrixIndexes;
+import utility.thread.ThreadOutput;
 
 
 public class Filter extends FunctionNode {
@@ -749,7 +751,12 @@ public class Filter extends FunctionNode {
     for(Object o:functionList) {
       if (o instanceof KernelDataCoordinate) {
         KernelDataCoordinate mi=(KernelDataCoordinate)o;
-        generateMatrixIndex(mi,firstIndexList,lastIndexList, lastIndexStringPlusOneList,internalData,ps);
+        if ((sharedLoadMap!=null)&&isSharableAccess(mi,internalData)) {
+          generateInputAccess(getMatrixIndexString(mi,firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData),ps);
+        }
+        else {
+          generateMatrixIndex(mi,firstIndexList,lastIndexList, lastIndexStringPlusOneList,internalData,ps);
+        }
       }
       else {
         ps.print(o);
@@ -758,6 +765,80 @@ public class Filter extends FunctionNode {
     ps.println();
   }
 
+  // Input accesses at fixed coordinates can be loaded once by the
+  // enclosing macro-node, whatever the border management
+  boolean isSharableAccess(KernelDataCoordinate mi, Set<KernelData> internalData) {
+    if ((mi.getSourceData()==this)||internalData.contains(mi.getSourceData())) {
+      return false;
+    }
+    for (int dim=0;dim<mi.getNbDims();dim++) {
+      if (!(mi.getIndex(dim) instanceof Integer)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  String getMatrixIndexString(
+      KernelDataCoordinate mi,
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList,
+      Set<KernelData> internalData) {
+    ByteArrayOutputStream bos=new ByteArrayOutputStream();
+    PrintStream tps=new PrintStream(bos);
+    generateMatrixIndex(mi,firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData,tps);
+    tps.flush();
+    return bos.toString();
+  }
+
+  @Override
+  protected List<KernelDataCoordinate> getStaticInputCoordinateList() {
+    List<KernelDataCoordinate> coordinateList=new LinkedList<KernelDataCoordinate>();
+    Set<KernelData> noInternalData=new HashSet<KernelData>();
+    for(Object o:functionList) {
+      if (o instanceof KernelDataCoordinate) {
+        KernelDataCoordinate mi=(KernelDataCoordinate)o;
+        if (mi.getSourceData()==this) {
+          continue;
+        }
+        if (!isSharableAccess(mi,noInternalData)) {
+          return null;
+        }
+        coordinateList.add(mi);
+      }
+    }
+    return coordinateList;
+  }
+
+  @Override
+  protected String getInputAccessString(
+      KernelDataCoordinate mi,
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList) {
+    return getMatrixIndexString(mi,firstIndexList,lastIndexList,lastIndexStringPlusOneList,new HashSet<KernelData>());
+  }
+
+  @Override
+  protected void collectInputAccesses(
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList,
+      Set<KernelData> internalData,
+      List<String> accessList,
+      List<KernelData> dataList) {
+    for(Object o:functionList) {
+      if (o instanceof KernelDataCoordinate) {
+        KernelDataCoordinate mi=(KernelDataCoordinate)o;
+        if (isSharableAccess(mi,internalData)) {
+          accessList.add(getMatrixIndexString(mi,firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData));
+          dataList.add(mi.getSourceData());
+        }
+      }
+    }
+  }
+
 
   public void generateMatrixIndex(
       KernelDataCoordinate mi,
@@ -769,7 +850,7 @@ public class Filter extends FunctionNode {
 
     if (mi.getNbDims()!=firstIndexList.size()) {
       // TODO: ERROR
-      System.err.println("Internal Error : mi.getNbDims()!=firstIndexList.size() ("+mi.getNbDims()+"!="+firstIndexList.size()+")");
+      ThreadOutput.err().println("Internal Error : mi.getNbDims()!=firstIndexList.size() ("+mi.getNbDims()+"!="+firstIndexList.size()+")");
       CompilerError.exitWithError();
     }
    
@@ -860,7 +941,7 @@ public class Filter extends FunctionNode {
             // not processed at the level
             break;
           default:
-            System.err.println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
+            ThreadOutput.err().println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
             CompilerError.exitWithError();      
           }
         }
@@ -938,7 +1019,7 @@ public class Filter extends FunctionNode {
             // not processed at the level
             break;
           default:
-            System.err.println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
+            ThreadOutput.err().println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
             CompilerError.exitWithError();      
           }
         }
@@ -1109,7 +1190,7 @@ public class Filter extends FunctionNode {
             // not processed at the level
             break;
           default:
-            System.err.println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
+            ThreadOutput.err().println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
             CompilerError.exitWithError();      
           }
         }
@@ -1229,7 +1310,7 @@ public class Filter extends FunctionNode {
            // Not processed at the level
             break;
           default:
-            System.err.println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
+            ThreadOutput.err().println("Internal Error, bad border type : "+getInputEdge(kd).getBorderMode().toString());
             CompilerError.exitWithError();      
           }
         }
@@ -1351,7 +1432,7 @@ public class Filter extends FunctionNode {
   	KernelData kd=mi.getSourceData();
   	
     if (mi.getNbDims()!=firstIndexList.size()) {
-      System.err.println("Internal Error : mi.getNbDims()!=firstIndexList.size() ("+mi.getNbDims()+"!="+firstIndexList.size()+")");
+      ThreadOutput.err().println("Internal Error : mi.getNbDims()!=firstIndexList.size() ("+mi.getNbDims()+"!="+firstIndexList.size()+")");
       CompilerError.exitWithError();
     }
 
@@ -1472,7 +1553,7 @@ public class Filter extends FunctionNode {
 
       else {
         // TODO: Exp index not supported yet
-        System.err.println("Internal Error : Exp index not supported yet");
+        ThreadOutput.err().println("Internal Error : Exp index not supported yet");
         CompilerError.exitWithError();
       }
 
@@ -1489,11 +1570,19 @@ public class Filter extends FunctionNode {
     }
   }
 
-  // TODO: Considers today that a program is generated once
-  static boolean generateRuntimeFunctions=false;
+  // TODO: Considers today that a program is generated once per thread
+  private static ThreadLocal<Boolean> generateRuntimeFunctions = new ThreadLocal<Boolean>() {
+    @Override
+    protected Boolean initialValue() {
+      return false;
+    }
+  };
+  public static void resetRuntimeFunctions() {
+    generateRuntimeFunctions.set(false);
+  }
   public void generateRuntimeFunctions(PrintStream ps) { 
-    if (!generateRuntimeFunctions) {
-      generateRuntimeFunctions=true;
+    if (!generateRuntimeFunctions.get()) {
+      generateRuntimeFunctions.set(true);
       ps.println(
           "// Runtime functions for Filter nodes\n"+
               "int _KG_duplicate_inf0(int oi,int firstIndex,int loopCounter,int size) {\n"+
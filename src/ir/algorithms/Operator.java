@@ -43,6 +43,7 @@ import ir.literals.Literal;
 import ir.types.c.Array;
 import ir.types.kg.MatrixSize;
 import ir.types.kg.MatrixIndexes;
+import utility.thread.ThreadOutput;
 
 public class Operator extends FunctionNode {
 
@@ -250,8 +251,8 @@ public class Operator extends FunctionNode {
           // Checks that types are compatibles
           if (!iterationSpace.isSame(kdReference.getMatrixType())) {
             ce.raiseError(fNode, getRelativeLine(), "iterating space for input variables is not compatible for Operator '"+getName()+"'");
-            System.err.println("A1:"+iterationSpace.toString());
-            System.err.println("A2:"+kdReference.getMatrixType().toString());
+            ThreadOutput.err().println("A1:"+iterationSpace.toString());
+            ThreadOutput.err().println("A2:"+kdReference.getMatrixType().toString());
 
           }
           iterationSet.add(kdReference);
@@ -342,11 +343,19 @@ public class Operator extends FunctionNode {
     
     // Expression
     generateFunctionList(new HashSet<KernelData>(), ps);
+    ps.println();
+
+    // Borders materialized in the output local buffer
+    generateBorderPaddingStore(ps,"    ");
     
     // End of loop
-    ps.println();
     ps.println("  }");
   }
+
+  // The output is accessed with the block counter
+  protected void appendOutputLoopCounter(StringBuffer sb) {
+    CLGenVarNames.appendComputeLoopBlockCounter(sb);
+  }
   
   protected void generateNodeComputeFunction(
       List<Integer> firstIndexList,
@@ -368,11 +377,11 @@ public class Operator extends FunctionNode {
     }
     for(Object o:functionList) {
       if (o instanceof KernelData) {
-        ps.print(((KernelData)o).getName());
         if (!internalData.contains(o)) {
-          ps.print("[0][");
-          CLGenVarNames.generateComputeLoopBlockCounter(ps);
-          ps.print("]");
+          generateInputAccess(getInputAccessString((KernelData)o),ps);
+        }
+        else {
+          ps.print(((KernelData)o).getName());
         }
       }
       else {
@@ -380,6 +389,31 @@ public class Operator extends FunctionNode {
       }
     }
   }
+
+  String getInputAccessString(KernelData kd) {
+    StringBuffer sb=new StringBuffer();
+    sb.append(kd.getName());
+    sb.append("[0][");
+    CLGenVarNames.appendComputeLoopBlockCounter(sb);
+    sb.append("]");
+    return sb.toString();
+  }
+
+  @Override
+  protected void collectInputAccesses(
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList,
+      Set<KernelData> internalData,
+      List<String> accessList,
+      List<KernelData> dataList) {
+    for(Object o:functionList) {
+      if ((o instanceof KernelData)&&(o!=this)&&(!internalData.contains(o))) {
+        accessList.add(getInputAccessString((KernelData)o));
+        dataList.add((KernelData)o);
+      }
+    }
+  }
   
 //  void generateComputeFunctionAssign(PrintStream ps) {
 //    ps.print("    " + getName() + "[0][_kg_i] = ");
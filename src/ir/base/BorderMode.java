@@ -37,6 +37,7 @@ import ir.literals.Literal;
 import ir.literals.c.FloatingPointLiteral;
 import ir.literals.c.IntegerLiteral;
 import ir.types.kg.KernelDataCoordinate;
+import utility.thread.ThreadOutput;
 
 public class BorderMode {
   // Default mode
@@ -183,6 +184,35 @@ public class BorderMode {
     return borderFunction;
   }
 
+  // Largest distance to the edge of the pixels read by the border function
+  public int getBorderFunctionMaxIndex() {
+    int max=0;
+    for(Object o:borderFunctionList) {
+      if (o instanceof KernelDataCoordinate) {
+        Object index=((KernelDataCoordinate)o).getIndex(0);
+        if ((index instanceof Integer) && ((Integer)index>max)) {
+          max=(Integer)index;
+        }
+      }
+    }
+    return max;
+  }
+
+  // Generates the border function, each '$[k]' being replaced by 'access'
+  // in which '#' stands for k
+  public void generateBorderFunction(String access, PrintStream ps) {
+    ps.print("(");
+    for(Object o:borderFunctionList) {
+      if (o instanceof KernelDataCoordinate) {
+        ps.print(access.replace("#",((KernelDataCoordinate)o).getIndex(0).toString()));
+      }
+      else {
+        ps.print(o);
+      }
+    }
+    ps.print(")");
+  }
+
   // Process the string function and compute the input read pattern
   int relativeLine;
   void updateRelativeLine(String s) {
@@ -335,7 +365,7 @@ public class BorderMode {
       emitter.literalNoType();
     } catch (RecognitionException e) {
       // TODO Auto-generated catch block
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
   }
 
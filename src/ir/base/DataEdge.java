@@ -41,6 +41,12 @@ public class DataEdge {
   MatrixIndexes minReadPattern = null;
   // Border semantics
   BorderMode border=null;
+  // Border materialized in the source local buffer (dim 0)
+  boolean borderPadded=false;
+  // Border rows (dim 1) remapped to lines of the source local buffer, and
+  // first border line holding rows out of the data (constant, exp), or -1
+  boolean borderRowPadded=false;
+  int borderLine=-1;
   
   //------- Scheduling graph information --------
   int dep=-1;
@@ -103,6 +109,26 @@ public class DataEdge {
   public boolean hasBorderDefined() {
     return getBorderMode()!=null;
   }
+  public void setBorderPadded(boolean b) {
+    borderPadded=b;
+  }
+  public boolean isBorderPadded() {
+    return borderPadded;
+  }
+  public void setBorderRowPadded(boolean b, int line) {
+    borderRowPadded=b;
+    borderLine=line;
+  }
+  public boolean isBorderRowPadded() {
+    return borderRowPadded;
+  }
+  public int getBorderLine() {
+    return borderLine;
+  }
+  // Returns true if the target reads out of the source data in dim n
+  public boolean needsBorderInDim(int n) {
+    return (getReadPattern().getFirstIndex(n)<0)||(getReadPattern().getLastIndex(n)>0);
+  }
 
   
   //========================================================
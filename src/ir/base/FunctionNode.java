@@ -31,7 +31,9 @@ import ir.types.c.Array;
 import ir.types.kg.MatrixSize;
 import ir.types.kg.MatrixIndexes;
 import ir.types.kg.TypedMatrixIndexes;
+import ir.types.kg.KernelDataCoordinate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,6 +42,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import codegen.CodegenDataPattern;
+import codegen.OpenCL.CLGenKernelData;
 import codegen.OpenCL.CLGenVarNames;
 
 import parser.TNode;
@@ -48,10 +52,20 @@ import common.CompilerError;
 import driver.options.CodegenOptions;
 
 public abstract class FunctionNode extends KernelData {
-  // Unique ID
-  static int globalId=0;
+  // Unique ID (the counter is per thread so that programs compiled
+  // concurrently get the same IDs as when compiled alone)
+  private static ThreadLocal<Integer> globalId = new ThreadLocal<Integer>() {
+    @Override
+    protected Integer initialValue() {
+      return 0;
+    }
+  };
   public int myId;
 
+  public static void resetGlobalId() {
+    globalId.set(0);
+  }
+
   // Base type given in the source file for the algorithmic node
   Type outputBaseCType=null;
   
@@ -213,7 +227,8 @@ public abstract class FunctionNode extends KernelData {
 
   public FunctionNode() {
     // Unique id (for example for code generation mangling)
-    myId=globalId++;
+    myId=globalId.get();
+    globalId.set(myId+1);
     
     // TODO: The output of an algorithm is by default iterative, what may not be 
     // always the case in the future. The result of an algorithm can be a single value
@@ -284,30 +299,31 @@ public abstract class FunctionNode extends KernelData {
   }
  
   //------ access patterns ------
+  // Strides and write patterns are not modified once set, they are interned
   protected void setInputStrideNoCheck(MatrixSize m) {
-    inputStridePattern=m;
+    inputStridePattern=m.intern();
   }
 
   protected void setInputStride(MatrixSize m, TNode tn, CompilerError ce) {
     if (inputStridePattern!=null) {
       ce.raiseWarning(tn,"redefining the input stride property");
     }
-    inputStridePattern=m;
+    inputStridePattern=m.intern();
   }
  
   protected void setWritePattern(MatrixIndexes m) {
-    writePattern=m;
+    writePattern=m.intern();
   }
 
   protected void setOutputStrideNoCheck(MatrixSize m) {
-    outputStridePattern=m;
+    outputStridePattern=m.intern();
   }
 
   protected void setOutputStride(MatrixSize m, TNode tn, CompilerError ce) {
     if (outputStridePattern!=null) {
       ce.raiseWarning(tn,"redefining the output stride property");
     }
-    outputStridePattern=m;
+    outputStridePattern=m.intern();
   }
   
   
@@ -350,7 +366,35 @@ public abstract class FunctionNode extends KernelData {
     }
     borderProperty.put(kd,b);
   }
-  
+
+  // Returns the border property set for an input, or null if not set
+  protected BorderMode getBorderProperty(KernelData kd) {
+    return borderProperty.get(kd);
+  }
+
+  //------ Input replacement (before the node is checked) ------
+  protected void replaceInputData(KernelData kdOld, KernelData kdNew) {
+    inputDataList.set(inputDataList.indexOf(kdOld),kdNew);
+    inputDataMap.remove(kdOld.getName());
+    inputDataMap.put(kdNew.getName(),kdNew);
+    if (borderProperty.containsKey(kdOld)) {
+      borderProperty.put(kdNew,borderProperty.remove(kdOld));
+    }
+  }
+
+
+  //==================================================================
+  // Node decomposition (-O1)
+  //==================================================================
+
+  // Optionally splits the node into a chain of two nodes, before nodes are
+  // checked. The returned node is a new predecessor that the caller must
+  // insert in the graph before this node, which has been rewired to read its
+  // output. Returns null when the node is kept as is
+  public FunctionNode decompose(CompilerError ce) {
+    return null;
+  }
+
   //==================================================================
   // Data access patterns for answering the quation:
   // for computing an output value, what input pattern do we need ?
@@ -491,50 +535,46 @@ public abstract class FunctionNode extends KernelData {
   
   protected void computeTileGrainForSuccessors() {    
     // Output stride for graph leaves
-    setTileGrainForSuccessors(new MatrixSize(getOutputStridePattern()));    
+    MatrixSize grain=new MatrixSize(getOutputStridePattern());
     for(DataEdge de:getUserEdgeList()) {
-      getTileGrainForSuccessors().lcm(de.getTileInGrainConstraint());
+      grain.lcm(de.getTileInGrainConstraint());
     }
+    setTileGrainForSuccessors(grain);
   }  
   
   // For KernelData that is not a function node
   protected void computeNbhForSuccessors() {
     // Start with [0:0, 0:0] matrix
-    setTileNbhForSuccessors(new MatrixIndexes(MatrixIndexes.MatrixSingleElementCentered));
+    MatrixIndexes nbh=new MatrixIndexes(MatrixIndexes.MatrixSingleElementCentered);
     for(DataEdge de:getUserEdgeList()) {
-      getTileNbhForSuccessors().union(de.getTileInNbhConstraint());
+      nbh.union(de.getTileInNbhConstraint());
     }
     // OLD: Multiple of the block size
-    //getTileNbhForSuccessors().inflateToMultipleOf(getOutputStridePattern());
+    //nbh.inflateToMultipleOf(getOutputStridePattern());
     // Multiple of the grain size
-    getTileNbhForSuccessors().inflateToMultipleOf(getTileGrainForGraph());
+    nbh.inflateToMultipleOf(getTileGrainForGraph());
+    setTileNbhForSuccessors(nbh);
   }
 
   
+  // The graph tile granularity is deduced from the first edge reaching the
+  // node in the graph traversal (null for nodes without ancestor)
   protected void computeTileGrainForGraph(DataEdge edge) {
-    // Compute only once
-    if (getTileGrainForGraph()==null) {
-      if (edge==null) {
-        // No ancestor like kernel inputs
-        setTileGrainForGraph(getTileGrainForSuccessors());
-        setTileExecutionRateForGraph(new MatrixSize(getTileGrainForGraph()).devideDirectBy(getOutputStridePattern()));
-      }
-      else {
-        MatrixSize tile=new MatrixSize(edge.getSourceData().getTileGrainForGraph());
-        tile.devideDirectBy(getInputStridePattern());
-        setTileExecutionRateForGraph(new MatrixSize(tile));
-        tile.multiplyDirectBy(getOutputStridePattern());
-        setTileGrainForGraph(tile);
-      }
-
-      nbBlocksPerTileGrainForGraph=new MatrixSize(getTileGrainForGraph())
-      .devideDirectBy(getOutputStridePattern());
-
-      // Recursive traversal
-      for(DataEdge de:getUserEdgeList()) {
-        de.getTargetFunctionNode().computeTileGrainForGraph(de);
-      } 
+    if (edge==null) {
+      // No ancestor like kernel inputs
+      setTileGrainForGraph(getTileGrainForSuccessors());
+      setTileExecutionRateForGraph(new MatrixSize(getTileGrainForGraph()).devideDirectBy(getOutputStridePattern()));
+    }
+    else {
+      MatrixSize tile=new MatrixSize(edge.getSourceData().getTileGrainForGraph());
+      tile.devideDirectBy(getInputStridePattern());
+      setTileExecutionRateForGraph(new MatrixSize(tile));
+      tile.multiplyDirectBy(getOutputStridePattern());
+      setTileGrainForGraph(tile);
     }
+
+    nbBlocksPerTileGrainForGraph=new MatrixSize(getTileGrainForGraph())
+    .devideDirectBy(getOutputStridePattern()).intern();
   }
 
   public int getPush() {
@@ -586,8 +626,54 @@ public abstract class FunctionNode extends KernelData {
       List<String> lastIndexStringPlusOneList, 
       Set<KernelData> internalData,
       PrintStream ps,
-      String prefix); 
-  
+      String prefix);
+
+  //--------------------------------------------------
+  // Input loads shared by the nodes of a macro-node
+  //--------------------------------------------------
+
+  // Code of input accesses -> private register holding the loaded value,
+  // set by the enclosing macro-node while it generates the node
+  protected Map<String,String> sharedLoadMap=null;
+
+  public void setSharedLoadMap(Map<String,String> m) {
+    sharedLoadMap=m;
+  }
+
+  // Collects the code of the input accesses of the node which do not depend
+  // on runtime values (fixed coordinates), together with the accessed data.
+  // By default, a node does not share its input accesses
+  protected void collectInputAccesses(
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList,
+      Set<KernelData> internalData,
+      List<String> accessList,
+      List<KernelData> dataList) {
+  }
+
+  // Generates an input access, replaced by its private register when the
+  // load is shared in the enclosing macro-node
+  protected void generateInputAccess(String access, PrintStream ps) {
+    String reg=null;
+    if (sharedLoadMap!=null) {
+      reg=sharedLoadMap.get(getSharedLoadKey(access));
+    }
+    ps.print((reg!=null)?reg:access);
+  }
+
+  // Accesses are compared on their code without preprocessor directives,
+  // which only carry the source position (EXP border functions)
+  public static String getSharedLoadKey(String access) {
+    StringBuffer sb=new StringBuffer();
+    for (String line:access.split("\n")) {
+      if (!line.trim().startsWith("#")) {
+        sb.append(line);
+      }
+    }
+    return sb.toString();
+  }
+
   // Generic scaling
   static void generateStrideMultiplication(MatrixSize stridePattern, int dim, PrintStream ps) {
     if (stridePattern.getNbElements(dim)!=1) {
@@ -819,8 +905,9 @@ public abstract class FunctionNode extends KernelData {
     if (isSkipOrUndef()) {
       generateSkipBeginVarDeclarationBlock(dataIterationSpace,0,ps,"  ");
     }
-    // Border management: Consider readPatternUnion instead of SkipPattern
-    generateSkipEndVarDeclarationBlock(dataIterationSpace,0,true,ps,"  ");
+    // Border management: Consider readPatternUnion instead of SkipPattern,
+    // except if borders are materialized in input buffers
+    generateSkipEndVarDeclarationBlock(dataIterationSpace,0,!hasBorderPaddedInputs(),ps,"  ");
     ps.println();
 
     // Compute loop counters
@@ -839,6 +926,9 @@ public abstract class FunctionNode extends KernelData {
       CLGenVarNames.generateIndexDeclaration(1,ps,"  ");
     }
 
+    // Rows out of the inputs taken from the materialized borders
+    generateBorderRowPadding(ps,"  ");
+
     List<Integer> firstIndex=new LinkedList<Integer>();
     List<Integer> lastIndex=new LinkedList<Integer>();
     List<String> lastIndexStringPlusOne=new LinkedList<String>();
@@ -868,8 +958,9 @@ public abstract class FunctionNode extends KernelData {
 	    if (isSkipOrUndef()) {
 	      generateSkipBeginVarDeclarationBlock(dataIterationSpace,0,ps,"  ");
 	    }
-	    // Border management: Consider readPatternUnion instead of SkipPattern
-	    generateSkipEndVarDeclarationBlock(dataIterationSpace,0,true,ps,"  ");
+	    // Border management: Consider readPatternUnion instead of SkipPattern,
+	    // except if borders are materialized in input buffers
+	    generateSkipEndVarDeclarationBlock(dataIterationSpace,0,!hasBorderPaddedInputs(),ps,"  ");
 	    ps.println();
 
 	    // Compute loop counters
@@ -949,10 +1040,15 @@ public abstract class FunctionNode extends KernelData {
     lastIndexList.add(0,getReadPatternUnion().getLastIndex(n));
     lastIndexStringPlusOneList.add(0,getFirstInputEdge().getSourceData().getMatrixType().getLastIndexPlusOneString(n));
 
+    // Note: no specific version when border rows are materialized in inputs
+    boolean padded=(n==1)&&hasBorderRowPaddedInputs();
+    int firstBorder=padded?getOutputSkipPattern().getFirstIndex(n):getReadPatternUnion().getFirstIndex(n);
+    int lastBorder=padded?getOutputSkipPattern().getLastIndex(n):getReadPatternUnion().getLastIndex(n);
+
     // Left 
     firstIndexList.remove(0);    
     for (int i=getOutputSkipPattern().getFirstIndex(n);
-        i>getReadPatternUnion().getFirstIndex(n);
+        i>firstBorder;
         i--) {
       ps.print(prefix);
       if (notfirst) { ps.print("else ");} else {notfirst=true;}
@@ -978,7 +1074,7 @@ public abstract class FunctionNode extends KernelData {
     // Right
     lastIndexList.remove(0);
     for (int i=getOutputSkipPattern().getLastIndex(n);
-        i<getReadPatternUnion().getLastIndex(n);
+        i<lastBorder;
         i++) {
       ps.print(prefix);
       if (notfirst) { ps.print("else ");} else {notfirst=true;}
@@ -1132,9 +1228,12 @@ public abstract class FunctionNode extends KernelData {
     firstIndexList.add(0,getReadPatternUnion().getFirstIndex(n));
 
     // Left (not undef/skip, but in the read pattern)
+    // Note: no specific version when borders are materialized in inputs
+    boolean padded=hasBorderPaddedInputs();
+    int firstBorder=padded?getOutputSkipPattern().getFirstIndex(n):getReadPatternUnion().getFirstIndex(n);
     firstIndexList.remove(0);    
     for (int i=getOutputSkipPattern().getFirstIndex(n);
-        i>getReadPatternUnion().getFirstIndex(n);
+        i>firstBorder;
         i--) {
       ps.print(prefix);
       ps.print("if (");
@@ -1145,6 +1244,7 @@ public abstract class FunctionNode extends KernelData {
       firstIndexList.add(0,i);
       generateNodeComputeFunction(firstIndexList, lastIndexList, lastIndexStringPlusOneList,new HashSet<KernelData>(),ps,newPrefix);
       firstIndexList.remove(0);    
+      generateBorderPaddingStore(ps,newPrefix);
       ps.print(newPrefix);
       generateFinalLoopCounterIncrement(ps);
       ps.println(";"); 
@@ -1154,26 +1254,30 @@ public abstract class FunctionNode extends KernelData {
     firstIndexList.add(0,getReadPatternUnion().getFirstIndex(n));
 
     // central
-    ps.print(prefix);
-    ps.print("for (;");
-    CLGenVarNames.generateComputeLoopBlockCounter(ps);
-    ps.print("<");
-    //    dataFullIterationSpaceInput.generateLastIndexPlusOne(0,ps);
-    CLGenVarNames.generateMyWGSliceSizeBlockUnit(this,0, ps);
-    ps.print("+");
-    CLGenVarNames.generateMyWGSliceRightExtentBlockUnit(this,0,ps);
-    ps.print("-");
-    CLGenVarNames.generateSkipEndBlockUnit(this,0,ps);
-    ps.print(";");
-    generateFinalLoopCounterIncrement(ps);
-    ps.println(") {");
-    generateNodeComputeFunction(firstIndexList, lastIndexList, lastIndexStringPlusOneList,new HashSet<KernelData>(),ps,newPrefix);
-    ps.print(prefix);
-    ps.println("}");
+    List<SlidingWindowRow> windowRowList=getSlidingWindowRowList();
+    if (windowRowList!=null) {
+      generateSlidingWindowCentralLoop(windowRowList,-firstBorder,firstIndexList, lastIndexList, lastIndexStringPlusOneList,ps,prefix);
+    }
+    else {
+      ps.print(prefix);
+      ps.print("for (;");
+      CLGenVarNames.generateComputeLoopBlockCounter(ps);
+      ps.print("<");
+      //    dataFullIterationSpaceInput.generateLastIndexPlusOne(0,ps);
+      generateFinalLoopEndBlock(ps);
+      ps.print(";");
+      generateFinalLoopCounterIncrement(ps);
+      ps.println(") {");
+      generateNodeComputeFunction(firstIndexList, lastIndexList, lastIndexStringPlusOneList,new HashSet<KernelData>(),ps,newPrefix);
+      generateBorderPaddingStore(ps,newPrefix);
+      ps.print(prefix);
+      ps.println("}");
+    }
 
     // Right (not undef/skip, but in the read pattern)
+    int lastBorder=padded?getOutputSkipPattern().getLastIndex(n):getReadPatternUnion().getLastIndex(0);
     lastIndexList.remove(0);
-    for (int i=getReadPatternUnion().getLastIndex(0)-1;i>=getOutputSkipPattern().getLastIndex(n);i--) {
+    for (int i=lastBorder-1;i>=getOutputSkipPattern().getLastIndex(n);i--) {
       ps.print(prefix);
       ps.print("if (");
       
@@ -1198,6 +1302,7 @@ public abstract class FunctionNode extends KernelData {
       lastIndexList.add(0,i);
       generateNodeComputeFunction(firstIndexList, lastIndexList, lastIndexStringPlusOneList,new HashSet<KernelData>(),ps,newPrefix);
       lastIndexList.remove(0);
+      generateBorderPaddingStore(ps,newPrefix);
       ps.print(newPrefix);
       generateFinalLoopCounterIncrement(ps);
       ps.println(";"); 
@@ -1231,6 +1336,526 @@ public abstract class FunctionNode extends KernelData {
     lastIndexStringPlusOneList.remove(0);
   }
     
+  // Dim 0 : End of the central loop
+  void generateFinalLoopEndBlock(PrintStream ps) {
+    CLGenVarNames.generateMyWGSliceSizeBlockUnit(this,0, ps);
+    ps.print("+");
+    CLGenVarNames.generateMyWGSliceRightExtentBlockUnit(this,0,ps);
+    ps.print("-");
+    CLGenVarNames.generateSkipEndBlockUnit(this,0,ps);
+  }
+
+  //------------------------------------------------------------------
+  // Register sliding window (dim 0)
+  //
+  // When the node reads its inputs at fixed coordinates only, the
+  // central part of the line is split into contiguous chunks, one per
+  // work-item. Along a chunk, the neighborhood is kept in private
+  // registers which are shifted at each step in x, so that only the
+  // new column of the window is loaded from the local memory.
+  //------------------------------------------------------------------
+
+  // Row of the window for an input data (fixed indexes in dims >=1)
+  protected static class SlidingWindowRow {
+    KernelData data;
+    List<Object> rowIndexList;
+    int first, last;
+
+    SlidingWindowRow(KernelData kd, List<Object> l, int x) {
+      data=kd;
+      rowIndexList=l;
+      first=x;
+      last=x;
+    }
+
+    KernelDataCoordinate getCoordinate(int x) {
+      List<Object> l=new LinkedList<Object>();
+      l.add(x);
+      l.addAll(rowIndexList);
+      return new KernelDataCoordinate(data,l);
+    }
+    String getRegisterName(int x) {
+      return CLGenVarNames.getSlidingWindowRegisterName(data,rowIndexList,x);
+    }
+  }
+
+  // Input accesses of the node, if all of them are at fixed coordinates.
+  // Returns null otherwise (default)
+  protected List<KernelDataCoordinate> getStaticInputCoordinateList() {
+    return null;
+  }
+
+  // Code of an input access, as generated by the node
+  protected String getInputAccessString(
+      KernelDataCoordinate mi,
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList) {
+    return null;
+  }
+
+  // Returns the rows of the register window, or null if the node is not
+  // eligible or would not benefit from it
+  List<SlidingWindowRow> getSlidingWindowRowList() {
+    if ((!CodegenOptions.getSlidingWindow()) ||
+        (getInputStridePattern().getNbElements(0)!=1) ||
+        (getOutputStridePattern().getNbElements(0)!=1)) {
+      return null;
+    }
+    List<KernelDataCoordinate> coordinateList=getStaticInputCoordinateList();
+    if (coordinateList==null) {
+      return null;
+    }
+
+    Map<String,SlidingWindowRow> rowMap=new HashMap<String,SlidingWindowRow>();
+    List<SlidingWindowRow> rowList=new LinkedList<SlidingWindowRow>();
+    boolean sliding=false;
+    for (KernelDataCoordinate mi:coordinateList) {
+      List<Object> l=new LinkedList<Object>();
+      for (int dim=1;dim<mi.getNbDims();dim++) {
+        l.add(mi.getIndex(dim));
+      }
+      int x=(Integer)mi.getIndex(0);
+      String key=mi.getSourceData().getName()+l.toString();
+      SlidingWindowRow row=rowMap.get(key);
+      if (row==null) {
+        row=new SlidingWindowRow(mi.getSourceData(),l,x);
+        rowMap.put(key,row);
+        rowList.add(row);
+      }
+      else {
+        row.first=Math.min(row.first,x);
+        row.last=Math.max(row.last,x);
+        sliding|=(row.first!=row.last);
+      }
+    }
+
+    // Nothing is reused when moving along x
+    if (!sliding) {
+      return null;
+    }
+    return rowList;
+  }
+
+  // Counters are moved by the value of a variable (dim 0 stride is 1)
+  void generateLoopCounterShift(String delta, PrintStream ps) {
+    CLGenVarNames.generateComputeLoopBlockCounter(ps);
+    ps.print("+=");
+    ps.print(delta);
+    for(KernelData kd:getInputDataList()) {
+      ps.print(",");
+      CLGenVarNames.generateComputeLoopCounterPix(kd,ps);
+      ps.print("+=");
+      ps.print(delta);
+    }
+    ps.print(",");
+    CLGenVarNames.generateComputeLoopCounterPix(this,ps);
+    ps.print("+=");
+    ps.print(delta);
+  }
+
+  void generateSlidingWindowCentralLoop(
+      List<SlidingWindowRow> windowRowList,
+      int nbLeftBorders,
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList, 
+      PrintStream ps,
+      String prefix) {
+    String prefix2=prefix+"  ";
+    String prefix3=prefix2+"  ";
+    String prefix4=prefix3+"  ";
+    String start=CLGenVarNames.getSlidingWindowVarName("Start");
+    String begin=CLGenVarNames.getSlidingWindowVarName("Begin");
+    String end=CLGenVarNames.getSlidingWindowVarName("End");
+    String last=CLGenVarNames.getSlidingWindowVarName("Last");
+    String chunk=CLGenVarNames.getSlidingWindowVarName("Chunk");
+    String shift=CLGenVarNames.getSlidingWindowVarName("Shift");
+    String lid=CLGenVarNames.getLocalIdVarName(0);
+    String nbWI=CLGenVarNames.getLocalSizeVarName(0);
+
+    // Register names of window elements, looked-up by the access code.
+    // Rows read identically (borders in dims >=1) share their registers
+    Map<String,String> windowMap=new HashMap<String,String>();
+    Map<String,String> accessMap=new HashMap<String,String>();
+    Set<List<String>> rowKeySet=new HashSet<List<String>>();
+    List<SlidingWindowRow> rowList=new LinkedList<SlidingWindowRow>();
+    for (SlidingWindowRow row:windowRowList) {
+      List<String> rowKeyList=new LinkedList<String>();
+      for (int x=row.first;x<=row.last;x++) {
+        String access=getInputAccessString(row.getCoordinate(x),firstIndexList,lastIndexList,lastIndexStringPlusOneList);
+        rowKeyList.add(getSharedLoadKey(access));
+        accessMap.put(row.getRegisterName(x),access);
+      }
+      if (rowKeySet.add(rowKeyList)) {
+        rowList.add(row);
+        int x=row.first;
+        for (String key:rowKeyList) {
+          windowMap.put(key,row.getRegisterName(x++));
+        }
+      }
+    }
+
+    ps.print(prefix);ps.println("{");
+
+    // Strided start of the work-item, from which the right border
+    // management expects the loop counters to continue
+    ps.print(prefix2);
+    ps.print("int "+start+"=");
+    CLGenVarNames.generateComputeLoopBlockCounter(ps);
+    ps.println(";");
+    ps.print(prefix2);
+    ps.print("int "+end+"=");
+    generateFinalLoopEndBlock(ps);
+    ps.println(";");
+
+    // The central part starts after the left borders of the image
+    ps.print(prefix2);
+    ps.print("int "+begin+"=");
+    if (nbLeftBorders>0) {
+      ps.print("max(-");
+      CLGenVarNames.generateMyWGSliceLeftExtentBlockUnit(this,0,ps);
+      ps.print(","+nbLeftBorders+"-");
+      CLGenVarNames.generateMyWGSlicePositionBlockUnit(this,0,ps);
+      ps.print(")");
+    }
+    else {
+      ps.print("-");
+      CLGenVarNames.generateMyWGSliceLeftExtentBlockUnit(this,0,ps);
+    }
+    ps.println(";");
+
+    // Contiguous chunk of the work-item
+    ps.print(prefix2);
+    ps.println("int "+chunk+"=("+end+"-"+begin+"+"+nbWI+"-1)/"+nbWI+";");
+    ps.print(prefix2);
+    ps.println(begin+"+="+lid+"*"+chunk+";");
+    ps.print(prefix2);
+    ps.println("if ("+begin+"<"+end+") {");
+    ps.print(prefix3);
+    ps.print("int "+last+"=min("+begin+"+"+chunk+","+end+");");
+    ps.print(" int "+shift+"="+begin+"-");
+    CLGenVarNames.generateComputeLoopBlockCounter(ps);
+    ps.println(";");
+    ps.print(prefix3);
+    generateLoopCounterShift(shift,ps);
+    ps.println(";");
+
+    // Window preload (all columns but the last one)
+    for (SlidingWindowRow row:rowList) {
+      for (int x=row.first;x<=row.last;x++) {
+        ps.print(prefix3);
+        CLGenKernelData.generateBaseCType(row.data,ps);
+        ps.print(" ");
+        ps.print(row.getRegisterName(x));
+        if (x<row.last) {
+          ps.print(" = ");
+          ps.print(accessMap.get(row.getRegisterName(x)));
+        }
+        ps.println(";");
+      }
+    }
+
+    // Sliding loop
+    ps.print(prefix3);
+    ps.print("for (;");
+    CLGenVarNames.generateComputeLoopBlockCounter(ps);
+    ps.print("<"+last+";");
+    generateLoopCounterShift("1",ps);
+    ps.println(") {");
+    for (SlidingWindowRow row:rowList) {
+      ps.print(prefix4);
+      ps.print(row.getRegisterName(row.last));
+      ps.print(" = ");
+      ps.print(accessMap.get(row.getRegisterName(row.last)));
+      ps.println(";");
+    }
+    setSharedLoadMap(windowMap);
+    generateNodeComputeFunction(firstIndexList, lastIndexList, lastIndexStringPlusOneList,new HashSet<KernelData>(),ps,prefix4);
+    setSharedLoadMap(null);
+    generateBorderPaddingStore(ps,prefix4);
+    for (SlidingWindowRow row:rowList) {
+      if (row.first<row.last) {
+        ps.print(prefix4);
+        for (int x=row.first;x<row.last;x++) {
+          ps.print(row.getRegisterName(x)+"="+row.getRegisterName(x+1)+"; ");
+        }
+        ps.println();
+      }
+    }
+    ps.print(prefix3);ps.println("}");
+    ps.print(prefix2);ps.println("}");
+
+    // Counters as left by the strided loop
+    ps.print(prefix2);
+    ps.print("int "+shift+"=(("+start+"<"+end+")?"+start+"+(("+end+"-"+start+"+"+nbWI+"-1)/"+nbWI+")*"+nbWI+":"+start+")-");
+    CLGenVarNames.generateComputeLoopBlockCounter(ps);
+    ps.println(";");
+    ps.print(prefix2);
+    generateLoopCounterShift(shift,ps);
+    ps.println(";");
+
+    ps.print(prefix);ps.println("}");
+  }
+
+  //------------------------------------------------------------------
+  // Borders materialized in local buffers (dim 0)
+  //------------------------------------------------------------------
+
+  // Returns true if all inputs read out of their data in dim 0 have their
+  // borders materialized, so that no border specific version is needed
+  public boolean hasBorderPaddedInputs() {
+    if ((getOutputSkipPattern().getFirstIndex(0)!=0) ||
+        (getOutputSkipPattern().getLastIndex(0)!=0)) {
+      return false;
+    }
+    boolean padded=false;
+    for(DataEdge de:inputEdgeList) {
+      if (de.needsBorderInDim(0)) {
+        if (!de.isBorderPadded()) {
+          return false;
+        }
+        padded=true;
+      }
+    }
+    return padded;
+  }
+
+  // Returns true if all inputs read out of their data in dim 1 have their
+  // border rows materialized, so that no border specific version is needed
+  public boolean hasBorderRowPaddedInputs() {
+    boolean padded=false;
+    for(DataEdge de:inputEdgeList) {
+      if (de.needsBorderInDim(1)) {
+        if (!de.isBorderRowPadded()) {
+          return false;
+        }
+        padded=true;
+      }
+    }
+    return padded;
+  }
+
+  String getAbsoluteWIPositionNodeInPixelInputString(int n) {
+    ByteArrayOutputStream bos=new ByteArrayOutputStream();
+    PrintStream tps=new PrintStream(bos);
+    generateAbsoluteWIPositionNodeInPixelInput(n,tps);
+    tps.flush();
+    return bos.toString();
+  }
+
+  // Remaps the rows of inputs read out of their data to data lines
+  // (duplicate, mirror) or to border lines (constant, exp), through a
+  // private copy of the row pointers. Exp border lines are computed from
+  // the rows at distance k of the edge when the line is read
+  void generateBorderRowPadding(PrintStream ps, String prefix) {
+    String pos=getAbsoluteWIPositionNodeInPixelInputString(1);
+    for(DataEdge de:inputEdgeList) {
+      if (!de.isBorderRowPadded()) {
+        continue;
+      }
+      KernelData kd=de.getSourceData();
+      BorderMode bm=de.getBorderMode();
+      String name=kd.getName();
+      String height=kd.getMatrixType().getLastIndexPlusOneString(1);
+      StringBuffer lines=new StringBuffer();
+      CLGenVarNames.appendBorderLineParamName(kd,lines);
+      int first=de.getReadPattern().getFirstIndex(1);
+      int last=de.getReadPattern().getLastIndex(1);
+
+      if (bm.isExp()) {
+        if (first<0) {
+          ps.println(prefix+"if ("+pos+"<"+(-first)+") {");
+          generateBorderLineExpFill(de,lines+"[0]","-"+pos+"+#",ps,prefix+"  ");
+          ps.println(prefix+"}");
+        }
+        if (last>0) {
+          ps.println(prefix+"if ("+pos+">"+height+"-"+(last+1)+") {");
+          generateBorderLineExpFill(de,lines+"[1]",height+"-1-"+pos+"-#",ps,prefix+"  ");
+          ps.println(prefix+"}");
+        }
+      }
+
+      StringBuffer rows=new StringBuffer();
+      CLGenVarNames.appendBorderRowName(kd,rows);
+      ps.print(prefix);
+      ps.print("local ");
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.println(" *"+rows+"["+(last-first+1)+"];");
+      for(int r=first;r<=last;r++) {
+        ps.print(prefix+rows+"["+(r-first)+"]=");
+        if (r<0) {
+          ps.print("("+pos+"<"+(-r)+")?");
+          if (bm.isDuplicate()) {
+            ps.print(name+"[-"+pos+"]");
+          }
+          else if (bm.isMirror()) {
+            ps.print(name+"[-2*"+pos+"+"+(-r-1)+"]");
+          }
+          else {
+            ps.print(lines+"[0]");
+          }
+          ps.print(":");
+        }
+        else if (r>0) {
+          ps.print("("+pos+">"+height+"-"+(r+1)+")?");
+          if (bm.isDuplicate()) {
+            ps.print(name+"["+height+"-1-"+pos+"]");
+          }
+          else if (bm.isMirror()) {
+            ps.print(name+"[2*"+height+"-2*"+pos+"-"+(r+1)+"]");
+          }
+          else {
+            ps.print(lines+"[1]");
+          }
+          ps.print(":");
+        }
+        ps.println(name+"["+r+"];");
+      }
+      ps.println(prefix+name+"=&"+rows+"["+(-first)+"];");
+      ps.println();
+    }
+  }
+
+  // Computes an exp border line over the columns read by the node. The
+  // pixel at distance k of the edge is read in the row 'row' (k being '#')
+  // of the input, on the diagonal for corners
+  void generateBorderLineExpFill(DataEdge de, String line, String row,
+      PrintStream ps, String prefix) {
+    KernelData kd=de.getSourceData();
+    BorderMode bm=de.getBorderMode();
+    String name=kd.getName();
+    String width=kd.getMatrixType().getLastIndexPlusOneString(0);
+    int stride=getInputStridePattern().getNbElements(0);
+    StringBuffer counter=new StringBuffer();
+    CLGenVarNames.appendBorderPaddingCounter(counter);
+    StringBuffer pos=new StringBuffer("(");
+    CLGenVarNames.appendMyWGSlicePositionBlockUnit(this,0,pos);
+    pos.append("*").append(stride).append(")");
+
+    ps.println(prefix+"barrier(CLK_LOCAL_MEM_FENCE);");
+    ps.print(prefix+"for (int "+counter+"=(-");
+    CLGenVarNames.generateMyWGSliceLeftExtentBlockUnit(this,0,ps);
+    ps.print(")*"+stride+"+"+de.getReadPattern().getFirstIndex(0)+"+"+CLGenVarNames.getLocalIdVarName(0)+";");
+    ps.print(counter+"<(");
+    CLGenVarNames.generateMyWGSliceSizeBlockUnit(this,0,ps);
+    ps.print("+");
+    CLGenVarNames.generateMyWGSliceRightExtentBlockUnit(this,0,ps);
+    ps.print("-1)*"+stride+"+"+(de.getReadPattern().getLastIndex(0)+1)+";");
+    ps.println(counter+"+="+CLGenVarNames.getLocalSizeVarName(0)+") {");
+    ps.print(prefix+"  "+line+"["+counter+"]=");
+    ps.print("("+pos+"+"+counter+"<0)?");
+    bm.generateBorderFunction(name+"["+row+"][-"+pos+"+#]",ps);
+    ps.print(":("+pos+"+"+counter+">"+width+"-1)?");
+    bm.generateBorderFunction(name+"["+row+"]["+width+"-1-"+pos+"-#]",ps);
+    ps.print(":");
+    bm.generateBorderFunction(name+"["+row+"]["+counter+"]",ps);
+    ps.println(";");
+    ps.println(prefix+"}");
+    ps.println(prefix+"barrier(CLK_LOCAL_MEM_FENCE);");
+  }
+
+  // Output local counter (unit = pixel) in the compute loop
+  protected void appendOutputLoopCounter(StringBuffer sb) {
+    CLGenVarNames.appendComputeLoopCounterPix(this,sb);
+  }
+
+  // Writes the border pixels of the output local buffer derived from the
+  // pixels just computed (duplicate and mirror modes), one per output
+  // stride in dim 0. Only pixels falling in the local buffer of the
+  // work-group are written
+  protected void generateBorderPaddingStore(PrintStream ps, String prefix) {
+    CodegenDataPattern codegenPattern=getCodegenDataPattern();
+    if ((!codegenPattern.hasBorderPadding()) ||
+        !(codegenPattern.getPaddingBorderMode().isDuplicate() ||
+          codegenPattern.getPaddingBorderMode().isMirror())) {
+      return;
+    }
+    boolean mirror=codegenPattern.getPaddingBorderMode().isMirror();
+    int stride=getOutputStridePattern().getNbElements(0);
+    int nbhLeft=-getTileNbhForSuccessors().getFirstIndex(0);
+    int nbhRight=getTileNbhForSuccessors().getLastIndex(0);
+    String width=getMatrixType().getLastIndexPlusOneString(0);
+    StringBuffer limit=new StringBuffer();
+    CLGenVarNames.appendMyWGSliceSizeBlockUnit(this,0,limit);
+    if (stride!=1) {
+      limit.append("*").append(stride);
+    }
+    limit.append("+").append(nbhRight);
+
+    for(int j=0;j<stride;j++) {
+      // Pixel just computed, in the output local buffer and in the data
+      StringBuffer counter=new StringBuffer();
+      appendOutputLoopCounter(counter);
+      StringBuffer pos=new StringBuffer("(");
+      CLGenVarNames.appendMyWGSlicePositionBlockUnit(this,0,pos);
+      pos.append("+");
+      CLGenVarNames.appendComputeLoopBlockCounter(pos);
+      pos.append(")");
+      if (stride!=1) {
+        counter.insert(0,"(").append("+").append(j).append(")");
+        pos.insert(0,"(").append("*").append(stride).append("+").append(j).append(")");
+      }
+
+      // Left border
+      int padLeft=codegenPattern.getPaddingLeft();
+      if ((padLeft>0) && (mirror || (j==0))) {
+        ps.print(prefix);
+        ps.println("if ("+pos+"<"+padLeft+") {");
+        if (mirror) {
+          String dest=counter+"-2*"+pos+"-1";
+          ps.println(prefix+"  if ("+dest+">=-"+nbhLeft+") {");
+          generateBorderPaddingStoreLines(dest,counter.toString(),ps,prefix+"    ");
+          ps.println(prefix+"  }");
+        }
+        else {
+          ps.println(prefix+"  if ("+pos+"==0) {");
+          for(int k=1;k<=padLeft;k++) {
+            String dest=counter+"-"+k;
+            ps.println(prefix+"    if ("+dest+">=-"+nbhLeft+") {");
+            generateBorderPaddingStoreLines(dest,counter.toString(),ps,prefix+"      ");
+            ps.println(prefix+"    }");
+          }
+          ps.println(prefix+"  }");
+        }
+        ps.print(prefix);
+        ps.println("}");
+      }
+
+      // Right border
+      int padRight=codegenPattern.getPaddingRight();
+      if (padRight>0) {
+        ps.print(prefix);
+        ps.println("if ("+pos+">="+width+"-"+padRight+") {");
+        if (mirror) {
+          String dest=counter+"+2*("+width+"-1-"+pos+")+1";
+          ps.println(prefix+"  if ("+dest+"<"+limit+") {");
+          generateBorderPaddingStoreLines(dest,counter.toString(),ps,prefix+"    ");
+          ps.println(prefix+"  }");
+        }
+        else {
+          ps.println(prefix+"  if ("+pos+"=="+width+"-1) {");
+          for(int k=1;k<=padRight;k++) {
+            String dest=counter+"+"+k;
+            ps.println(prefix+"    if ("+dest+"<"+limit+") {");
+            generateBorderPaddingStoreLines(dest,counter.toString(),ps,prefix+"      ");
+            ps.println(prefix+"    }");
+          }
+          ps.println(prefix+"  }");
+        }
+        ps.print(prefix);
+        ps.println("}");
+      }
+    }
+  }
+
+  void generateBorderPaddingStoreLines(String dest, String src, PrintStream ps, String prefix) {
+    for(int r=0;r<getOutputStridePattern().getNbElements(1);r++) {
+      ps.print(prefix);
+      ps.println(getName()+"["+r+"]["+dest+"]="+getName()+"["+r+"]["+src+"];");
+    }
+  }
+
   void generateFinalLoopCounterIncrement(PrintStream ps) {
     // Loop counter
     CLGenVarNames.generateComputeLoopBlockCounter(ps);
@@ -27,17 +27,28 @@ package ir.base;
 
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import codegen.OpenCL.CLGenKernelData;
 
+import ir.literals.c.IntegerLiteral;
+import ir.types.Type;
+
 import common.CompilerError;
+import common.TimeReport;
+import driver.options.CodegenOptions;
 import driver.options.GeneralOptions;
 
 import parser.TNode;
+import target.ComputeUnit;
 
 
 public class Kernel extends IRElement {
@@ -56,6 +67,26 @@ public class Kernel extends IRElement {
   private final List<FunctionNode> functionNodeList = new LinkedList<FunctionNode>();  // transient + outputs
   private final List<KernelData> computationalOutputList = new LinkedList<KernelData>(); // kernel outputs
 
+  // Width of internal tiles in dim 0 (unit = grain), 0 if not bounded
+  private int internalTileWidth = 0;
+
+  // NDRange chosen by the automatic fitting: widest work-group slice in
+  // dim 0 (unit = grain, 0 if not bounded), work-items per work-group and
+  // work-groups of the target device
+  private int autoFitSliceWidth = 0;
+  private int autoFitNbWI = 1;
+  private int autoFitNbWG = 1;
+
+  // Work-group barriers per scheduler iteration in SYNC merge mode
+  private int nbBarriers = 0;
+
+  // Scheduling cycles and local buffer size (bytes) given by the ASAP and
+  // the force-directed schedulers (for the tiling report)
+  private Map<KernelData,Integer> asapCycleMap = null;
+  private Map<KernelData,Integer> forceCycleMap = null;
+  private long asapBufferSize = 0;
+  private long forceBufferSize = 0;
+
 
   //========================================================
   // Building
@@ -130,6 +161,12 @@ public class Kernel extends IRElement {
   
   // Check for limitations
   public void completeAndCheck(CompilerError ce) {
+    // Node decomposition, done before nodes are checked so that new nodes
+    // are completed as the ones from the source file
+    if (GeneralOptions.getOptimizationLevel()>0) {
+      decomposeNodes(ce);
+    }
+
     // Node completion
     for (FunctionNode fn: getFunctionNodeList()) {
       fn.completeAndCheck(ce);
@@ -174,6 +211,36 @@ public class Kernel extends IRElement {
     }
   }
 
+  void decomposeNodes(CompilerError ce) {
+    List<FunctionNode> decomposedList=new LinkedList<FunctionNode>();
+    List<FunctionNode> nodeList=new LinkedList<FunctionNode>();
+
+    for (FunctionNode fn:functionNodeList) {
+      FunctionNode fnPred=fn.decompose(ce);
+      if (fnPred!=null) {
+        // The new node is inserted just before the decomposed node
+        nodeList.add(fnPred);
+        decomposedList.add(fn);
+      }
+      nodeList.add(fn);
+    }
+    functionNodeList.clear();
+    functionNodeList.addAll(nodeList);
+
+    // Verbose
+    if (GeneralOptions.getDebugLevel()>0) {
+      if (decomposedList.size()==0) {
+        ce.raiseMessage("No nodes decomposed");
+      }
+      else {
+        ce.raiseMessage("  ... Decomposed nodes (-O1) :");
+        for (FunctionNode fn:decomposedList) {
+          ce.raiseMessage("      "+fn.getFirstInputData().getName()+" -> "+fn.getName());
+        }
+      }
+    }
+  }
+
   void mergeNodes(CompilerError ce) {
     List<MacroFunctionNode> macroNodeList=new LinkedList<MacroFunctionNode>();
     Set<FunctionNode> processedNodeSet=new HashSet<FunctionNode>();
@@ -196,26 +263,18 @@ public class Kernel extends IRElement {
       m.completeAndCheck(ce);
     }
 
-    // Remove sub-nodes from the kernel node list
+    // Replace sub-nodes by their macro-node in the kernel node lists, the
+    // macro-node taking the place of its head
+    Map<KernelData,MacroFunctionNode> headMap=new HashMap<KernelData,MacroFunctionNode>();
+    Set<KernelData> removedSet=new HashSet<KernelData>();
     for (MacroFunctionNode m:macroNodeList) {
-      int i;
-
-      i=functionNodeList.indexOf(m.getHead());
-      functionNodeList.add(i,m);
-
-      i=computationalDataList.indexOf(m.getHead());
-      computationalDataList.add(i,m);
-
-      // If never the head is a kernel output
-      i=computationalOutputList.indexOf(m.getHead());
-      if (i>=0) {
-        computationalOutputList.add(i,m);
-      }
-
-      for(FunctionNode fn:m.getFunctionNodeList()) {
-        removeNode(fn);
-      }     
+      headMap.put(m.getHead(),m);
+      removedSet.addAll(m.getFunctionNodeList());
     }
+    replaceNodes(functionNodeList,headMap,removedSet);
+    replaceNodes(computationalDataList,headMap,removedSet);
+    // If never the head is a kernel output
+    replaceNodes(computationalOutputList,headMap,removedSet);
 
     // Verbose
     if (GeneralOptions.getDebugLevel()>0) {
@@ -231,11 +290,23 @@ public class Kernel extends IRElement {
     }
   }
 
-  void removeNode(FunctionNode fn) {
-    // Remove from node lists
-    functionNodeList.remove(fn);
-    computationalDataList.remove(fn);
-    computationalOutputList.remove(fn);
+  // Rebuilds a node list in a single pass, inserting macro-nodes before
+  // their head and removing merged nodes
+  @SuppressWarnings("unchecked")
+  static <T extends KernelData> void replaceNodes(List<T> list,
+      Map<KernelData,MacroFunctionNode> headMap, Set<KernelData> removedSet) {
+    List<T> newList=new LinkedList<T>();
+    for(T kd:list) {
+      MacroFunctionNode m=headMap.get(kd);
+      if (m!=null) {
+        newList.add((T)m);
+      }
+      if (!removedSet.contains(kd)) {
+        newList.add(kd);
+      }
+    }
+    list.clear();
+    list.addAll(newList);
   }
 
   
@@ -245,17 +316,57 @@ public class Kernel extends IRElement {
   //==================================================================
 
   public void analyze(CompilerError ce) {
+    TimeReport.Phase phase;
+
     // Tiling analysis
+    phase=TimeReport.start("tileAnalysis",getName());
     tileAnalysis();
+    TimeReport.stop(phase);
 
     // Compute the scheduling information
+    phase=TimeReport.start("computeScheduling",getName());
     computeScheduling();
+    TimeReport.stop(phase);
     
     // Compute the Buffering information
+    phase=TimeReport.start("computeBufferSlots",getName());
     computeBufferSlots();
+    TimeReport.stop(phase);
+
+    // Synchronization between nodes
+    if (CodegenOptions.isSyncMergeMode()) {
+      phase=TimeReport.start("computeBarrierPlacement",getName());
+      computeBarrierPlacement();
+      TimeReport.stop(phase);
+    }
     
     // (For code generation)
+    phase=TimeReport.start("computeAccessPatternUnion",getName());
     computeAccessPatternUnion();  
+    TimeReport.stop(phase);
+
+    // Borders materialized in local buffers (their border lines are part of
+    // the local memory footprint)
+    if (CodegenOptions.isImageKernelMode() && CodegenOptions.getBorderPadding() &&
+        "OpenCL".equals(CodegenOptions.getTargetLanguage())) {
+      phase=TimeReport.start("computeBorderPadding",getName());
+      computeBorderPadding();
+      TimeReport.stop(phase);
+    }
+
+    // Internal 2D tiling
+    if (CodegenOptions.isImageKernelMode() && CodegenOptions.isTileKernelInternalTiling()) {
+      phase=TimeReport.start("computeInternalTileWidth",getName());
+      computeInternalTileWidth(ce);
+      TimeReport.stop(phase);
+    }
+
+    // NDRange fitting the local memory
+    if (CodegenOptions.isImageKernelMode() && CodegenOptions.getAutoFit()) {
+      phase=TimeReport.start("computeAutoFit",getName());
+      computeAutoFit(ce);
+      TimeReport.stop(phase);
+    }
   }
    
   public void tileAnalysis() {   
@@ -268,47 +379,15 @@ public class Kernel extends IRElement {
     //    have input and output tiles as that fit their input and output stride
     // 4- Compute the 'execution rate'
 
-    Set<KernelData> to_schedule=new HashSet<KernelData>();
-    Set<KernelData> schedulable=new HashSet<KernelData>();
-    Set<KernelData> scheduled=new HashSet<KernelData>();
+    // The same topological order is used by all passes, backward passes
+    // visiting it from the end
+    List<KernelData> dataList=getTopologicalDataList();
 
     // ------------------------
     // Backward graph analysis
     // ------------------------    
-    
-    // Pick all nodes without successors    
-    for(KernelData kd:getComputationalDataList()) {
-      if (kd.getNbUserEdges()==0) {
-        schedulable.add(kd);
-      }
-      else {
-        to_schedule.add(kd);
-      }
-    }
-    
-    // Iterate over non computed nodes
-    while (!schedulable.isEmpty()) {
-      // Schedule schedulable
-      for(KernelData kd:schedulable) {
-        kd.computeTileGrainForSuccessors();
-      }
-      scheduled.addAll(schedulable);
-
-      // Compute next schedulable
-      schedulable.clear();
-      for(KernelData kd:to_schedule) {
-        boolean flag=true;
-        for(DataEdge de:kd.getUserEdgeList()) {
-          if (!scheduled.contains(de.getTargetFunctionNode())) {
-            flag=false;
-            break;
-          }
-        }
-        if (flag) {
-          schedulable.add(kd);
-        }
-      }   
-      to_schedule.removeAll(schedulable);
+    for(int i=dataList.size()-1;i>=0;i--) {
+      dataList.get(i).computeTileGrainForSuccessors();
     }
     
   
@@ -319,11 +398,13 @@ public class Kernel extends IRElement {
     // Pick all nodes without successors
     for(KernelData kd:getComputationalInputList()) {
       kd.computeTileGrainForGraph();
+      propagateTileGrainForGraph(kd);
     }
-    // Recursive graph traversal
+    // Depth-first graph traversal
     for(FunctionNode fn:getFunctionNodeList()) {
-      if (fn.getNbInputEdges()==0) {
+      if ((fn.getNbInputEdges()==0) && (fn.getTileGrainForGraph()==null)) {
         fn.computeTileGrainForGraph(null);
+        propagateTileGrainForGraph(fn);
       }
     }
 
@@ -331,44 +412,70 @@ public class Kernel extends IRElement {
     // ------------------------
     // Backward graph analysis
     // ------------------------    
-    to_schedule.clear();
-    schedulable.clear();
-    scheduled.clear();
-    
-    // Pick all nodes without successors
+    for(int i=dataList.size()-1;i>=0;i--) {
+      dataList.get(i).computeNbhForSuccessors();
+    }
+  }
+
+  // Depth-first traversal of the users of a node, each function node
+  // taking its graph tile granularity from the first edge reaching it. The
+  // stack is explicit so that long node chains do not overflow the Java
+  // stack
+  void propagateTileGrainForGraph(KernelData root) {
+    LinkedList<Iterator<DataEdge>> stack=new LinkedList<Iterator<DataEdge>>();
+    stack.push(root.getUserEdgeList().iterator());
+    while (!stack.isEmpty()) {
+      Iterator<DataEdge> it=stack.peek();
+      if (!it.hasNext()) {
+        stack.pop();
+        continue;
+      }
+      DataEdge de=it.next();
+      FunctionNode fn=de.getTargetFunctionNode();
+      if (fn.getTileGrainForGraph()==null) {
+        fn.computeTileGrainForGraph(de);
+        stack.push(fn.getUserEdgeList().iterator());
+      }
+    }
+  }
+
+  // Computational data, producers before users. Kahn's algorithm: a node
+  // is ready when the counter of its input edges coming from data not yet
+  // ordered drops to zero
+  List<KernelData> getTopologicalDataList() {
+    Map<KernelData,Integer> nbPendingMap=new HashMap<KernelData,Integer>();
     for(KernelData kd:getComputationalDataList()) {
-      if (kd.getNbUserEdges()==0) {
-        schedulable.add(kd);
+      nbPendingMap.put(kd,0);
+    }
+    for(FunctionNode fn:getFunctionNodeList()) {
+      int nb=0;
+      for(DataEdge de:fn.getInputEdgeList()) {
+        if (nbPendingMap.containsKey(de.getSourceData())) {
+          nb++;
+        }
       }
-      else {
-        to_schedule.add(kd);
+      nbPendingMap.put(fn,nb);
+    }
+
+    ArrayList<KernelData> dataList=new ArrayList<KernelData>(nbPendingMap.size());
+    for(KernelData kd:getComputationalDataList()) {
+      if (nbPendingMap.get(kd)==0) {
+        dataList.add(kd);
       }
     }
-    
-    // Iterate over non computed nodes
-    while (!schedulable.isEmpty()) {
-      // Schedule schedulable
-      for(KernelData kd:schedulable) {
-        kd.computeNbhForSuccessors();        
-      }
-      scheduled.addAll(schedulable);
-
-      // Compute next schedulable
-      schedulable.clear();
-      for(KernelData kd:to_schedule) {
-        boolean flag=true;
-        for(DataEdge de:kd.getUserEdgeList()) {
-          if (!scheduled.contains(de.getTargetFunctionNode())) {
-            flag=false;
-            break;
+    for(int i=0;i<dataList.size();i++) {
+      for(DataEdge de:dataList.get(i).getUserEdgeList()) {
+        FunctionNode user=de.getTargetFunctionNode();
+        Integer nb=nbPendingMap.get(user);
+        if (nb!=null) {
+          nbPendingMap.put(user,nb-1);
+          if (nb==1) {
+            dataList.add(user);
           }
         }
-        if (flag) {
-          schedulable.add(kd);
-        }
-      }   
-      to_schedule.removeAll(schedulable);
-    }    
+      }
+    }
+    return dataList;
   }
     
 
@@ -379,45 +486,199 @@ public class Kernel extends IRElement {
   }
   
   // Scheduling information for Kernel Data
-  //***********************************************************************************
-  // IMPORTANT: This simple scheduling is not the most efficient for general cases.
-  //            in order to limit the computed buffer size, we need to schedule like 
-  //            in high level synthesis
-  //            -> look at force scheduling
-  //***********************************************************************************
+  //
+  // The ASAP scheduling is not the most efficient for general cases: the
+  // buffer of a data must hold all lines produced until its last user
+  // consumes them, so that scheduling producers as late as possible and
+  // users as soon as possible limits the buffer sizes, like in high level
+  // synthesis. The force-directed scheduler is selected with the
+  // '--force_scheduling' option, and kept only if it improves the total
+  // size of local buffers
   public void computeScheduling() {
-  	Set<FunctionNode> to_schedule=new HashSet<FunctionNode>();
-  	to_schedule.addAll(getFunctionNodeList());
+    computeASAPScheduling();
+    asapCycleMap=getSchedulingCycleMap();
+    asapBufferSize=computeTotalBufferSize();
+    forceCycleMap=null;
+
+    // Also computed for the comparison in the tiling report
+    if (CodegenOptions.getForceDirectedScheduling() || (GeneralOptions.getDebugLevel()>1)) {
+      computeForceDirectedScheduling();
+      forceCycleMap=getSchedulingCycleMap();
+      forceBufferSize=computeTotalBufferSize();
+    }
 
-  	// Initialization
-  	for(KernelData kd:getComputationalInputList()) {
-  		kd.getCodegenDataPattern().setSchedulingCycle(0);
-  	}
+    if ((!CodegenOptions.getForceDirectedScheduling()) || (forceBufferSize>=asapBufferSize)) {
+      setSchedulingCycleMap(asapCycleMap);
+    }
+  }
 
-  	Set<FunctionNode> schedulable=new HashSet<FunctionNode>();
-
-  	while (!to_schedule.isEmpty()) {
-  		// Compute schedulable nodes
-  		schedulable.clear();
-  		for(FunctionNode fn:to_schedule) {
-  			boolean ok=true;
-  			for(DataEdge de:fn.inputEdgeList) { 
-  				if (!de.getSourceData().getCodegenDataPattern().isScheduled()) {
-  					ok=false;
-  					break;
-  				}
-  			}
-  			if (ok) {
-  				schedulable.add(fn);
-  			}
-  		}
+  void computeASAPScheduling() {
+    // Initialization
+    for(KernelData kd:getComputationalInputList()) {
+      kd.getCodegenDataPattern().setSchedulingCycle(0);
+    }
 
-  		// Schedule schedulable nodes
-  		for(FunctionNode fn:schedulable) {
-  			to_schedule.remove(fn);
-  			fn.computeSchedulingForward();
-  		}
-  	} 
+    // Producers are scheduled before their users
+    for(KernelData kd:getTopologicalDataList()) {
+      if (kd instanceof FunctionNode) {
+        ((FunctionNode)kd).computeSchedulingForward();
+      }
+    }
+  }
+
+  // Force-directed scheduling, with the total size of local buffers as
+  // cost function. The latency is the one of the ASAP scheduling. At each
+  // step, the node and cycle minimizing the cost are fixed, unfixed nodes
+  // being accounted at the center of their time frame
+  void computeForceDirectedScheduling() {
+    List<FunctionNode> nodeList=getTopologicalFunctionNodeList();
+
+    // Time frames from ASAP and ALAP
+    Map<FunctionNode,Integer> loMap=new HashMap<FunctionNode,Integer>();
+    Map<FunctionNode,Integer> hiMap=new HashMap<FunctionNode,Integer>();
+    int latency=0;
+    for(FunctionNode fn:nodeList) {
+      int cycle=fn.getCodegenDataPattern().getSchedulingCycle();
+      loMap.put(fn,cycle);
+      latency=Math.max(latency,cycle);
+    }
+    for(int i=nodeList.size()-1;i>=0;i--) {
+      FunctionNode fn=nodeList.get(i);
+      int hi=latency;
+      for(DataEdge de:fn.getUserEdgeList()) {
+        hi=Math.min(hi,hiMap.get(de.getTargetFunctionNode())-de.getDependency());
+      }
+      hiMap.put(fn,hi);
+    }
+
+    while (true) {
+      FunctionNode bestNode=null;
+      int bestCycle=0;
+      long bestCost=Long.MAX_VALUE;
+      for(FunctionNode fn:nodeList) {
+        int lo0=loMap.get(fn), hi0=hiMap.get(fn);
+        if (lo0==hi0) {
+          // Already fixed
+          continue;
+        }
+        for(int c=lo0;c<=hi0;c++) {
+          Map<FunctionNode,Integer> lo=new HashMap<FunctionNode,Integer>(loMap);
+          Map<FunctionNode,Integer> hi=new HashMap<FunctionNode,Integer>(hiMap);
+          restrictTimeFrames(nodeList,fn,c,lo,hi);
+          for(FunctionNode fn2:nodeList) {
+            fn2.getCodegenDataPattern().setSchedulingCycle((lo.get(fn2)+hi.get(fn2))/2);
+          }
+          long cost=computeTotalBufferSize();
+          if (cost<bestCost) {
+            bestNode=fn;
+            bestCycle=c;
+            bestCost=cost;
+          }
+        }
+      }
+      if (bestNode==null) {
+        // All nodes are fixed
+        break;
+      }
+      restrictTimeFrames(nodeList,bestNode,bestCycle,loMap,hiMap);
+    }
+
+    for(FunctionNode fn:nodeList) {
+      fn.getCodegenDataPattern().setSchedulingCycle(loMap.get(fn));
+    }
+  }
+
+  // Fixes a node at a cycle and propagates the dependencies to the time
+  // frames of the other nodes
+  void restrictTimeFrames(List<FunctionNode> nodeList, FunctionNode node, int cycle,
+      Map<FunctionNode,Integer> loMap, Map<FunctionNode,Integer> hiMap) {
+    loMap.put(node,cycle);
+    hiMap.put(node,cycle);
+    for(FunctionNode fn:nodeList) {
+      int lo=loMap.get(fn);
+      for(DataEdge de:fn.getInputEdgeList()) {
+        if (de.getSourceData() instanceof FunctionNode) {
+          lo=Math.max(lo,loMap.get(de.getSourceData())+de.getDependency());
+        }
+      }
+      loMap.put(fn,lo);
+    }
+    for(int i=nodeList.size()-1;i>=0;i--) {
+      FunctionNode fn=nodeList.get(i);
+      int hi=hiMap.get(fn);
+      for(DataEdge de:fn.getUserEdgeList()) {
+        hi=Math.min(hi,hiMap.get(de.getTargetFunctionNode())-de.getDependency());
+      }
+      hiMap.put(fn,hi);
+    }
+  }
+
+  // Function nodes, producers before users. The order is the one of
+  // successive sweeps over the node list, each sweep picking the nodes
+  // whose producers are already picked: a node is picked in the sweep of
+  // its latest producer, or in the next one when it comes before this
+  // producer in the list
+  List<FunctionNode> getTopologicalFunctionNodeList() {
+    Map<KernelData,Integer> indexMap=new HashMap<KernelData,Integer>();
+    for(FunctionNode fn:getFunctionNodeList()) {
+      indexMap.put(fn,indexMap.size());
+    }
+
+    Map<KernelData,Integer> sweepMap=new HashMap<KernelData,Integer>();
+    int nbSweeps=0;
+    for(KernelData kd:getTopologicalDataList()) {
+      Integer index=indexMap.get(kd);
+      if (index==null) {
+        continue;
+      }
+      int sweep=0;
+      for(DataEdge de:((FunctionNode)kd).getInputEdgeList()) {
+        Integer indexSrc=indexMap.get(de.getSourceData());
+        if (indexSrc!=null) {
+          int s=sweepMap.get(de.getSourceData())+(indexSrc>index?1:0);
+          sweep=s>sweep?s:sweep;
+        }
+      }
+      sweepMap.put(kd,sweep);
+      nbSweeps=sweep+1>nbSweeps?sweep+1:nbSweeps;
+    }
+
+    // Bucket sort by sweep, keeping the list order in a sweep
+    List<List<FunctionNode>> sweepList=new ArrayList<List<FunctionNode>>(nbSweeps);
+    for(int i=0;i<nbSweeps;i++) {
+      sweepList.add(new LinkedList<FunctionNode>());
+    }
+    for(FunctionNode fn:getFunctionNodeList()) {
+      sweepList.get(sweepMap.get(fn)).add(fn);
+    }
+    List<FunctionNode> nodeList=new LinkedList<FunctionNode>();
+    for(List<FunctionNode> l:sweepList) {
+      nodeList.addAll(l);
+    }
+    return nodeList;
+  }
+
+  Map<KernelData,Integer> getSchedulingCycleMap() {
+    Map<KernelData,Integer> cycleMap=new HashMap<KernelData,Integer>();
+    for(KernelData kd:getComputationalDataList()) {
+      cycleMap.put(kd,kd.getCodegenDataPattern().getSchedulingCycle());
+    }
+    return cycleMap;
+  }
+
+  void setSchedulingCycleMap(Map<KernelData,Integer> cycleMap) {
+    for(KernelData kd:getComputationalDataList()) {
+      kd.getCodegenDataPattern().setSchedulingCycle(cycleMap.get(kd));
+    }
+  }
+
+  // Total size in bytes of local buffers for the current scheduling cycles
+  long computeTotalBufferSize() {
+    long size=0;
+    for(KernelData kd:getComputationalDataList()) {
+      size+=(long)kd.computeNbBufferSlot()*kd.getBufferSlotSize();
+    }
+    return size;
   }
 
   // Take scheduling infos to compute buffer requirements
@@ -428,6 +689,343 @@ public class Kernel extends IRElement {
   }
 
 
+  // Selects the data for which borders are materialized in the local
+  // buffer, so that users can be generated without border specific code
+  // versions. All users reading out of the data with a value-producing
+  // border (duplicate, mirror, constant, exp) must agree on the border
+  // semantics. Other users (skip, undef) keep their border code versions.
+  // - Columns (dim 0) are written by DMA for kernel inputs, by the producer
+  //   node for intermediate data, and once for constant borders
+  // - Rows (dim 1) are remapped by the user to lines of the buffer: data
+  //   lines for duplicate and mirror, border lines allocated after the
+  //   slots for constant (shared) and exp (two per user) borders
+  // Exp corners are computed on the diagonal of the border function, so
+  // that exp users are padded in both dimensions or not at all
+  public void computeBorderPadding() {
+    for(KernelData kd:getComputationalDataList()) {
+      // Columns are written along with the lines of the data, whatever
+      // its tile grain and the output stride of its producer
+      boolean columns=true;
+      if (kd instanceof FunctionNode) {
+        // The producer writes the padding when computing border pixels
+        FunctionNode fn=(FunctionNode)kd;
+        if ((fn.getOutputSkipPattern().getFirstIndex(0)!=0) ||
+            (fn.getOutputSkipPattern().getLastIndex(0)!=0)) {
+          columns=false;
+        }
+      }
+      else if (kd.getPush()!=1) {
+        columns=false;
+      }
+
+      BorderMode bm=null;
+      boolean coherent=true;
+      List<DataEdge> borderEdgeList=new LinkedList<DataEdge>();
+      for(DataEdge de:kd.getUserEdgeList()) {
+        BorderMode bmEdge=de.getBorderMode();
+        if (!(de.needsBorderInDim(0) || de.needsBorderInDim(1)) || (bmEdge==null) ||
+            !(bmEdge.isDuplicate() || bmEdge.isMirror() || bmEdge.isConstValue() || bmEdge.isExp())) {
+          continue;
+        }
+        if (bm==null) {
+          bm=bmEdge;
+        }
+        else if (!bm.isSame(bmEdge)) {
+          coherent=false;
+          break;
+        }
+        borderEdgeList.add(de);
+      }
+      if ((bm==null) || (!coherent)) {
+        continue;
+      }
+
+      // Constant and exp borders are stored in the data type, which must
+      // not change their value
+      Type t=kd.getBaseCType();
+      if (bm.isConstValue() &&
+          !(t.isFloatingPointScalar() ||
+            (t.isIntegralScalar() && (bm.getConstLiteral() instanceof IntegerLiteral)))) {
+        continue;
+      }
+      if (bm.isExp() && !t.isFloatingPointScalar()) {
+        continue;
+      }
+
+      int left=0, right=0, nbBorderLine=0;
+      boolean padded=false;
+      for(DataEdge de:borderEdgeList) {
+        boolean needsColumns=de.needsBorderInDim(0);
+        boolean needsRows=de.needsBorderInDim(1);
+        if (needsColumns && !columns) {
+          if (bm.isExp()) {
+            continue;
+          }
+          needsColumns=false;
+        }
+        if (bm.isExp() && needsRows) {
+          // Exp border lines are computed by the user from the lines it
+          // reads at the first and last rows
+          int maxIndex=bm.getBorderFunctionMaxIndex();
+          if ((maxIndex>de.getReadPattern().getLastIndex(1)) ||
+              (maxIndex>-de.getReadPattern().getFirstIndex(1))) {
+            continue;
+          }
+        }
+
+        if (needsColumns) {
+          left=Math.max(left,-de.getReadPattern().getFirstIndex(0));
+          right=Math.max(right,de.getReadPattern().getLastIndex(0));
+          de.setBorderPadded(true);
+          padded=true;
+        }
+        if (needsRows) {
+          if (bm.isExp()) {
+            de.setBorderRowPadded(true,nbBorderLine);
+            nbBorderLine+=2;
+          }
+          else if (bm.isConstValue()) {
+            de.setBorderRowPadded(true,0);
+            nbBorderLine=1;
+          }
+          else {
+            de.setBorderRowPadded(true,-1);
+          }
+          padded=true;
+        }
+      }
+
+      if (padded) {
+        kd.getCodegenDataPattern().setBorderPadding(bm,left,right);
+        kd.getCodegenDataPattern().setNbBorderLine(nbBorderLine);
+      }
+    }
+  }
+
+  // In SYNC merge mode, a barrier is only needed between a node and a user
+  // reading data produced in the same scheduler iteration (by other
+  // work-items). Users scheduled later only read lines produced in previous
+  // iterations, which are protected by the barrier ending each iteration.
+  // The barrier positions are chosen to stab all such producer/user
+  // intervals with the minimum number of barriers
+  public void computeBarrierPlacement() {
+    List<FunctionNode> nodeList=new ArrayList<FunctionNode>(getFunctionNodeList());
+    int nbNodes=nodeList.size();
+    Map<FunctionNode,Integer> indexMap=new HashMap<FunctionNode,Integer>();
+    for(FunctionNode fn:nodeList) {
+      indexMap.put(fn,indexMap.size());
+    }
+
+    // Latest possible barrier position for each producer (index of the node
+    // after which the barrier is placed), -1 if not needed
+    int[] latest=new int[nbNodes];
+    int p=0;
+    for(FunctionNode fn:nodeList) {
+      latest[p]=-1;
+      int schedA=fn.getCodegenDataPattern().getSchedulingCycle();
+      for(DataEdge de:fn.getUserEdgeList()) {
+        FunctionNode user=de.getTargetFunctionNode();
+        int schedB=user.getCodegenDataPattern().getSchedulingCycle();
+        if (schedB-schedA<=de.getDependency()) {
+          // Same iteration
+          int q=indexMap.get(user);
+          if ((latest[p]<0) || (q-1<latest[p])) {
+            latest[p]=q-1;
+          }
+        }
+      }
+      fn.getCodegenDataPattern().setBarrierAfter(false);
+      p++;
+    }
+
+    // Latest start of the intervals ending at each position
+    int[] lastStart=new int[nbNodes];
+    Arrays.fill(lastStart,-1);
+    for(p=0;p<nbNodes;p++) {
+      if ((latest[p]>=p) && (p>lastStart[latest[p]])) {
+        lastStart[latest[p]]=p;
+      }
+    }
+
+    // Greedy interval stabbing, processing intervals [p,latest[p]] by
+    // increasing end
+    nbBarriers=1; // End of the iteration
+    int lastBarrier=-1;
+    for(int end=0;end<nbNodes;end++) {
+      if (lastStart[end]>lastBarrier) {
+        nodeList.get(end).getCodegenDataPattern().setBarrierAfter(true);
+        lastBarrier=end;
+        nbBarriers++;
+      }
+    }
+  }
+
+  public int getNbBarriers() {
+    return nbBarriers;
+  }
+
+  // Local memory available for the kernel on the target compute unit, 0
+  // if not bounded
+  long getTargetLocalMemorySize() {
+    ComputeUnit cu=CodegenOptions.getTargetDevice().getComputeUnit();
+    long memorySize=cu.getLocalMemorySize();
+    if (memorySize<=0) {
+      memorySize=cu.getLocalCacheSize();
+    }
+    return memorySize;
+  }
+
+  // Local memory footprint (bytes) of a kernel data for a tile or a slice
+  // of 'width' grains in dim 0
+  long computeLocalFootprint(KernelData kd, int width) {
+    if (getControlParameterList().contains(kd)) {
+      if (!kd.shouldBeCached()) {
+        return 0;
+      }
+      long size=kd.getBaseCType().sizeof();
+      for(int i=0;i<kd.getMatrixType().getNbDims();i++) {
+        size*=kd.getMatrixType().getMaxNbElement(i);
+      }
+      return size>0?size:0;
+    }
+    return kd.computeLocalBufferSize(width);
+  }
+
+  // Data of the kernel having a local memory footprint
+  List<KernelData> getLocalFootprintDataList() {
+    List<KernelData> list=new LinkedList<KernelData>(getComputationalDataList());
+    list.addAll(getControlParameterList());
+    return list;
+  }
+
+  // Take the local memory of the target compute unit to choose the widest
+  // tile in dim 0 for which all local buffers of the kernel fit
+  void computeInternalTileWidth(CompilerError ce) {
+    long memorySize=getTargetLocalMemorySize();
+    if (memorySize<=0) {
+      // No constraint, the tile is the work-group slice
+      internalTileWidth=0;
+      return;
+    }
+
+    // The footprint is linear with the tile width: fixed+width*perGrain
+    long fixed=0, perGrain=0;
+    for(KernelData kd:getLocalFootprintDataList()) {
+      long size0=computeLocalFootprint(kd,0);
+      fixed+=size0;
+      perGrain+=computeLocalFootprint(kd,1)-size0;
+    }
+
+    if (fixed+perGrain>memorySize) {
+      ce.raiseError(getNameNode(),"kernel '"+getName()+"' does not fit in the "
+          +memorySize+" bytes of local memory, even with 1-grain wide tiles ("
+          +(fixed+perGrain)+" bytes needed)");
+      internalTileWidth=0;
+      return;
+    }
+    if (perGrain==0) {
+      // The footprint does not depend on the tile width
+      internalTileWidth=0;
+      return;
+    }
+    internalTileWidth=(int)((memorySize-fixed)/perGrain);
+  }
+
+  public int getInternalTileWidth() {
+    return internalTileWidth;
+  }
+
+  // Choose the NDRange of the kernel: the widest work-group slice in dim 0
+  // for which the local buffers of all data fit in the local memory of the
+  // target compute unit, as many work-items as compute elements and as
+  // many work-groups as compute units.
+  // Local buffers do not depend on the number of work-items, which is
+  // instead bounded by the slice (or internal tile) width: work-items
+  // beyond the blocks of the widest node in dim 0 would stay idle
+  void computeAutoFit(CompilerError ce) {
+    autoFitNbWI=CodegenOptions.getNbWI();
+    if (autoFitNbWI<=0) {
+      autoFitNbWI=CodegenOptions.getTargetDevice().getComputeUnit().getNbComputeElements();
+    }
+    autoFitNbWG=CodegenOptions.getNbWG();
+    if (autoFitNbWG<=0) {
+      autoFitNbWG=CodegenOptions.getTargetDevice().getNbComputeUnits();
+    }
+    if (autoFitNbWI<=0) {
+      autoFitNbWI=1;
+    }
+    if (autoFitNbWG<=0) {
+      autoFitNbWG=1;
+    }
+
+    autoFitSliceWidth=0;
+    long memorySize=getTargetLocalMemorySize();
+    if ((memorySize<=0) || (internalTileWidth>0)) {
+      // No constraint on the slice, or local buffers bounded by the
+      // internal tile
+      fitAutoFitNbWI(internalTileWidth);
+      return;
+    }
+
+    // The footprint is linear with the slice width: fixed+width*perGrain
+    long fixed=0, perGrain=0;
+    for(KernelData kd:getLocalFootprintDataList()) {
+      long size0=computeLocalFootprint(kd,0);
+      fixed+=size0;
+      perGrain+=computeLocalFootprint(kd,1)-size0;
+    }
+    if (perGrain==0) {
+      return;
+    }
+
+    if (fixed+perGrain>memorySize) {
+      StringBuffer sb=new StringBuffer();
+      sb.append("kernel '").append(getName())
+      .append("' does not fit in the ").append(memorySize)
+      .append(" bytes of local memory, even with 1-grain wide work-group slices:");
+      for(KernelData kd:getLocalFootprintDataList()) {
+        long size=computeLocalFootprint(kd,1);
+        if (size>0) {
+          sb.append("\n    ").append(kd.getName()).append(": ").append(size).append(" bytes");
+        }
+      }
+      sb.append("\n    TOTAL: ").append(fixed+perGrain).append(" bytes");
+      ce.raiseError(getNameNode(),sb.toString());
+      return;
+    }
+    autoFitSliceWidth=(int)((memorySize-fixed)/perGrain);
+    fitAutoFitNbWI(autoFitSliceWidth);
+  }
+
+  // Bounds the number of work-items to the blocks computed in dim 0 by the
+  // widest node over 'width' grains (no bound if 'width' is 0)
+  void fitAutoFitNbWI(int width) {
+    if (width<=0) {
+      return;
+    }
+    int nbBlocks=1;
+    for(FunctionNode fn:getFunctionNodeList()) {
+      if (fn.nbBlocksPerTileGrainForGraph!=null) {
+        nbBlocks=Math.max(nbBlocks,fn.nbBlocksPerTileGrainForGraph.getNbElements(0));
+      }
+    }
+    long maxNbWI=(long)width*nbBlocks;
+    if (autoFitNbWI>maxNbWI) {
+      autoFitNbWI=(int)maxNbWI;
+    }
+  }
+
+  public int getAutoFitSliceWidth() {
+    return autoFitSliceWidth;
+  }
+  public int getAutoFitNbWI() {
+    return autoFitNbWI;
+  }
+  public int getAutoFitNbWG() {
+    return autoFitNbWG;
+  }
+
+
   //==================================================================
   // Verbose
   //==================================================================
@@ -440,6 +1038,16 @@ public class Kernel extends IRElement {
   		CompilerError.GLOBAL.raiseMessage("     TileGrain = "+kd.getTileGrainForGraph());
   		CompilerError.GLOBAL.raiseMessage("     ExecutionRate = "+kd.getTileExecutionRateForGraph());
   		CompilerError.GLOBAL.raiseMessage("     NbhForSuccessor (TileGrain) = "+kd.getTileNbhForSuccessors());
+  		if ((asapCycleMap!=null) && (forceCycleMap!=null)) {
+  			CompilerError.GLOBAL.raiseMessage("     SchedulingCycle = "+asapCycleMap.get(kd)+" (ASAP), "
+  					+forceCycleMap.get(kd)+" (force-directed)");
+  		}
+  	}
+  	if ((asapCycleMap!=null) && (forceCycleMap!=null)) {
+  		boolean force=CodegenOptions.getForceDirectedScheduling() && (forceBufferSize<asapBufferSize);
+  		CompilerError.GLOBAL.raiseMessage("  - Local buffers = "+((float)asapBufferSize)/1024+" KB (ASAP), "
+  				+((float)forceBufferSize)/1024+" KB (force-directed), "
+  				+(force?"force-directed":"ASAP")+" scheduling selected");
   	}
   }
 
@@ -447,12 +1055,43 @@ public class Kernel extends IRElement {
   	ps.print("Local memory usage for kernel '");
   	ps.print(getName());
   	ps.println("'");
+  	if (internalTileWidth>0) {
+  		ps.print("  internal tile width: ");
+  		ps.print(internalTileWidth);
+  		ps.println(" grains");
+  	}
+  	if (CodegenOptions.getAutoFit()) {
+  		ps.print("  auto fit: ");
+  		if (autoFitSliceWidth>0) {
+  			ps.print("work-group slices of at most ");
+  			ps.print(autoFitSliceWidth);
+  			ps.print(" grains, ");
+  		}
+  		ps.print(autoFitNbWI);
+  		ps.print(" work-items, ");
+  		ps.print(autoFitNbWG);
+  		ps.println(" work-groups");
+  	}
+  	if (CodegenOptions.isSyncMergeMode()) {
+  		int nbRemoved=getFunctionNodeList().size()-nbBarriers;
+  		ps.print("  barriers per iteration: ");
+  		ps.print(nbBarriers);
+  		ps.print(" (");
+  		ps.print(nbRemoved<0?0:nbRemoved);
+  		ps.println(" removed)");
+  	}
   	int total_size=0;
   	for(KernelData kd:getComputationalDataList()) {
   		ps.print("  ");
   		ps.print(kd.getName());
   		ps.print(": ");
-  		int size=kd.computeMaxLocalBufferSize();
+  		int size;
+  		if (internalTileWidth>0) {
+  			size=kd.computeLocalBufferSize(internalTileWidth);
+  		}
+  		else {
+  			size=kd.computeMaxLocalBufferSize();
+  		}
   		if (size<0) {
   			ps.print("max is infinite");
   		}
@@ -461,9 +1100,14 @@ public class Kernel extends IRElement {
   			ps.print(((float)size)/1024);
   			ps.print(" KB");
   		}
-  		ps.print(" [ ");
-  		CLGenKernelData.generateLocalBufferSizeFormula(kd, ps);
-  		ps.println(" ]");
+  		if (internalTileWidth>0) {
+  			ps.println();
+  		}
+  		else {
+  			ps.print(" [ ");
+  			CLGenKernelData.generateLocalBufferSizeFormula(kd, ps);
+  			ps.println(" ]");
+  		}
   		if (size<0) {
   			total_size=-1;
   		}
@@ -166,20 +166,21 @@ public class KernelData extends IRElement {
     this.name = name;
   }
 
+  // Tiling analysis results are not modified once set, they are interned
   public void setTileGrainForGraph(MatrixSize tileGrainForGraph) {
-    this.tileGrainForGraph = tileGrainForGraph;
+    this.tileGrainForGraph = tileGrainForGraph.intern();
   }
 
   public void setTileGrainForSuccessors(MatrixSize tileGrainForSuccessors) {
-    this.tileGrainForSuccessors = tileGrainForSuccessors;
+    this.tileGrainForSuccessors = tileGrainForSuccessors.intern();
   }
 
   public void setTileExecutionRateForGraph(MatrixSize tileExecutionRateForGraph) {
-    this.tileExecutionRateForGraph = tileExecutionRateForGraph;
+    this.tileExecutionRateForGraph = tileExecutionRateForGraph.intern();
   }
 
   public void setTileNbhForSuccessors(MatrixIndexes tileNbhForSuccessors) {
-    this.tileNbhForSuccessors = tileNbhForSuccessors;
+    this.tileNbhForSuccessors = tileNbhForSuccessors.intern();
   }
 
   
@@ -328,33 +329,30 @@ public class KernelData extends IRElement {
   // For KernelData that is not a function node
   protected void computeTileGrainForSuccessors() {
     // Output stride = [1x1]
-    setTileGrainForSuccessors(new MatrixSize(MatrixSize.MatrixSingleElement));
+    MatrixSize grain=new MatrixSize(MatrixSize.MatrixSingleElement);
     for(DataEdge de:getUserEdgeList()) {
-      getTileGrainForSuccessors().lcm(de.getTileInGrainConstraint());
+      grain.lcm(de.getTileInGrainConstraint());
     }
+    setTileGrainForSuccessors(grain);
   }
   
   // For KernelData that is not a function node
   protected void computeNbhForSuccessors() {
     // Start with [0:0, 0:0] matrix
-    setTileNbhForSuccessors(new MatrixIndexes(MatrixIndexes.MatrixSingleElementCentered));
+    MatrixIndexes nbh=new MatrixIndexes(MatrixIndexes.MatrixSingleElementCentered);
     for(DataEdge de:getUserEdgeList()) {
-      getTileNbhForSuccessors().union(de.getTileInNbhConstraint());
+      nbh.union(de.getTileInNbhConstraint());
     }
     // OLD: Output stride = [1x1], nothing more to do
     // Multiple of the grain size
-    getTileNbhForSuccessors().inflateToMultipleOf(getTileGrainForGraph());
+    nbh.inflateToMultipleOf(getTileGrainForGraph());
+    setTileNbhForSuccessors(nbh);
   }
 
   // For KernelData that is not a function node
   protected void computeTileGrainForGraph() {
     setTileGrainForGraph(getTileGrainForSuccessors());
     setTileExecutionRateForGraph(new MatrixSize(getTileGrainForGraph()));
-    
-    // Recursive
-    for(DataEdge de:getUserEdgeList()) {
-      de.getTargetFunctionNode().computeTileGrainForGraph(de);
-    }    
   }
 
   public MatrixIndexes getTileNbhForSuccessors() {
@@ -368,6 +366,12 @@ public class KernelData extends IRElement {
            
   //  Manage 2D data only for the moment
   void computeBufferSlots() {
+    // We got the number of slots
+    getCodegenDataPattern().setNbBufferSlot(computeNbBufferSlot());
+  }
+
+  // Number of buffer slots required by the current scheduling cycles
+  int computeNbBufferSlot() {
     //==================================================
     // NEW allocation
     //==================================================
@@ -386,9 +390,17 @@ public class KernelData extends IRElement {
       int Zc=getTileGrainForGraph().getNbElements(1)*2;
       tokenBuf=max(tokenBuf,Zc);
     }
-    
-    // We got the number of slots
-    getCodegenDataPattern().setNbBufferSlot(tokenBuf);
+    return tokenBuf;
+  }
+
+  // Size in bytes of a buffer slot (a line), or of an element if the line
+  // size is not bounded
+  int getBufferSlotSize() {
+    if (!isIterative()) {
+      return 0;
+    }
+    int lineSize=getMatrixType().getMaxNbElement(0);
+    return getBaseCType().sizeof()*(lineSize<0?1:lineSize);
   }
 
   int max(int i, int j) {
@@ -398,7 +410,7 @@ public class KernelData extends IRElement {
  
   public int computeMaxLocalBufferSize() {   
     if (isIterative()) {
-      int slot=getCodegenDataPattern().getNbBufferSlot();
+      int slot=getCodegenDataPattern().getNbBufferLine();
       // Size in bytes
       int elementSize=getBaseCType().sizeof();
       int lineSize=getMatrixType().getMaxNbElement(0);
@@ -413,8 +425,25 @@ public class KernelData extends IRElement {
     }
   }
 
-  
-  
+  // Local buffer footprint of an iterative data for a tile of 'width'
+  // grains in dim 0 (slots of the circular buffer and border lines,
+  // including the neighborhood needed by successors)
+  public int computeLocalBufferSize(int width) {
+    if (isIterative()) {
+      int slot=getCodegenDataPattern().getNbBufferLine();
+      int elementSize=getBaseCType().sizeof();
+      int lineSize=width-getTileNbhForSuccessors().getFirstIndex(0)
+                  +getTileNbhForSuccessors().getLastIndex(0);
+      lineSize*=getTileGrainForGraph().getNbElements(0);
+      return elementSize*lineSize*slot;
+    }
+    else {
+      return 0;
+    }
+  }
+
+
+
   //========================================================
   // Verbose
   //========================================================
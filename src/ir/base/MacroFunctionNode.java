@@ -32,12 +32,15 @@ import ir.types.kg.MatrixIndexes;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import codegen.OpenCL.CLGenKernelData;
+import codegen.OpenCL.CLGenVarNames;
 
 import parser.TNode;
 
@@ -379,6 +382,10 @@ public class MacroFunctionNode extends FunctionNode {
     Set<KernelData> internalData=new HashSet<KernelData>(nodeSet);
     internalData.addAll(itd);
     internalData.remove(head);
+
+    // Input elements accessed several times in the macro-node are loaded
+    // once into private registers
+    Map<String,String> sharedLoadMap=generateSharedLoads(firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData,ps,prefix);
     
     for (FunctionNode fn:nodeList) {
       if (fn!=head) {
@@ -390,12 +397,67 @@ public class MacroFunctionNode extends FunctionNode {
         ps.println(";");
       }
       ps.print(prefix);ps.println("{");
+      fn.setSharedLoadMap(sharedLoadMap);
       fn.generateNodeComputeFunction(firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData,ps,prefix+"  ");
+      fn.setSharedLoadMap(null);
       ps.println();
       ps.print(prefix);ps.println("}");
      }
   }
 
+  // The union of the input windows read by the sub-nodes is considered:
+  // an access is shared as soon as it is performed more than once, by the
+  // same sub-node or by different sub-nodes. Accesses are compared on their
+  // generated code, which includes the border management of the current
+  // compute region (duplicate, mirror, constant, EXP)
+  Map<String,String> generateSharedLoads(
+      List<Integer> firstIndexList,
+      List<Integer> lastIndexList,
+      List<String> lastIndexStringPlusOneList, 
+      Set<KernelData> internalData,
+      PrintStream ps,
+      String prefix) {
+    List<String> accessList=new LinkedList<String>();
+    List<KernelData> dataList=new LinkedList<KernelData>();
+    for (FunctionNode fn:nodeList) {
+      fn.collectInputAccesses(firstIndexList,lastIndexList,lastIndexStringPlusOneList,internalData,accessList,dataList);
+    }
+
+    Map<String,Integer> nbAccessMap=new HashMap<String,Integer>();
+    for (String access:accessList) {
+      String key=getSharedLoadKey(access);
+      Integer nb=nbAccessMap.get(key);
+      nbAccessMap.put(key,(nb==null)?1:nb+1);
+    }
+
+    Map<String,String> sharedLoadMap=new HashMap<String,String>();
+    Map<KernelData,Integer> nbLoadMap=new HashMap<KernelData,Integer>();
+    Iterator<KernelData> it=dataList.iterator();
+    for (String access:accessList) {
+      KernelData kd=it.next();
+      String key=getSharedLoadKey(access);
+      if ((nbAccessMap.get(key)<2)||sharedLoadMap.containsKey(key)) {
+        continue;
+      }
+      Integer nb=nbLoadMap.get(kd);
+      if (nb==null) {
+        nb=0;
+      }
+      nbLoadMap.put(kd,nb+1);
+      String reg=CLGenVarNames.getSharedLoadName(kd,nb);
+      sharedLoadMap.put(key,reg);
+
+      ps.print(prefix);
+      CLGenKernelData.generateBaseCType(kd,ps);
+      ps.print(" ");
+      ps.print(reg);
+      ps.print(" = ");
+      ps.print(access);
+      ps.println(";");
+    }
+    return sharedLoadMap;
+  }
+
 
   // ==================================================================
   // Verbosing
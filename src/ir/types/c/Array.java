@@ -26,6 +26,7 @@
 package ir.types.c;
 
 import ir.types.Type;
+import utility.thread.ThreadOutput;
 
 import java.util.HashSet;
 import java.util.HashMap;
@@ -199,7 +200,7 @@ public class Array extends ChildType {
 
     // Check array size
     if (getNbElements()!=((Array)tu).getNbElements()) {
-      System.err.println("size "+getNbElements() + "!=" + ((Array)tu).getNbElements());
+      ThreadOutput.err().println("size "+getNbElements() + "!=" + ((Array)tu).getNbElements());
       return false;
     }
 
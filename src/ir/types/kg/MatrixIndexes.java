@@ -32,31 +32,50 @@ import ir.types.Type;
 import ir.types.c.ArrayRange;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import utility.math.Arithmetic;
 
 
 public class MatrixIndexes extends IRElement {
+  private static final int[] noIndex = new int[0];
+  private static final IndexType[] noIndexType = new IndexType[0];
+  // Amplification of dimensions which are not amplified (never modified)
+  private static final Amplification noAmplification = new Amplification();
+
+  // Interned matrixes, shared by all compilations. Distinct matrixes are
+  // few (access patterns and tiles), the cache is nevertheless bounded
+  // for long-running compilation servers
+  private static final int maxNbInterned = 4096;
+  private static final ConcurrentHashMap<MatrixKey,MatrixIndexes> internMap =
+      new ConcurrentHashMap<MatrixKey,MatrixIndexes>();
+
   // Matrix with a single element
-  public static final MatrixIndexes MatrixSingleElementCentered = new MatrixIndexes(1);
+  public static final MatrixIndexes MatrixSingleElementCentered = new MatrixIndexes(1).intern();
   // Matrix with no elements
-  public static final MatrixIndexes MatrixNil = new MatrixIndexes(0);
- 
+  public static final MatrixIndexes MatrixNil = new MatrixIndexes(0).intern();
+
   int nbDims=0;
   public enum IndexType {NOT_SPECIFIED, MAXIMUM, FIXED};
-  java.util.Vector<IndexType> firstIndexType=new java.util.Vector<IndexType>();
-  java.util.Vector<IndexType> lastIndexType=new java.util.Vector<IndexType>();
-  java.util.Vector<Integer> firstIndex=new java.util.Vector<Integer>();
-  java.util.Vector<Integer> lastIndex=new java.util.Vector<Integer>();
+  // Properties of dimensions, arrays having exactly nbDims elements
+  IndexType[] firstIndexType=noIndexType;
+  IndexType[] lastIndexType=noIndexType;
+  int[] firstIndex=noIndex;
+  int[] lastIndex=noIndex;
 
   // TODO: Index range specifier can be on first and last (ex: convolution coefs)
-  java.util.Vector<KernelData> indexRangeSpecifier=new java.util.Vector<KernelData>();
-  
-  // Dimension amplification factors
-  java.util.Vector<Amplification> amplificationDimList=new java.util.Vector<Amplification>();
+  // null as long as no dimension has a range specifier
+  KernelData[] indexRangeSpecifier=null;
+
+  // Dimension amplification factors, null as long as no dimension is
+  // amplified
+  Amplification[] amplificationDimList=null;
+
+  // Interned matrixes are shared and can not be modified
+  private boolean interned=false;
 
 
   //==================================================================
@@ -68,131 +87,217 @@ public class MatrixIndexes extends IRElement {
     nbDims=0;
   }
 
-  public MatrixIndexes(Type t) {    
+  public MatrixIndexes(Type t) {
     init(t);
   }
-  
-  @SuppressWarnings("unchecked")
+
   public MatrixIndexes(MatrixIndexes t) {
     //super(t);
     nbDims=t.nbDims;
-    firstIndex=(Vector<Integer>) t.firstIndex.clone();
-    firstIndexType=(Vector<IndexType>) t.firstIndexType.clone();
-    lastIndex=(Vector<Integer>) t.lastIndex.clone();
-    lastIndexType=(Vector<IndexType>) t.lastIndexType.clone();
-    indexRangeSpecifier=(Vector<KernelData>)t.indexRangeSpecifier.clone();
-    amplificationDimList=new java.util.Vector<Amplification>();
-    for(Amplification amp:t.amplificationDimList) {
-      amplificationDimList.add(new Amplification(amp));
+    firstIndex=t.firstIndex.clone();
+    firstIndexType=t.firstIndexType.clone();
+    lastIndex=t.lastIndex.clone();
+    lastIndexType=t.lastIndexType.clone();
+    if (t.indexRangeSpecifier!=null) {
+      indexRangeSpecifier=t.indexRangeSpecifier.clone();
+    }
+    if (t.amplificationDimList!=null) {
+      amplificationDimList=new Amplification[nbDims];
+      for(int i=0;i<nbDims;i++) {
+        Amplification amp=t.amplificationDimList[i];
+        if (amp!=null) {
+          amplificationDimList[i]=new Amplification(amp);
+        }
+      }
     }
   }
 
   // 1D matrix with index starting from 0
-  public MatrixIndexes(int nb) {    
-    nbDims=1;
-    firstIndex.add(0);
-    firstIndexType.add(IndexType.FIXED);
-    lastIndex.add(nb-1);
-    lastIndexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
-    amplificationDimList.add(new Amplification());
+  public MatrixIndexes(int nb) {
+    addDimension(IndexType.FIXED,0,IndexType.FIXED,nb-1,null,null);
   }
-  
+
   // 2D matrix with index starting from 0
-  public MatrixIndexes(int nb0, int nb1) {    
-    nbDims=2;
-    
+  public MatrixIndexes(int nb0, int nb1) {
     // First dim
-    firstIndex.add(0);
-    firstIndexType.add(IndexType.FIXED);
-    lastIndex.add(nb0-1);
-    lastIndexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
-    amplificationDimList.add(new Amplification());
-
+    addDimension(IndexType.FIXED,0,IndexType.FIXED,nb0-1,null,null);
     // Second dim
-    firstIndex.add(0);
-    firstIndexType.add(IndexType.FIXED);
-    lastIndex.add(nb1-1);
-    lastIndexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
-    amplificationDimList.add(new Amplification());
+    addDimension(IndexType.FIXED,0,IndexType.FIXED,nb1-1,null,null);
   }
-  
+
   // ND matrix with fixed indexes
   // Note: The index is null in case the index is not fixed.
   public MatrixIndexes(List<Integer> first, List<Integer> last) {
-    nbDims=first.size();
     for (int i=0;i<first.size();i++) {
-      firstIndex.add(first.get(i));
-      if (first.get(i)==null) {
-        firstIndexType.add(IndexType.NOT_SPECIFIED);
-      }
-      else {
-        firstIndexType.add(IndexType.FIXED);
-      }
-      lastIndex.add(last.get(i));
-      if (last.get(i)==null) {
-        lastIndexType.add(IndexType.NOT_SPECIFIED);
-      }
-      else {
-        lastIndexType.add(IndexType.FIXED);
-      }
-      indexRangeSpecifier.add(null);
-      amplificationDimList.add(new Amplification());
+      Integer f=first.get(i);
+      Integer l=last.get(i);
+      addDimension(
+          (f==null)?IndexType.NOT_SPECIFIED:IndexType.FIXED,(f==null)?0:f,
+          (l==null)?IndexType.NOT_SPECIFIED:IndexType.FIXED,(l==null)?0:l,
+          null,null);
     }
-  } 
+  }
 
 
   protected Type init(Type t) {
-    // In C, dimensions are [z][y][x], with then build lists in the reverse order
-    for(nbDims=0;t.isArray();t=((ArrayRange)t).getElementType(),nbDims++) {
+    // In C, dimensions are [z][y][x], with then build arrays in the reverse order
+    int n=0;
+    for(Type tt=t;tt.isArray();tt=((ArrayRange)tt).getElementType()) {
+      n++;
+    }
+    allocateDimensions(n);
+    for(int i=n-1;t.isArray();t=((ArrayRange)t).getElementType(),i--) {
       ArrayRange tt=(ArrayRange)t;
       if (tt.isDynamic()) {
         if (tt.hasMaxIndexRange()) {
-          firstIndex.add(0,tt.getFirstIndex());
-          lastIndex.add(0,tt.getLastIndex());
-          firstIndexType.add(0,IndexType.MAXIMUM);
-          lastIndexType.add(0,IndexType.MAXIMUM);
+          setDimension(i,IndexType.MAXIMUM,tt.getFirstIndex(),IndexType.MAXIMUM,tt.getLastIndex());
         }
         else {
-          firstIndex.add(0,0);
-          lastIndex.add(0,0);
-          firstIndexType.add(0,IndexType.NOT_SPECIFIED);
-          lastIndexType.add(0,IndexType.NOT_SPECIFIED);
+          setDimension(i,IndexType.NOT_SPECIFIED,0,IndexType.NOT_SPECIFIED,0);
         }
-        indexRangeSpecifier.add(0,tt.getSizeSpecifierData());
-        amplificationDimList.add(0,new Amplification());    
       }
       else {
-        firstIndex.add(0,tt.getFirstIndex());
-        lastIndex.add(0,tt.getLastIndex());
-        firstIndexType.add(0,IndexType.FIXED);
-        lastIndexType.add(0,IndexType.FIXED);
-        indexRangeSpecifier.add(0,tt.getSizeSpecifierData());
-        amplificationDimList.add(0,new Amplification());    
+        setDimension(i,IndexType.FIXED,tt.getFirstIndex(),IndexType.FIXED,tt.getLastIndex());
       }
+      setIndexRangeSpecifier(i,tt.getSizeSpecifierData());
     }
 
     if (nbDims==0) {
       // Not an array c type, we consider an array of one element
-      nbDims=1;
-      firstIndex.add(0);
-      lastIndex.add(0);
-      firstIndexType.add(IndexType.FIXED);
-      lastIndexType.add(IndexType.FIXED);
-      indexRangeSpecifier.add(null);   
-      amplificationDimList.add(new Amplification());    
+      addDimension(IndexType.FIXED,0,IndexType.FIXED,0,null,null);
     }
 
     return t;
   }
 
-  
+  private void allocateDimensions(int n) {
+    nbDims=n;
+    firstIndexType=new IndexType[n];
+    lastIndexType=new IndexType[n];
+    firstIndex=new int[n];
+    lastIndex=new int[n];
+  }
+
+  private void setDimension(int i, IndexType ft, int f, IndexType lt, int l) {
+    firstIndexType[i]=ft;
+    firstIndex[i]=f;
+    lastIndexType[i]=lt;
+    lastIndex[i]=l;
+  }
+
+  private void setIndexRangeSpecifier(int i, KernelData kd) {
+    if (kd!=null) {
+      if (indexRangeSpecifier==null) {
+        indexRangeSpecifier=new KernelData[nbDims];
+      }
+      indexRangeSpecifier[i]=kd;
+    }
+  }
+
+  // Adds a dimension after the existing ones
+  private void addDimension(IndexType ft, int f, IndexType lt, int l, KernelData kd, Amplification amp) {
+    int n=nbDims+1;
+    firstIndexType=Arrays.copyOf(firstIndexType,n);
+    lastIndexType=Arrays.copyOf(lastIndexType,n);
+    firstIndex=Arrays.copyOf(firstIndex,n);
+    lastIndex=Arrays.copyOf(lastIndex,n);
+    if (indexRangeSpecifier!=null) {
+      indexRangeSpecifier=Arrays.copyOf(indexRangeSpecifier,n);
+    }
+    if (amplificationDimList!=null) {
+      amplificationDimList=Arrays.copyOf(amplificationDimList,n);
+    }
+    nbDims=n;
+    setDimension(n-1,ft,f,lt,l);
+    setIndexRangeSpecifier(n-1,kd);
+    if ((amp!=null) && amp.hasCoefficients()) {
+      getAmplificationForUpdate(n-1).fractionList.addAll(amp.fractionList);
+    }
+  }
+
+  // Adds the dimensions of 'nd' beyond the dimensions of this matrix, the
+  // indexes being computed by the caller
+  private void addDimensionsFrom(MatrixIndexes nd, int i, int first, int last) {
+    addDimension(nd.firstIndexType[i],first,nd.lastIndexType[i],last,
+        nd.getSpecifier(i),nd.getAmplification(i));
+  }
+
+  KernelData getSpecifier(int i) {
+    return (indexRangeSpecifier==null)?null:indexRangeSpecifier[i];
+  }
+
+  Amplification getAmplification(int i) {
+    if ((amplificationDimList==null) || (amplificationDimList[i]==null)) {
+      return noAmplification;
+    }
+    return amplificationDimList[i];
+  }
+
+  private Amplification getAmplificationForUpdate(int i) {
+    if (amplificationDimList==null) {
+      amplificationDimList=new Amplification[nbDims];
+    }
+    if (amplificationDimList[i]==null) {
+      amplificationDimList[i]=new Amplification();
+    }
+    return amplificationDimList[i];
+  }
+
+  private void checkModifiable(String operation) throws UnsupportedOperationException {
+    if (interned) {
+      throw new UnsupportedOperationException(operation+": not allowed on interned matrix");
+    }
+  }
+
+
+  //==================================================================
+  // Interning
+  //==================================================================
+
+  // Returns an unmodifiable matrix equivalent to this one, shared with the
+  // other interned matrixes having the same indexes. Only matrixes with
+  // fixed bounds are interned, symbolic or amplified matrixes (and typed
+  // ones) are returned as is
+  public MatrixIndexes intern() {
+    if (interned || (getClass()!=MatrixIndexes.class) ||
+        (indexRangeSpecifier!=null) || isAmplified()) {
+      return this;
+    }
+
+    int[] values=new int[1+4*nbDims];
+    values[0]=nbDims;
+    for (int i=0;i<nbDims;i++) {
+      values[4*i+1]=firstIndexType[i].ordinal();
+      values[4*i+2]=firstIndex[i];
+      values[4*i+3]=lastIndexType[i].ordinal();
+      values[4*i+4]=lastIndex[i];
+    }
+    MatrixKey key=new MatrixKey(values);
+
+    MatrixIndexes m=internMap.get(key);
+    if (m==null) {
+      m=new MatrixIndexes(this);
+      m.amplificationDimList=null;
+      m.interned=true;
+      if (internMap.size()<maxNbInterned) {
+        MatrixIndexes previous=internMap.putIfAbsent(key,m);
+        if (previous!=null) {
+          m=previous;
+        }
+      }
+    }
+    return m;
+  }
+
+  public boolean isInterned() {
+    return interned;
+  }
+
+
   //==================================================================
   // Getters
   //==================================================================
-  
+
   public boolean isEmpty() {
     return nbDims==0;
   }
@@ -208,43 +313,43 @@ public class MatrixIndexes extends IRElement {
     }
     return getLastIndex(i)-getFirstIndex(i)+1;
   }
-  
+
   public boolean hasSingleElement() {
     if (isEmpty()) { return false; }
     for(int i=0;i<nbDims;i++) {
-      if ((firstIndexType.get(i)==IndexType.NOT_SPECIFIED) ||
-          (lastIndexType.get(i)==IndexType.NOT_SPECIFIED)) {
+      if ((firstIndexType[i]==IndexType.NOT_SPECIFIED) ||
+          (lastIndexType[i]==IndexType.NOT_SPECIFIED)) {
         return false;
       }
-      if (firstIndex.get(i)!=lastIndex.get(i)) {
+      if (firstIndex[i]!=lastIndex[i]) {
         return false;
       }
     }
     return true;
   }
-  
+
   public boolean hasStaticSize() {
     for(int i=0;i<nbDims;i++) {
       if (
-          (indexRangeSpecifier.get(i)!=null) ||
-          (firstIndexType.get(i)==IndexType.NOT_SPECIFIED) ||
-          (lastIndexType.get(i) ==IndexType.NOT_SPECIFIED) ) {
+          (getSpecifier(i)!=null) ||
+          (firstIndexType[i]==IndexType.NOT_SPECIFIED) ||
+          (lastIndexType[i] ==IndexType.NOT_SPECIFIED) ) {
         return false;
       }
     }
     return true;
   }
-  
+
   public IndexType getFirstIndexType(int i) {
     if (isEmpty()) { return IndexType.NOT_SPECIFIED; }
     if (i>=nbDims) { return IndexType.FIXED; }
-    return firstIndexType.get(i);
+    return firstIndexType[i];
   }
 
-  public IndexType getLastIndexType(int i) { 
+  public IndexType getLastIndexType(int i) {
     if (isEmpty()) { return IndexType.NOT_SPECIFIED; }
     if (i>=nbDims) { return IndexType.FIXED; }
-    return firstIndexType.get(i);
+    return firstIndexType[i];
   }
 
   public int getFirstIndex(int i) throws UnsupportedOperationException {
@@ -252,12 +357,12 @@ public class MatrixIndexes extends IRElement {
     if (isAmplified()) {
       throw new UnsupportedOperationException("getFirstIndex: not allowed on amplified matrix");
     }
-    
+
     if (isEmpty()) { return 0; }
     if (i>=nbDims) {
       return 0;
     }
-    return firstIndex.get(i);
+    return firstIndex[i];
   }
 
   public int getLastIndex(int i) throws UnsupportedOperationException {
@@ -270,9 +375,9 @@ public class MatrixIndexes extends IRElement {
     if (i>=nbDims) {
       return 0;
     }
-    return lastIndex.get(i);
+    return lastIndex[i];
   }
-  
+
   public KernelData getIndexRangeSpecifier(int i) throws UnsupportedOperationException {
     // Does not work on amplified matrixes
     if (isAmplified()) {
@@ -283,11 +388,11 @@ public class MatrixIndexes extends IRElement {
     if (i>=nbDims) {
       return null;
     }
-    return indexRangeSpecifier.get(i);
+    return getSpecifier(i);
   }
-    
+
   public void getIndexRangeSpecifiers(Set<KernelData> kdSet) {
-    if (isEmpty()) { return; }
+    if (isEmpty() || (indexRangeSpecifier==null)) { return; }
     for(KernelData kd:indexRangeSpecifier) {
       if (kd!=null) {
         kdSet.add(kd);
@@ -296,48 +401,51 @@ public class MatrixIndexes extends IRElement {
   }
 
   public boolean isAmplified() {
+    if (amplificationDimList==null) {
+      return false;
+    }
     for(Amplification amp:amplificationDimList) {
-      if (amp.hasCoefficients()) {
+      if ((amp!=null) && amp.hasCoefficients()) {
         return true;
       }
     }
     return false;
   }
 
-  
+
   //==================================================================
   // Queries on dimensions
   //==================================================================
-  
+
   public boolean isSame(MatrixIndexes t) {
     // Is is myself ?
     if (this==t) return true;
-    
+
     // Same nbDims ?
     if (nbDims!=t.nbDims) {
       return false;
     }
     for (int i=0;i<nbDims;i++) {
-      if (indexRangeSpecifier.get(i)!=t.indexRangeSpecifier.get(i)) {
+      if (getSpecifier(i)!=t.getSpecifier(i)) {
         return false;
       }
-      if (indexRangeSpecifier.get(i)!=null) {
+      if (getSpecifier(i)!=null) {
         // First index
-        if (firstIndexType.get(i)!=t.firstIndexType.get(i)) {
+        if (firstIndexType[i]!=t.firstIndexType[i]) {
           return false;
         }
-        if (((int)firstIndex.get(i))!=(int)t.firstIndex.get(i)) {
+        if (firstIndex[i]!=t.firstIndex[i]) {
          return false;
         }
         // Last index
-        if (lastIndexType.get(i)!=t.lastIndexType.get(i)) {
+        if (lastIndexType[i]!=t.lastIndexType[i]) {
           return false;
         }
-        if (((int)lastIndex.get(i))!=(int)t.lastIndex.get(i)) {
+        if (lastIndex[i]!=t.lastIndex[i]) {
           return false;
         }
       }
-      if (!amplificationDimList.get(i).isSame(t.amplificationDimList.get(i))) {
+      if (!getAmplification(i).isSame(t.getAmplification(i))) {
         return false;
       }
     }
@@ -363,29 +471,29 @@ public class MatrixIndexes extends IRElement {
     // Manage dimensions properties
     for (int i=0;i<n;i++) {
       // Variable size specifier
-      if (indexRangeSpecifier.get(i)!=nd.indexRangeSpecifier.get(i)) {
+      if (getSpecifier(i)!=nd.getSpecifier(i)) {
         return false;
       }
 
       // First index
-      if (firstIndexType.get(i)!=nd.firstIndexType.get(i)) {
+      if (firstIndexType[i]!=nd.firstIndexType[i]) {
         return false;
       }
-      if (((int)firstIndex.get(i))>(int)nd.firstIndex.get(i)) {
+      if (firstIndex[i]>nd.firstIndex[i]) {
         return false;
       }
       // Last index
-      if (lastIndexType.get(i)!=nd.lastIndexType.get(i)) {
+      if (lastIndexType[i]!=nd.lastIndexType[i]) {
         return false;
       }
-      if (((int)lastIndex.get(i))<(int)nd.lastIndex.get(i)) {
+      if (lastIndex[i]<nd.lastIndex[i]) {
         return false;
       }
     }
 
     return true;
   }
-  
+
   public boolean includes(MatrixSize nd) throws UnsupportedOperationException {
     // Does not work on amplified matrixes
     if (isAmplified()) {
@@ -404,11 +512,11 @@ public class MatrixIndexes extends IRElement {
     // Manage dimensions properties
     for (int i=0;i<n;i++) {
       // Variable size specifier
-      if (indexRangeSpecifier.get(i)!=nd.indexRangeSpecifier.get(i)) {
+      if (getSpecifier(i)!=nd.getSpecifier(i)) {
         return false;
       }
       // Fix size
-      if (((int)lastIndex.get(i)-(int)firstIndex.get(i)+1)<(int)nd.nbElems.get(i)) {
+      if ((lastIndex[i]-firstIndex[i]+1)<nd.nbElems[i]) {
         return false;
       }
     }
@@ -421,221 +529,199 @@ public class MatrixIndexes extends IRElement {
     if (nbDims<d) return false;
     for (int i=d;i<nbDims;i++) {
       // Variable size specifier
-      if (indexRangeSpecifier.get(i)!=null) {
+      if (getSpecifier(i)!=null) {
         return true;
       }
       // First index
-      if (((int)firstIndex.get(i))!=0) {
+      if (firstIndex[i]!=0) {
        return true;
       }
       // Last index
-      if (((int)lastIndex.get(i))!=0) {
+      if (lastIndex[i]!=0) {
         return true;
       }
     }
     return false;
   }
 
-  
+
   //==================================================================
   // Operations on dimensions
   //==================================================================
 
   // Matrix size modifications
   public void amplifyMulBy(int i, int c, int nom, boolean ceil) {
+    checkModifiable("amplifyMulBy");
     if (i>=nbDims) {
       return;
     }
     // Ceiling as default
-    amplificationDimList.get(i).multiplyBy(c,nom,ceil);
+    getAmplificationForUpdate(i).multiplyBy(c,nom,ceil);
  }
   public void amplifyDivBy(int i, int c,  int denom, boolean ceil) {
+    checkModifiable("amplifyDivBy");
     if (i>=nbDims) {
       return;
     }
     // Ceiling as default
-    amplificationDimList.get(i).devideBy(c,denom,ceil);
+    getAmplificationForUpdate(i).devideBy(c,denom,ceil);
  }
 
 
   public MatrixIndexes add(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("add");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("add: not allowed on amplified matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=nd.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("add: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)+nd.firstIndex.get(i));
-        lastIndex.set(i,lastIndex.get(i)+nd.lastIndex.get(i));
+        firstIndex[i]+=nd.firstIndex[i];
+        lastIndex[i]+=nd.lastIndex[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(nd.firstIndex.get(i));
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(nd.lastIndex.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,nd.firstIndex[i],nd.lastIndex[i]);
     }
-    
+
     return this;
   }
-  
+
   public MatrixIndexes sub(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("sub");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("sub: not allowed on amplified matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=nd.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("sub: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)-nd.firstIndex.get(i));
-        lastIndex.set(i,lastIndex.get(i)-nd.lastIndex.get(i));
+        firstIndex[i]-=nd.firstIndex[i];
+        lastIndex[i]-=nd.lastIndex[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(-nd.firstIndex.get(i));
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(-nd.lastIndex.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,-nd.firstIndex[i],-nd.lastIndex[i]);
     }
-    
+
     return this;
   }
 
-  
- 
+
+
   public MatrixIndexes sub(MatrixSize da) throws UnsupportedOperationException {
+    checkModifiable("sub");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("sub: not allowed on amplified matrix");
     }
-    
+
     int n = nbDims > da.nbDims ? da.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=da.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=da.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("minus: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i));
-        lastIndex.set(i,firstIndex.get(i)+Arithmetic.clampToPositive((lastIndex.get(i)-firstIndex.get(i)+1)-da.nbElems.get(i)));
+        lastIndex[i]=firstIndex[i]+Arithmetic.clampToPositive((lastIndex[i]-firstIndex[i]+1)-da.nbElems[i]);
       }
     }
 
     // Manage additional dimensions
     if (nbDims>da.nbDims) {
       for (int i=da.nbDims;i<nbDims;i++) {
-        KernelData kd=indexRangeSpecifier.get(i);
+        KernelData kd=getSpecifier(i);
         if ((kd!=null)  ) {
           // Error : can not merge matrixes with non constant size
           throw new UnsupportedOperationException("sub: not allowed on matrix with non constant size");
-        }    
+        }
         else {
-          firstIndex.set(i,firstIndex.get(i));
-          lastIndex.set(i,firstIndex.get(i)+Arithmetic.clampToPositive(lastIndex.get(i)-firstIndex.get(i)));
+          lastIndex[i]=firstIndex[i]+Arithmetic.clampToPositive(lastIndex[i]-firstIndex[i]);
         }
       }
     }
-    
+
     return this;
   }
-  
-  
+
+
   public MatrixIndexes devide(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("devideDirectBy");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("devideDirectBy: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("devideDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)/nd.firstIndex.get(i));
-        lastIndex.set(i,lastIndex.get(i)/nd.lastIndex.get(i));
+        firstIndex[i]/=nd.firstIndex[i];
+        lastIndex[i]/=nd.lastIndex[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add( 1/nd.firstIndex.get(i) );
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add( 1/nd.lastIndex.get(i) );
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,1/nd.firstIndex[i],1/nd.lastIndex[i]);
     }
-    
+
     return this;
   }
 
-  
+
   public MatrixIndexes devide(MatrixSize da) throws UnsupportedOperationException {
+    checkModifiable("devideDirectBy");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("devideDirectBy: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > da.nbDims ? da.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= da.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= da.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("devideDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)/da.getNbElements(i));
-        lastIndex.set(i,lastIndex.get(i)/da.getNbElements(i));
+        firstIndex[i]/=da.getNbElements(i);
+        lastIndex[i]/=da.getNbElements(i);
       }
     }
 
@@ -644,87 +730,81 @@ public class MatrixIndexes extends IRElement {
     return this;
   }
 
-  
+
   public MatrixIndexes multiply(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("multiplyDirectBy");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("multiplyDirectBy: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("multiplyDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)*nd.firstIndex.get(i));
-        lastIndex.set(i,lastIndex.get(i)*nd.lastIndex.get(i));
+        firstIndex[i]*=nd.firstIndex[i];
+        lastIndex[i]*=nd.lastIndex[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(0);
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(0);
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,0,0);
     }
-    
+
     return this;
   }
 
-  
+
   public MatrixIndexes multiply(MatrixSize da) throws UnsupportedOperationException {
+    checkModifiable("multiplyDirectBy");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("multiplyDirectBy: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > da.nbDims ? da.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= da.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= da.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("multiplyDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,firstIndex.get(i)*da.getNbElements(i));
-        lastIndex.set(i,lastIndex.get(i)*da.getNbElements(i));
+        firstIndex[i]*=da.getNbElements(i);
+        lastIndex[i]*=da.getNbElements(i);
       }
     }
 
     // No need to manage additional dimensions
-    
+
     return this;
   }
-   
-  
+
+
   public MatrixIndexes devideRoundTowardsAbsolute(MatrixSize da) throws UnsupportedOperationException {
+    checkModifiable("devideRoundTowardsAbsolute");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("devideRoundTowardsAbsolute: not allowed on amplified matrix");
     }
-    
+
     // Normalize to positive values the 'grain'
-      
+
     int n = nbDims > da.nbDims ? da.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_da=da.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_da=da.getSpecifier(i);
       if ((kd!=null) || (kd_da!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("devideRoundTowardsAbsolute: not allowed on matrix with non constant size");
@@ -733,104 +813,89 @@ public class MatrixIndexes extends IRElement {
         // Note: In java, the modulo takes the sign of the denominator
         int g=da.getNbElements(i);
         if (g<0) { g=-g; }
-        firstIndex.set(i,(firstIndex.get(i)-(g-1))/g);
-        lastIndex.set(i,(lastIndex.get(i)+(g-1))/g);
+        firstIndex[i]=(firstIndex[i]-(g-1))/g;
+        lastIndex[i]=(lastIndex[i]+(g-1))/g;
       }
     }
-    
+
     // No need to manage additional dimensions
 
     return this;
   }
-  
-  
+
+
   public void lcm(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("lcm");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("lcm: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("lcm: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,Arithmetic.lcm(firstIndex.get(i),nd.firstIndex.get(i)));
-        lastIndex.set(i,Arithmetic.lcm(lastIndex.get(i),nd.lastIndex.get(i)));
+        firstIndex[i]=Arithmetic.lcm(firstIndex[i],nd.firstIndex[i]);
+        lastIndex[i]=Arithmetic.lcm(lastIndex[i],nd.lastIndex[i]);
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(nd.firstIndex.get(i));
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(nd.lastIndex.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,nd.firstIndex[i],nd.lastIndex[i]);
     }
   }
 
   public void gcd(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("gcd");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("gcd: not allowed on amplified or non statically defined matrix");
     }
-    
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("gcd: not allowed on matrix with non constant size");
       }
       else {
-        firstIndex.set(i,Arithmetic.gcd(firstIndex.get(i),nd.firstIndex.get(i)));
-        lastIndex.set(i,Arithmetic.gcd(lastIndex.get(i),nd.lastIndex.get(i)));
+        firstIndex[i]=Arithmetic.gcd(firstIndex[i],nd.firstIndex[i]);
+        lastIndex[i]=Arithmetic.gcd(lastIndex[i],nd.lastIndex[i]);
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(nd.firstIndex.get(i));
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(nd.lastIndex.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,nd.firstIndex[i],nd.lastIndex[i]);
     }
   }
-  
-  
+
+
   public MatrixIndexes inflateToMultipleOf(MatrixSize da) throws UnsupportedOperationException {
+    checkModifiable("inflateToGrain");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("inflateToGrain: not allowed on amplified matrix");
     }
-    
+
     // Normalize to positive values the 'grain'
-      
+
     int n = nbDims > da.nbDims ? da.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_da=da.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_da=da.getSpecifier(i);
       if ((kd!=null) || (kd_da!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("inflateToGrain: not allowed on matrix with non constant size");
@@ -841,44 +906,45 @@ public class MatrixIndexes extends IRElement {
         if (g<0) { g=-g; }
         // First index (towards -infinit)
         {
-          int index=firstIndex.get(i);
+          int index=firstIndex[i];
           if (index<0) {
-            firstIndex.set(i,((index-(g-1))/g)*g);
+            firstIndex[i]=((index-(g-1))/g)*g;
           }
           else {
-            firstIndex.set(i,(index/g)*g);
+            firstIndex[i]=(index/g)*g;
           }
         }
         // Last index (towards +infinit)
         {
-          int index=lastIndex.get(i);
+          int index=lastIndex[i];
           if (index<0) {
-            lastIndex.set(i,(index/g)*g);
+            lastIndex[i]=(index/g)*g;
           }
           else {
-           lastIndex.set(i,((index+(g-1))/g)*g);
+           lastIndex[i]=((index+(g-1))/g)*g;
           }
         }
       }
     }
-    
+
     // No need to manage additional dimensions
-   
+
     return this;
   }
-  
+
   public void union(MatrixIndexes nd) throws UnsupportedOperationException {
+    checkModifiable("unionMergeWith");
     // Does not work on amplified matrixes
     if (isAmplified() || nd.isAmplified()) {
       throw new UnsupportedOperationException("unionMergeWith: not allowed on amplified matrix");
     }
 
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
-    
+
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=nd.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=nd.getSpecifier(i);
       if ((kd!=null) && (kd_nd!=null) && (kd!=kd_nd)) {
         // Error : can not merge
         throw new UnsupportedOperationException("unionMergeWith: not allowed on matrix with different non constant size");
@@ -888,138 +954,119 @@ public class MatrixIndexes extends IRElement {
         throw new UnsupportedOperationException("unionMergeWith: not allowed on matrix with different non constant size");
       }
       {  // First index
-        IndexType id=firstIndexType.get(i);
-        IndexType id_nd=nd.firstIndexType.get(i);
+        IndexType id=firstIndexType[i];
+        IndexType id_nd=nd.firstIndexType[i];
 
         if (id==IndexType.NOT_SPECIFIED || id_nd==IndexType.NOT_SPECIFIED) {
-          firstIndexType.set(i,IndexType.NOT_SPECIFIED);
-          firstIndex.set(i,0);
+          firstIndexType[i]=IndexType.NOT_SPECIFIED;
+          firstIndex[i]=0;
         }
-        else {
-          int fi=firstIndex.get(i);
-          int fi_nd=nd.firstIndex.get(i);
-          if (fi_nd<fi) {
-            firstIndexType.set(i,id_nd);
-            firstIndex.set(i,fi_nd);
-          }
+        else if (nd.firstIndex[i]<firstIndex[i]) {
+          firstIndexType[i]=id_nd;
+          firstIndex[i]=nd.firstIndex[i];
         }
       }
       {  // Last index
-        IndexType id=lastIndexType.get(i);
-        IndexType id_nd=nd.lastIndexType.get(i);
+        IndexType id=lastIndexType[i];
+        IndexType id_nd=nd.lastIndexType[i];
 
         if (id==IndexType.NOT_SPECIFIED || id_nd==IndexType.NOT_SPECIFIED) {
-          lastIndexType.set(i,IndexType.NOT_SPECIFIED);
-          lastIndex.set(i,0);
+          lastIndexType[i]=IndexType.NOT_SPECIFIED;
+          lastIndex[i]=0;
         }
-        else {
-          int fi=lastIndex.get(i);
-          int fi_nd=nd.lastIndex.get(i);
-          if (fi_nd>fi) {
-            lastIndexType.set(i,id_nd);
-            lastIndex.set(i,fi_nd);
-          }
+        else if (nd.lastIndex[i]>lastIndex[i]) {
+          lastIndexType[i]=id_nd;
+          lastIndex[i]=nd.lastIndex[i];
         }
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        firstIndexType.add(nd.firstIndexType.get(i));
-        firstIndex.add(nd.firstIndex.get(i));
-        lastIndexType.add(nd.lastIndexType.get(i));
-        lastIndex.add(nd.lastIndex.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-        amplificationDimList.add(new Amplification(nd.amplificationDimList.get(i)));    
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimensionsFrom(nd,i,nd.firstIndex[i],nd.lastIndex[i]);
     }
   }
-  
+
   public void setLastIndexesAsZero() throws UnsupportedOperationException {
+    checkModifiable("setLastIndexesAsZero");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("setLastIndexesAsZero: not allowed on amplified matrix");
     }
 
-    for (int i=0;i<nbDims;i++) {
-      // Last index to 0
-      lastIndex.setElementAt(0, i);
-    }
+    // Last index to 0
+    Arrays.fill(lastIndex,0);
   }
-  
+
   public void setFirstIndexesAsZero() throws UnsupportedOperationException {
+    checkModifiable("setFirstIndexesAsZero");
     // Does not work on amplified matrixes
     if (isAmplified()) {
       throw new UnsupportedOperationException("setFirstIndexesAsZero: not allowed on amplified matrix");
     }
 
-    for (int i=0;i<nbDims;i++) {
-      // Last index to 0
-      firstIndex.setElementAt(0, i);
-    }
+    // First index to 0
+    Arrays.fill(firstIndex,0);
   }
-  
+
   public void symmetryUnion() throws UnsupportedOperationException {
+    checkModifiable("symmetryUnion");
     if (this.isAmplified()) {
       throw new UnsupportedOperationException("symmetryUnion not allowed on amplified matrix");
     }
     for (int i=0;i<nbDims;i++) {
-      // Last index to 0
-      int max=(-firstIndex.get(i))>lastIndex.get(i)?-firstIndex.get(i):lastIndex.get(i);
-      firstIndex.setElementAt(-max, i);
-      lastIndex.setElementAt(max, i);
+      int max=(-firstIndex[i])>lastIndex[i]?-firstIndex[i]:lastIndex[i];
+      firstIndex[i]=-max;
+      lastIndex[i]=max;
     }
   }
-  
-   
+
+
   //==================================================================
   // Code generation
   //==================================================================
 
   public String getLastIndexPlusOneString(int i) {
     String s=null;
-    KernelData kd=indexRangeSpecifier.get(i);
+    KernelData kd=getSpecifier(i);
     if (kd!=null) {
       s=kd.getName();
     }
     else {
-      s=Integer.toString(lastIndex.get(i)+1);
+      s=Integer.toString(lastIndex[i]+1);
     }
 
-    return amplificationDimList.get(i).generateString(s);
+    return getAmplification(i).generateString(s);
   }
   
   public void generateLastIndexPlusOne(int i,PrintStream ps) {
     String s=null;
-    KernelData kd=indexRangeSpecifier.get(i);    
+    KernelData kd=getSpecifier(i);    
     if (kd!=null) {
       s=kd.getName();
     }
     else {
-      s=Integer.toString(lastIndex.get(i)+1);
+      s=Integer.toString(lastIndex[i]+1);
     }
     
-    amplificationDimList.get(i).generate(s,ps);
+    getAmplification(i).generate(s,ps);
   }
   
   public void generateMaxNbElementFormula(int i,PrintStream ps) {
     String s=null;
-    KernelData kd=indexRangeSpecifier.get(i);
+    KernelData kd=getSpecifier(i);
     if (kd!=null) {
       ps.print(kd.getName());
     }
     else {
-      ps.print(Integer.toString(lastIndex.get(i)+1));
+      ps.print(Integer.toString(lastIndex[i]+1));
     }
     
-    amplificationDimList.get(i).generate(s,ps);
+    getAmplification(i).generate(s,ps);
   }
 
   public int getMaxNbElement(int dim) {
-    KernelData kd=indexRangeSpecifier.get(dim);
+    KernelData kd=getSpecifier(dim);
     int base_size=0;
     if (kd!=null) {
       Literal init=kd.getInitializer();
@@ -1041,10 +1088,10 @@ public class MatrixIndexes extends IRElement {
       }
     }
     else {
-      base_size=lastIndex.get(dim);
+      base_size=lastIndex[dim];
     }
-    for(int i=amplificationDimList.size()-1;i>=0;i--) {
-      Amplification a=amplificationDimList.get(i);
+    for(int i=nbDims-1;i>=0;i--) {
+      Amplification a=getAmplification(i);
       base_size=a.applyTo(base_size);
     }
     return base_size;
@@ -1052,28 +1099,28 @@ public class MatrixIndexes extends IRElement {
    
   public String getLastIndexString(int i) {
     String s=null;
-    KernelData kd=indexRangeSpecifier.get(i);
+    KernelData kd=getSpecifier(i);
     if (kd!=null) {
       s=kd.getName()+"-1";
     }
     else {
-      s=Integer.toString(lastIndex.get(i));
+      s=Integer.toString(lastIndex[i]);
     }
 
-    return amplificationDimList.get(i).generateString(s);
+    return getAmplification(i).generateString(s);
   }
 
   public void generateLastIndex(int i,PrintStream ps) {
     String s=null;
-    KernelData kd=indexRangeSpecifier.get(i);
+    KernelData kd=getSpecifier(i);
     if (kd!=null) {
       s=kd.getName()+"-1";   
     }
     else {
-      s=Integer.toString(lastIndex.get(i));
+      s=Integer.toString(lastIndex[i]);
     }
  
-    amplificationDimList.get(i).generate(s,ps);
+    getAmplification(i).generate(s,ps);
   }
 
   //==================================================================
@@ -1087,10 +1134,10 @@ public class MatrixIndexes extends IRElement {
     }
     for (int i=nbDims-1;i>=0;i--) {
       ps.print("[");
-      Amplification amp=amplificationDimList.get(i);
+      Amplification amp=getAmplification(i);
 
       String s=null;
-      KernelData kd=indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
       if (kd!=null) {
         // This is a variable
         s=kd.getName();
@@ -1098,13 +1145,13 @@ public class MatrixIndexes extends IRElement {
       else {
         // This is a constant
         StringBuffer sb=new StringBuffer();
-        if (firstIndex.get(i)==0) {
-          printIndex(sb, amp.applyTo(lastIndex.get(i)+1), lastIndexType.get(i));
+        if (firstIndex[i]==0) {
+          printIndex(sb, amp.applyTo(lastIndex[i]+1), lastIndexType[i]);
         }
         else {
-          printIndex(sb, amp.applyTo(firstIndex.get(i)), firstIndexType.get(i));
+          printIndex(sb, amp.applyTo(firstIndex[i]), firstIndexType[i]);
           sb.append("..");
-          printIndex(sb, amp.applyTo(lastIndex.get(i)+1)-1, lastIndexType.get(i));
+          printIndex(sb, amp.applyTo(lastIndex[i]+1)-1, lastIndexType[i]);
         }
         s=sb.toString();
       }
@@ -1119,10 +1166,10 @@ public class MatrixIndexes extends IRElement {
     for (int i=nbDims-1;i>=0;i--) {
       if (i!=nbDims-1) { ps.print("*"); }
       ps.print("(");
-      Amplification amp=amplificationDimList.get(i);
+      Amplification amp=getAmplification(i);
      
       String s=null;
-      KernelData kd=indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
       if (kd!=null) {
         // This is a variable
         s=kd.getName();
@@ -1130,14 +1177,14 @@ public class MatrixIndexes extends IRElement {
       else {
         // This is a constant
         StringBuffer sb=new StringBuffer();
-        if (firstIndex.get(i)==0) {
-          printIndex(sb, amp.applyTo(lastIndex.get(i)+1), lastIndexType.get(i));
+        if (firstIndex[i]==0) {
+          printIndex(sb, amp.applyTo(lastIndex[i]+1), lastIndexType[i]);
         }
         else {
           // TODO: Looks like a bug here !
-          printIndex(sb, amp.applyTo(firstIndex.get(i)), firstIndexType.get(i));
+          printIndex(sb, amp.applyTo(firstIndex[i]), firstIndexType[i]);
           sb.append("..");
-          printIndex(sb, amp.applyTo(lastIndex.get(i)+1)-1, lastIndexType.get(i));
+          printIndex(sb, amp.applyTo(lastIndex[i]+1)-1, lastIndexType[i]);
         }
         s=sb.toString();
       }
@@ -1174,18 +1221,18 @@ public class MatrixIndexes extends IRElement {
       for (int i=0;i<nbDims;i++) {
         sb.append("{");
         
-        Amplification amp=amplificationDimList.get(i);
+        Amplification amp=getAmplification(i);
         
         StringBuffer sb2 = new StringBuffer();
-        KernelData kd=indexRangeSpecifier.get(i);
+        KernelData kd=getSpecifier(i);
         if (kd!=null) {
           sb2.append(kd.getName());
           sb2.append(" /*");
         }
 
-        printIndex(sb2, amp.applyTo(firstIndex.get(i)), firstIndexType.get(i));
+        printIndex(sb2, amp.applyTo(firstIndex[i]), firstIndexType[i]);
         sb2.append("..");
-        printIndex(sb2, amp.applyTo(lastIndex.get(i)+1)-1, lastIndexType.get(i));
+        printIndex(sb2, amp.applyTo(lastIndex[i]+1)-1, lastIndexType[i]);
 
         if (kd!=null) {
           sb2.append("*/");
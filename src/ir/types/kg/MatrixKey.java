@@ -0,0 +1,53 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Key of the interning caches of matrix indexes and sizes: the fixed
+   properties of all dimensions packed in an int array */
+
+package ir.types.kg;
+
+import java.util.Arrays;
+
+
+final class MatrixKey {
+  private final int[] values;
+  private final int hash;
+
+  MatrixKey(int[] v) {
+    values=v;
+    hash=Arrays.hashCode(v);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this==o) return true;
+    if (!(o instanceof MatrixKey)) return false;
+    MatrixKey k=(MatrixKey)o;
+    return (hash==k.hash) && Arrays.equals(values,k.values);
+  }
+}
@@ -26,26 +26,40 @@ package ir.types.kg;
 import ir.base.IRElement;
 import ir.base.KernelData;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import utility.math.Arithmetic;
 
 
 public class MatrixSize extends IRElement {
+  private static final int[] noSize = new int[0];
+  private static final IndexType[] noIndexType = new IndexType[0];
+
+  // Interned sizes, shared by all compilations (see MatrixIndexes)
+  private static final int maxNbInterned = 4096;
+  private static final ConcurrentHashMap<MatrixKey,MatrixSize> internMap =
+      new ConcurrentHashMap<MatrixKey,MatrixSize>();
+
   // Array with a single element
-  public static final MatrixSize MatrixSingleElement = new MatrixSize(1);
+  public static final MatrixSize MatrixSingleElement = new MatrixSize(1).intern();
   // Array with no elements
-  public static final MatrixSize MatrixNil = new MatrixSize(0);
- 
+  public static final MatrixSize MatrixNil = new MatrixSize(0).intern();
+
   int nbDims=0;
   public enum IndexType {NOT_SPECIFIED, MAXIMUM, FIXED};
-  java.util.Vector<IndexType> indexType=new java.util.Vector<IndexType>();
-  java.util.Vector<Integer> nbElems=new java.util.Vector<Integer>();
+  // Properties of dimensions, arrays having exactly nbDims elements
+  IndexType[] indexType=noIndexType;
+  int[] nbElems=noSize;
 
   // TODO: Index range specifier can be on first and last (ex: convolution coefs)
-  java.util.Vector<KernelData> indexRangeSpecifier=new java.util.Vector<KernelData>();
+  // null as long as no dimension has a range specifier
+  KernelData[] indexRangeSpecifier=null;
+
+  // Interned sizes are shared and can not be modified
+  private boolean interned=false;
 
 
   //==================================================================
@@ -56,55 +70,110 @@ public class MatrixSize extends IRElement {
   public MatrixSize() {
     nbDims=0;
   }
- 
-  @SuppressWarnings("unchecked")
+
   public MatrixSize(MatrixSize t) {
     //super(t);
     nbDims=t.nbDims;
-    nbElems=(Vector<Integer>) t.nbElems.clone();
-    indexType=(Vector<IndexType>) t.indexType.clone();
-    indexRangeSpecifier=(Vector<KernelData>)t.indexRangeSpecifier.clone();
-
+    nbElems=t.nbElems.clone();
+    indexType=t.indexType.clone();
+    if (t.indexRangeSpecifier!=null) {
+      indexRangeSpecifier=t.indexRangeSpecifier.clone();
+    }
   }
 
   // 1D array with nb elements
-  public MatrixSize(int nb) {    
-    nbDims=1;
-    nbElems.add(nb);
-    indexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
+  public MatrixSize(int nb) {
+    addDimension(IndexType.FIXED,nb,null);
   }
-  
+
   // 2D array [nb1,nb2]
-  public MatrixSize(int nb0, int nb1) {    
-    nbDims=2;
-    
+  public MatrixSize(int nb0, int nb1) {
     // First dim
-    nbElems.add(nb0);
-    indexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
-
+    addDimension(IndexType.FIXED,nb0,null);
     // Second dim
-    nbElems.add(nb1);
-    indexType.add(IndexType.FIXED);
-    indexRangeSpecifier.add(null);
+    addDimension(IndexType.FIXED,nb1,null);
   }
 
   // ND array with index starting from 0
   public MatrixSize(List<Integer> nb) {
-    nbDims=nb.size();
     for (int i=0;i<nb.size();i++) {
-      nbElems.add(nb.get(i));
-      indexType.add(IndexType.FIXED);
-      indexRangeSpecifier.add(null);
+      addDimension(IndexType.FIXED,nb.get(i),null);
+    }
+  }
+
+  // Adds a dimension after the existing ones
+  private void addDimension(IndexType it, int nb, KernelData kd) {
+    int n=nbDims+1;
+    indexType=Arrays.copyOf(indexType,n);
+    nbElems=Arrays.copyOf(nbElems,n);
+    if (indexRangeSpecifier!=null) {
+      indexRangeSpecifier=Arrays.copyOf(indexRangeSpecifier,n);
+    }
+    else if (kd!=null) {
+      indexRangeSpecifier=new KernelData[n];
+    }
+    nbDims=n;
+    indexType[n-1]=it;
+    nbElems[n-1]=nb;
+    if (kd!=null) {
+      indexRangeSpecifier[n-1]=kd;
+    }
+  }
+
+  KernelData getSpecifier(int i) {
+    return (indexRangeSpecifier==null)?null:indexRangeSpecifier[i];
+  }
+
+  private void checkModifiable(String operation) throws UnsupportedOperationException {
+    if (interned) {
+      throw new UnsupportedOperationException(operation+": not allowed on interned matrix");
+    }
+  }
+
+
+  //==================================================================
+  // Interning
+  //==================================================================
+
+  // Returns an unmodifiable size equivalent to this one, shared with the
+  // other interned sizes having the same number of elements. Symbolic
+  // sizes are returned as is
+  public MatrixSize intern() {
+    if (interned || (getClass()!=MatrixSize.class) || (indexRangeSpecifier!=null)) {
+      return this;
+    }
+
+    int[] values=new int[1+2*nbDims];
+    values[0]=nbDims;
+    for (int i=0;i<nbDims;i++) {
+      values[2*i+1]=indexType[i].ordinal();
+      values[2*i+2]=nbElems[i];
     }
+    MatrixKey key=new MatrixKey(values);
+
+    MatrixSize m=internMap.get(key);
+    if (m==null) {
+      m=new MatrixSize(this);
+      m.interned=true;
+      if (internMap.size()<maxNbInterned) {
+        MatrixSize previous=internMap.putIfAbsent(key,m);
+        if (previous!=null) {
+          m=previous;
+        }
+      }
+    }
+    return m;
+  }
+
+  public boolean isInterned() {
+    return interned;
   }
 
 
   //==================================================================
   // Getters
   //==================================================================
-  
+
   public boolean isEmpty() {
     return nbDims==0;
   }
@@ -118,43 +187,43 @@ public class MatrixSize extends IRElement {
     if (i>=nbDims) {
       return 1;
     }
-    return nbElems.get(i);
+    return nbElems[i];
   }
-  
+
   public boolean hasSingleElement() {
     if (isEmpty()) { return false; }
     for(int i=0;i<nbDims;i++) {
-      if (indexType.get(i)==IndexType.NOT_SPECIFIED) {
+      if (indexType[i]==IndexType.NOT_SPECIFIED) {
         return false;
       }
-      if (nbElems.get(i)!=1) {
+      if (nbElems[i]!=1) {
         return false;
       }
     }
     return true;
   }
-  
+
   public boolean hasStaticSize() {
     for(int i=0;i<nbDims;i++) {
       if (
-          (indexRangeSpecifier.get(i)!=null) ||
-          (indexType.get(i)==IndexType.NOT_SPECIFIED) ) {
+          (getSpecifier(i)!=null) ||
+          (indexType[i]==IndexType.NOT_SPECIFIED) ) {
         return false;
       }
     }
     return true;
   }
-  
+
   public IndexType getndexType(int i) {
     if (isEmpty()) { return IndexType.NOT_SPECIFIED; }
     if (i>=nbDims) { return IndexType.FIXED; }
-    return indexType.get(i);
+    return indexType[i];
   }
 
-  public IndexType getLastIndexType(int i) { 
+  public IndexType getLastIndexType(int i) {
     if (isEmpty()) { return IndexType.NOT_SPECIFIED; }
     if (i>=nbDims) { return IndexType.FIXED; }
-    return indexType.get(i);
+    return indexType[i];
   }
 
   public KernelData getIndexRangeSpecifier(int i) {
@@ -162,11 +231,11 @@ public class MatrixSize extends IRElement {
     if (i>=nbDims) {
       return null;
     }
-    return indexRangeSpecifier.get(i);
+    return getSpecifier(i);
   }
-    
+
   public void getIndexRangeSpecifiers(Set<KernelData> kdSet) {
-    if (isEmpty()) { return; }
+    if (isEmpty() || (indexRangeSpecifier==null)) { return; }
     for(KernelData kd:indexRangeSpecifier) {
       if (kd!=null) {
         kdSet.add(kd);
@@ -174,29 +243,29 @@ public class MatrixSize extends IRElement {
     }
   }
 
-  
+
   //==================================================================
   // Queries on dimensions
   //==================================================================
-  
+
   public boolean isSame(MatrixSize t) {
     // Is is myself ?
     if (this==t) return true;
-    
+
     // Same nbDims ?
     if (nbDims!=t.nbDims) {
       return false;
     }
     for (int i=0;i<nbDims;i++) {
-      if (indexRangeSpecifier.get(i)!=t.indexRangeSpecifier.get(i)) {
+      if (getSpecifier(i)!=t.getSpecifier(i)) {
         return false;
       }
-      if (indexRangeSpecifier.get(i)!=null) {
+      if (getSpecifier(i)!=null) {
         // First index
-        if (indexType.get(i)!=t.indexType.get(i)) {
+        if (indexType[i]!=t.indexType[i]) {
           return false;
         }
-        if (((int)nbElems.get(i))!=(int)t.nbElems.get(i)) {
+        if (nbElems[i]!=t.nbElems[i]) {
          return false;
         }
       }
@@ -218,15 +287,15 @@ public class MatrixSize extends IRElement {
     // Manage dimensions properties
     for (int i=0;i<n;i++) {
       // Variable size specifier
-      if (indexRangeSpecifier.get(i)!=nd.indexRangeSpecifier.get(i)) {
+      if (getSpecifier(i)!=nd.getSpecifier(i)) {
         return false;
       }
 
       // First index
-      if (indexType.get(i)!=nd.indexType.get(i)) {
+      if (indexType[i]!=nd.indexType[i]) {
         return false;
       }
-      if (((int)nbElems.get(i))>(int)nd.nbElems.get(i)) {
+      if (nbElems[i]>nd.nbElems[i]) {
         return false;
       }
    }
@@ -239,29 +308,30 @@ public class MatrixSize extends IRElement {
     if (nbDims<d) return false;
     for (int i=d;i<nbDims;i++) {
       // Variable size specifier
-      if (indexRangeSpecifier.get(i)!=null) {
+      if (getSpecifier(i)!=null) {
         return true;
       }
       // First index
-      if (((int)nbElems.get(i))!=0) {
+      if (nbElems[i]!=0) {
        return true;
       }
     }
     return false;
   }
 
-  
+
   //==================================================================
   // Operations on dimensions
   //==================================================================
 
   public void unionMergeWith(MatrixSize nd) throws UnsupportedOperationException {
+    checkModifiable("unionMergeWith");
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
-    
+
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=nd.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=nd.getSpecifier(i);
       if ((kd!=null) && (kd_nd!=null) && (kd!=kd_nd)) {
         // Error : can not merge
         throw new UnsupportedOperationException("unionMergeWith: not allowed on matrix with different non constant size");
@@ -271,180 +341,145 @@ public class MatrixSize extends IRElement {
         throw new UnsupportedOperationException("unionMergeWith: not allowed on matrix with different non constant size");
       }
       {  // First index
-        IndexType id=indexType.get(i);
-        IndexType id_nd=nd.indexType.get(i);
+        IndexType id=indexType[i];
+        IndexType id_nd=nd.indexType[i];
 
         if (id==IndexType.NOT_SPECIFIED || id_nd==IndexType.NOT_SPECIFIED) {
-          indexType.set(i,IndexType.NOT_SPECIFIED);
-          nbElems.set(i,0);
+          indexType[i]=IndexType.NOT_SPECIFIED;
+          nbElems[i]=0;
         }
-        else {
-          int fi=nbElems.get(i);
-          int fi_nd=nd.nbElems.get(i);
-          if (fi_nd<fi) {
-            indexType.set(i,id_nd);
-            nbElems.set(i,fi_nd);
-          }
+        else if (nd.nbElems[i]<nbElems[i]) {
+          indexType[i]=id_nd;
+          nbElems[i]=nd.nbElems[i];
         }
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add(nd.nbElems.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],nd.nbElems[i],nd.getSpecifier(i));
     }
   }
-  
-  public void add(MatrixSize nd) throws UnsupportedOperationException {    
+
+  public void add(MatrixSize nd) throws UnsupportedOperationException {
+    checkModifiable("add");
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd=indexRangeSpecifier.get(i);
-      KernelData kd_nd=nd.indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
+      KernelData kd_nd=nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         // Error : can not merge matrixes with non constant size
         throw new UnsupportedOperationException("add: not allowed on matrix with non constant size");
       }
       else {
-        nbElems.set(i,nbElems.get(i)+nd.nbElems.get(i));
+        nbElems[i]+=nd.nbElems[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add(nd.nbElems.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],nd.nbElems[i],nd.getSpecifier(i));
     }
   }
 
- 
+
   public void lcm(MatrixSize nd) throws UnsupportedOperationException {
-    
+    checkModifiable("lcm");
+
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("lcm: not allowed on matrix with non constant size");
       }
       else {
-        nbElems.set(i,Arithmetic.lcm(nbElems.get(i),nd.nbElems.get(i)));
+        nbElems[i]=Arithmetic.lcm(nbElems[i],nd.nbElems[i]);
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add(nd.nbElems.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],nd.nbElems[i],nd.getSpecifier(i));
     }
   }
 
-  public void gcd(MatrixSize nd) throws UnsupportedOperationException {   
+  public void gcd(MatrixSize nd) throws UnsupportedOperationException {
+    checkModifiable("gcd");
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("gcd: not allowed on matrix with non constant size");
       }
       else {
-        nbElems.set(i,Arithmetic.gcd(nbElems.get(i),nd.nbElems.get(i)));
+        nbElems[i]=Arithmetic.gcd(nbElems[i],nd.nbElems[i]);
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add(nd.nbElems.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],nd.nbElems[i],nd.getSpecifier(i));
     }
   }
-  
-  public MatrixSize devideDirectBy(MatrixSize nd) throws UnsupportedOperationException {    
+
+  public MatrixSize devideDirectBy(MatrixSize nd) throws UnsupportedOperationException {
+    checkModifiable("devideDirectBy");
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("devideDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        nbElems.set(i,nbElems.get(i)/nd.nbElems.get(i));
+        nbElems[i]/=nd.nbElems[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add( 1/nd.nbElems.get(i) );
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],1/nd.nbElems[i],nd.getSpecifier(i));
     }
-    
+
     return this;
   }
 
-  public MatrixSize multiplyDirectBy(MatrixSize nd) throws UnsupportedOperationException {    
+  public MatrixSize multiplyDirectBy(MatrixSize nd) throws UnsupportedOperationException {
+    checkModifiable("multiplyDirectBy");
     int n = nbDims > nd.nbDims ? nd.nbDims : nbDims;
 
     // Manage common dimensions
     for (int i=0;i<n;i++) {
-      KernelData kd   =    indexRangeSpecifier.get(i);
-      KernelData kd_nd= nd.indexRangeSpecifier.get(i);
+      KernelData kd   =    getSpecifier(i);
+      KernelData kd_nd= nd.getSpecifier(i);
       if ((kd!=null) || (kd_nd!=null) ) {
         throw new UnsupportedOperationException("multiplyDirectBy: not allowed on matrix with non constant size");
       }
       else {
-        nbElems.set(i,nbElems.get(i)*nd.nbElems.get(i));
+        nbElems[i]*=nd.nbElems[i];
       }
     }
 
     // Manage additional dimensions
-    if (nd.nbDims>nbDims) {
-      for (int i=nbDims;i<nd.nbDims;i++) {
-        indexType.add(nd.indexType.get(i));
-        nbElems.add(nd.nbElems.get(i));
-        indexRangeSpecifier.add(nd.indexRangeSpecifier.get(i));
-
-        nbDims++;
-      }
+    for (int i=nbDims;i<nd.nbDims;i++) {
+      addDimension(nd.indexType[i],nd.nbElems[i],nd.getSpecifier(i));
     }
-    
-    return this;    
+
+    return this;
   }
 
-  
-  
+
+
   //==================================================================
   // Verbose
   //==================================================================
@@ -458,7 +493,7 @@ public class MatrixSize extends IRElement {
       ps.print("[");
       
       String s=null;
-      KernelData kd=indexRangeSpecifier.get(i);
+      KernelData kd=getSpecifier(i);
       if (kd!=null) {
         // This is a variable
         s=kd.getName();
@@ -466,7 +501,7 @@ public class MatrixSize extends IRElement {
       else {
         // This is a constant
         StringBuffer sb=new StringBuffer();
-        printIndex(sb, nbElems.get(i), indexType.get(i));
+        printIndex(sb, nbElems[i], indexType[i]);
         s=sb.toString();
       }
 
@@ -503,13 +538,13 @@ public class MatrixSize extends IRElement {
         sb.append("{");
                 
         StringBuffer sb2 = new StringBuffer();
-        KernelData kd=indexRangeSpecifier.get(i);
+        KernelData kd=getSpecifier(i);
         if (kd!=null) {
           sb2.append(kd.getName());
           sb2.append(" /*");
         }
 
-        printIndex(sb2, nbElems.get(i), indexType.get(i));
+        printIndex(sb2, nbElems[i], indexType[i]);
 
         if (kd!=null) {
           sb2.append("*/");
@@ -36,6 +36,7 @@ import parser.TNode;
 import ir.base.KernelData;
 import ir.literals.Literal;
 import ir.types.Type;
+import utility.thread.ThreadOutput;
 
 public class TypedMatrixIndexes extends MatrixIndexes {
   Type baseCType=null;
@@ -125,7 +126,7 @@ public class TypedMatrixIndexes extends MatrixIndexes {
       emitter.declSpecifiers();
     } catch (RecognitionException e) {
       // TODO Auto-generated catch block
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
       
     //baseCType.generate(ps);
@@ -146,7 +147,7 @@ public class TypedMatrixIndexes extends MatrixIndexes {
       emitter.declSpecifiers();
     } catch (RecognitionException e) {
       // TODO Auto-generated catch block
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
       
     //baseCType.generate(ps);
@@ -63,6 +63,14 @@ tokens {
 
 @lexer::header {
   package parser;
+  import utility.thread.ThreadOutput;
+}
+
+@lexer::members {
+  // Messages of the lexer go to the error stream of the thread
+  public void emitErrorMessage(String msg) {
+    ThreadOutput.err().println(msg);
+  }
 }
 
 @parser::header {
@@ -74,7 +82,7 @@ tokens {
   import ir.literals.c.*;
   import ir.symbolTable.*;
   import common.*;
-  
+  import utility.thread.ThreadOutput;
 }
  
 @parser::members {
@@ -95,6 +103,11 @@ tokens {
   public void setCompilerError(CompilerError cp) {
     compilerError = cp;
   }
+
+  // Messages of the parser go to the error stream of the thread
+  public void emitErrorMessage(String msg) {
+    ThreadOutput.err().println(msg);
+  }
 }
 
 //========================================================
@@ -33,6 +33,7 @@ import org.antlr.runtime.RecognitionException;
 import target.ComputeDevice;
 
 import common.CompilerError;
+import utility.thread.ThreadOutput;
 
 public class DeviceParser {
   // Module information
@@ -70,7 +71,7 @@ public class DeviceParser {
       lex = new DeviceConfigLexer(new ANTLRFileStream(inputFile.getPath()));
     } catch (IOException e1) {
       // Should never happen
-      e1.printStackTrace();
+      e1.printStackTrace(ThreadOutput.err());
     }
 
     tokens = new CommonTokenStream(lex);
@@ -80,7 +81,7 @@ public class DeviceParser {
     try {
       parser.module();
     } catch (RecognitionException e)  {
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
     
     device=parser.getComputeDevice();
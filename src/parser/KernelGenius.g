@@ -86,6 +86,7 @@ tokens {
 @lexer::header {
   package parser;
   import parser.*;
+  import utility.thread.ThreadOutput;
 }
 
 @parser::header {
@@ -203,6 +204,11 @@ tokens {
 
 @lexer::members {
   boolean sectionMode = false;
+
+  // Messages of the lexer go to the error stream of the thread
+  public void emitErrorMessage(String msg) {
+    ThreadOutput.err().println(msg);
+  }
   
   LineObject lineObject = new LineObject();
   String originalSource = "";
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 
 import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.Token;
@@ -39,12 +40,14 @@ import org.antlr.runtime.TokenStream;
 import common.CompilerError;
 import parser.KernelGeniusLexer;
 import parser.KernelGeniusParser;
+import utility.thread.ThreadOutput;
 
 public class ProgramParser {
   // Module information
   Program program=null; // IR
   String programName=null;
   File inputFile=null; // Original file
+  String inputText=null; // Content of the file when preprocessed in memory
   CommonTree astTree=null; 
 
   // Parser
@@ -70,6 +73,15 @@ public class ProgramParser {
     }
     compilerError = new CompilerError(v,f);
   }
+
+  // Program preprocessed in memory: 't' is the content of file 'f',
+  // which does not exist
+  public ProgramParser(int v, File f, String t, String s) {
+    inputFile=f;
+    inputText=t;
+    programName=s;
+    compilerError = new CompilerError(v,f);
+  }
    
   
   // ##################################################################
@@ -84,8 +96,15 @@ public class ProgramParser {
 
   public void parse() {
     // Lexer build
-    try { lex = new KernelGeniusLexer(new ANTLRFileStream(inputFile.getPath())); }
-    catch (IOException e1) { e1.printStackTrace(); }
+    if (inputText!=null) {
+      ANTLRStringStream input=new ANTLRStringStream(inputText);
+      input.name=inputFile.getPath();
+      lex = new KernelGeniusLexer(input);
+    }
+    else {
+      try { lex = new KernelGeniusLexer(new ANTLRFileStream(inputFile.getPath())); }
+      catch (IOException e1) { e1.printStackTrace(ThreadOutput.err()); }
+    }
     tokens = new CommonTokenStream(lex);
 
     // Parser tree adaptor build
@@ -128,7 +147,7 @@ public class ProgramParser {
     try {
       ret=parser.program();
     } catch (Exception e)  {
-      e.printStackTrace();
+      e.printStackTrace(ThreadOutput.err());
     }
     
     // Sets AST informations
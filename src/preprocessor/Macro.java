@@ -0,0 +1,90 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Object-like or function-like macro */
+
+package preprocessor;
+
+import java.util.List;
+
+
+final class Macro {
+  private final String name;
+  // Parameter names, null for an object-like macro. The variable
+  // argument parameter is the last one
+  private final List<String> paramList;
+  private final boolean variadic;
+  // Replacement list, the first token having no preceding space
+  private final List<PPToken> body;
+
+  Macro(String n, List<String> p, boolean v, List<PPToken> b) {
+    name=n;
+    paramList=p;
+    variadic=v;
+    body=b;
+  }
+
+  String getName() {
+    return name;
+  }
+  boolean isFunctionLike() {
+    return paramList!=null;
+  }
+  boolean isVariadic() {
+    return variadic;
+  }
+  int getNbParams() {
+    return paramList.size();
+  }
+  List<PPToken> getBody() {
+    return body;
+  }
+
+  // Index of the parameter of name 's', -1 if it is not a parameter
+  int getParamIndex(PPToken t) {
+    if ((paramList==null) || !t.isIdentifier()) {
+      return -1;
+    }
+    return paramList.indexOf(t.getText());
+  }
+
+  // Returns true if 'm' is the same definition as the macro, in which
+  // case it can be redefined silently
+  boolean isSameDefinition(Macro m) {
+    if ((variadic!=m.variadic) || (body.size()!=m.body.size())) {
+      return false;
+    }
+    if ((paramList==null)?(m.paramList!=null):!paramList.equals(m.paramList)) {
+      return false;
+    }
+    for(int i=0;i<body.size();i++) {
+      PPToken a=body.get(i);
+      PPToken b=m.body.get(i);
+      if (!a.getText().equals(b.getText()) || (a.hasPrevWhite()!=b.hasPrevWhite())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,383 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Source file split in logical lines of preprocessing tokens.
+
+   Lines continued with a backslash are joined and comments are
+   removed, each logical line keeping the number of physical lines it
+   spans and each token its location and whether it is preceded by
+   spaces. Parsed files are immutable: included files are kept in a
+   cache shared by all compilations of the JVM, and parsed again only
+   when their date or size changes */
+
+package preprocessor;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import common.Diagnostic;
+import preprocessor.PPToken.KIND;
+
+
+final class PPSourceFile {
+
+  //==================================================================
+  // Logical line
+  //==================================================================
+
+  static final class Line {
+    // Number of the first physical line
+    final int lineNumber;
+    // Number of physical lines of the logical line
+    final int nbLines;
+    // Tokens of the line
+    final List<PPToken> tokenList;
+    // Name of the directive ("" for the null directive), null for a
+    // text line
+    final String directive;
+    // Index in 'tokenList' of the first token after the directive name
+    final int directiveEnd;
+
+    Line(int n, int nb, List<PPToken> l) {
+      lineNumber=n;
+      nbLines=nb;
+      tokenList=Collections.unmodifiableList(l);
+
+      // Directive recognition
+      if (!l.isEmpty() && l.get(0).is("#")) {
+        if (l.size()==1) {
+          directive="";
+          directiveEnd=1;
+        }
+        else {
+          directive=l.get(1).getText();
+          directiveEnd=2;
+        }
+      }
+      else {
+        directive=null;
+        directiveEnd=0;
+      }
+    }
+  }
+
+
+  //==================================================================
+  // Shared cache
+  //==================================================================
+
+  // Maximum number of files kept in the cache, it is flushed when full
+  private static final int maxNbCached = 1024;
+  private static final ConcurrentHashMap<String,PPSourceFile> cache = new ConcurrentHashMap<String,PPSourceFile>();
+
+  // Returns the parsed file 'f', from the cache when it did not change
+  // since it was parsed
+  static PPSourceFile get(File f) throws IOException {
+    String key=f.getAbsolutePath();
+    long lastModified=f.lastModified();
+    long length=f.length();
+    PPSourceFile sf=cache.get(key);
+    if ((sf!=null) && (sf.lastModified==lastModified) && (sf.length==length)) {
+      return sf;
+    }
+    sf=new PPSourceFile(readFile(f),lastModified,length);
+    if (cache.size()>=maxNbCached) {
+      cache.clear();
+    }
+    cache.put(key,sf);
+    return sf;
+  }
+
+  static String readFile(File f) throws IOException {
+    byte[] b=new byte[(int)f.length()];
+    DataInputStream dis=new DataInputStream(new FileInputStream(f));
+    try {
+      dis.readFully(b);
+    }
+    finally {
+      dis.close();
+    }
+    return new String(b);
+  }
+
+
+  //==================================================================
+  // Building
+  //==================================================================
+
+  private final long lastModified;
+  private final long length;
+  private final List<Line> lineList = new ArrayList<Line>();
+  // Lexical errors, without file name
+  private final List<Diagnostic> errorList = new ArrayList<Diagnostic>();
+
+  PPSourceFile(String text, long d, long l) {
+    lastModified=d;
+    length=l;
+    lex(text);
+  }
+
+  List<Line> getLineList() {
+    return lineList;
+  }
+  List<Diagnostic> getErrorList() {
+    return errorList;
+  }
+
+
+  //==================================================================
+  // Lexing
+  //==================================================================
+
+  // Current position
+  private String buf;
+  private int pos;
+  private int lineNumber;
+  // Position of the beginning of the current physical line
+  private int lineStart;
+
+  // Returns the current character, removing line continuations
+  private char peek() {
+    return peek(0);
+  }
+  private char peek(int offset) {
+    int p=pos;
+    while (true) {
+      p=skipContinuation(p);
+      if (p>=buf.length()) {
+        return 0;
+      }
+      if (offset==0) {
+        return buf.charAt(p);
+      }
+      offset--;
+      p++;
+    }
+  }
+  private char next(StringBuffer sb) {
+    skipContinuations();
+    char c=buf.charAt(pos++);
+    if (c=='\n') {
+      lineNumber++;
+      lineStart=pos;
+    }
+    if (sb!=null) {
+      sb.append(c);
+    }
+    return c;
+  }
+  private int skipContinuation(int p) {
+    if ((p<buf.length()) && (buf.charAt(p)=='\\')) {
+      if ((p+1<buf.length()) && (buf.charAt(p+1)=='\n')) {
+        return skipContinuation(p+2);
+      }
+      if ((p+2<buf.length()) && (buf.charAt(p+1)=='\r') && (buf.charAt(p+2)=='\n')) {
+        return skipContinuation(p+3);
+      }
+    }
+    return p;
+  }
+  private void skipContinuations() {
+    while (pos!=skipContinuation(pos)) {
+      pos=skipContinuation(pos);
+      lineNumber++;
+      lineStart=pos;
+    }
+  }
+  private boolean atEnd() {
+    skipContinuations();
+    return pos>=buf.length();
+  }
+
+  private void lex(String text) {
+    buf=text;
+    pos=0;
+    lineNumber=1;
+    lineStart=0;
+    while (!atEnd()) {
+      int firstLine=lineNumber;
+      List<PPToken> tokenList=new ArrayList<PPToken>();
+      boolean white=false;
+      while (!atEnd() && (peek()!='\n')) {
+        if (skipSpaces()) {
+          white=true;
+        }
+        else {
+          tokenList.add(lexToken(white));
+          white=false;
+        }
+      }
+      if (!atEnd()) {
+        // Final newline
+        next(null);
+        lineList.add(new Line(firstLine,lineNumber-firstLine,tokenList));
+      }
+      else {
+        lineList.add(new Line(firstLine,lineNumber-firstLine+1,tokenList));
+      }
+    }
+    buf=null;
+  }
+
+  // Skips spaces and comments. Returns false if there are none
+  private boolean skipSpaces() {
+    boolean found=false;
+    while (!atEnd()) {
+      char c=peek();
+      if (isSpace(c)) {
+        next(null);
+      }
+      else if ((c=='/') && (peek(1)=='/')) {
+        while (!atEnd() && (peek()!='\n')) {
+          next(null);
+        }
+      }
+      else if ((c=='/') && (peek(1)=='*')) {
+        int commentLine=lineNumber;
+        next(null);
+        next(null);
+        while (!atEnd() && !((peek()=='*') && (peek(1)=='/'))) {
+          next(null);
+        }
+        if (atEnd()) {
+          errorList.add(new Diagnostic(Diagnostic.KIND.ERROR,null,commentLine,"unterminated comment"));
+        }
+        else {
+          next(null);
+          next(null);
+        }
+      }
+      else {
+        break;
+      }
+      found=true;
+    }
+    return found;
+  }
+
+  // Lexes a token
+  private PPToken lexToken(boolean white) {
+    StringBuffer sb=new StringBuffer();
+    int line=lineNumber;
+    int column=pos-lineStart+1;
+    char c=peek();
+    KIND kind;
+
+    if (PPToken.isIdentifierStart(c)) {
+      // Identifiers
+      while (PPToken.isIdentifierPart(peek())) {
+        next(sb);
+      }
+      kind=KIND.IDENTIFIER;
+    }
+    else if (isDigit(c) || ((c=='.') && isDigit(peek(1)))) {
+      // Numbers
+      next(sb);
+      while (true) {
+        c=peek();
+        if (((c=='e')||(c=='E')||(c=='p')||(c=='P')) && ((peek(1)=='+')||(peek(1)=='-'))) {
+          next(sb);
+          next(sb);
+        }
+        else if (PPToken.isIdentifierPart(c) || (c=='.')) {
+          next(sb);
+        }
+        else {
+          break;
+        }
+      }
+      kind=KIND.NUMBER;
+    }
+    else if ((c=='"') || (c=='\'')) {
+      // Strings and characters
+      char quote=c;
+      next(sb);
+      while (!atEnd() && (peek()!=quote) && (peek()!='\n')) {
+        if (next(sb)=='\\') {
+          if (!atEnd() && (peek()!='\n')) {
+            next(sb);
+          }
+        }
+      }
+      if (peek()==quote) {
+        next(sb);
+      }
+      else {
+        errorList.add(new Diagnostic(Diagnostic.KIND.ERROR,null,lineNumber,"missing terminating "+quote+" character"));
+      }
+      kind=(quote=='"')?KIND.STRING:KIND.CHARACTER;
+    }
+    else if (isPunctuator(c)) {
+      // Punctuators
+      int l=PPToken.punctuatorLength(new Lookahead(),0);
+      for(int i=0;i<l;i++) {
+        next(sb);
+      }
+      kind=KIND.PUNCTUATOR;
+    }
+    else {
+      next(sb);
+      kind=KIND.OTHER;
+    }
+    return new PPToken(kind,sb.toString(),white,line,column);
+  }
+
+  // View of the next characters for punctuator matching
+  private class Lookahead implements CharSequence {
+    public int length() {
+      return 3;
+    }
+    public char charAt(int i) {
+      return peek(i);
+    }
+    public CharSequence subSequence(int start, int end) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static boolean isSpace(char c) {
+    return (c==' ') || (c=='\t') || (c=='\f') || (c=='\r') || (c==0x0b);
+  }
+  private static boolean isDigit(char c) {
+    return (c>='0') && (c<='9');
+  }
+  private static boolean isPunctuator(char c) {
+    return "!#%&()*+,-./:;<=>?[]^{|}~".indexOf(c)>=0;
+  }
+
+  // Lexes a string as a single logical line
+  static List<PPToken> lexLine(String s) {
+    PPSourceFile sf=new PPSourceFile(s.replace('\n',' '),0,0);
+    if (sf.lineList.isEmpty()) {
+      return new ArrayList<PPToken>();
+    }
+    return sf.lineList.get(0).tokenList;
+  }
+
+}
@@ -0,0 +1,214 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Preprocessing token. Tokens of parsed source files are shared by
+   all compilations, they are never modified: macro expansion creates
+   new tokens when it needs to change their properties.
+
+   Besides source tokens, the token stream contains padding tokens,
+   which mark the boundaries of macro expansions and tell where spaces
+   must be written, and line start tokens, which mark the beginning of
+   a source line read while looking for macro arguments */
+
+package preprocessor;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+public final class PPToken {
+  public enum KIND {IDENTIFIER, NUMBER, STRING, CHARACTER, PUNCTUATOR, OTHER, PADDING, LINE_START};
+
+  // Multi-character punctuators, longest first
+  private static final String[] punctuators = {
+    "...", "<<=", ">>=",
+    "->", "++", "--", "<<", ">>", "<=", ">=", "==", "!=", "&&", "||",
+    "*=", "/=", "%=", "+=", "-=", "&=", "^=", "|=", "##"
+  };
+
+  private final KIND kind;
+  private final String text;
+  // True if the token is preceded by spaces or comments
+  private final boolean prevWhite;
+  // Location of the token, or of the macro invocation it comes from
+  private final int line;
+  private final int column;
+  // Names of the macros which must not be expanded from this token
+  private final Set<String> hideSet;
+  // For padding tokens, token whose preceding spaces are written
+  private final PPToken source;
+
+
+  //==================================================================
+  // Building
+  //==================================================================
+
+  public PPToken(KIND k, String t, boolean w, int l, int c) {
+    this(k,t,w,l,c,null,null);
+  }
+
+  public PPToken(KIND k, String t) {
+    this(k,t,false,0,0,null,null);
+  }
+
+  private PPToken(KIND k, String t, boolean w, int l, int c, Set<String> hs, PPToken s) {
+    kind=k;
+    text=t;
+    prevWhite=w;
+    line=l;
+    column=c;
+    hideSet=hs;
+    source=s;
+  }
+
+  // Padding token taking the preceding spaces of 's' (none if null)
+  static PPToken padding(PPToken s) {
+    return new PPToken(KIND.PADDING,"",false,0,0,null,s);
+  }
+
+  // Returns the token with 'w' as preceding spaces
+  PPToken withWhite(boolean w) {
+    if (w==prevWhite) {
+      return this;
+    }
+    return new PPToken(kind,text,w,line,column,hideSet,source);
+  }
+
+  // Returns the token produced by the expansion of macro 'name' invoked
+  // by token 'invocation': it is located at the invocation, and macros
+  // of the hide set of the invocation and 'name' are added to its hide
+  // set
+  PPToken expandedFrom(PPToken invocation, String name) {
+    Set<String> s=new HashSet<String>();
+    if (hideSet!=null) {
+      s.addAll(hideSet);
+    }
+    if (invocation.hideSet!=null) {
+      s.addAll(invocation.hideSet);
+    }
+    s.add(name);
+    return new PPToken(kind,text,prevWhite,invocation.line,invocation.column,s,source);
+  }
+
+
+  //==================================================================
+  // Getters
+  //==================================================================
+
+  public KIND getKind() {
+    return kind;
+  }
+  public String getText() {
+    return text;
+  }
+  public boolean hasPrevWhite() {
+    return prevWhite;
+  }
+  public int getLine() {
+    return line;
+  }
+  public int getColumn() {
+    return column;
+  }
+  PPToken getSource() {
+    return source;
+  }
+  boolean isHidden(String name) {
+    return (hideSet!=null) && hideSet.contains(name);
+  }
+
+  // True for tokens which are not written (padding and line start)
+  public boolean isMarker() {
+    return (kind==KIND.PADDING) || (kind==KIND.LINE_START);
+  }
+  public boolean isIdentifier() {
+    return kind==KIND.IDENTIFIER;
+  }
+  public boolean is(String s) {
+    return (kind==KIND.PUNCTUATOR) && text.equals(s);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+
+  //==================================================================
+  // Lexing
+  //==================================================================
+
+  static boolean isIdentifierStart(char c) {
+    return ((c>='a')&&(c<='z')) || ((c>='A')&&(c<='Z')) || (c=='_') || (c=='$');
+  }
+  static boolean isIdentifierPart(char c) {
+    return isIdentifierStart(c) || ((c>='0')&&(c<='9'));
+  }
+
+  // Length of the punctuator starting at position 'i' of 's'
+  static int punctuatorLength(CharSequence s, int i) {
+    int n=s.length();
+    for(String p:punctuators) {
+      int l=p.length();
+      if (i+l<=n) {
+        int j=0;
+        while ((j<l) && (s.charAt(i+j)==p.charAt(j))) {
+          j++;
+        }
+        if (j==l) {
+          return l;
+        }
+      }
+    }
+    return 1;
+  }
+
+  // Returns true if tokens 'a' and 'b' written next to each other
+  // would not be lexed again as 'a' then 'b'
+  static boolean needsSeparator(PPToken a, PPToken b) {
+    if ((a.kind==KIND.IDENTIFIER)||(a.kind==KIND.NUMBER)) {
+      if ((b.kind==KIND.IDENTIFIER)||(b.kind==KIND.NUMBER)) {
+        return true;
+      }
+      if ((b.kind==KIND.STRING)||(b.kind==KIND.CHARACTER)) {
+        // Prefixed literals
+        return a.kind==KIND.IDENTIFIER;
+      }
+      if ((a.kind==KIND.NUMBER) && (b.kind==KIND.PUNCTUATOR)) {
+        // pp-numbers absorb signs after exponents and dots
+        char c=b.text.charAt(0);
+        return (c=='.') || (c=='+') || (c=='-');
+      }
+      return false;
+    }
+    if ((a.kind==KIND.PUNCTUATOR) && (b.kind==KIND.PUNCTUATOR)) {
+      return (punctuatorLength(a.text+b.text,0)>a.text.length())
+          || (a.is("/") && (b.is("/")||b.is("*")));
+    }
+    if (a.is(".") && (b.kind==KIND.NUMBER)) {
+      return true;
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,1379 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Embedded C preprocessor.
+
+   It supports #include (with computed includes), object-like and
+   function-like macros (with #, ## and variable arguments), #undef,
+   conditionals (#if, #ifdef, #ifndef, #elif, #else, #endif), #line,
+   #error and #warning. #pragma directives are kept in the output.
+   Conditional expressions are evaluated on 64 bit signed and unsigned
+   values with the usual arithmetic conversions, and the macros
+   predefined by gcc that sources may test (__STDC__, __GNUC__, type
+   sizes and limits, byte order, host system) are defined.
+
+   The output is laid out as the one of 'gcc -E': tokens stay on their
+   source line, indented to their source column, with a single space
+   where the source has spaces or comments. Line markers are written
+   around included files and to skip more than 8 empty lines. Since the
+   code generator copies the text of C functions, this gives the same
+   generated code as with the external preprocessor.
+
+   A preprocessor instance processes a single translation unit, parsed
+   files being shared through the cache of PPSourceFile */
+
+package preprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import common.CompilerError;
+import common.Diagnostic;
+import preprocessor.PPToken.KIND;
+
+
+public class Preprocessor {
+  // Maximum include depth
+  private static final int maxIncludeDepth = 200;
+
+  // Include search path (-I)
+  private final LinkedList<File> includeDirList = new LinkedList<File>();
+  // Macro definitions
+  private final HashMap<String,Macro> macroMap = new HashMap<String,Macro>();
+  // Include files given in memory, by include name
+  private final HashMap<String,PPSourceFile> headerMap = new HashMap<String,PPSourceFile>();
+
+  // Current location
+  private String currentFileName = null;
+  private int currentLine = 0;
+  // Difference between the presumed line number (#line) and the
+  // physical line number in the current file
+  private int lineDelta = 0;
+  private int includeDepth = 0;
+  private int nbErrors = 0;
+
+  // Output
+  private StringBuffer output = null;
+  // Source line of the current output line
+  private String printedFileName = null;
+  private int printedLine = 0;
+  // True if something was written on the current output line
+  private boolean printed = false;
+  // Spacing state between written tokens
+  private PPToken printSource = null;
+  private boolean avoidPaste = false;
+  private PPToken previous = null;
+
+
+  //==================================================================
+  // Predefined macros
+  //==================================================================
+
+  // Macros defined by 'gcc -E -xc' which do not depend on the host
+  private static final String[] predefinedMacros = {
+    "__STDC__ 1",
+    "__STDC_VERSION__ 199901L",
+    "__STDC_HOSTED__ 1",
+    "__GNUC__ 4",
+    "__GNUC_MINOR__ 2",
+    "__GNUC_PATCHLEVEL__ 1",
+    "__CHAR_BIT__ 8",
+    "__SCHAR_MAX__ 0x7f",
+    "__SHRT_MAX__ 0x7fff",
+    "__INT_MAX__ 0x7fffffff",
+    "__LONG_LONG_MAX__ 0x7fffffffffffffffLL",
+    "__SIZEOF_SHORT__ 2",
+    "__SIZEOF_INT__ 4",
+    "__SIZEOF_LONG_LONG__ 8",
+    "__SIZEOF_FLOAT__ 4",
+    "__SIZEOF_DOUBLE__ 8",
+    "__ORDER_LITTLE_ENDIAN__ 1234",
+    "__ORDER_BIG_ENDIAN__ 4321",
+    "__ORDER_PDP_ENDIAN__ 3412"
+  };
+
+  public Preprocessor() {
+    currentFileName="<built-in>";
+    currentLine=0;
+    for(String definition:predefinedMacros) {
+      parseDefine(PPSourceFile.lexLine(definition),0);
+    }
+    for(String definition:getHostMacros()) {
+      parseDefine(PPSourceFile.lexLine(definition),0);
+    }
+  }
+
+  // Macros defined by 'gcc -E -xc' on the host
+  private static List<String> getHostMacros() {
+    List<String> l=new ArrayList<String>();
+    String os=System.getProperty("os.name","").toLowerCase();
+    String arch=System.getProperty("os.arch","");
+    boolean windows=os.startsWith("windows");
+    boolean is64="64".equals(System.getProperty("sun.arch.data.model"))
+      || arch.endsWith("64");
+    boolean lp64=is64 && !windows;
+
+    l.add("__BYTE_ORDER__ "+(ByteOrder.nativeOrder()==ByteOrder.BIG_ENDIAN?
+        "__ORDER_BIG_ENDIAN__":"__ORDER_LITTLE_ENDIAN__"));
+    l.add("__SIZEOF_LONG__ "+(lp64?"8":"4"));
+    l.add("__LONG_MAX__ "+(lp64?"0x7fffffffffffffffL":"0x7fffffffL"));
+    l.add("__SIZEOF_POINTER__ "+(is64?"8":"4"));
+    if (lp64) {
+      l.add("__LP64__ 1");
+      l.add("_LP64 1");
+    }
+    if (arch.equals("amd64") || arch.equals("x86_64")) {
+      l.add("__x86_64__ 1");
+      l.add("__x86_64 1");
+    }
+    else if (arch.equals("x86") || arch.matches("i[3-6]86")) {
+      l.add("__i386__ 1");
+    }
+    if (windows) {
+      l.add("_WIN32 1");
+      if (is64) {
+        l.add("_WIN64 1");
+      }
+    }
+    else {
+      l.add("__unix__ 1");
+      if (os.startsWith("linux")) {
+        l.add("__linux__ 1");
+      }
+      else if (os.startsWith("mac")) {
+        l.add("__APPLE__ 1");
+      }
+    }
+    return l;
+  }
+
+
+  //==================================================================
+  // Options
+  //==================================================================
+
+  // Takes into account a command line option of the preprocessor.
+  // Returns false if the option is not supported
+  public boolean addOption(String option) {
+    if (option.startsWith("-I") && (option.length()>2)) {
+      includeDirList.add(new File(option.substring(2)));
+      return true;
+    }
+    else if (option.startsWith("-D") && (option.length()>2)) {
+      String s=option.substring(2);
+      int i=s.indexOf('=');
+      if (i<0) {
+        defineMacro(s+" 1");
+      }
+      else {
+        defineMacro(s.substring(0,i)+" "+s.substring(i+1));
+      }
+      return true;
+    }
+    else if (option.startsWith("-U") && (option.length()>2)) {
+      macroMap.remove(option.substring(2));
+      return true;
+    }
+    else if (option.equals("-g")) {
+      // Debug information does not change the preprocessing
+      return true;
+    }
+    return false;
+  }
+
+  // Defines a macro from the text of a #define directive
+  public void defineMacro(String definition) {
+    currentFileName="<command-line>";
+    currentLine=0;
+    parseDefine(PPSourceFile.lexLine(definition),0);
+  }
+
+
+  // Adds an include file given in memory. It is found by its include
+  // name 'name' before the files of the include path
+  public void addHeader(String name, String text) {
+    headerMap.put(name,new PPSourceFile(text,0,0));
+  }
+
+
+  //==================================================================
+  // Preprocessing
+  //==================================================================
+
+  // Preprocesses file 'file'. Returns the preprocessed text, or null if
+  // errors were raised
+  public String preprocess(File file) {
+    String text;
+    try {
+      text=PPSourceFile.readFile(file);
+    }
+    catch (IOException e) {
+      CompilerError.GLOBAL.raiseError("can not read input file '"+file.getPath()+"': "+e.getMessage());
+      return null;
+    }
+    return preprocess(text,file.getPath());
+  }
+
+  // Preprocesses source 'text' of file 'name', which does not need to
+  // exist. Returns the preprocessed text, or null if errors were raised
+  public String preprocess(String text, String name) {
+    // The main file is not put in the cache, it is generally
+    // preprocessed once
+    PPSourceFile sf=new PPSourceFile(text,0,0);
+
+    output=new StringBuffer();
+    nbErrors=0;
+    printLineMarker(1,name,null);
+    processFile(sf,name);
+    if (printed) {
+      output.append('\n');
+    }
+    String s=output.toString();
+    output=null;
+    return (nbErrors==0)?s:null;
+  }
+
+  private void error(String message) {
+    CompilerError.GLOBAL.raiseError(currentFileName,currentLine,message);
+    nbErrors++;
+  }
+  private void warning(String message) {
+    CompilerError.GLOBAL.raiseWarning(currentFileName,currentLine,message);
+  }
+
+
+  //==================================================================
+  // Output
+  //==================================================================
+
+  // Writes a line marker: the next output line is line 'line' of file
+  // 'name'
+  private void printLineMarker(int line, String name, String flag) {
+    if (printed) {
+      output.append('\n');
+    }
+    printed=false;
+    output.append("# ").append(line).append(" \"");
+    for(int i=0;i<name.length();i++) {
+      char c=name.charAt(i);
+      if ((c=='"')||(c=='\\')) {
+        output.append('\\');
+      }
+      output.append(c);
+    }
+    output.append('"');
+    if (flag!=null) {
+      output.append(' ').append(flag);
+    }
+    output.append('\n');
+    printedFileName=name;
+    printedLine=line;
+  }
+
+  // Moves the output to the beginning of source line 'line' of the
+  // current file, with new lines for small distances and a line marker
+  // otherwise
+  private void moveToLine(int line) {
+    if (printed) {
+      output.append('\n');
+      printedLine++;
+      printed=false;
+    }
+    if ((line>=printedLine) && (line<printedLine+8) && currentFileName.equals(printedFileName)) {
+      while (line>printedLine) {
+        output.append('\n');
+        printedLine++;
+      }
+    }
+    else {
+      printLineMarker(line,currentFileName,null);
+    }
+  }
+
+  // Starts an output line for a token at physical location 'line',
+  // 'column'. The token is put back at its column, knowing that a space
+  // is written before it when it is preceded by spaces
+  private void changeLine(int line, int column) {
+    moveToLine(line+lineDelta);
+    for(int i=0;i<column-2;i++) {
+      output.append(' ');
+    }
+    printed=true;
+    printSource=null;
+    previous=null;
+  }
+
+  // Writes expanded tokens
+  private void print(List<PPToken> tokenList) {
+    for(PPToken t:tokenList) {
+      if (t.getKind()==KIND.PADDING) {
+        avoidPaste=true;
+        if ((printSource==null) || (!printSource.hasPrevWhite() && (t.getSource()==null))) {
+          printSource=t.getSource();
+        }
+        continue;
+      }
+      if (t.getKind()==KIND.LINE_START) {
+        changeLine(t.getLine(),t.getColumn());
+        continue;
+      }
+
+      if ((avoidPaste || t.hasPrevWhite()) && (t.getLine()+lineDelta!=printedLine)) {
+        // Token following a macro invocation spanning several lines
+        changeLine(t.getLine(),t.getColumn());
+        output.append(' ');
+      }
+      else if (avoidPaste) {
+        PPToken s=(printSource==null)?t:printSource;
+        if (s.hasPrevWhite() || ((previous!=null) && PPToken.needsSeparator(previous,t))
+            || ((previous==null) && t.is("#"))) {
+          output.append(' ');
+        }
+      }
+      else if (t.hasPrevWhite()) {
+        output.append(' ');
+      }
+      avoidPaste=false;
+      printSource=null;
+      previous=t;
+      output.append(t.getText());
+    }
+  }
+
+
+  //==================================================================
+  // Source files
+  //==================================================================
+
+  // State of a conditional group
+  private static class Conditional {
+    // True if the enclosing group is processed
+    final boolean parentActive;
+    // True if the current branch is processed
+    boolean active;
+    // True if a branch was already processed
+    boolean taken;
+    boolean elseSeen=false;
+    Conditional(boolean p, boolean a) {
+      parentActive=p;
+      active=a;
+      taken=a;
+    }
+  }
+
+  // Lines of the current file, read by macro invocations spanning
+  // several lines
+  private static class LineReader {
+    final List<PPSourceFile.Line> lineList;
+    int index;
+    LineReader(List<PPSourceFile.Line> l, int i) {
+      lineList=l;
+      index=i;
+    }
+    // Appends the tokens of the next text line to 'queue'. Returns false
+    // if there is no such line
+    boolean readMore(LinkedList<PPToken> queue) {
+      if ((index+1>=lineList.size()) || (lineList.get(index+1).directive!=null)) {
+        return false;
+      }
+      index++;
+      List<PPToken> tokenList=lineList.get(index).tokenList;
+      if (!tokenList.isEmpty()) {
+        PPToken first=tokenList.get(0);
+        queue.add(new PPToken(KIND.LINE_START,"",false,first.getLine(),first.getColumn()));
+        queue.addAll(tokenList);
+      }
+      return true;
+    }
+  }
+
+  private void processFile(PPSourceFile sf, String name) {
+    String previousFileName=currentFileName;
+    int previousLineDelta=lineDelta;
+    currentFileName=name;
+    lineDelta=0;
+    for(Diagnostic d:sf.getErrorList()) {
+      CompilerError.GLOBAL.raiseError(name,d.getLine(),d.getMessage());
+      nbErrors++;
+    }
+
+    LinkedList<Conditional> conditionalStack=new LinkedList<Conditional>();
+    List<PPSourceFile.Line> lineList=sf.getLineList();
+    for(int i=0;i<lineList.size();i++) {
+      PPSourceFile.Line l=lineList.get(i);
+      currentLine=l.lineNumber+lineDelta;
+      boolean active=conditionalStack.isEmpty() || conditionalStack.getLast().active;
+
+      if (l.directive!=null) {
+        if (processConditional(l,conditionalStack,active) || !active) {
+          continue;
+        }
+        if (l.directive.equals("include")) {
+          if (processInclude(l)) {
+            printLineMarker(l.lineNumber+l.nbLines+lineDelta,currentFileName,"2");
+          }
+        }
+        else {
+          processDirective(l);
+        }
+      }
+      else if (active && !l.tokenList.isEmpty()) {
+        // Text line
+        PPToken first=l.tokenList.get(0);
+        changeLine(first.getLine(),first.getColumn());
+        LineReader reader=new LineReader(lineList,i);
+        print(expand(new LinkedList<PPToken>(l.tokenList),reader));
+        i=reader.index;
+      }
+    }
+
+    if (!conditionalStack.isEmpty()) {
+      error("unterminated conditional directive");
+    }
+    currentFileName=previousFileName;
+    lineDelta=previousLineDelta;
+  }
+
+
+  //==================================================================
+  // Directives
+  //==================================================================
+
+  // Processes conditional directives. Returns false if the line is not
+  // a conditional directive
+  private boolean processConditional(PPSourceFile.Line l,
+      LinkedList<Conditional> conditionalStack, boolean active) {
+    String d=l.directive;
+    if (d.equals("if")) {
+      conditionalStack.add(new Conditional(active,active && evaluateCondition(l)));
+    }
+    else if (d.equals("ifdef") || d.equals("ifndef")) {
+      boolean value=false;
+      if (active) {
+        PPToken t=getMacroName(l);
+        value=(t!=null) && (macroMap.containsKey(t.getText())==d.equals("ifdef"));
+      }
+      conditionalStack.add(new Conditional(active,value));
+    }
+    else if (d.equals("elif")) {
+      if (conditionalStack.isEmpty()) {
+        error("#elif without #if");
+        return true;
+      }
+      Conditional c=conditionalStack.getLast();
+      if (c.elseSeen) {
+        error("#elif after #else");
+      }
+      c.active=c.parentActive && !c.taken && evaluateCondition(l);
+      c.taken|=c.active;
+    }
+    else if (d.equals("else")) {
+      if (conditionalStack.isEmpty()) {
+        error("#else without #if");
+        return true;
+      }
+      Conditional c=conditionalStack.getLast();
+      if (c.elseSeen) {
+        error("#else after #else");
+      }
+      c.elseSeen=true;
+      c.active=c.parentActive && !c.taken;
+      c.taken=true;
+    }
+    else if (d.equals("endif")) {
+      if (conditionalStack.isEmpty()) {
+        error("#endif without #if");
+        return true;
+      }
+      conditionalStack.removeLast();
+    }
+    else {
+      return false;
+    }
+    return true;
+  }
+
+  // Processes the other directives of processed groups
+  private void processDirective(PPSourceFile.Line l) {
+    String d=l.directive;
+    if (d.equals("define")) {
+      parseDefine(l.tokenList,l.directiveEnd);
+    }
+    else if (d.equals("undef")) {
+      PPToken t=getMacroName(l);
+      if (t!=null) {
+        macroMap.remove(t.getText());
+      }
+    }
+    else if (d.equals("line")) {
+      processLine(l,expand(new LinkedList<PPToken>(l.tokenList.subList(l.directiveEnd,l.tokenList.size())),null),null);
+    }
+    else if ((d.length()>0) && Character.isDigit(d.charAt(0))) {
+      // GNU line marker
+      processLine(l,l.tokenList.subList(1,l.tokenList.size()),"");
+    }
+    else if (d.equals("pragma")) {
+      // Kept for the compiler
+      moveToLine(currentLine);
+      output.append("#pragma ").append(getText(l.tokenList,l.directiveEnd)).append('\n');
+      printedLine++;
+    }
+    else if (d.equals("error")) {
+      error("#error "+getText(l.tokenList,l.directiveEnd));
+    }
+    else if (d.equals("warning")) {
+      warning("#warning "+getText(l.tokenList,l.directiveEnd));
+    }
+    else if (d.length()!=0) {
+      error("invalid preprocessing directive #"+d);
+    }
+  }
+
+  private static String getText(List<PPToken> tokenList, int start) {
+    StringBuffer sb=new StringBuffer();
+    for(int i=start;i<tokenList.size();i++) {
+      PPToken t=tokenList.get(i);
+      if (t.hasPrevWhite() && (i>start)) {
+        sb.append(' ');
+      }
+      sb.append(t.getText());
+    }
+    return sb.toString();
+  }
+
+  private static List<PPToken> removeMarkers(List<PPToken> tokenList) {
+    List<PPToken> l=new ArrayList<PPToken>();
+    for(PPToken t:tokenList) {
+      if (!t.isMarker()) {
+        l.add(t);
+      }
+    }
+    return l;
+  }
+
+  // Returns the macro name of a #ifdef, #ifndef or #undef directive
+  private PPToken getMacroName(PPSourceFile.Line l) {
+    if ((l.directiveEnd==l.tokenList.size()) || !l.tokenList.get(l.directiveEnd).isIdentifier()) {
+      error("macro names must be identifiers");
+      return null;
+    }
+    return l.tokenList.get(l.directiveEnd);
+  }
+
+  // #line and line markers: the line after the directive has number
+  // 'n' and the file gets the name of the optional string
+  private void processLine(PPSourceFile.Line l, List<PPToken> tokenList, String flag) {
+    tokenList=removeMarkers(tokenList);
+    int n=-1;
+    if (!tokenList.isEmpty() && (tokenList.get(0).getKind()==KIND.NUMBER)) {
+      try {
+        n=Integer.parseInt(tokenList.get(0).getText());
+      }
+      catch (NumberFormatException e) {
+        n=-1;
+      }
+    }
+    if (n<0) {
+      error("\""+getText(tokenList,0)+"\" after #line is not a positive integer");
+      return;
+    }
+    if (tokenList.size()>1) {
+      PPToken t=tokenList.get(1);
+      if ((t.getKind()!=KIND.STRING) || (t.getText().length()<2)) {
+        error("invalid filename \""+t.getText()+"\"");
+        return;
+      }
+      currentFileName=t.getText().substring(1,t.getText().length()-1);
+      if (flag!=null) {
+        // Flags of a line marker
+        flag=getText(tokenList,2);
+      }
+    }
+    lineDelta=n-(l.lineNumber+l.nbLines);
+    printLineMarker(n,currentFileName,((flag!=null)&&(flag.length()>0))?flag:null);
+  }
+
+  // #define
+  private void parseDefine(List<PPToken> tokenList, int i) {
+    if ((i==tokenList.size()) || !tokenList.get(i).isIdentifier()) {
+      error("macro names must be identifiers");
+      return;
+    }
+    String name=tokenList.get(i).getText();
+    if (name.equals("defined")) {
+      error("\"defined\" cannot be used as a macro name");
+      return;
+    }
+    i++;
+
+    // Parameters, when the parenthesis follows the name
+    List<String> paramList=null;
+    boolean variadic=false;
+    if ((i<tokenList.size()) && tokenList.get(i).is("(") && !tokenList.get(i).hasPrevWhite()) {
+      paramList=new ArrayList<String>();
+      i++;
+      if ((i<tokenList.size()) && tokenList.get(i).is(")")) {
+        i++;
+      }
+      else {
+        while (true) {
+          if (i==tokenList.size()) {
+            error("missing ')' in macro parameter list");
+            return;
+          }
+          PPToken t=tokenList.get(i);
+          if (t.is("...")) {
+            paramList.add("__VA_ARGS__");
+            variadic=true;
+            i++;
+          }
+          else if (t.isIdentifier()) {
+            if (paramList.contains(t.getText())) {
+              error("duplicate macro parameter \""+t.getText()+"\"");
+              return;
+            }
+            paramList.add(t.getText());
+            i++;
+            if ((i<tokenList.size()) && tokenList.get(i).is("...")) {
+              variadic=true;
+              i++;
+            }
+          }
+          else {
+            error("invalid token \""+t.getText()+"\" in macro parameter list");
+            return;
+          }
+          if ((i<tokenList.size()) && tokenList.get(i).is(")") ) {
+            i++;
+            break;
+          }
+          if (variadic || (i==tokenList.size()) || !tokenList.get(i).is(",")) {
+            error("expected ',' or ')' in macro parameter list");
+            return;
+          }
+          i++;
+        }
+      }
+    }
+
+    // Replacement list, the first token has no preceding space
+    List<PPToken> body=new ArrayList<PPToken>(tokenList.subList(i,tokenList.size()));
+    if (!body.isEmpty()) {
+      body.set(0,body.get(0).withWhite(false));
+    }
+
+    Macro m=new Macro(name,paramList,variadic,body);
+    if (!body.isEmpty() && (body.get(0).is("##") || body.get(body.size()-1).is("##"))) {
+      error("'##' cannot appear at either end of a macro expansion");
+      return;
+    }
+    if (paramList!=null) {
+      for(int j=0;j<body.size();j++) {
+        if (body.get(j).is("#") && ((j+1==body.size()) || (m.getParamIndex(body.get(j+1))<0))) {
+          error("'#' is not followed by a macro parameter");
+          return;
+        }
+      }
+    }
+
+    Macro previousMacro=macroMap.put(name,m);
+    if ((previousMacro!=null) && !previousMacro.isSameDefinition(m)) {
+      warning("\""+name+"\" redefined");
+    }
+  }
+
+  // #include. Returns true if the file was included
+  private boolean processInclude(PPSourceFile.Line l) {
+    List<PPToken> tokenList=l.tokenList.subList(l.directiveEnd,l.tokenList.size());
+    if (!tokenList.isEmpty() && (tokenList.get(0).getKind()!=KIND.STRING) && !tokenList.get(0).is("<")) {
+      // Computed include
+      tokenList=removeMarkers(expand(new LinkedList<PPToken>(tokenList),null));
+    }
+
+    String includeName=null;
+    boolean quoted=false;
+    if (!tokenList.isEmpty()) {
+      PPToken t=tokenList.get(0);
+      if ((t.getKind()==KIND.STRING) && (t.getText().length()>=2)) {
+        includeName=t.getText().substring(1,t.getText().length()-1);
+        quoted=true;
+      }
+      else if (t.is("<")) {
+        int i=1;
+        while ((i<tokenList.size()) && !tokenList.get(i).is(">")) {
+          i++;
+        }
+        if (i<tokenList.size()) {
+          includeName=getText(tokenList.subList(0,i),1);
+        }
+      }
+    }
+    if ((includeName==null) || (includeName.length()==0)) {
+      error("#include expects \"FILENAME\" or <FILENAME>");
+      return false;
+    }
+    if (includeDepth>=maxIncludeDepth) {
+      error("#include nested too deeply");
+      return false;
+    }
+
+    // Include files given in memory first
+    PPSourceFile sf=headerMap.get(includeName);
+    String path=includeName;
+    if (sf==null) {
+      File file=findInclude(includeName,quoted);
+      if (file==null) {
+        error(includeName+": No such file or directory");
+        return false;
+      }
+      try {
+        sf=PPSourceFile.get(file);
+      }
+      catch (IOException e) {
+        error(includeName+": "+e.getMessage());
+        return false;
+      }
+      path=file.getPath();
+    }
+
+    printLineMarker(1,path,"1");
+    includeDepth++;
+    processFile(sf,path);
+    includeDepth--;
+    return true;
+  }
+
+  // Include files are searched in the directory of the current file
+  // when quoted, then in the include path
+  private File findInclude(String name, boolean quoted) {
+    File f=new File(name);
+    if (f.isAbsolute()) {
+      return f.isFile()?f:null;
+    }
+    if (quoted) {
+      String dir=new File(currentFileName).getParent();
+      f=(dir==null)?new File(name):new File(dir,name);
+      if (f.isFile()) {
+        return f;
+      }
+    }
+    for(File dir:includeDirList) {
+      f=new File(dir,name);
+      if (f.isFile()) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+
+  //==================================================================
+  // Macro expansion
+  //==================================================================
+
+  // Expands macros in the token list 'queue'. When 'reader' is not
+  // null, the following lines are read to complete macro invocations.
+  // Expansions are surrounded by padding tokens
+  private List<PPToken> expand(LinkedList<PPToken> queue, LineReader reader) {
+    List<PPToken> result=new ArrayList<PPToken>();
+    while (!queue.isEmpty()) {
+      PPToken t=queue.removeFirst();
+      if (!t.isIdentifier() || t.isHidden(t.getText())) {
+        result.add(t);
+        continue;
+      }
+      String name=t.getText();
+      List<PPToken> expansion=null;
+      if (name.equals("__LINE__")) {
+        expansion=new ArrayList<PPToken>();
+        expansion.add(new PPToken(KIND.NUMBER,Integer.toString(t.getLine()+lineDelta)));
+      }
+      else if (name.equals("__FILE__")) {
+        expansion=new ArrayList<PPToken>();
+        expansion.add(new PPToken(KIND.STRING,stringize(currentFileName)));
+      }
+      Macro m=macroMap.get(name);
+      if ((expansion==null) && (m==null)) {
+        result.add(t);
+        continue;
+      }
+
+      if ((expansion==null) && m.isFunctionLike()) {
+        // Function-like macro, only expanded when followed by a
+        // parenthesis
+        int i=0;
+        while (true) {
+          if ((i==queue.size()) && ((reader==null) || !reader.readMore(queue))) {
+            break;
+          }
+          if (!queue.get(i).isMarker()) {
+            break;
+          }
+          i++;
+        }
+        if ((i==queue.size()) || !queue.get(i).is("(")) {
+          result.add(t);
+          continue;
+        }
+        for(int j=0;j<=i;j++) {
+          queue.removeFirst();
+        }
+        List<List<PPToken>> argList=collectArguments(m,queue,reader);
+        if (argList==null) {
+          result.add(t);
+          continue;
+        }
+        expansion=substitute(m,argList);
+      }
+      else if (expansion==null) {
+        expansion=substitute(m,null);
+      }
+
+      // Tokens of the expansion are located at the invocation
+      for(int i=0;i<expansion.size();i++) {
+        PPToken e=expansion.get(i);
+        if (!e.isMarker()) {
+          expansion.set(i,e.expandedFrom(t,name));
+        }
+      }
+      result.add(PPToken.padding(t));
+      queue.addFirst(PPToken.padding(null));
+      queue.addAll(0,expansion);
+    }
+    return result;
+  }
+
+  // Collects the arguments of an invocation of macro 'm', after the
+  // opening parenthesis. Returns null on errors
+  private List<List<PPToken>> collectArguments(Macro m, LinkedList<PPToken> queue, LineReader reader) {
+    List<List<PPToken>> argList=new ArrayList<List<PPToken>>();
+    List<PPToken> arg=new ArrayList<PPToken>();
+    int depth=0;
+    boolean complete=false;
+    boolean newLine=false;
+    while (true) {
+      if (queue.isEmpty() && ((reader==null) || !reader.readMore(queue))) {
+        break;
+      }
+      PPToken a=queue.removeFirst();
+      if (a.getKind()==KIND.LINE_START) {
+        // Tokens starting a line are preceded by spaces in arguments
+        newLine=true;
+        continue;
+      }
+      if (newLine) {
+        a=a.withWhite(true);
+        newLine=false;
+      }
+      if (a.is(")") && (depth==0)) {
+        complete=true;
+        break;
+      }
+      if (a.is("(")) {
+        depth++;
+      }
+      else if (a.is(")")) {
+        depth--;
+      }
+      else if (a.is(",") && (depth==0)
+          && !(m.isVariadic() && (argList.size()==m.getNbParams()-1))) {
+        argList.add(trimPadding(arg));
+        arg=new ArrayList<PPToken>();
+        continue;
+      }
+      arg.add(a);
+    }
+    argList.add(trimPadding(arg));
+    if (!complete) {
+      error("unterminated argument list invoking macro \""+m.getName()+"\"");
+      return null;
+    }
+
+    if ((m.getNbParams()==0) && (argList.size()==1) && argList.get(0).isEmpty()) {
+      argList.clear();
+    }
+    if (m.isVariadic() && (argList.size()==m.getNbParams()-1)) {
+      argList.add(new ArrayList<PPToken>());
+    }
+    if (argList.size()!=m.getNbParams()) {
+      error("macro \""+m.getName()+"\" requires "+m.getNbParams()+" arguments, but "
+          +argList.size()+" given");
+      return null;
+    }
+    return argList;
+  }
+
+  private static List<PPToken> trimPadding(List<PPToken> l) {
+    int start=0;
+    int end=l.size();
+    while ((start<end) && l.get(start).isMarker()) {
+      start++;
+    }
+    while ((end>start) && l.get(end-1).isMarker()) {
+      end--;
+    }
+    return l.subList(start,end);
+  }
+
+  // Replaces parameters of macro 'm' by arguments in its replacement
+  // list. Arguments are surrounded by padding tokens, except next to
+  // '##'
+  private List<PPToken> substitute(Macro m, List<List<PPToken>> argList) {
+    List<PPToken> body=m.getBody();
+    List<PPToken> result=new ArrayList<PPToken>();
+    for(int i=0;i<body.size();i++) {
+      PPToken b=body.get(i);
+      boolean pasteLeft=(i+1<body.size()) && body.get(i+1).is("##");
+      boolean pasteRight=(i>0) && body.get(i-1).is("##");
+
+      if (b.is("##")) {
+        // Pasting with the next token
+        i++;
+        PPToken r=body.get(i);
+        pasteLeft=(i+1<body.size()) && body.get(i+1).is("##");
+        int rp=m.getParamIndex(r);
+        List<PPToken> right;
+        if (rp>=0) {
+          right=removeMarkers(argList.get(rp));
+          if (right.isEmpty() && m.isVariadic() && (rp==m.getNbParams()-1)
+              && !result.isEmpty() && result.get(result.size()-1).is(",")) {
+            // GNU extension: ', ## __VA_ARGS__' removes the comma
+            result.remove(result.size()-1);
+          }
+        }
+        else {
+          right=new ArrayList<PPToken>();
+          right.add(r);
+        }
+        int last=result.size()-1;
+        while ((last>=0) && result.get(last).isMarker()) {
+          last--;
+        }
+        if (right.isEmpty()) {
+          continue;
+        }
+        if ((rp>=0) && m.isVariadic() && (rp==m.getNbParams()-1)
+            && (last>=0) && result.get(last).is(",")) {
+          // GNU extension: the comma is kept before variable arguments
+          result.addAll(right);
+          if (!pasteLeft) {
+            result.add(PPToken.padding(null));
+          }
+          continue;
+        }
+        if (last<0) {
+          result.addAll(right);
+        }
+        else {
+          PPToken left=result.get(last);
+          result.subList(last,result.size()).clear();
+          result.add(paste(left,right.get(0)));
+          if ((right.size()==1) && !pasteLeft) {
+            result.add(PPToken.padding(null));
+          }
+          result.addAll(right.subList(1,right.size()));
+        }
+        if ((rp>=0) && (right.size()>1) && !pasteLeft) {
+          result.add(PPToken.padding(null));
+        }
+        continue;
+      }
+
+      List<PPToken> inserted;
+      if ((argList!=null) && b.is("#")) {
+        // Stringizing
+        i++;
+        inserted=new ArrayList<PPToken>();
+        inserted.add(new PPToken(KIND.STRING,stringize(argList.get(m.getParamIndex(body.get(i))))));
+        pasteLeft=(i+1<body.size()) && body.get(i+1).is("##");
+      }
+      else {
+        int p=m.getParamIndex(b);
+        if (p<0) {
+          result.add(b);
+          continue;
+        }
+        if (pasteLeft || pasteRight) {
+          // Operand of '##', not expanded
+          inserted=argList.get(p);
+        }
+        else {
+          inserted=expand(new LinkedList<PPToken>(argList.get(p)),null);
+        }
+      }
+      if ((i>0) && !pasteRight) {
+        result.add(PPToken.padding(b));
+      }
+      result.addAll(inserted);
+      if (!pasteLeft) {
+        result.add(PPToken.padding(null));
+      }
+    }
+    return result;
+  }
+
+  // Concatenates two tokens
+  private PPToken paste(PPToken left, PPToken right) {
+    String s=left.getText()+right.getText();
+    List<PPToken> l=PPSourceFile.lexLine(s);
+    if ((l.size()!=1) || !l.get(0).getText().equals(s)) {
+      error("pasting \""+left.getText()+"\" and \""+right.getText()
+          +"\" does not give a valid preprocessing token");
+      return left;
+    }
+    return new PPToken(l.get(0).getKind(),s,left.hasPrevWhite(),left.getLine(),left.getColumn());
+  }
+
+  // String literal of the spelling of a token list
+  private static String stringize(List<PPToken> tokenList) {
+    StringBuffer sb=new StringBuffer();
+    PPToken source=null;
+    for(PPToken t:tokenList) {
+      if (t.isMarker()) {
+        if ((source==null) || (!source.hasPrevWhite() && (t.getSource()==null))) {
+          source=t.getSource();
+        }
+        continue;
+      }
+      if (sb.length()>0) {
+        if (source==null) {
+          source=t;
+        }
+        if (source.hasPrevWhite()) {
+          sb.append(' ');
+        }
+      }
+      source=null;
+      if ((t.getKind()==KIND.STRING) || (t.getKind()==KIND.CHARACTER)) {
+        sb.append(escape(t.getText()));
+      }
+      else {
+        sb.append(t.getText());
+      }
+    }
+    return "\""+sb.toString()+"\"";
+  }
+  private static String stringize(String s) {
+    return "\""+escape(s)+"\"";
+  }
+  private static String escape(String s) {
+    return s.replace("\\","\\\\").replace("\"","\\\"");
+  }
+
+
+  //==================================================================
+  // Conditional expressions
+  //==================================================================
+
+  // Evaluates the expression of a #if or #elif directive
+  private boolean evaluateCondition(PPSourceFile.Line l) {
+    List<PPToken> tokenList=l.tokenList;
+
+    // 'defined' operators are evaluated before macro expansion
+    LinkedList<PPToken> queue=new LinkedList<PPToken>();
+    for(int i=l.directiveEnd;i<tokenList.size();i++) {
+      PPToken t=tokenList.get(i);
+      if (t.isIdentifier() && t.getText().equals("defined")) {
+        int j=i+1;
+        boolean parenthesis=(j<tokenList.size()) && tokenList.get(j).is("(");
+        if (parenthesis) {
+          j++;
+        }
+        if ((j==tokenList.size()) || !tokenList.get(j).isIdentifier()) {
+          error("operator \"defined\" requires an identifier");
+          return false;
+        }
+        String name=tokenList.get(j).getText();
+        boolean value=macroMap.containsKey(name)
+          || name.equals("__LINE__") || name.equals("__FILE__");
+        if (parenthesis) {
+          j++;
+          if ((j==tokenList.size()) || !tokenList.get(j).is(")")) {
+            error("missing ')' after \"defined\"");
+            return false;
+          }
+        }
+        queue.add(new PPToken(KIND.NUMBER,value?"1":"0"));
+        i=j;
+      }
+      else {
+        queue.add(t);
+      }
+    }
+
+    List<PPToken> expression=removeMarkers(expand(queue,null));
+    if (expression.isEmpty()) {
+      error("#"+l.directive+" with no expression");
+      return false;
+    }
+    try {
+      return new ExpressionEvaluator(expression).evaluate().value!=0;
+    }
+    catch (IllegalArgumentException e) {
+      error(e.getMessage()+" in #"+l.directive);
+      return false;
+    }
+  }
+
+  // Value of a conditional expression: a 64 bit integer, signed
+  // (intmax_t) or unsigned (uintmax_t)
+  private static class Value {
+    final long value;
+    final boolean unsigned;
+
+    Value(long v, boolean u) {
+      value=v;
+      unsigned=u;
+    }
+    Value(boolean b) {
+      this(b?1:0,false);
+    }
+  }
+
+  // Integer constant expression evaluation. As in C, an operation on an
+  // unsigned operand converts the other one to unsigned
+  private static class ExpressionEvaluator {
+    private final List<PPToken> tokenList;
+    private int pos=0;
+    // Non zero in operands which are not evaluated in C (right operand
+    // of a short-circuited && or ||, other branch of ?:), where a
+    // division by zero is not an error
+    private int unevaluated=0;
+
+    // Binary operators by increasing precedence
+    private static final String[][] binaryOperators = {
+      {"||"}, {"&&"}, {"|"}, {"^"}, {"&"}, {"==", "!="},
+      {"<", ">", "<=", ">="}, {"<<", ">>"}, {"+", "-"}, {"*", "/", "%"}
+    };
+
+    private static final BigInteger MAX_UNSIGNED = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+    private static final BigInteger MAX_SIGNED = BigInteger.valueOf(Long.MAX_VALUE);
+
+    ExpressionEvaluator(List<PPToken> l) {
+      tokenList=l;
+    }
+
+    Value evaluate() {
+      Value v=conditional();
+      if (pos<tokenList.size()) {
+        throw new IllegalArgumentException("missing binary operator before token \""
+            +tokenList.get(pos).getText()+"\"");
+      }
+      return v;
+    }
+
+    private boolean accept(String s) {
+      if ((pos<tokenList.size()) && tokenList.get(pos).is(s)) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+    private void expect(String s) {
+      if (!accept(s)) {
+        throw new IllegalArgumentException("expected '"+s+"'");
+      }
+    }
+
+    private Value conditional() {
+      Value c=binary(0);
+      if (accept("?")) {
+        unevaluated+=(c.value!=0)?0:1;
+        Value a=conditional();
+        unevaluated-=(c.value!=0)?0:1;
+        expect(":");
+        unevaluated+=(c.value!=0)?1:0;
+        Value b=conditional();
+        unevaluated-=(c.value!=0)?1:0;
+        // The result has the common type of both operands
+        boolean unsigned=a.unsigned || b.unsigned;
+        return new Value((c.value!=0)?a.value:b.value,unsigned);
+      }
+      return c;
+    }
+
+    private Value binary(int level) {
+      if (level==binaryOperators.length) {
+        return unary();
+      }
+      Value v=binary(level+1);
+      while (true) {
+        String op=null;
+        for(String s:binaryOperators[level]) {
+          if (accept(s)) {
+            op=s;
+            break;
+          }
+        }
+        if (op==null) {
+          return v;
+        }
+        boolean shortCircuit=(op.equals("&&") && (v.value==0))
+          || (op.equals("||") && (v.value!=0));
+        unevaluated+=shortCircuit?1:0;
+        Value w=binary(level+1);
+        unevaluated-=shortCircuit?1:0;
+        v=apply(op,v,w);
+      }
+    }
+
+    // Unsigned comparison of 64 bit values
+    private static int compareUnsigned(long a, long b) {
+      a+=Long.MIN_VALUE;
+      b+=Long.MIN_VALUE;
+      return (a<b)?-1:((a==b)?0:1);
+    }
+
+    // Unsigned division of 64 bit values
+    private static long divideUnsigned(long a, long b) {
+      if (b<0) {
+        return (compareUnsigned(a,b)<0)?0:1;
+      }
+      if (a>=0) {
+        return a/b;
+      }
+      long q=((a>>>1)/b)<<1;
+      long r=a-q*b;
+      return q+((compareUnsigned(r,b)>=0)?1:0);
+    }
+
+    private Value apply(String op, Value x, Value y) {
+      long a=x.value, b=y.value;
+      if (op.equals("||")) return new Value((a!=0)||(b!=0));
+      if (op.equals("&&")) return new Value((a!=0)&&(b!=0));
+      // Shifts have the type of their left operand
+      if (op.equals("<<")) return new Value(a<<b,x.unsigned);
+      if (op.equals(">>")) return new Value(x.unsigned?(a>>>b):(a>>b),x.unsigned);
+
+      // Usual arithmetic conversions
+      boolean unsigned=x.unsigned || y.unsigned;
+      if (op.equals("==")) return new Value(a==b);
+      if (op.equals("!=")) return new Value(a!=b);
+      int c=unsigned?compareUnsigned(a,b):((a<b)?-1:((a==b)?0:1));
+      if (op.equals("<")) return new Value(c<0);
+      if (op.equals(">")) return new Value(c>0);
+      if (op.equals("<=")) return new Value(c<=0);
+      if (op.equals(">=")) return new Value(c>=0);
+      if (op.equals("|")) return new Value(a|b,unsigned);
+      if (op.equals("^")) return new Value(a^b,unsigned);
+      if (op.equals("&")) return new Value(a&b,unsigned);
+      if (op.equals("+")) return new Value(a+b,unsigned);
+      if (op.equals("-")) return new Value(a-b,unsigned);
+      if (op.equals("*")) return new Value(a*b,unsigned);
+      if (b==0) {
+        if (unevaluated>0) {
+          return new Value(0,unsigned);
+        }
+        throw new IllegalArgumentException("division by zero");
+      }
+      long q=unsigned?divideUnsigned(a,b):a/b;
+      if (op.equals("/")) return new Value(q,unsigned);
+      return new Value(a-q*b,unsigned);
+    }
+
+    private Value unary() {
+      if (accept("+")) return unary();
+      if (accept("-")) {
+        Value v=unary();
+        return new Value(-v.value,v.unsigned);
+      }
+      if (accept("!")) return new Value(unary().value==0);
+      if (accept("~")) {
+        Value v=unary();
+        return new Value(~v.value,v.unsigned);
+      }
+      if (accept("(")) {
+        Value v=conditional();
+        expect(")");
+        return v;
+      }
+      if (pos==tokenList.size()) {
+        throw new IllegalArgumentException("missing expression");
+      }
+      PPToken t=tokenList.get(pos++);
+      switch(t.getKind()) {
+      case IDENTIFIER:
+        // Identifiers remaining after macro expansion
+        return new Value(0,false);
+      case NUMBER:
+        return parseNumber(t.getText());
+      case CHARACTER:
+        return new Value(parseCharacter(t.getText()),false);
+      default:
+        throw new IllegalArgumentException("token \""+t.getText()+"\" is not valid");
+      }
+    }
+
+    // Integer constants are unsigned with a 'u' suffix, or when they
+    // do not fit in a signed value
+    private static Value parseNumber(String s) {
+      String n=s;
+      boolean unsigned=false;
+      while ((n.length()>0) && ("uUlL".indexOf(n.charAt(n.length()-1))>=0)) {
+        unsigned|=(Character.toLowerCase(n.charAt(n.length()-1))=='u');
+        n=n.substring(0,n.length()-1);
+      }
+      BigInteger v;
+      try {
+        if (n.startsWith("0x") || n.startsWith("0X")) {
+          v=new BigInteger(n.substring(2),16);
+        }
+        else if (n.startsWith("0") && (n.length()>1)) {
+          v=new BigInteger(n.substring(1),8);
+        }
+        else {
+          v=new BigInteger(n);
+        }
+      }
+      catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid integer constant \""+s+"\"");
+      }
+      if (v.compareTo(MAX_UNSIGNED)>0) {
+        throw new IllegalArgumentException("integer constant \""+s+"\" is too large");
+      }
+      unsigned|=(v.compareTo(MAX_SIGNED)>0);
+      return new Value(v.longValue(),unsigned);
+    }
+
+    private static long parseCharacter(String s) {
+      String c=s.substring(1,s.length()-1);
+      if ((c.length()==1) && (c.charAt(0)!='\\')) {
+        return c.charAt(0);
+      }
+      if ((c.length()==2) && (c.charAt(0)=='\\')) {
+        int i="ntrvfab0\\'\"?".indexOf(c.charAt(1));
+        if (i>=0) {
+          return "\n\t\r\u000b\f\u0007\b\u0000\\'\"?".charAt(i);
+        }
+      }
+      throw new IllegalArgumentException("invalid character constant "+s);
+    }
+  }
+
+}
@@ -46,6 +46,9 @@ public class ComputeElement extends GenericDevice {
   TYPE_SUPPORT longSupport=TYPE_SUPPORT.INIT;
   TYPE_SUPPORT doubleSupport=TYPE_SUPPORT.INIT;;
   TYPE_SUPPORT floatSupport=TYPE_SUPPORT.INIT;
+
+  // Fused multiply-add
+  TYPE_SUPPORT fmaSupport=TYPE_SUPPORT.INIT;
   
   //==================================================================
   // Building
@@ -144,6 +147,23 @@ public class ComputeElement extends GenericDevice {
         raiseUnknownPropertyValueError(prop,ident,ce);
       }
     }
+    else if (prop.equals("fma")) {
+      if (fmaSupport!=TYPE_SUPPORT.INIT) {
+        raiseRedefinePropertyError(prop,ce);
+      }
+      if (ident.equals("no")) {
+        fmaSupport=TYPE_SUPPORT.NO;
+      }
+      else if (ident.equals("soft")) {
+        fmaSupport=TYPE_SUPPORT.SOFT;
+      }
+      else if (ident.equals("native")) {
+        fmaSupport=TYPE_SUPPORT.NATIVE;
+      }
+      else {
+        raiseUnknownPropertyValueError(prop,ident,ce);
+      }
+    }
     else {
       raiseUnknownIdentifierPropertyError(prop,ce);
     }
@@ -206,6 +226,9 @@ public class ComputeElement extends GenericDevice {
     if (doubleSupport==TYPE_SUPPORT.INIT) {
       doubleSupport=TYPE_SUPPORT.NATIVE;
     }
+    if (fmaSupport==TYPE_SUPPORT.INIT) {
+      fmaSupport=TYPE_SUPPORT.NO;
+    }
     // Connectivity
     if (!dataConnectivityToExtDMA && !dataConnectivityToExtLDST) {
       ce.raiseError("no Connectivity to the external memory defined for compute element '"+getName()+"'");
@@ -266,6 +289,9 @@ public class ComputeElement extends GenericDevice {
   TYPE_SUPPORT getDoubleSupport() {
     return doubleSupport;
   }
+  public boolean hasNativeFma() {
+    return fmaSupport==TYPE_SUPPORT.NATIVE;
+  }
 
   
   //==================================================================
@@ -309,6 +335,7 @@ public class ComputeElement extends GenericDevice {
     sb.append(", ").append(longSupport.toString()).append(" long");
     sb.append(", ").append(floatSupport.toString()).append(" float");
     sb.append(", ").append(doubleSupport.toString()).append(" double");
+    sb.append(", ").append(fmaSupport.toString()).append(" fma");
     
     return sb.toString();
   }
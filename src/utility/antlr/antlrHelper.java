@@ -24,6 +24,7 @@
 package utility.antlr;
 
 import org.antlr.runtime.tree.CommonTree;
+import utility.thread.ThreadOutput;
 
 public class antlrHelper {
 
@@ -32,13 +33,13 @@ public class antlrHelper {
       StringBuffer sb = new StringBuffer(indent);
 
       if (t.getParent() == null){
-        System.out.println(sb.toString() + t.getText().toString()); 
+        ThreadOutput.out().println(sb.toString() + t.getText().toString()); 
       }
       for ( int i = 0; i < indent; i++ ) {
         sb = sb.append("   ");
       }
       for ( int i = 0; i < t.getChildCount(); i++ ) {
-        System.out.println(sb.toString() + t.getChild(i).toString());
+        ThreadOutput.out().println(sb.toString() + t.getChild(i).toString());
         printTree((CommonTree)t.getChild(i), indent+1);
       }
     }
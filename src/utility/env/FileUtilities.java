@@ -25,10 +25,13 @@
 
 package utility.env;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 
+import utility.thread.ThreadOutput;
+
 public abstract class FileUtilities {
 
   //------------------------------------------------------------------
@@ -44,14 +47,14 @@ public abstract class FileUtilities {
       fi=new FileInputStream(src);
     }
     catch (Exception e) {
-      System.err.println("copy: can not open input file: " + src.getPath());
+      ThreadOutput.err().println("copy: can not open input file: " + src.getPath());
       throw e;
     }
     try {
       fd=new FileOutputStream(dest);
     }
     catch (Exception e) {
-      System.err.println("copy: can not open output file: " + dest.getPath());
+      ThreadOutput.err().println("copy: can not open output file: " + dest.getPath());
       throw e;
     }
 
@@ -63,13 +66,13 @@ public abstract class FileUtilities {
           fd.write(buffer,0,nb);
         }
         catch (Exception e) {
-          System.err.println("copy: error writing file: " + dest.getPath());
+          ThreadOutput.err().println("copy: error writing file: " + dest.getPath());
           throw e;
         }
       }
     }
     catch (Exception e) {
-      System.err.println("copy: error reading file: " + src.getPath());
+      ThreadOutput.err().println("copy: error reading file: " + src.getPath());
       throw e;
     }
 
@@ -77,18 +80,59 @@ public abstract class FileUtilities {
       fi.close();
     }
     catch (Exception e) {
-      System.err.println("copy: can not close input file: " + src.getPath());
+      ThreadOutput.err().println("copy: can not close input file: " + src.getPath());
       throw e;
     }
     try {
       fd.close();
     }
     catch (Exception e) {
-      System.err.println("copy: can not close output file: " + dest.getPath());
+      ThreadOutput.err().println("copy: can not close output file: " + dest.getPath());
       throw e;
     }
   }
 
+  //------------------------------------------------------------------
+  // sameContent :
+  //
+  // Returns true if files 'f1' and 'f2' exist and have the same content
+  //------------------------------------------------------------------
+  public static boolean sameContent(File f1, File f2) throws Exception {
+    if (!f1.isFile() || !f2.isFile() || (f1.length()!=f2.length())) {
+      return false;
+    }
+    BufferedInputStream i1=new BufferedInputStream(new FileInputStream(f1));
+    BufferedInputStream i2=new BufferedInputStream(new FileInputStream(f2));
+    try {
+      int b;
+      while ((b=i1.read())>=0) {
+        if (b!=i2.read()) {
+          return false;
+        }
+      }
+      return true;
+    }
+    finally {
+      i1.close();
+      i2.close();
+    }
+  }
+
+  //------------------------------------------------------------------
+  // copyIfDifferent :
+  //
+  // Copy file 'src' to file 'dest', unless 'dest' already has the same
+  // content (its modification time is then kept). Returns true if the
+  // file has been copied
+  //------------------------------------------------------------------
+  public static boolean copyIfDifferent(File src, File dest) throws Exception {
+    if (sameContent(src,dest)) {
+      return false;
+    }
+    copy(src,dest);
+    return true;
+  }
+
   //------------------------------------------------------------------
   // copy :
   //
@@ -123,7 +167,7 @@ public abstract class FileUtilities {
     // Check that the directory exists
     File parent=destFile.getParentFile();
     if (!parent.exists()) {
-      System.err.println("copy: output directory does not exist: " + parent.getPath());
+      ThreadOutput.err().println("copy: output directory does not exist: " + parent.getPath());
       throw new Exception();
     }
 
@@ -132,7 +176,7 @@ public abstract class FileUtilities {
 
     // Verbose
     if (dumpLevel > 0) {
-      System.err.println("  ... copy " + inputFile.getName()+" -> "+destFile.getPath());	  
+      ThreadOutput.err().println("  ... copy " + inputFile.getName()+" -> "+destFile.getPath());	  
     }
   }
 
@@ -145,7 +189,7 @@ public abstract class FileUtilities {
   //------------------------------------------------------------------
   public static boolean recursiveDelete(File fileOrDir) {
     if (!fileOrDir.exists()) {
-      System.err.println("delete: no such file or directory: "+fileOrDir.getPath());
+      ThreadOutput.err().println("delete: no such file or directory: "+fileOrDir.getPath());
       return false;
     }
 
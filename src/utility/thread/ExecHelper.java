@@ -185,7 +185,7 @@ public class ExecHelper {
 				try {
 					String line = reader.readLine();
 					while (line != null) {
-						System.out.println(line);
+						ThreadOutput.out().println(line);
 						line = reader.readLine();
 					}
 					reader.close();
@@ -206,7 +206,7 @@ public class ExecHelper {
 				try {
 					String line = reader.readLine();
 					while (line != null) {
-						System.err.println(line);
+						ThreadOutput.err().println(line);
 						line = reader.readLine();
 					}
 					reader.close();
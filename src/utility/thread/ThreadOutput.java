@@ -0,0 +1,175 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Per-thread output and error streams of the compiler.
+   The compiler prints its messages to ThreadOutput.out() and
+   ThreadOutput.err() rather than to System.out and System.err. What a
+   thread writes to them is kept in the capture attached to the thread
+   (and to the threads it creates), so that the messages of concurrent
+   tasks can be replayed afterwards in a deterministic order. Threads
+   without capture write to the standard streams, which are never
+   replaced.
+*/
+
+package utility.thread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedList;
+
+public class ThreadOutput {
+
+  //==================================================================
+  // Capture
+  //==================================================================
+
+  public static class Capture {
+    // Chunks in emission order, consecutive writes to the same stream
+    // being merged in a single chunk
+    private final LinkedList<ByteArrayOutputStream> chunkList = new LinkedList<ByteArrayOutputStream>();
+    private final LinkedList<Boolean> chunkIsErrList = new LinkedList<Boolean>();
+    // Streams writing to the capture, created on first use
+    private PrintStream out = null;
+    private PrintStream err = null;
+
+    synchronized PrintStream getStream(boolean isErr) {
+      if (isErr) {
+        if (err==null) {
+          err=new PrintStream(new CaptureStream(this,true),true);
+        }
+        return err;
+      }
+      if (out==null) {
+        out=new PrintStream(new CaptureStream(this,false),true);
+      }
+      return out;
+    }
+
+    protected synchronized void write(boolean isErr, byte[] b, int off, int len) {
+      if (chunkList.isEmpty() || (chunkIsErrList.getLast()!=isErr)) {
+        chunkList.add(new ByteArrayOutputStream());
+        chunkIsErrList.add(isErr);
+      }
+      chunkList.getLast().write(b,off,len);
+    }
+
+    // Writes the captured chunks to the streams
+    public synchronized void replay(PrintStream out, PrintStream err) {
+      for(int i=0;i<chunkList.size();i++) {
+        PrintStream ps=chunkIsErrList.get(i)?err:out;
+        byte[] b=chunkList.get(i).toByteArray();
+        ps.write(b,0,b.length);
+        ps.flush();
+      }
+    }
+
+    // Saves the captured chunks, so that they can be replayed by another
+    // process
+    public synchronized void save(DataOutputStream dos) throws IOException {
+      dos.writeInt(chunkList.size());
+      for(int i=0;i<chunkList.size();i++) {
+        byte[] b=chunkList.get(i).toByteArray();
+        dos.writeBoolean(chunkIsErrList.get(i));
+        dos.writeInt(b.length);
+        dos.write(b);
+      }
+    }
+
+    public static Capture load(DataInputStream dis) throws IOException {
+      Capture c=new Capture();
+      int nbChunks=dis.readInt();
+      for(int i=0;i<nbChunks;i++) {
+        boolean isErr=dis.readBoolean();
+        byte[] b=new byte[dis.readInt()];
+        dis.readFully(b);
+        c.write(isErr,b,0,b.length);
+      }
+      return c;
+    }
+  }
+
+  private static InheritableThreadLocal<Capture> currentCapture = new InheritableThreadLocal<Capture>();
+
+
+  //==================================================================
+  // Capture stream
+  //==================================================================
+
+  private static class CaptureStream extends OutputStream {
+    private final Capture capture;
+    private final boolean isErr;
+
+    CaptureStream(Capture c, boolean e) {
+      capture=c;
+      isErr=e;
+    }
+
+    @Override
+    public void write(int b) {
+      write(new byte[]{(byte)b},0,1);
+    }
+    @Override
+    public void write(byte[] b, int off, int len) {
+      capture.write(isErr,b,off,len);
+    }
+  }
+
+
+  //==================================================================
+  // Streams of the current thread
+  //==================================================================
+
+  // Output stream of the current thread: the one of its capture, or the
+  // standard output
+  public static PrintStream out() {
+    Capture c=currentCapture.get();
+    return (c==null)?System.out:c.getStream(false);
+  }
+
+  // Error stream of the current thread: the one of its capture, or the
+  // standard error
+  public static PrintStream err() {
+    Capture c=currentCapture.get();
+    return (c==null)?System.err:c.getStream(true);
+  }
+
+  // Attaches a capture to the current thread (null to write to the
+  // standard streams again)
+  public static void setCapture(Capture c) {
+    currentCapture.set(c);
+  }
+  public static Capture getCapture() {
+    return currentCapture.get();
+  }
+
+  // Writes a capture to the streams of the current thread (the standard
+  // streams or the capture of the thread)
+  public static void replay(Capture c) {
+    c.replay(out(),err());
+  }
+
+}
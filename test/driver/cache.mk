@@ -0,0 +1,56 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Compilation cache (--cache_dir): the second compilation of the
+#  same program must be restored from the cache, with the same
+#  generated files and the same messages (the report included)
+##################################################################
+
+TEST_NAME = cache
+KG_SOURCE = Embedding
+
+include $(KERNELGENIUS_DIR)/test/make/common_driver.mk
+
+CACHE_DIR = $(DRIVER_BUILD_DIR)/cache
+KG_CACHE_CMD = $(KG_DRIVER_CMD) --cache_dir $(CACHE_DIR) --report -o $(KG_SOURCE)
+
+run::
+	@rm -rf $(DRIVER_BUILD_DIR)
+	@mkdir -p $(DRIVER_BUILD_DIR)/out
+	@echo "--- First compilation of $(KG_SOURCE).kg"
+	$(PREFIX)$(KG_CACHE_CMD) --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/$(KG_SOURCE).kg > $(DRIVER_BUILD_DIR)/first.log 2>&1
+	@grep -q "Report for program '$(KG_SOURCE)'" $(DRIVER_BUILD_DIR)/first.log
+	@test `ls $(CACHE_DIR) | wc -l` -eq 1
+	@mv $(DRIVER_BUILD_DIR)/out $(DRIVER_BUILD_DIR)/first
+	@mkdir -p $(DRIVER_BUILD_DIR)/out
+	@echo "--- Second compilation of $(KG_SOURCE).kg"
+	$(PREFIX)$(KG_CACHE_CMD) --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/$(KG_SOURCE).kg > $(DRIVER_BUILD_DIR)/second.log 2>&1
+	$(PREFIX)diff $(DRIVER_BUILD_DIR)/first.log $(DRIVER_BUILD_DIR)/second.log
+	$(PREFIX)diff -r $(DRIVER_BUILD_DIR)/first $(DRIVER_BUILD_DIR)/out
+	@test `ls $(CACHE_DIR) | wc -l` -eq 1
+	@echo "--- Third compilation of $(KG_SOURCE).kg, with a time report"
+	@rm -rf $(DRIVER_BUILD_DIR)/out; mkdir -p $(DRIVER_BUILD_DIR)/out
+	$(PREFIX)$(KG_CACHE_CMD) --time-report --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/$(KG_SOURCE).kg > $(DRIVER_BUILD_DIR)/third.log 2>&1
+	@grep -q "cache lookup" $(DRIVER_BUILD_DIR)/third.log
+	@! grep -q "codegen" $(DRIVER_BUILD_DIR)/third.log
+	$(PREFIX)diff -r $(DRIVER_BUILD_DIR)/first $(DRIVER_BUILD_DIR)/out
+	@echo ">> 'cache' completed OK"
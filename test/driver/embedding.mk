@@ -0,0 +1,54 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Test of the compilation API for Java programs embedding the
+#  compiler (driver.KernelGeniusCompiler)
+##################################################################
+
+PREFIX=@
+ifdef VERBOSE
+PREFIX=
+endif
+
+SRC_DIR ?= src
+JAVA_BUILD_DIR = build_java
+KG_CLASSPATH = $(KERNELGENIUS_DIR)/jar/KernelGenius.jar:$(KERNELGENIUS_DIR)/lib/antlr-3.4-complete.jar
+
+.PHONY: all build run clean cleanall
+
+all: build
+
+build: $(JAVA_BUILD_DIR)/TestEmbedding.class
+
+$(JAVA_BUILD_DIR)/TestEmbedding.class: $(SRC_DIR)/TestEmbedding.java
+	@echo "--- Compiling $<"
+	@mkdir -p $(JAVA_BUILD_DIR)
+	$(PREFIX)javac -cp $(KG_CLASSPATH) -d $(JAVA_BUILD_DIR) $<
+
+run: build
+	$(PREFIX)java -cp $(JAVA_BUILD_DIR):$(KG_CLASSPATH) TestEmbedding $(KERNELGENIUS_DIR) $(SRC_DIR)/Embedding.kg
+
+clean:
+	@rm -rf $(JAVA_BUILD_DIR)/TestEmbedding*.class
+
+cleanall:
+	@rm -rf $(JAVA_BUILD_DIR)
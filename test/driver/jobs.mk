@@ -0,0 +1,69 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Parallel compilation (-j <n>): several files compiled in one
+#  command generate the same code as each file compiled alone, with
+#  or without '-j', and the messages of a '-j' compilation are the
+#  ones of the sequential compilation, in the same order. Files
+#  generating the same program in the output directory are rejected
+#  with '-j'
+##################################################################
+
+TEST_NAME = jobs
+KG_SOURCES = JobsA JobsB JobsC
+
+include $(KERNELGENIUS_DIR)/test/make/common_driver.mk
+
+KG_FILES = $(patsubst %,$(SRC_DIR)/%.kg,$(KG_SOURCES))
+KG_JOBS_CMD = $(KG_DRIVER_CMD) --debug 1 --report
+
+# Removes the name of the temporary directory from a log
+FILTER_LOG = sed -i -e 's/_KG[0-9a-f-]*/_KG/g'
+
+run::
+	@rm -rf $(DRIVER_BUILD_DIR)
+	@mkdir -p $(DRIVER_BUILD_DIR)/single $(DRIVER_BUILD_DIR)/seq
+	@echo "--- Compilation of each file alone"
+	$(PREFIX)for f in $(KG_FILES); do $(KG_DRIVER_CMD) --outdir $(DRIVER_BUILD_DIR)/single $$f || exit 1; done
+	@echo "--- Sequential compilation of $(KG_SOURCES)"
+	$(PREFIX)$(KG_JOBS_CMD) --outdir $(DRIVER_BUILD_DIR)/seq $(KG_FILES) > $(DRIVER_BUILD_DIR)/seq.log 2>&1
+	@$(FILTER_LOG) $(DRIVER_BUILD_DIR)/seq.log
+	$(PREFIX)diff -r $(DRIVER_BUILD_DIR)/single $(DRIVER_BUILD_DIR)/seq
+	$(PREFIX)for n in 2 3 4; do \
+	  echo "--- Compilation of $(KG_SOURCES) with -j $$n"; \
+	  mkdir -p $(DRIVER_BUILD_DIR)/j$$n; \
+	  $(KG_JOBS_CMD) -j $$n --outdir $(DRIVER_BUILD_DIR)/j$$n $(KG_FILES) > $(DRIVER_BUILD_DIR)/j$$n.log 2>&1 || exit 1; \
+	  $(FILTER_LOG) $(DRIVER_BUILD_DIR)/j$$n.log; \
+	  diff $(DRIVER_BUILD_DIR)/seq.log $(DRIVER_BUILD_DIR)/j$$n.log || exit 1; \
+	  diff -r $(DRIVER_BUILD_DIR)/seq $(DRIVER_BUILD_DIR)/j$$n || exit 1; \
+	done
+	@echo "--- Compilation of two files named by -o with -j"
+	@mkdir -p $(DRIVER_BUILD_DIR)/out $(DRIVER_BUILD_DIR)/copy
+	$(PREFIX)! $(KG_DRIVER_CMD) -j 2 --outdir $(DRIVER_BUILD_DIR)/out -o Same $(SRC_DIR)/JobsA.kg $(SRC_DIR)/JobsB.kg > $(DRIVER_BUILD_DIR)/output.log 2>&1
+	@grep -q "cannot specify -o with multiple files" $(DRIVER_BUILD_DIR)/output.log
+	@test ! -e $(DRIVER_BUILD_DIR)/out/Same.cl
+	@echo "--- Compilation of two files of the same name with -j"
+	@cp $(SRC_DIR)/JobsB.kg $(DRIVER_BUILD_DIR)/copy
+	$(PREFIX)! $(KG_DRIVER_CMD) -j 2 --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/JobsB.kg $(DRIVER_BUILD_DIR)/copy/JobsB.kg > $(DRIVER_BUILD_DIR)/name.log 2>&1
+	@grep -q "generate the same program '$(DRIVER_BUILD_DIR)/out/JobsB'" $(DRIVER_BUILD_DIR)/name.log
+	@test ! -e $(DRIVER_BUILD_DIR)/out/JobsB.cl
+	@echo ">> 'jobs' completed OK"
@@ -0,0 +1,71 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Compilation server (kgenc --server): a compilation forwarded to
+#  the server, with relative paths and the default output directory,
+#  must generate the same files and print the same messages as a
+#  compilation in the JVM of the client. The server makes paths of the
+#  command line absolute, so '#line' directives are not compared
+##################################################################
+
+TEST_NAME = server
+KG_SOURCE = Embedding
+
+include $(KERNELGENIUS_DIR)/test/make/common_driver.mk
+
+# The server of the test does not replace the one of the user
+export KGEN_SERVER_FILE = $(abspath $(DRIVER_BUILD_DIR))/kgenc_server
+# Maximum time to wait for the server start and stop (seconds)
+SERVER_TIMEOUT = 30
+
+KG_SERVER_CMD = $(KG_DRIVER_CMD) --report ../../$(SRC_DIR)/$(KG_SOURCE).kg
+
+run::
+	@rm -rf $(DRIVER_BUILD_DIR)
+	@mkdir -p $(DRIVER_BUILD_DIR)/server $(DRIVER_BUILD_DIR)/local
+	@echo "--- Starting the compilation server"
+	$(PREFIX)$(KGCOMPILER) --server > $(DRIVER_BUILD_DIR)/server.log 2>&1 &
+	@i=0; while [ ! -f $(KGEN_SERVER_FILE) ]; do \
+	  i=`expr $$i + 1`; \
+	  if [ $$i -gt $(SERVER_TIMEOUT) ]; then echo "!! server not started"; exit 1; fi; \
+	  sleep 1; \
+	done
+	@echo "--- Compilation of $(KG_SOURCE).kg by the server"
+	$(PREFIX)cd $(DRIVER_BUILD_DIR)/server && $(KG_SERVER_CMD) > ../server_compile.log 2>&1
+	@echo "--- Compilation of $(KG_SOURCE).kg by the client"
+	$(PREFIX)cd $(DRIVER_BUILD_DIR)/local && KGEN_NO_SERVER=1 $(KG_SERVER_CMD) > ../local_compile.log 2>&1
+	$(PREFIX)diff $(DRIVER_BUILD_DIR)/local_compile.log $(DRIVER_BUILD_DIR)/server_compile.log
+	$(PREFIX)diff -r -I '^#line' $(DRIVER_BUILD_DIR)/local $(DRIVER_BUILD_DIR)/server
+	@test -f $(DRIVER_BUILD_DIR)/server/$(KG_SOURCE).cl
+	@echo "--- Stopping the compilation server"
+	$(PREFIX)$(KGCOMPILER) --stop_server
+	@i=0; while [ -f $(KGEN_SERVER_FILE) ]; do \
+	  i=`expr $$i + 1`; \
+	  if [ $$i -gt $(SERVER_TIMEOUT) ]; then echo "!! server not stopped"; exit 1; fi; \
+	  sleep 1; \
+	done
+	@grep -q "stopped after 1 compilation(s)" $(DRIVER_BUILD_DIR)/server.log
+	@echo ">> 'server' completed OK"
+
+# Stops the server of a failed test
+clean::
+	-@test ! -f $(KGEN_SERVER_FILE) || $(KGCOMPILER) --stop_server
@@ -0,0 +1,408 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Check of a JSON time report (--time-report-json).
+
+   Parses the report and checks the fields of each phase, that the
+   input files are reported in the order of the command line with the
+   phases of the compilation flow, and that the CPU time and the bytes
+   allocated by the whole compilation are not below the sum of the ones
+   of the top-level phases, whatever the thread running them (-j).
+   With '-failed', the last file is expected to stop after its parsing.
+
+   usage: CheckTimeReport <report.json> [-failed] <file.kg>+
+*/
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class CheckTimeReport {
+  static final List<String> errorList = new LinkedList<String>();
+
+  static String readFile(File f) throws IOException {
+    FileInputStream is=new FileInputStream(f);
+    try {
+      byte[] b=new byte[(int)f.length()];
+      int n=0;
+      while (n<b.length) {
+        int r=is.read(b,n,b.length-n);
+        if (r<0) break;
+        n+=r;
+      }
+      return new String(b,0,n);
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  static void error(String s) {
+    errorList.add(s);
+  }
+
+
+  //==================================================================
+  // JSON parser (objects, arrays, strings, integers and null)
+  //==================================================================
+
+  static class Parser {
+    final String s;
+    int i=0;
+
+    Parser(String text) {
+      s=text;
+    }
+
+    void skipSpaces() {
+      while ((i<s.length())&&Character.isWhitespace(s.charAt(i))) i++;
+    }
+
+    RuntimeException syntaxError(String what) {
+      return new RuntimeException("JSON syntax error at offset "+i+": "+what);
+    }
+
+    void expect(char c) {
+      skipSpaces();
+      if ((i>=s.length())||(s.charAt(i)!=c)) {
+        throw syntaxError("'"+c+"' expected");
+      }
+      i++;
+    }
+
+    boolean next(char c) {
+      skipSpaces();
+      if ((i<s.length())&&(s.charAt(i)==c)) {
+        i++;
+        return true;
+      }
+      return false;
+    }
+
+    Object parseDocument() {
+      Object o=parseValue();
+      skipSpaces();
+      if (i!=s.length()) {
+        throw syntaxError("trailing characters");
+      }
+      return o;
+    }
+
+    Object parseValue() {
+      skipSpaces();
+      if (i>=s.length()) {
+        throw syntaxError("value expected");
+      }
+      char c=s.charAt(i);
+      if (c=='{') {
+        i++;
+        Map<String,Object> map=new LinkedHashMap<String,Object>();
+        if (next('}')) return map;
+        do {
+          skipSpaces();
+          String key=parseString();
+          expect(':');
+          if (map.put(key,parseValue())!=null) {
+            throw syntaxError("duplicate key '"+key+"'");
+          }
+        } while (next(','));
+        expect('}');
+        return map;
+      }
+      if (c=='[') {
+        i++;
+        List<Object> list=new LinkedList<Object>();
+        if (next(']')) return list;
+        do {
+          list.add(parseValue());
+        } while (next(','));
+        expect(']');
+        return list;
+      }
+      if (c=='"') {
+        return parseString();
+      }
+      if (s.startsWith("null",i)) {
+        i+=4;
+        return null;
+      }
+      int start=i;
+      if (c=='-') i++;
+      while ((i<s.length())&&Character.isDigit(s.charAt(i))) i++;
+      if ((i==start)||((c=='-')&&(i==start+1))) {
+        throw syntaxError("unexpected character '"+c+"'");
+      }
+      return Long.valueOf(s.substring(start,i));
+    }
+
+    String parseString() {
+      if ((i>=s.length())||(s.charAt(i)!='"')) {
+        throw syntaxError("string expected");
+      }
+      i++;
+      StringBuffer sb=new StringBuffer();
+      while (true) {
+        if (i>=s.length()) {
+          throw syntaxError("unterminated string");
+        }
+        char c=s.charAt(i++);
+        if (c=='"') {
+          return sb.toString();
+        }
+        if (c<0x20) {
+          throw syntaxError("control character in a string");
+        }
+        if (c=='\\') {
+          char e=s.charAt(i++);
+          if ((e=='"')||(e=='\\')||(e=='/')) sb.append(e);
+          else if (e=='n') sb.append('\n');
+          else if (e=='t') sb.append('\t');
+          else if (e=='u') {
+            sb.append((char)Integer.parseInt(s.substring(i,i+4),16));
+            i+=4;
+          }
+          else throw syntaxError("bad escape '\\"+e+"'");
+        }
+        else {
+          sb.append(c);
+        }
+      }
+    }
+  }
+
+
+  //==================================================================
+  // Checks
+  //==================================================================
+
+  // Checks the fields of a phase and returns it
+  @SuppressWarnings("unchecked")
+  static Map<String,Object> checkPhase(Object o) {
+    if (!(o instanceof Map)) {
+      error("phase "+o+" is not an object");
+      return null;
+    }
+    Map<String,Object> p=(Map<String,Object>)o;
+    String[] keys={"file","kernel","phase","depth","wall_ns","cpu_ns","allocated_bytes"};
+    if (!p.keySet().equals(new HashSet<String>(Arrays.asList(keys)))) {
+      error("phase "+p+": unexpected fields "+p.keySet());
+      return null;
+    }
+    if (!(p.get("phase") instanceof String)) {
+      error("phase "+p+": no phase name");
+    }
+    if ((p.get("file")!=null)&&!(p.get("file") instanceof String)) {
+      error("phase "+p+": bad file");
+    }
+    if ((p.get("kernel")!=null)&&!(p.get("kernel") instanceof String)) {
+      error("phase "+p+": bad kernel");
+    }
+    if (!(p.get("depth") instanceof Long)||((Long)p.get("depth")<0)) {
+      error("phase "+p+": bad depth");
+    }
+    if (!(p.get("wall_ns") instanceof Long)||((Long)p.get("wall_ns")<0)) {
+      error("phase "+p+": bad wall time");
+    }
+    for(String k:new String[]{"cpu_ns","allocated_bytes"}) {
+      if ((p.get(k)!=null)&&(!(p.get(k) instanceof Long)||((Long)p.get(k)<0))) {
+        error("phase "+p+": bad "+k);
+      }
+    }
+    return p;
+  }
+
+  static boolean hasPhase(List<Map<String,Object>> phases, String name, int depth) {
+    for(Map<String,Object> p:phases) {
+      if (name.equals(p.get("phase"))&&(((Long)p.get("depth")).intValue()==depth)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Kernels analyzed for a file: the steps of an analysis follow it,
+  // for the same kernel
+  static void checkAnalysis(String file, List<Map<String,Object>> phases) {
+    String kernel=null;
+    boolean found=false;
+    for(Map<String,Object> p:phases) {
+      if (((Long)p.get("depth"))==0L) {
+        kernel=null;
+        if ("analyze".equals(p.get("phase"))) {
+          found=true;
+          kernel=(String)p.get("kernel");
+          if (kernel==null) {
+            error(file+": analyze phase without kernel");
+          }
+        }
+      }
+      else if ((kernel!=null)&&!kernel.equals(p.get("kernel"))) {
+        error(file+": step '"+p.get("phase")+"' of kernel '"+p.get("kernel")+"' within the analysis of '"+kernel+"'");
+      }
+    }
+    if (!found) {
+      error(file+": no analyze phase");
+    }
+    String[] steps={"tileAnalysis","computeScheduling","computeBufferSlots","computeAccessPatternUnion"};
+    for(String step:steps) {
+      if (!hasPhase(phases,step,1)) {
+        error(file+": no '"+step+"' step");
+      }
+    }
+  }
+
+  // Sum of a measurement over the top-level phases, -1 if one of them
+  // is not available
+  static long sumTopLevel(List<Map<String,Object>> phases, String key) {
+    long sum=0;
+    for(Map<String,Object> p:phases) {
+      if (((Long)p.get("depth"))==0L) {
+        if (p.get(key)==null) {
+          return -1;
+        }
+        sum+=(Long)p.get(key);
+      }
+    }
+    return sum;
+  }
+
+
+  //==================================================================
+  // Main
+  //==================================================================
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    int a=1;
+    boolean failed=false;
+    if ((args.length>1)&&args[1].equals("-failed")) {
+      failed=true;
+      a++;
+    }
+    if (args.length<=a) {
+      System.err.println("usage: CheckTimeReport <report.json> [-failed] <file.kg>+");
+      System.exit(1);
+    }
+
+    Object doc=null;
+    try {
+      doc=new Parser(readFile(new File(args[0]))).parseDocument();
+    }
+    catch (RuntimeException e) {
+      error(args[0]+": "+e.getMessage());
+    }
+
+    if ((doc!=null)&&!((doc instanceof Map)&&(((Map<String,Object>)doc).keySet().size()==2)
+        &&(((Map<String,Object>)doc).get("phases") instanceof List))) {
+      error(args[0]+": 'total' and 'phases' expected at the top level");
+      doc=null;
+    }
+
+    if (doc!=null) {
+      Map<String,Object> report=(Map<String,Object>)doc;
+      Map<String,Object> total=checkPhase(report.get("total"));
+      List<Map<String,Object>> phases=new LinkedList<Map<String,Object>>();
+      Map<String,List<Map<String,Object>>> fileMap=new LinkedHashMap<String,List<Map<String,Object>>>();
+      for(Object o:(List<Object>)report.get("phases")) {
+        Map<String,Object> p=checkPhase(o);
+        if (p==null) {
+          continue;
+        }
+        phases.add(p);
+        String file=(String)p.get("file");
+        if (file!=null) {
+          if (!fileMap.containsKey(file)) {
+            fileMap.put(file,new LinkedList<Map<String,Object>>());
+          }
+          fileMap.get(file).add(p);
+        }
+        else if (!"target configuration".equals(p.get("phase"))) {
+          error("phase '"+p.get("phase")+"' not related to a file");
+        }
+      }
+
+      if (errorList.isEmpty()) {
+        // Files in the order of the command line
+        List<String> expected=new LinkedList<String>();
+        for(int i=a;i<args.length;i++) {
+          expected.add(args[i]);
+        }
+        if (!new LinkedList<String>(fileMap.keySet()).equals(expected)) {
+          error("files "+fileMap.keySet()+" reported instead of "+expected);
+        }
+        if (!hasPhase(phases,"target configuration",0)) {
+          error("no 'target configuration' phase");
+        }
+
+        // Phases of each file
+        for(int i=a;i<args.length;i++) {
+          List<Map<String,Object>> filePhases=fileMap.get(args[i]);
+          if (filePhases==null) {
+            continue;
+          }
+          String[] flow={"preprocessing","parse","completeAndCheck","optimize","analyze","codegen"};
+          int nb=(failed&&(i==args.length-1))?2:flow.length;
+          for(int j=0;j<nb;j++) {
+            if (!hasPhase(filePhases,flow[j],0)) {
+              error(args[i]+": no '"+flow[j]+"' phase");
+            }
+          }
+          if (nb==flow.length) {
+            checkAnalysis(args[i],filePhases);
+          }
+          else if (hasPhase(filePhases,"codegen",0)) {
+            error(args[i]+": code generated for a file in error");
+          }
+        }
+
+        // The whole compilation includes the phases of all threads
+        if ((total!=null)&&!"total".equals(total.get("phase"))) {
+          error("bad total "+total);
+        }
+        for(String key:new String[]{"cpu_ns","allocated_bytes"}) {
+          long sum=sumTopLevel(phases,key);
+          if ((total!=null)&&(total.get(key)!=null)&&(sum>=0)&&((Long)total.get(key)<sum)) {
+            error("total "+key+" "+total.get(key)+" below the sum of the phases "+sum);
+          }
+        }
+      }
+    }
+
+    if (errorList.isEmpty()) {
+      System.out.println(">> time report '"+args[0]+"' checked");
+    }
+    else {
+      for(String s:errorList) {
+        System.out.println("!! "+s);
+      }
+      System.out.println("!! time report '"+args[0]+"' checked with ERROR");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+
+  Authors: Thierry Lepley
+*/
+
+/* Test of the compilation API for Java programs embedding the compiler.
+
+   Compiles a valid and an invalid program from several threads at the
+   same time and checks, for each compilation, the generated files, the
+   diagnostics and the captured output (including the --report output).
+   Nothing must be printed on the standard streams of the application.
+
+   usage: TestEmbedding <install dir> <program.kg>
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import common.Diagnostic;
+import driver.KernelGeniusCompiler;
+import parser.DeviceParser;
+import target.ComputeDevice;
+
+public class TestEmbedding {
+  static final int NB_THREADS = 4;
+  static final int NB_COMPILATIONS = 5;
+
+  static ComputeDevice device;
+  static String validSource;
+  static final String invalidSource = "\nkernel Bad(int width=[1:8] {\n}\n";
+  static final List<String> errorList = new LinkedList<String>();
+
+  static String readFile(File f) throws IOException {
+    FileInputStream is=new FileInputStream(f);
+    try {
+      byte[] b=new byte[(int)f.length()];
+      int n=0;
+      while (n<b.length) {
+        int r=is.read(b,n,b.length-n);
+        if (r<0) break;
+        n+=r;
+      }
+      return new String(b,0,n);
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  static void error(String s) {
+    synchronized (errorList) {
+      errorList.add(s);
+    }
+  }
+
+  //==================================================================
+  // Checks
+  //==================================================================
+
+  static void checkValid(String name, KernelGeniusCompiler.Result r) {
+    if (!r.isSuccess()) {
+      error(name+": compilation failed "+r.getDiagnostics());
+      return;
+    }
+    for(Diagnostic d:r.getDiagnostics()) {
+      if (d.isError()) {
+        error(name+": unexpected error diagnostic '"+d+"'");
+      }
+    }
+    String host=name.replaceAll("\\.kg$","");
+    if ((r.getGeneratedFile(host+".cl")==null) ||
+        (r.getGeneratedFile(host+".c")==null) ||
+        (r.getGeneratedFile(host+".h")==null)) {
+      error(name+": missing generated files "+r.getGeneratedFiles().keySet());
+    }
+    else if (r.getGeneratedFile(host+".cl").indexOf("Smooth")<0) {
+      error(name+": kernel 'Smooth' not found in the generated OpenCL code");
+    }
+    // The report is part of the captured output
+    if (r.getOutput().indexOf("Report for program '"+host+"'")<0) {
+      error(name+": report not found in the captured output '"+r.getOutput()+"'");
+    }
+    if (r.getOutput().indexOf("Local memory usage for kernel 'Smooth'")<0) {
+      error(name+": kernel report not found in the captured output");
+    }
+  }
+
+  static void checkInvalid(String name, KernelGeniusCompiler.Result r) {
+    if (r.isSuccess()) {
+      error(name+": compilation of an invalid program succeeded");
+    }
+    boolean found=false;
+    for(Diagnostic d:r.getDiagnostics()) {
+      if (d.isError()) {
+        found=true;
+        if (!name.equals(new File(d.getFileName()).getName())) {
+          error(name+": error reported for file '"+d.getFileName()+"'");
+        }
+        if (d.getLine()!=2) {
+          error(name+": error reported at line "+d.getLine()+" instead of 2");
+        }
+      }
+    }
+    if (!found) {
+      error(name+": no error diagnostic");
+    }
+    if (!r.getGeneratedFiles().isEmpty()) {
+      error(name+": files generated for an invalid program");
+    }
+  }
+
+
+  //==================================================================
+  // Main
+  //==================================================================
+
+  public static void main(String[] args) throws Exception {
+    if (args.length!=2) {
+      System.err.println("usage: TestEmbedding <install dir> <program.kg>");
+      System.exit(1);
+    }
+    DeviceParser dp=new DeviceParser(0,new File(new File(args[0],"targets"),"cpu.cfg"));
+    dp.parse();
+    device=dp.getDevice();
+    validSource=readFile(new File(args[1]));
+
+    // Anything printed on the standard streams during compilations is
+    // an error
+    PrintStream out=System.out, err=System.err;
+    ByteArrayOutputStream os=new ByteArrayOutputStream();
+    PrintStream ps=new PrintStream(os);
+    System.setOut(ps);
+    System.setErr(ps);
+
+    List<Thread> threadList=new LinkedList<Thread>();
+    for(int i=0;i<NB_THREADS;i++) {
+      final int id=i;
+      Thread t=new Thread() {
+        public void run() {
+          for(int j=0;j<NB_COMPILATIONS;j++) {
+            String name=((id%2)==0?"Valid":"Invalid")+id+".kg";
+            if ((id%2)==0) {
+              checkValid(name,KernelGeniusCompiler.compile(name,validSource,null,
+                  Arrays.asList("--target_language","OpenCL","--report"),device));
+            }
+            else {
+              checkInvalid(name,KernelGeniusCompiler.compile(name,invalidSource,null,
+                  Arrays.asList("--target_language","OpenCL","--report"),device));
+            }
+          }
+        }
+      };
+      threadList.add(t);
+      t.start();
+    }
+    for(Thread t:threadList) {
+      t.join();
+    }
+
+    System.setOut(out);
+    System.setErr(err);
+    ps.flush();
+    if (os.size()!=0) {
+      error("compilations printed on the standard streams '"+os.toString()+"'");
+    }
+
+    if (errorList.isEmpty()) {
+      System.out.println(">> 'Embedding' completed OK");
+    }
+    else {
+      for(String s:errorList) {
+        System.out.println("!! "+s);
+      }
+      System.out.println("!! 'Embedding' completed with ERROR");
+      System.exit(1);
+    }
+  }
+}
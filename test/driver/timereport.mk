@@ -0,0 +1,69 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Time report (--time-report, --time-report-json): the text report
+#  and the JSON report list the phases of each file in the order of
+#  the command line, with or without '-j', the totals including the
+#  work of all threads. A report is still printed when the
+#  compilation fails, and a JSON report that can not be written is an
+#  error
+##################################################################
+
+TEST_NAME = timereport
+KG_SOURCES = JobsA JobsB JobsC
+
+include $(KERNELGENIUS_DIR)/test/make/common_driver.mk
+
+KG_FILES = $(patsubst %,$(SRC_DIR)/%.kg,$(KG_SOURCES))
+KG_CLASSPATH = $(KERNELGENIUS_DIR)/jar/KernelGenius.jar:$(KERNELGENIUS_DIR)/lib/antlr-3.4-complete.jar
+JAVA_BUILD_DIR = $(DRIVER_BUILD_DIR)/java
+CHECK_CMD = java -cp $(JAVA_BUILD_DIR) CheckTimeReport
+
+# Checks that the text report of log $(1) lists files $(2) in this order
+CHECK_TEXT = grep -q "^Time report" $(1) && grep -q "^total " $(1) && \
+  test "`grep "^file '" $(1)`" = "`for f in $(2); do echo "file '$$f'"; done`"
+
+BAD_FILE = $(DRIVER_BUILD_DIR)/Bad.kg
+
+run::
+	@rm -rf $(DRIVER_BUILD_DIR)
+	@mkdir -p $(JAVA_BUILD_DIR) $(DRIVER_BUILD_DIR)/out
+	$(PREFIX)javac -cp $(KG_CLASSPATH) -d $(JAVA_BUILD_DIR) $(SRC_DIR)/CheckTimeReport.java
+	$(PREFIX)for j in 1 3; do \
+	  echo "--- Time report of $(KG_SOURCES) with -j $$j"; \
+	  $(KG_DRIVER_CMD) -j $$j --time-report --time-report-json $(DRIVER_BUILD_DIR)/j$$j.json --outdir $(DRIVER_BUILD_DIR)/out $(KG_FILES) > $(DRIVER_BUILD_DIR)/j$$j.log 2>&1 || exit 1; \
+	  $(call CHECK_TEXT,$(DRIVER_BUILD_DIR)/j$$j.log,$(KG_FILES)) || exit 1; \
+	  grep -q "^    computeScheduling \[Gradient\]" $(DRIVER_BUILD_DIR)/j$$j.log || exit 1; \
+	  $(CHECK_CMD) $(DRIVER_BUILD_DIR)/j$$j.json $(KG_FILES) || exit 1; \
+	done
+	@printf "\nkernel Bad(int width=[1:8] {\n}\n" > $(BAD_FILE)
+	$(PREFIX)for j in 1 2; do \
+	  echo "--- Time report of a failed compilation with -j $$j"; \
+	  ! $(KG_DRIVER_CMD) -j $$j --time-report --time-report-json $(DRIVER_BUILD_DIR)/bad$$j.json --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/JobsB.kg $(BAD_FILE) > $(DRIVER_BUILD_DIR)/bad$$j.log 2>&1 || exit 1; \
+	  grep -q "Bad.kg:2: " $(DRIVER_BUILD_DIR)/bad$$j.log || exit 1; \
+	  $(call CHECK_TEXT,$(DRIVER_BUILD_DIR)/bad$$j.log,$(SRC_DIR)/JobsB.kg $(BAD_FILE)) || exit 1; \
+	  $(CHECK_CMD) $(DRIVER_BUILD_DIR)/bad$$j.json -failed $(SRC_DIR)/JobsB.kg $(BAD_FILE) || exit 1; \
+	done
+	@echo "--- Time report written to a missing directory"
+	$(PREFIX)! $(KG_DRIVER_CMD) --time-report-json $(DRIVER_BUILD_DIR)/missing/report.json --outdir $(DRIVER_BUILD_DIR)/out $(SRC_DIR)/JobsB.kg > $(DRIVER_BUILD_DIR)/missing.log 2>&1
+	@grep -q "can not write the time report to '$(DRIVER_BUILD_DIR)/missing/report.json'" $(DRIVER_BUILD_DIR)/missing.log
+	@echo ">> 'timereport' completed OK"
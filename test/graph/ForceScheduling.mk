@@ -0,0 +1,43 @@
+#**
+#   Test for the force-directed scheduling of a kernel graph
+#   
+#   Redistribution of this file to outside parties is
+#   strictly prohibited without the written consent
+#   of the module owner indicated below.
+#
+#   \par  Module owner: 
+#   Thierry Lepley, STMicroelectronics (thierry.lepley@st.com)
+#
+#   \par  Copyright STMicroelectronics (C) 2013
+#
+#   \par  Authors: 
+#   Thierry Lepley, STMicroelectronics (thierry.lepley@st.com)
+#**
+
+# Test configuration
+APP_NAME = ForceScheduling
+KG_SOURCE = ForceScheduling
+PROGRAM_NAME = ForceScheduling
+
+# Scheduling expected in the tiling report: the force-directed scheduler
+# must win on this graph, while ASAP must be kept without the option
+ifdef FORCE_SCHEDULING
+KGFLAGS = --force_scheduling
+SCHEDULING = force-directed
+else
+SCHEDULING = ASAP
+endif
+
+# Include the generic kernel test makefile
+include $(KERNELGENIUS_DIR)/test/make/common.mk
+
+# Checks the scheduling selected by the compiler before running the test
+.PHONY: check-scheduling
+run: check-scheduling
+check-scheduling: $(KG_SOURCE_FILE)
+	@echo "--- Checking that $(SCHEDULING) scheduling is selected"
+	@mkdir -p $(KG_BUILD_DIR)/scheduling
+	$(PREFIX)$(KGCOMPILER) --outdir $(KG_BUILD_DIR)/scheduling $(KGFLAGS) $(KG_OPT) --debug 2 -o $(PROGRAM_NAME) $< | grep "$(SCHEDULING) scheduling selected"
+
+clean::
+	@rm -rf $(KG_BUILD_DIR)/scheduling
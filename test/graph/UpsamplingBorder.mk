@@ -0,0 +1,29 @@
+#**
+#   Test for the Upsampling with borders
+#   
+#   Redistribution of this file to outside parties is
+#   strictly prohibited without the written consent
+#   of the module owner indicated below.\n
+#
+#   \par  Module owner: 
+#   Thierry Lepley, STMicroelectronics (thierry.lepley@st.com)
+#
+#   \par  Copyright STMicroelectronics (C) 2012
+#
+#   \par  Authors: 
+#   Thierry Lepley, STMicroelectronics (thierry.lepley@st.com)
+#**
+
+
+BORDER ?= duplicate
+
+# Test configuration
+APP_NAME = UpsamplingBorder
+KG_SOURCE = UpsamplingBorder
+PROGRAM_NAME = UpsamplingBorder
+
+RUN_ARGS = -border $(BORDER)
+KGFLAGS = -DBORDER=$(BORDER)
+
+# Include the generic kernel test makefile
+include $(KERNELGENIUS_DIR)/test/make/common.mk
@@ -0,0 +1,440 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of a graph on which the force-directed scheduling
+   reduces the local buffers: a mask converted to float is merged with
+   the output of three chained convolutions */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+#include <sys/time.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <ForceScheduling.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+#define DATA_TYPE cl_float
+#define MASK_TYPE cl_uchar
+#define PRECISION 0.01
+
+#define MIN(a,b) ((a)<(b)?(a):(b))
+#define MAX(a,b) ((a)>(b)?(a):(b))
+#define ABS(a) ((a)<0?-(a):(a))
+
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+
+//##################################################################
+// smooth
+//
+// Reference function for one convolution of the graph (duplicate
+// border)
+//##################################################################
+static void
+smooth (float *dst, float const *src, int width, int height)
+{
+  static const float coefs[3][3] = { {1., 2., 1.},
+				     {2., 4., 2.},
+				     {1., 2., 1.} };
+  int x, y, i, j ;
+
+  for(y = 0 ; y < height ; ++y) {
+    for(x = 0 ; x < width ; ++x) {
+      float sum = 0.0f ;
+      for(j = -1 ; j <= 1 ; ++j) {
+	int yj = MIN(MAX(y + j, 0), height - 1) ;
+	for(i = -1 ; i <= 1 ; ++i) {
+	  int xi = MIN(MAX(x + i, 0), width - 1) ;
+	  sum += coefs[j+1][i+1] * src[yj * width + xi] ;
+	}
+      }
+      dst[y * width + x] = sum ;
+    }
+  }
+}
+
+
+//##################################################################
+// computeForceScheduling
+//
+// Reference function for the kernel
+//##################################################################
+static void
+computeForceScheduling (float *dst, float const *src, unsigned char const *mask,
+			int width, int height)
+{
+  float *c1 = malloc(sizeof(float)*width*height) ;
+  float *c2 = malloc(sizeof(float)*width*height) ;
+  int i ;
+
+  smooth(c1, src, width, height) ;
+  smooth(c2, c1, width, height) ;
+  smooth(c1, c2, width, height) ;
+  for(i = 0 ; i < width * height ; ++i) {
+    dst[i] = c1[i] * (mask[i] * (1.0f/255.0f)) ;
+  }
+
+  free(c1) ;
+  free(c2) ;
+}
+
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      OPENCL_PLT_VENDOR=argv[i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      IMAGE_X=atoi(argv[i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      IMAGE_Y=atoi(argv[i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      NB_WI=atoi(argv[i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      NB_WG0=atoi(argv[i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      if (i==argc-1) {
+	fprintf(stderr,"error : missing number after option '%s'\n",argv[i]);
+	exit(1);
+      }
+      i++;
+      NB_WG1=atoi(argv[i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+}
+
+
+#define PRINT_SIZE 10
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+  
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("\n");
+
+  
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+  
+  /* Get the OpenCL platform and print some infos */
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  
+  /* Pickup the first available devices */
+  cl_device_id device = oclGetFirstDevice(platform);
+  
+  /* Create context */
+  cl_context context = oclCreateContext(platform,device);
+  
+  /* Create a command Queue  */
+  cl_command_queue commandQueue = oclCreateCommandQueue(context, device);
+  
+  /* Create and compile the CL program */
+#ifdef AHEAD_OF_TIME
+  /* create a CL program using the kernel binary */
+  cl_program program = createForceSchedulingProgramFromBinary(context, device);
+#else
+  /* create a CL program using the kernel source */
+  cl_program program = createForceSchedulingProgramFromSource(context, device, NULL);
+#endif
+
+  
+  //==================================================================
+  // Create the kernel, configure it and prepare input data
+  //==================================================================
+
+  /* Create an input/output buffers mapped in the host address space */
+  cl_mem inputBuffer,maskBuffer,outputBuffer;
+  DATA_TYPE *input = oclCreateMapBuffer(context,commandQueue,CL_MEM_READ_ONLY,CL_MAP_WRITE,sizeof(DATA_TYPE),IMAGE_X*IMAGE_Y,&inputBuffer);
+  MASK_TYPE *mask = oclCreateMapBuffer(context,commandQueue,CL_MEM_READ_ONLY,CL_MAP_WRITE,sizeof(MASK_TYPE),IMAGE_X*IMAGE_Y,&maskBuffer);
+  DATA_TYPE *output = oclCreateMapBuffer(context,commandQueue,CL_MEM_READ_WRITE,CL_MAP_READ|CL_MAP_WRITE,sizeof(DATA_TYPE),IMAGE_X*IMAGE_Y,&outputBuffer);
+  DATA_TYPE *check_output = malloc(sizeof(DATA_TYPE)*IMAGE_Y*IMAGE_X);
+  
+  /* For using arrays instead of pointers */
+  DATA_TYPE (*in)[IMAGE_Y][IMAGE_X]  	      =(DATA_TYPE (*)[IMAGE_Y][IMAGE_X])input;
+  MASK_TYPE (*msk)[IMAGE_Y][IMAGE_X]  	      =(MASK_TYPE (*)[IMAGE_Y][IMAGE_X])mask;
+  DATA_TYPE (*out)[IMAGE_Y][IMAGE_X]	      =(DATA_TYPE (*)[IMAGE_Y][IMAGE_X])output;
+  DATA_TYPE (*check_out)[IMAGE_Y][IMAGE_X]    =(DATA_TYPE (*)[IMAGE_Y][IMAGE_X])check_output;
+  
+  /* Initializes input images */
+  int x,y;
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      (*in)[y][x] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+      (*msk)[y][x] = rand()&0xff;
+    }
+  }
+
+  /* Initializes output images */
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      (*out)[y][x] = (*check_out)[y][x] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+    }
+  }
+
+  /* Get a kernel object */
+  cl_kernel kernel = createKernel_ForceScheduling(program);
+  
+  /* Set Kernel arguments */
+  setKernelArgs_ForceScheduling(kernel,
+				NB_WG0, NB_WG1, NB_WI,
+				outputBuffer,
+				IMAGE_X,
+				IMAGE_Y,
+				inputBuffer,
+				maskBuffer
+				);
+
+
+
+  //==================================================================
+  // Execute the kernel on the device
+  //==================================================================
+
+  size_t globalThreads[2]= {NB_WI*NB_WG0,NB_WG1};
+  size_t localThreads[2] = {NB_WI,1};
+
+  cl_int status;
+
+  /* Check intrinsec kernel and NDRange copatibility with the device */
+  checkNDRangeWithDevice(device,kernel,2,globalThreads,localThreads);
+
+  /* Synchronize buffers between host and device*/
+  cl_event unmap_event[3];
+  status=clEnqueueUnmapMemObject(commandQueue,inputBuffer,input,0,NULL,&unmap_event[0]);
+  oclCheckStatus(status,"clEnqueueUnmapMemObject input failed.");
+  status=clEnqueueUnmapMemObject(commandQueue,maskBuffer,mask,0,NULL,&unmap_event[1]);
+  oclCheckStatus(status,"clEnqueueUnmapMemObject mask failed.");
+  status=clEnqueueUnmapMemObject(commandQueue,outputBuffer,output,0,NULL,&unmap_event[2]);
+  oclCheckStatus(status,"clEnqueueUnmapMemObject output failed.");
+  status = clWaitForEvents(3,&unmap_event[0]);
+
+
+  /* Enqueue a kernel run call */
+  cl_event event;
+  {
+    struct timeval start, end;
+    gettimeofday(&start, NULL);
+    
+    status = clEnqueueNDRangeKernel(commandQueue,
+				    kernel,
+				    2,  // dimensions
+				    NULL,  // no offset
+				    globalThreads,
+				    localThreads,
+				    3,&unmap_event[0],
+				    &event);
+    oclCheckStatus(status,"clEnqueueNDRangeKernel failed.");
+    status = clWaitForEvents(1, &event);
+    
+    gettimeofday(&end, NULL);
+    printf("** OpenCL 'ForceScheduling' has completed. ** \n\n");
+    printf("OpenCL Kernel execution time: %ld (microseconds)\n", ((end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec)));
+  }
+ 
+  /* Get back the output buffer from the device memory (blocking read) */
+  output = clEnqueueMapBuffer(commandQueue,outputBuffer,CL_TRUE,CL_MAP_READ,0,sizeof(DATA_TYPE)*IMAGE_X*IMAGE_Y,1,&event,NULL,&status);
+  oclCheckStatus(status,"clEnqueueMapBuffer output failed.");
+
+
+  //==================================================================
+  // Check
+  //==================================================================
+
+  {
+    input= clEnqueueMapBuffer(commandQueue,inputBuffer,CL_TRUE,CL_MAP_READ,0,sizeof(DATA_TYPE)*IMAGE_X*IMAGE_Y,0,NULL,NULL,&status);
+    oclCheckStatus(status,"clEnqueueMapBuffer input failed.");
+    mask= clEnqueueMapBuffer(commandQueue,maskBuffer,CL_TRUE,CL_MAP_READ,0,sizeof(MASK_TYPE)*IMAGE_X*IMAGE_Y,0,NULL,NULL,&status);
+    oclCheckStatus(status,"clEnqueueMapBuffer mask failed.");
+    
+    struct timeval start, end;
+    gettimeofday(&start, NULL);
+    
+    // Compute result from the reference code
+    computeForceScheduling((float *)check_output,(float *)input,mask,
+			   IMAGE_X,IMAGE_Y);
+    
+    gettimeofday(&end, NULL);
+    printf("Reference code execution time: %ld (microseconds)\n", ((end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec)));
+  }
+
+  in =(DATA_TYPE (*)[IMAGE_Y][IMAGE_X])input;
+  out =(DATA_TYPE (*)[IMAGE_Y][IMAGE_X])output;
+
+  // Check results (relative precision, the values reach a few 10^5)
+  int nok=0;
+  for(y=0; y<IMAGE_Y ;y++) {
+    for(x=0; x<IMAGE_X ;x++) {
+      float diff=(*out)[y][x]-(*check_out)[y][x];
+      if ( ABS(diff) > PRECISION*MAX(1.0f,ABS((*check_out)[y][x])) ) {
+	if (!nok) {
+          printf("First error : [%d, %d]  %f <> %f\n",x,y,(*out)[y][x],(*check_out)[y][x] );
+        }
+        nok=1;
+      }
+    }
+  }
+  
+  if (nok) {
+    printf("ERROR on ForceScheduling filter verification !\n");
+    // Input Matrix
+    printf("\n");
+    printf("Input sample \n");
+    for(y=0;y<MIN(IMAGE_Y,PRINT_SIZE);y++) {
+      for(x=0;x<MIN(IMAGE_X,PRINT_SIZE);x++) {
+	printf(" %.2f\t",(*in)[y][x]);
+      }
+      printf("\n");
+    }
+    printf("\n");
+    
+    // Out Matrix 
+    printf("Output sample : \n");
+    for(y=0;y<MIN(IMAGE_Y,PRINT_SIZE);y++) {
+      for(x=0;x<MIN(IMAGE_X,PRINT_SIZE);x++) {
+	printf(" %.2f", (*out)[y][x]);
+      }
+      printf("\n");
+    }
+    printf("\n");
+    
+    // Check Out Matrix 
+    printf("Check output sample : \n");
+    for(y=0;y<MIN(IMAGE_Y,PRINT_SIZE);y++) {
+      for(x=0;x<MIN(IMAGE_X,PRINT_SIZE);x++) {
+	printf(" %.2f", (*check_out)[y][x]);
+      }
+      printf("\n");
+    }
+    printf("\n");
+  }
+  else {
+     printf("ForceScheduling filter completed OK\n");		  
+  }
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  // Release mapped buffer
+  clReleaseMemObject(inputBuffer);
+  clReleaseMemObject(maskBuffer);
+  clReleaseMemObject(outputBuffer);
+  clReleaseEvent(event);
+  clReleaseKernel(kernel);
+  clReleaseProgram(program);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  // Stop the OCL runtime
+#ifdef __P2012__
+  clUnloadRuntime();
+#endif
+
+  if (nok) {
+    return 1;
+  }
+  else {
+    return 0;
+  }
+}
@@ -0,0 +1,61 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#  Common definitions for the tests of the compiler driver. A test
+#  runs the compiler several times in directory $(DRIVER_BUILD_DIR)
+#  and checks its messages and its output files
+##################################################################
+
+PREFIX=@
+ifdef VERBOSE
+PREFIX=
+endif
+
+ifndef TEST_NAME
+$(error TEST_NAME must be specified in the parent makefile)
+endif
+
+SRC_DIR ?= src
+
+ifndef KGCOMPILER 
+KGCOMPILER = kgenc 
+KG_TARGET_DEVICE = cpu
+endif
+
+KGFLAGS ?=
+KG_OPT ?=
+
+ifdef KG_TARGET_DEVICE
+KGFLAGS += --target_device $(KG_TARGET_DEVICE)
+endif
+
+DRIVER_BUILD_DIR = build_$(TEST_NAME)
+KG_DRIVER_CMD = $(KGCOMPILER) $(KGFLAGS) $(KG_OPT)
+
+.PHONY: all run clean cleanall
+
+all:: run
+
+clean::
+	@rm -rf $(DRIVER_BUILD_DIR)
+
+cleanall:: clean
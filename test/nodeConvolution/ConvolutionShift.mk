@@ -0,0 +1,38 @@
+##################################################################
+#  This file is part of KernelGenius.
+#
+#  Copyright (C) 2013 STMicroelectronics
+#
+#  This library is free software; you can redistribute it and/or
+#  modify it under the terms of the GNU Lesser General Public
+#  License as published by the Free Software Foundation; either
+#  version 3 of the License, or (at your option) any later version.
+# 
+#  This program is distributed in the hope that it will be useful, but
+#  WITHOUT ANY WARRANTY; without even the implied warranty of
+#  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+#  Lesser General Public License for more details.
+# 
+#  You should have received a copy of the GNU Lesser General Public
+#  License along with this program; if not, write to the Free
+#  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+#  Boston, MA 02110-1301 USA.
+##################################################################
+
+##################################################################
+#   Test for the Convolution node, unsigned input and power of two coefficients: shifts
+##################################################################
+
+BORDER ?= duplicate
+
+APP_NAME = Convolution
+KG_SOURCE = Convolution
+PROGRAM_NAME = Convolution
+
+KGFLAGS = -DCOEF_FILE="\"coefficientsPow2.h\"" -DDATA_UINT -DBORDER=$(BORDER)  
+HOST_CFLAGS = -DCOEF_FILE="\"coefficientsPow2.h\"" -DDATA_UINT -O2 -g
+
+RUN_ARGS = -border $(BORDER)
+
+
+include $(KERNELGENIUS_DIR)/test/make/common.mk
@@ -0,0 +1,11 @@
+#define DIM0_MIN -2
+#define DIM0_MAX 2
+#define DIM1_MIN -2
+#define DIM1_MAX 2
+
+#define COEFS \
+  {1., 2., 3., 2., 1.},      \
+  {2., 4., 6., 4., 2.},      \
+  {3., 6., -9., 6., 3.},     \
+  {-2., -4., -6., -4., -2.}, \
+  {1., 2., 3., 2., 1.}
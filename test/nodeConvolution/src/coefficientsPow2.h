@@ -0,0 +1,11 @@
+#define DIM0_MIN -2
+#define DIM0_MAX 2
+#define DIM1_MIN -2
+#define DIM1_MAX 2
+
+#define COEFS \
+  {1, 4, 8, 4, 1},      \
+  {4, 16, 32, 16, 4},   \
+  {8, 32, 64, 32, 8},   \
+  {4, 16, 3, 16, 4},    \
+  {1, 4, 8, 4, 1}
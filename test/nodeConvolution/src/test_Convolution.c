@@ -41,7 +41,10 @@
 
 static char * OPENCL_PLT_VENDOR = NULL;
 
-#ifdef DATA_INT
+#if defined(DATA_UINT)
+#define DATA_INT
+#define DATA_TYPE cl_uint
+#elif defined(DATA_INT)
 #define DATA_TYPE cl_int
 #else
 #define DATA_TYPE cl_float
@@ -365,7 +368,11 @@ int main(int argc, char * argv[]) {
   int x,y;
   for(y=0;y<IMAGE_Y;y++) {
     for(x=0;x<IMAGE_X;x++) {
+#ifdef DATA_UINT
+      (*in)[y][x] = rand()&0x3f;
+#else
       (*in)[y][x] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+#endif
     }
   }
 
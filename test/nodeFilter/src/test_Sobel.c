@@ -280,7 +280,12 @@ int main(int argc, char * argv[]) {
     break;
   }
   printf("\n");
+#ifdef KG_SOBEL3X3_NBWI
+  printf("  - NDRange fitting the local memory: slices of %d grains, %d work-items, %d work-groups\n",
+	 KG_SOBEL3X3_SLICE_WIDTH,KG_SOBEL3X3_NBWI,KG_SOBEL3X3_NBWG);
+#else
   printf("  - Nb work-items per work-group: %d\n",NB_WI);
+#endif
   printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
   printf("\n");
 
@@ -418,6 +423,17 @@ int main(int argc, char * argv[]) {
     struct timeval start, end;
     gettimeofday(&start, NULL);
     
+#ifdef KG_SOBEL3X3_NBWI
+    /* NDRange chosen by the compiler (--auto_fit) */
+    run_Sobel3x3_auto(commandQueue, program,
+		      outputBuffer,
+		      IMAGE_X,
+		      IMAGE_Y,
+		      inputBuffer
+		      );
+    status = clEnqueueMarker(commandQueue,&event);
+    oclCheckStatus(status,"clEnqueueMarker failed.");
+#else
     status = clEnqueueNDRangeKernel(commandQueue,
 				    kernel,
 				    2,  // dimensions
@@ -428,6 +444,7 @@ int main(int argc, char * argv[]) {
 				    2,&unmap_event[0],
 				    &event);
     oclCheckStatus(status,"clEnqueueNDRangeKernel failed.");
+#endif
     status = clWaitForEvents(1, &event);
     
     gettimeofday(&end, NULL);
@@ -0,0 +1,377 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of the device buffer pool of the runtime */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <Pipeline.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+#define PRECISION 0.01
+#define ABS(a) ((a)<0?-(a):(a))
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+/* Number of frames processed with pooled buffers */
+#define NB_FRAMES 4
+
+static int nok=0;
+#define CHECK(cond,message) if (!(cond)) { printf("ERROR: %s\n",message); nok=1; }
+
+// Reference code, duplicate border
+#define ELEM(t,y,x) ((*t)[(y)<0?0:(((y)>=IMAGE_Y)?IMAGE_Y-1:(y))][(x)<0?0:(((x)>=IMAGE_X)?IMAGE_X-1:(x))])
+
+void computeGx(float *output, float *input, int IMAGE_X, int IMAGE_Y) {
+  int x,y;
+  float (*out)[IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])output;
+  float (*in) [IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])input;
+
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      (*out)[y][x] = -ELEM(in,y-1,x-1) + ELEM(in,y-1,x+1)
+	-2.*ELEM(in,y,x-1) + 2.*ELEM(in,y,x+1)
+	-ELEM(in,y+1,x-1) + ELEM(in,y+1,x+1);
+    }
+  }
+}
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if (i==argc-1) {
+      fprintf(stderr,"error : missing value after option '%s'\n",argv[i]);
+      exit(1);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      OPENCL_PLT_VENDOR=argv[++i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      IMAGE_X=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      IMAGE_Y=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      NB_WI=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      NB_WG0=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      NB_WG1=atoi(argv[++i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+}
+
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("  - Nb frames: %d\n",NB_FRAMES);
+  printf("\n");
+
+
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  cl_device_id device = oclGetFirstDevice(platform);
+  cl_context context = oclCreateContext(platform,device);
+  cl_command_queue commandQueue = oclCreateCommandQueue(context, device);
+
+#ifdef AHEAD_OF_TIME
+  cl_program program = createPipelineProgramFromBinary(context, device);
+#else
+  cl_program program = createPipelineProgramFromSource(context, device, NULL);
+#endif
+
+  cl_int status;
+  oclPooledBuffer *a, *b, *c;
+  cl_mem mem;
+
+
+  //==================================================================
+  // Size classes
+  //==================================================================
+
+  {
+    /* Steps of an eighth of the next power of two, 4 KB at least */
+    static const size_t sizes[][2] = {
+      {1, 4096}, {4096, 4096}, {4097, 5120}, {5120, 5120}, {5121, 6144},
+      {8192, 8192}, {9000, 10240}, {100000, 114688}, {1048577, 1310720}
+    };
+    oclBufferPool *pool=oclCreateBufferPool(context,commandQueue,0);
+    size_t total=0;
+    int i;
+    for(i=0;i<sizeof(sizes)/sizeof(sizes[0]);i++) {
+      a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,sizes[i][0]);
+      if (a->size!=sizes[i][1]) {
+	printf("ERROR: buffer of %lu bytes for %lu requested, expecting %lu\n",
+	       (unsigned long)a->size,(unsigned long)sizes[i][0],(unsigned long)sizes[i][1]);
+	nok=1;
+      }
+      total+=a->size;
+    }
+    CHECK(oclGetBufferPoolSize(pool)==total,"pool size is not the size of its acquired buffers");
+    oclReleaseBufferPool(pool);
+    printf("-> Size classes checked\n");
+  }
+
+
+  //==================================================================
+  // Reuse
+  //==================================================================
+
+  {
+    oclBufferPool *pool=oclCreateBufferPool(context,commandQueue,0);
+
+    /* Same size class and flags */
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,5000);
+    mem=a->mem;
+    oclReleasePooledBuffer(pool,a,NULL);
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,4500);
+    CHECK(a->mem==mem,"released buffer not reused for the same size class");
+
+    /* Other size class, other flags */
+    b=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,6000);
+    CHECK(b->mem!=mem,"buffer reused for another size class");
+    oclReleasePooledBuffer(pool,a,NULL);
+    c=oclAcquireBuffer(pool,CL_MEM_READ_ONLY,5000);
+    CHECK(c->mem!=mem,"buffer reused with other flags");
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,5000);
+    CHECK(a->mem==mem,"released buffer not reused after an acquisition with other flags");
+    CHECK(oclGetBufferPoolSize(pool)==5120+6144+5120,"wrong pool size after reuse");
+    oclReleasePooledBuffer(pool,a,NULL);
+    oclReleasePooledBuffer(pool,b,NULL);
+    oclReleasePooledBuffer(pool,c,NULL);
+
+    /* Mapped buffers keep their host pointer */
+    a=oclAcquireMapBuffer(pool,CL_MEM_READ_WRITE,CL_MAP_READ|CL_MAP_WRITE,5000);
+    CHECK(a->host!=NULL,"mapped buffer without host pointer");
+    CHECK(a->mem!=mem,"device buffer reused as a mapped buffer");
+    void *host=a->host;
+    mem=a->mem;
+    ((char *)host)[4999]=42;
+    oclReleasePooledBuffer(pool,a,NULL);
+    a=oclAcquireMapBuffer(pool,CL_MEM_READ_WRITE,CL_MAP_READ|CL_MAP_WRITE,5000);
+    CHECK((a->mem==mem) && (a->host==host) && (((char *)host)[4999]==42),
+	  "mapped buffer not reused with its host pointer");
+    oclReleasePooledBuffer(pool,a,NULL);
+
+    /* A buffer released with an event is only reused once it is complete */
+    cl_event event=clCreateUserEvent(context,&status);
+    oclCheckStatus(status,"clCreateUserEvent failed.");
+    a=oclAcquireBuffer(pool,CL_MEM_WRITE_ONLY,20000);
+    mem=a->mem;
+    oclReleasePooledBuffer(pool,a,event);
+    b=oclAcquireBuffer(pool,CL_MEM_WRITE_ONLY,20000);
+    CHECK(b->mem!=mem,"buffer reused before the completion of its event");
+    oclReleasePooledBuffer(pool,b,NULL);
+    oclTrimBufferPool(pool,0);
+    CHECK(oclGetBufferPoolSize(pool)==20480,"buffer freed before the completion of its event");
+    status=clSetUserEventStatus(event,CL_COMPLETE);
+    oclCheckStatus(status,"clSetUserEventStatus failed.");
+    clReleaseEvent(event);
+    a=oclAcquireBuffer(pool,CL_MEM_WRITE_ONLY,20000);
+    CHECK(a->mem==mem,"buffer not reused after the completion of its event");
+    oclReleasePooledBuffer(pool,a,NULL);
+
+    oclReleaseBufferPool(pool);
+    printf("-> Reuse checked\n");
+  }
+
+
+  //==================================================================
+  // Budget trimming
+  //==================================================================
+
+  {
+    /* Explicit trimming, from the least recently used released buffer */
+    oclBufferPool *pool=oclCreateBufferPool(context,commandQueue,0);
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    b=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    c=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    mem=b->mem;
+    oclReleasePooledBuffer(pool,a,NULL);
+    oclReleasePooledBuffer(pool,b,NULL);
+    oclTrimBufferPool(pool,2*8192);
+    CHECK(oclGetBufferPoolSize(pool)==2*8192,"wrong pool size after trimming");
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    CHECK(a->mem==mem,"most recently used buffer not kept by trimming");
+    oclTrimBufferPool(pool,0);
+    CHECK(oclGetBufferPoolSize(pool)==2*8192,"acquired buffers freed by trimming");
+    oclReleasePooledBuffer(pool,a,NULL);
+    oclReleasePooledBuffer(pool,c,NULL);
+    oclTrimBufferPool(pool,0);
+    CHECK(oclGetBufferPoolSize(pool)==0,"released buffers kept by trimming");
+    oclReleaseBufferPool(pool);
+
+    /* Pool limited to three buffers of 8 KB */
+    pool=oclCreateBufferPool(context,commandQueue,3*8192);
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    b=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    c=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    mem=c->mem;
+    oclReleasePooledBuffer(pool,a,NULL);
+    oclReleasePooledBuffer(pool,b,NULL);
+    oclReleasePooledBuffer(pool,c,NULL);
+    CHECK(oclGetBufferPoolSize(pool)==3*8192,"released buffers freed within the budget");
+    a=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,16384);
+    CHECK(oclGetBufferPoolSize(pool)==16384+8192,"budget exceeded by an acquisition");
+    b=oclAcquireBuffer(pool,CL_MEM_READ_WRITE,8192);
+    CHECK(b->mem==mem,"most recently used buffer not kept within the budget");
+    oclReleasePooledBuffer(pool,a,NULL);
+    oclReleasePooledBuffer(pool,b,NULL);
+    oclReleaseBufferPool(pool);
+    printf("-> Budget trimming checked\n");
+  }
+
+
+  //==================================================================
+  // Kernel executions on pooled buffers
+  //==================================================================
+
+  {
+    size_t size=sizeof(float)*IMAGE_X*IMAGE_Y;
+    float *input=malloc(size);
+    float *output=malloc(size);
+    float *check_output=malloc(size);
+    oclBufferPool *pool=oclCreateBufferPool(context,commandQueue,0);
+    Sobel3x3_Gx_handle *handle=createHandle_Sobel3x3_Gx(program);
+    size_t poolSize=0;
+    int frame, i;
+
+    for(frame=0;frame<NB_FRAMES;frame++) {
+      for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+	input[i] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+      }
+      oclPooledBuffer *in=oclAcquireBuffer(pool,CL_MEM_READ_ONLY,size);
+      oclPooledBuffer *out=oclAcquireBuffer(pool,CL_MEM_WRITE_ONLY,size);
+      status=clEnqueueWriteBuffer(commandQueue,in->mem,CL_TRUE,0,size,input,0,NULL,NULL);
+      oclCheckStatus(status,"clEnqueueWriteBuffer input failed.");
+
+      cl_event event=run_Sobel3x3_Gx_async_pooled(commandQueue, handle,
+						  NB_WG0, NB_WG1, NB_WI,
+						  out, IMAGE_X, IMAGE_Y, in,
+						  0, NULL);
+      status=clEnqueueReadBuffer(commandQueue,out->mem,CL_TRUE,0,size,output,1,&event,NULL);
+      oclCheckStatus(status,"clEnqueueReadBuffer output failed.");
+      oclReleasePooledBuffer(pool,in,event);
+      oclReleasePooledBuffer(pool,out,event);
+      clReleaseEvent(event);
+
+      computeGx(check_output,input,IMAGE_X,IMAGE_Y);
+      for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+	float diff=output[i]-check_output[i];
+	if (ABS(diff) > PRECISION) {
+	  printf("ERROR: first error of frame %d : [%d, %d]  %f <> %f\n",
+		 frame,i%IMAGE_X,i/IMAGE_X,output[i],check_output[i]);
+	  nok=1;
+	  break;
+	}
+      }
+      if (frame==0) {
+	poolSize=oclGetBufferPoolSize(pool);
+      }
+    }
+    CHECK(oclGetBufferPoolSize(pool)==poolSize,"pooled buffers not reused by the next frames");
+
+    releaseHandle_Sobel3x3_Gx(handle);
+    oclReleaseBufferPool(pool);
+    free(input);
+    free(output);
+    free(check_output);
+    printf("-> Kernel executions on pooled buffers checked\n");
+  }
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  clReleaseProgram(program);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  if (nok) {
+    printf("ERROR on buffer pool verification !\n");
+    return 1;
+  }
+  else {
+    printf("Buffer pool completed OK\n");
+    return 0;
+  }
+}
@@ -0,0 +1,360 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of the kernel graph, with dependencies inferred from
+   the buffers read and written by the kernels */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <Pipeline.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+#define PRECISION 0.01
+#define ABS(a) ((a)<0?-(a):(a))
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+static int nok=0;
+#define CHECK(cond,message) if (!(cond)) { printf("ERROR: %s\n",message); nok=1; }
+
+// Reference code, duplicate border
+#define ELEM(t,y,x) ((*t)[(y)<0?0:(((y)>=IMAGE_Y)?IMAGE_Y-1:(y))][(x)<0?0:(((x)>=IMAGE_X)?IMAGE_X-1:(x))])
+
+void computeSobel3x3(float *output, float *input, int IMAGE_X, int IMAGE_Y) {
+  int x,y;
+  float (*out)[IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])output;
+  float (*in) [IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])input;
+
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      float gx= -ELEM(in,y-1,x-1) + ELEM(in,y-1,x+1)
+	-2.*ELEM(in,y,x-1) + 2.*ELEM(in,y,x+1)
+	-ELEM(in,y+1,x-1) + ELEM(in,y+1,x+1);
+      float gy= -ELEM(in,y-1,x-1) - 2.*ELEM(in,y-1,x) - ELEM(in,y-1,x+1)
+	+ELEM(in,y+1,x-1) + 2.*ELEM(in,y+1,x) + ELEM(in,y+1,x+1);
+      (*out)[y][x] = sqrt( gx*gx + gy*gy );
+    }
+  }
+}
+
+
+//==================================================================
+// Wait lists of the graph
+//==================================================================
+
+/* Check that the wait list of a command is the 'nb' events of 'expected',
+   in any order */
+void checkWaitList(oclGraph *graph, const char *command,
+		   cl_uint nb_inputs, const cl_mem *inputs,
+		   cl_uint nb_outputs, const cl_mem *outputs,
+		   cl_uint nb, const cl_event *expected) {
+  const cl_event *wait_list;
+  cl_uint nb_wait=oclGetGraphWaitList(graph,nb_inputs,inputs,nb_outputs,outputs,&wait_list);
+  int ok=(nb_wait==nb) && ((nb!=0) || (wait_list==NULL));
+  cl_uint i, j;
+  for(i=0;ok && (i<nb);i++) {
+    for(j=0;(j<nb_wait) && (wait_list[j]!=expected[i]);j++);
+    ok=(j<nb_wait);
+  }
+  if (!ok) {
+    printf("ERROR: wrong wait list for %s (%u events, expecting %u)\n",command,nb_wait,nb);
+    nok=1;
+  }
+}
+
+/* Add a command to the graph, with a user event standing for it */
+cl_event addCommand(oclGraph *graph, cl_context context,
+		    cl_uint nb_inputs, const cl_mem *inputs,
+		    cl_uint nb_outputs, const cl_mem *outputs) {
+  cl_int status;
+  cl_event event=clCreateUserEvent(context,&status);
+  oclCheckStatus(status,"clCreateUserEvent failed.");
+  oclAddGraphCommand(graph,event,nb_inputs,inputs,nb_outputs,outputs);
+  return event;
+}
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if (i==argc-1) {
+      fprintf(stderr,"error : missing value after option '%s'\n",argv[i]);
+      exit(1);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      OPENCL_PLT_VENDOR=argv[++i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      IMAGE_X=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      IMAGE_Y=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      NB_WI=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      NB_WG0=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      NB_WG1=atoi(argv[++i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+}
+
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("\n");
+
+
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  cl_device_id device = oclGetFirstDevice(platform);
+  cl_context context = oclCreateContext(platform,device);
+  /* Kernels of the graph are only ordered by their dependencies */
+  cl_command_queue commandQueue = oclCreateCommandQueueOOO(context, device);
+
+#ifdef AHEAD_OF_TIME
+  cl_program program = createPipelineProgramFromBinary(context, device);
+#else
+  cl_program program = createPipelineProgramFromSource(context, device, NULL);
+#endif
+
+  cl_int status;
+  size_t size=sizeof(float)*IMAGE_X*IMAGE_Y;
+  int i;
+
+
+  //==================================================================
+  // Dependency inference
+  //==================================================================
+
+  {
+    cl_mem a, b, c, d;
+    a=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer failed.");
+    b=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer failed.");
+    c=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer failed.");
+    d=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer failed.");
+
+    oclGraph *graph=oclCreateGraph();
+    cl_event e[8];
+    int nb_events=0;
+
+    /* Gx and Gy reading 'a': independent */
+    checkWaitList(graph,"the first command",1,&a,1,&b,0,NULL);
+    e[0]=addCommand(graph,context,1,&a,1,&b);
+    checkWaitList(graph,"a command reading the same input",1,&a,1,&c,0,NULL);
+    e[1]=addCommand(graph,context,1,&a,1,&c);
+
+    /* Merge: read after write of 'b' and 'c' */
+    cl_mem bc[2]={b,c};
+    checkWaitList(graph,"a command reading two outputs",2,bc,1,&d,2,&e[0]);
+    e[2]=addCommand(graph,context,2,bc,1,&d);
+
+    /* Write after read of 'b' and write after write of 'b' */
+    checkWaitList(graph,"a command writing a read buffer",1,&a,1,&b,2,(cl_event[]){e[0],e[2]});
+    e[3]=addCommand(graph,context,1,&a,1,&b);
+
+    /* Write after the reads of 'a' since its last write, which is none */
+    checkWaitList(graph,"a command writing an input buffer",0,NULL,1,&a,3,(cl_event[]){e[0],e[1],e[3]});
+    e[4]=addCommand(graph,context,0,NULL,1,&a);
+
+    /* Read of 'a', after its last write only */
+    checkWaitList(graph,"a command reading a written input",1,&a,1,&c,3,(cl_event[]){e[4],e[1],e[2]});
+    e[5]=addCommand(graph,context,1,&a,1,&c);
+
+    /* Write after write of 'd', whose readers were reset by the write */
+    checkWaitList(graph,"a command writing an output",1,&b,1,&d,2,(cl_event[]){e[3],e[2]});
+    e[6]=addCommand(graph,context,1,&b,1,&d);
+
+    /* A command reading and writing the same buffer */
+    checkWaitList(graph,"a command reading and writing a buffer",1,&d,1,&d,1,&e[6]);
+    e[7]=addCommand(graph,context,1,&d,1,&d);
+    nb_events=8;
+
+    /* The graph is empty once finished */
+    for(i=0;i<nb_events;i++) {
+      status=clSetUserEventStatus(e[i],CL_COMPLETE);
+      oclCheckStatus(status,"clSetUserEventStatus failed.");
+    }
+    oclFinishGraph(graph);
+    checkWaitList(graph,"a command of a finished graph",2,bc,1,&d,0,NULL);
+
+    oclReleaseGraph(graph);
+    clReleaseMemObject(a);
+    clReleaseMemObject(b);
+    clReleaseMemObject(c);
+    clReleaseMemObject(d);
+    printf("-> Dependency inference checked\n");
+  }
+
+
+  //==================================================================
+  // Kernel graph of the program
+  //==================================================================
+
+  {
+    float *input[2], *output[2];
+    float *check_output=malloc(size);
+    cl_mem inputBuffer[2], outputBuffer[2], gx, gy;
+    int frame;
+
+    for(frame=0;frame<2;frame++) {
+      input[frame]=malloc(size);
+      output[frame]=malloc(size);
+      for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+	input[frame][i] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+      }
+      inputBuffer[frame]=clCreateBuffer(context,CL_MEM_READ_ONLY|CL_MEM_COPY_HOST_PTR,size,input[frame],&status);
+      oclCheckStatus(status,"clCreateBuffer input failed.");
+      outputBuffer[frame]=clCreateBuffer(context,CL_MEM_WRITE_ONLY,size,NULL,&status);
+      oclCheckStatus(status,"clCreateBuffer output failed.");
+    }
+    gx=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer gx failed.");
+    gy=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer gy failed.");
+
+    Pipeline_graph *graph=createGraph_Pipeline(commandQueue, program);
+    int run;
+    for(run=0;run<2;run++) {
+      /* The two frames share the intermediate buffers: the second one must
+	 wait for the merge of the first one before overwriting them */
+      for(frame=0;frame<2;frame++) {
+	int in=(frame+run)%2;
+	graph_Pipeline_Sobel3x3_Gx(graph, NB_WG0, NB_WG1, NB_WI,
+				   gx, IMAGE_X, IMAGE_Y, inputBuffer[in]);
+	graph_Pipeline_Sobel3x3_Gy(graph, NB_WG0, NB_WG1, NB_WI,
+				   gy, IMAGE_X, IMAGE_Y, inputBuffer[in]);
+	graph_Pipeline_Sobel3x3_Merge(graph, NB_WG0, NB_WG1, NB_WI,
+				      outputBuffer[frame], IMAGE_X, IMAGE_Y, gx, gy);
+      }
+      finishGraph_Pipeline(graph);
+
+      for(frame=0;frame<2;frame++) {
+	int in=(frame+run)%2;
+	status=clEnqueueReadBuffer(commandQueue,outputBuffer[frame],CL_TRUE,0,size,output[frame],0,NULL,NULL);
+	oclCheckStatus(status,"clEnqueueReadBuffer output failed.");
+	computeSobel3x3(check_output,input[in],IMAGE_X,IMAGE_Y);
+	for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+	  float diff=output[frame][i]-check_output[i];
+	  if (ABS(diff) > PRECISION) {
+	    printf("ERROR: first error of frame %d, run %d : [%d, %d]  %f <> %f\n",
+		   frame,run,i%IMAGE_X,i/IMAGE_X,output[frame][i],check_output[i]);
+	    nok=1;
+	    break;
+	  }
+	}
+      }
+    }
+    releaseGraph_Pipeline(graph);
+
+    for(frame=0;frame<2;frame++) {
+      clReleaseMemObject(inputBuffer[frame]);
+      clReleaseMemObject(outputBuffer[frame]);
+      free(input[frame]);
+      free(output[frame]);
+    }
+    clReleaseMemObject(gx);
+    clReleaseMemObject(gy);
+    free(check_output);
+    printf("-> Kernel graph of the program checked\n");
+  }
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  clReleaseProgram(program);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  if (nok) {
+    printf("ERROR on graph verification !\n");
+    return 1;
+  }
+  else {
+    printf("Graph completed OK\n");
+    return 0;
+  }
+}
@@ -0,0 +1,412 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of the kernel profiling of host wrappers generated with
+   the --profile option, and of its JSON report */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <ctype.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <Pipeline.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+/* Name needing JSON escapes */
+#define ODD_NAME "quote\"back\\slash\ttab"
+#define ODD_NAME_JSON "quote\\\"back\\\\slash\\u0009tab"
+
+static int nok=0;
+#define CHECK(cond,message) if (!(cond)) { printf("ERROR: %s\n",message); nok=1; }
+
+
+//==================================================================
+// JSON report
+//==================================================================
+
+/* Syntax check of a JSON value, returns the end of the value or NULL */
+static const char *skipSpaces(const char *s) {
+  while (isspace((unsigned char)*s)) {
+    s++;
+  }
+  return s;
+}
+
+static const char *parseValue(const char *s);
+
+static const char *parseString(const char *s) {
+  if (*s!='"') {
+    return NULL;
+  }
+  for(s++;*s!='"';s++) {
+    if (((unsigned char)*s<0x20)) {
+      return NULL;
+    }
+    if (*s=='\\') {
+      s++;
+      if (*s=='u') {
+	int i;
+	for(i=0;i<4;i++) {
+	  if (!isxdigit((unsigned char)*++s)) {
+	    return NULL;
+	  }
+	}
+      }
+      else if (strchr("\"\\/bfnrt",*s)==NULL) {
+	return NULL;
+      }
+    }
+  }
+  return s+1;
+}
+
+static const char *parseSequence(const char *s, char end, int members) {
+  s=skipSpaces(s+1);
+  if (*s==end) {
+    return s+1;
+  }
+  while (1) {
+    if (members) {
+      s=parseString(s);
+      if (s==NULL) {
+	return NULL;
+      }
+      s=skipSpaces(s);
+      if (*s!=':') {
+	return NULL;
+      }
+      s=skipSpaces(s+1);
+    }
+    s=parseValue(s);
+    if (s==NULL) {
+      return NULL;
+    }
+    s=skipSpaces(s);
+    if (*s==end) {
+      return s+1;
+    }
+    if (*s!=',') {
+      return NULL;
+    }
+    s=skipSpaces(s+1);
+  }
+}
+
+static const char *parseValue(const char *s) {
+  s=skipSpaces(s);
+  if (*s=='{') {
+    return parseSequence(s,'}',1);
+  }
+  if (*s=='[') {
+    return parseSequence(s,']',0);
+  }
+  if (*s=='"') {
+    return parseString(s);
+  }
+  if ((*s=='-') || isdigit((unsigned char)*s)) {
+    char *end;
+    strtod(s,&end);
+    return end;
+  }
+  return NULL;
+}
+
+int isValidJSON(const char *s) {
+  s=parseValue(s);
+  return (s!=NULL) && (*skipSpaces(s)=='\0');
+}
+
+/* Dump the profile in a string */
+char *dumpProfile() {
+  FILE *file=tmpfile();
+  if (file==NULL) {
+    fprintf(stderr,"error : can not create a temporary file\n");
+    exit(1);
+  }
+  oclDumpProfileJSON(file);
+  long size=ftell(file);
+  char *json=calloc(size+1,1);
+  rewind(file);
+  if (fread(json,1,size,file)!=size) {
+    fprintf(stderr,"error : can not read the profile\n");
+    exit(1);
+  }
+  fclose(file);
+  return json;
+}
+
+typedef struct {
+  unsigned long long min, max, p99;
+  double mean;
+} Time;
+
+/* Check the statistics of a kernel in the JSON report */
+void checkKernel(const char *json, const char *name,
+		 unsigned long long count, unsigned long long timed,
+		 unsigned long long bytes) {
+  char key[256];
+  snprintf(key,sizeof(key),"\"name\": \"%s\"",name);
+  const char *s=strstr(json,key);
+  if (s==NULL) {
+    printf("ERROR: kernel '%s' not in the profile\n",name);
+    nok=1;
+    return;
+  }
+  unsigned long long c, t, b;
+  Time exec, latency;
+  s=strstr(s,"\"count\"");
+  if ((s==NULL) || (sscanf(s,"\"count\": %llu,\n \"timed\": %llu,\n \"bytes\": %llu",&c,&t,&b)!=3)) {
+    printf("ERROR: wrong counters of kernel '%s'\n",name);
+    nok=1;
+    return;
+  }
+  if ((c!=count) || (t!=timed) || (b!=bytes)) {
+    printf("ERROR: kernel '%s' counted %llu times (%llu timed, %llu bytes), expecting %llu (%llu timed, %llu bytes)\n",
+	   name,c,t,b,count,timed,bytes);
+    nok=1;
+  }
+  const char *e=strstr(s,"\"exec_ns\"");
+  const char *l=strstr(s,"\"latency_ns\"");
+  if ((e==NULL) || (l==NULL) ||
+      (sscanf(e,"\"exec_ns\": {\"min\": %llu, \"max\": %llu, \"mean\": %lf, \"p99\": %llu}",
+	      &exec.min,&exec.max,&exec.mean,&exec.p99)!=4) ||
+      (sscanf(l,"\"latency_ns\": {\"min\": %llu, \"max\": %llu, \"mean\": %lf, \"p99\": %llu}",
+	      &latency.min,&latency.max,&latency.mean,&latency.p99)!=4) ||
+      (strstr(s,"\"queued_to_submit_ns\"")==NULL) || (strstr(s,"\"submit_to_start_ns\"")==NULL)) {
+    printf("ERROR: wrong times of kernel '%s'\n",name);
+    nok=1;
+    return;
+  }
+  if (timed!=0) {
+    if ((exec.min>exec.mean) || (exec.mean>exec.max) || (exec.p99<exec.min) || (exec.p99>exec.max)) {
+      printf("ERROR: inconsistent execution times of kernel '%s'\n",name);
+      nok=1;
+    }
+    if ((latency.min<exec.min) || (latency.max<exec.max)) {
+      printf("ERROR: latency of kernel '%s' shorter than its execution\n",name);
+      nok=1;
+    }
+  }
+}
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if (i==argc-1) {
+      fprintf(stderr,"error : missing value after option '%s'\n",argv[i]);
+      exit(1);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      OPENCL_PLT_VENDOR=argv[++i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      IMAGE_X=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      IMAGE_Y=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      NB_WI=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      NB_WG0=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      NB_WG1=atoi(argv[++i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+}
+
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("\n");
+
+
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  cl_device_id device = oclGetFirstDevice(platform);
+  cl_context context = oclCreateContext(platform,device);
+  /* Kernel times are only available on the profiling queue */
+  cl_command_queue profilingQueue = createPipelineCommandQueue(context, device, 0);
+  cl_command_queue commandQueue = oclCreateCommandQueue(context, device);
+
+#ifdef AHEAD_OF_TIME
+  cl_program program = createPipelineProgramFromBinary(context, device);
+#else
+  cl_program program = createPipelineProgramFromSource(context, device, NULL);
+#endif
+
+  cl_int status;
+  size_t size=sizeof(float)*IMAGE_X*IMAGE_Y;
+  char *json;
+  int i;
+
+  cl_mem in=clCreateBuffer(context,CL_MEM_READ_ONLY,size,NULL,&status);
+  oclCheckStatus(status,"clCreateBuffer in failed.");
+  cl_mem gx=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+  oclCheckStatus(status,"clCreateBuffer gx failed.");
+  cl_mem gy=clCreateBuffer(context,CL_MEM_READ_WRITE,size,NULL,&status);
+  oclCheckStatus(status,"clCreateBuffer gy failed.");
+  cl_mem out=clCreateBuffer(context,CL_MEM_WRITE_ONLY,size,NULL,&status);
+  oclCheckStatus(status,"clCreateBuffer out failed.");
+
+
+  //==================================================================
+  // Kernel executions
+  //==================================================================
+
+  {
+    /* Blocking launches */
+    for(i=0;i<3;i++) {
+      run_Sobel3x3_Gx(profilingQueue, program, NB_WG0, NB_WG1, NB_WI, gx, IMAGE_X, IMAGE_Y, in);
+    }
+
+    /* Asynchronous launches, chained by their events */
+    Sobel3x3_Gy_handle *handle=createHandle_Sobel3x3_Gy(program);
+    cl_event events[2];
+    for(i=0;i<2;i++) {
+      events[i]=run_Sobel3x3_Gy_async(profilingQueue, handle, NB_WG0, NB_WG1, NB_WI,
+				      gy, IMAGE_X, IMAGE_Y, in, i, (i==0)?NULL:events);
+    }
+
+    /* A launch on a queue without profiling is counted, but not timed */
+    run_Sobel3x3_Merge(profilingQueue, program, NB_WG0, NB_WG1, NB_WI, out, IMAGE_X, IMAGE_Y, gx, gy);
+    run_Sobel3x3_Merge(commandQueue, program, NB_WG0, NB_WG1, NB_WI, out, IMAGE_X, IMAGE_Y, gx, gy);
+
+    /* Kernel name escaped in the report */
+    oclProfileKernel(ODD_NAME, events[1], 1);
+
+    json=dumpProfile();
+    clReleaseEvent(events[0]);
+    clReleaseEvent(events[1]);
+    releaseHandle_Sobel3x3_Gy(handle);
+  }
+
+
+  //==================================================================
+  // Check the report
+  //==================================================================
+
+  printf("%s",json);
+  CHECK(isValidJSON(json),"the profile is not valid JSON");
+  checkKernel(json,"Sobel3x3_Gx",3,3,3*2*size);
+  checkKernel(json,"Sobel3x3_Gy",2,2,2*2*size);
+  checkKernel(json,"Sobel3x3_Merge",2,1,2*3*size);
+  checkKernel(json,ODD_NAME_JSON,1,1,1);
+  free(json);
+  printf("-> Profile report checked\n");
+
+  /* Empty report after a reset */
+  oclResetProfile();
+  json=dumpProfile();
+  CHECK(isValidJSON(json),"the profile is not valid JSON after a reset");
+  CHECK(strstr(json,"\"name\"")==NULL,"kernels in the profile after a reset");
+  free(json);
+
+  /* Recording starts again after a reset */
+  run_Sobel3x3_Gx(profilingQueue, program, NB_WG0, NB_WG1, NB_WI, gx, IMAGE_X, IMAGE_Y, in);
+  json=dumpProfile();
+  CHECK(isValidJSON(json),"the profile is not valid JSON after a new recording");
+  checkKernel(json,"Sobel3x3_Gx",1,1,2*size);
+  CHECK(strstr(json,"Sobel3x3_Gy")==NULL,"kernel not executed since the reset in the profile");
+  free(json);
+  printf("-> Profile reset checked\n");
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  clReleaseMemObject(in);
+  clReleaseMemObject(gx);
+  clReleaseMemObject(gy);
+  clReleaseMemObject(out);
+  clReleaseProgram(program);
+  clReleaseCommandQueue(profilingQueue);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  if (nok) {
+    printf("ERROR on profile verification !\n");
+    return 1;
+  }
+  else {
+    printf("Profile completed OK\n");
+    return 0;
+  }
+}
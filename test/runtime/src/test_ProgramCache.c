@@ -0,0 +1,412 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of the program binary cache of the runtime */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+#include <dirent.h>
+#include <unistd.h>
+#include <sys/stat.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <Pipeline.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+#define PRECISION 0.01
+#define ABS(a) ((a)<0?-(a):(a))
+
+/* Cache directory, relative to the execution directory */
+#define CACHE_DIR "program_cache"
+#define MAX_ENTRIES 8
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+// Reference code, duplicate border
+#define ELEM(t,y,x) ((*t)[(y)<0?0:(((y)>=IMAGE_Y)?IMAGE_Y-1:(y))][(x)<0?0:(((x)>=IMAGE_X)?IMAGE_X-1:(x))])
+
+void computeGx(float *output, float *input, int IMAGE_X, int IMAGE_Y) {
+  int x,y;
+  float (*out)[IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])output;
+  float (*in) [IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])input;
+
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      (*out)[y][x] = -ELEM(in,y-1,x-1) + ELEM(in,y-1,x+1)
+	-2.*ELEM(in,y,x-1) + 2.*ELEM(in,y,x+1)
+	-ELEM(in,y+1,x-1) + ELEM(in,y+1,x+1);
+    }
+  }
+}
+
+
+//==================================================================
+// Cache directory
+//==================================================================
+
+/* Remove all entries of the cache directory */
+void clearCache() {
+  DIR *dir=opendir(CACHE_DIR);
+  if (dir==NULL) {
+    return;
+  }
+  struct dirent *entry;
+  char path[512];
+  while ((entry=readdir(dir))!=NULL) {
+    if (entry->d_name[0]!='.') {
+      snprintf(path,sizeof(path),"%s/%s",CACHE_DIR,entry->d_name);
+      unlink(path);
+    }
+  }
+  closedir(dir);
+}
+
+/* Get the entries of the cache directory, returns their number */
+int getEntries(char names[MAX_ENTRIES][512]) {
+  DIR *dir=opendir(CACHE_DIR);
+  int nb=0;
+  if (dir==NULL) {
+    return 0;
+  }
+  struct dirent *entry;
+  while ((entry=readdir(dir))!=NULL) {
+    if (entry->d_name[0]!='.') {
+      if (nb<MAX_ENTRIES) {
+	snprintf(names[nb],512,"%s/%s",CACHE_DIR,entry->d_name);
+      }
+      nb++;
+    }
+  }
+  closedir(dir);
+  return nb;
+}
+
+/* Read the content of an entry */
+unsigned char *readEntry(const char *name, long *size) {
+  FILE *file=fopen(name,"rb");
+  if (file==NULL) {
+    fprintf(stderr,"error : can not open cache entry '%s'\n",name);
+    exit(1);
+  }
+  fseek(file,0,SEEK_END);
+  *size=ftell(file);
+  fseek(file,0,SEEK_SET);
+  unsigned char *data=malloc(*size);
+  if (fread(data,*size,1,file)!=1) {
+    fprintf(stderr,"error : can not read cache entry '%s'\n",name);
+    exit(1);
+  }
+  fclose(file);
+  return data;
+}
+
+/* Overwrite the content of an entry, keeping its inode */
+void writeEntry(const char *name, const unsigned char *data, long size) {
+  FILE *file=fopen(name,"r+b");
+  if ((file==NULL) || (fwrite(data,size,1,file)!=1) || (ftruncate(fileno(file),size)!=0)) {
+    fprintf(stderr,"error : can not write cache entry '%s'\n",name);
+    exit(1);
+  }
+  fclose(file);
+}
+
+/* Check that an entry has a given content */
+int sameEntry(const char *name, const unsigned char *data, long size) {
+  long entrySize;
+  unsigned char *entryData=readEntry(name,&entrySize);
+  int same=(entrySize==size) && (memcmp(entryData,data,size)==0);
+  free(entryData);
+  return same;
+}
+
+ino_t getInode(const char *name) {
+  struct stat st;
+  if (stat(name,&st)!=0) {
+    fprintf(stderr,"error : can not stat cache entry '%s'\n",name);
+    exit(1);
+  }
+  return st.st_ino;
+}
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if (i==argc-1) {
+      fprintf(stderr,"error : missing value after option '%s'\n",argv[i]);
+      exit(1);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      OPENCL_PLT_VENDOR=argv[++i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      IMAGE_X=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      IMAGE_Y=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      NB_WI=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      NB_WG0=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      NB_WG1=atoi(argv[++i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+}
+
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("  - Cache directory: %s\n",CACHE_DIR);
+  printf("\n");
+
+
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  cl_device_id device = oclGetFirstDevice(platform);
+  cl_context context = oclCreateContext(platform,device);
+  cl_command_queue commandQueue = oclCreateCommandQueue(context, device);
+
+  /* Start from an empty cache */
+  setenv("KG_OCL_CACHE_DIR",CACHE_DIR,1);
+  clearCache();
+
+  /* Two options of the same length, giving keys of the same size */
+  char optionsA[]="-DKG_CACHE_KEY=1";
+  char optionsB[]="-DKG_CACHE_KEY=2";
+  char optionsC[]="-DKG_CACHE_KEY=3";
+
+  char names[MAX_ENTRIES][512];
+  char entryA[512], entryB[512];
+  unsigned char *dataA, *dataB;
+  long sizeA, sizeB;
+  ino_t inode;
+  int nb;
+  int nok=0;
+
+
+  //==================================================================
+  // Store, then reload
+  //==================================================================
+
+  cl_program program = createPipelineProgramFromSource(context, device, optionsA);
+  clReleaseProgram(program);
+  nb=getEntries(names);
+  if (nb!=1) {
+    printf("ERROR: %d cache entries after the first build, expecting 1\n",nb);
+    return 1;
+  }
+  strcpy(entryA,names[0]);
+  dataA=readEntry(entryA,&sizeA);
+  inode=getInode(entryA);
+  printf("-> Program stored in '%s' (%ld bytes)\n",entryA,sizeA);
+
+  /* The entry is reloaded, not built and stored again */
+  program = createPipelineProgramFromSource(context, device, optionsA);
+  nb=getEntries(names);
+  if ((nb!=1) || (getInode(entryA)!=inode) || !sameEntry(entryA,dataA,sizeA)) {
+    printf("ERROR: the cache entry has been stored again instead of being reloaded\n");
+    nok=1;
+  }
+  else {
+    printf("-> Program reloaded from the cache\n");
+  }
+
+  /* The reloaded program runs */
+  {
+    cl_int status;
+    size_t size=sizeof(float)*IMAGE_X*IMAGE_Y;
+    float *input=malloc(size);
+    float *output=malloc(size);
+    float *check_output=malloc(size);
+    int i;
+    for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+      input[i] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+    }
+    cl_mem inputBuffer=clCreateBuffer(context,CL_MEM_READ_ONLY,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer input failed.");
+    cl_mem outputBuffer=clCreateBuffer(context,CL_MEM_WRITE_ONLY,size,NULL,&status);
+    oclCheckStatus(status,"clCreateBuffer output failed.");
+    status=clEnqueueWriteBuffer(commandQueue,inputBuffer,CL_TRUE,0,size,input,0,NULL,NULL);
+    oclCheckStatus(status,"clEnqueueWriteBuffer input failed.");
+
+    run_Sobel3x3_Gx(commandQueue, program, NB_WG0, NB_WG1, NB_WI,
+		    outputBuffer, IMAGE_X, IMAGE_Y, inputBuffer);
+
+    status=clEnqueueReadBuffer(commandQueue,outputBuffer,CL_TRUE,0,size,output,0,NULL,NULL);
+    oclCheckStatus(status,"clEnqueueReadBuffer output failed.");
+    computeGx(check_output,input,IMAGE_X,IMAGE_Y);
+    for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+      float diff=output[i]-check_output[i];
+      if (ABS(diff) > PRECISION) {
+	printf("ERROR: first error of the reloaded program : [%d, %d]  %f <> %f\n",
+	       i%IMAGE_X,i/IMAGE_X,output[i],check_output[i]);
+	nok=1;
+	break;
+      }
+    }
+    clReleaseMemObject(inputBuffer);
+    clReleaseMemObject(outputBuffer);
+    free(input);
+    free(output);
+    free(check_output);
+  }
+  clReleaseProgram(program);
+
+
+  //==================================================================
+  // Key mismatch
+  //==================================================================
+
+  /* Other build options give another entry */
+  program = createPipelineProgramFromSource(context, device, optionsB);
+  clReleaseProgram(program);
+  nb=getEntries(names);
+  if (nb!=2) {
+    printf("ERROR: %d cache entries after building with other options, expecting 2\n",nb);
+    return 1;
+  }
+  strcpy(entryB,strcmp(names[0],entryA)==0?names[1]:names[0]);
+  dataB=readEntry(entryB,&sizeB);
+  if (sizeB!=sizeA) {
+    printf("ERROR: entries of options of the same length have different sizes\n");
+    nok=1;
+  }
+
+  /* Entry named after the key A, holding the key B as if their hashes collided:
+     the program must be built and stored again, not created from it */
+  writeEntry(entryA,dataB,sizeB);
+  inode=getInode(entryA);
+  program = createPipelineProgramFromSource(context, device, optionsA);
+  clReleaseProgram(program);
+  if ((getInode(entryA)==inode) || !sameEntry(entryA,dataA,sizeA)) {
+    printf("ERROR: an entry with another key has been loaded\n");
+    nok=1;
+  }
+  else {
+    printf("-> Entry with another key rebuilt\n");
+  }
+
+  /* The rebuilt entry is then reloaded */
+  inode=getInode(entryA);
+  program = createPipelineProgramFromSource(context, device, optionsA);
+  clReleaseProgram(program);
+  if ((getInode(entryA)!=inode) || !sameEntry(entryA,dataA,sizeA) || !sameEntry(entryB,dataB,sizeB)) {
+    printf("ERROR: the rebuilt entry has not been reloaded\n");
+    nok=1;
+  }
+  else {
+    printf("-> Rebuilt entry reloaded from the cache\n");
+  }
+
+
+  //==================================================================
+  // Disabled cache
+  //==================================================================
+
+  setenv("KG_OCL_CACHE_DIR","",1);
+  program = createPipelineProgramFromSource(context, device, optionsC);
+  clReleaseProgram(program);
+  nb=getEntries(names);
+  if (nb!=2) {
+    printf("ERROR: %d cache entries after building with the cache disabled, expecting 2\n",nb);
+    nok=1;
+  }
+  else {
+    printf("-> No entry stored with the cache disabled\n");
+  }
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  free(dataA);
+  free(dataB);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  if (nok) {
+    printf("ERROR on program cache verification !\n");
+    return 1;
+  }
+  else {
+    printf("Program cache completed OK\n");
+    return 0;
+  }
+}
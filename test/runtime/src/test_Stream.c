@@ -0,0 +1,357 @@
+/*
+  This file is part of KernelGenius.
+
+  Copyright (C) 2013 STMicroelectronics
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 3 of the License, or (at your option) any later version.
+ 
+  This program is distributed in the hope that it will be useful, but
+  WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+ 
+  You should have received a copy of the GNU Lesser General Public
+  License along with this program; if not, write to the Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+  Boston, MA 02110-1301 USA.
+  
+  Authors: Thierry Lepley
+*/
+
+/* This is the test of the streaming API, with several frames in flight */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+
+#include <CL/cl.h>
+#include "kg_ocl_runtime.h"
+
+#include <Pipeline.h>
+
+static char * OPENCL_PLT_VENDOR = NULL;
+
+#define PRECISION 0.01
+#define ABS(a) ((a)<0?-(a):(a))
+
+/* Default Image dimensions */
+static int IMAGE_X = 512;
+static int IMAGE_Y = 512;
+
+/* OpenCL configuration */
+static int NB_WI = 16;
+static int NB_WG0 = 1;
+static int NB_WG1 = 1;
+
+/* Frames in flight and frames processed */
+static int NB_SLOTS = 3;
+#define NB_FRAMES 10
+
+/* Value of output data not written by the kernel */
+#define SENTINEL -12345.0f
+
+static int nok=0;
+#define CHECK(cond,message) if (!(cond)) { printf("ERROR: %s\n",message); nok=1; }
+
+// Reference code, duplicate border
+#define ELEM(t,y,x) ((*t)[(y)<0?0:(((y)>=IMAGE_Y)?IMAGE_Y-1:(y))][(x)<0?0:(((x)>=IMAGE_X)?IMAGE_X-1:(x))])
+
+void computeGx(float *output, float *input, int IMAGE_X, int IMAGE_Y) {
+  int x,y;
+  float (*out)[IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])output;
+  float (*in) [IMAGE_Y][IMAGE_X] =(float (*)[IMAGE_Y][IMAGE_X])input;
+
+  for(y=0;y<IMAGE_Y;y++) {
+    for(x=0;x<IMAGE_X;x++) {
+      (*out)[y][x] = -ELEM(in,y-1,x-1) + ELEM(in,y-1,x+1)
+	-2.*ELEM(in,y,x-1) + 2.*ELEM(in,y,x+1)
+	-ELEM(in,y+1,x-1) + ELEM(in,y+1,x+1);
+    }
+  }
+}
+
+/* Frames */
+static float *inputs[NB_FRAMES];
+static float *outputs[NB_FRAMES];
+static float *check_output;
+
+void initFrame(int frame) {
+  int i;
+  for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+    inputs[frame][i] = (rand()&0x3f)*(((rand()&0xff)>128)?1:-1);
+    outputs[frame][i] = SENTINEL;
+  }
+}
+
+int push(Sobel3x3_Gx_stream *stream, int frame) {
+  return stream_Sobel3x3_Gx_push(stream, NB_WG0, NB_WG1, NB_WI,
+				 outputs[frame], IMAGE_X, IMAGE_Y, inputs[frame],
+				 &inputs[frame]);
+}
+
+/* Check the output of a frame */
+void checkFrame(int frame) {
+  int i;
+  computeGx(check_output,inputs[frame],IMAGE_X,IMAGE_Y);
+  for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+    float diff=outputs[frame][i]-check_output[i];
+    if (ABS(diff) > PRECISION) {
+      printf("ERROR: first error of frame %d : [%d, %d]  %f <> %f\n",
+	     frame,i%IMAGE_X,i/IMAGE_X,outputs[frame][i],check_output[i]);
+      nok=1;
+      return;
+    }
+  }
+}
+
+/* Pop the oldest frame, which must be 'frame' */
+void pop(Sobel3x3_Gx_stream *stream, int frame) {
+  void *userData=NULL;
+  if (!stream_Sobel3x3_Gx_pop(stream,&userData)) {
+    printf("ERROR: no frame in flight, expecting frame %d\n",frame);
+    nok=1;
+    return;
+  }
+  if (userData!=&inputs[frame]) {
+    printf("ERROR: frame popped out of order, expecting frame %d\n",frame);
+    nok=1;
+    return;
+  }
+  checkFrame(frame);
+}
+
+/* Check that the output of a frame has not been written */
+int untouchedFrame(int frame) {
+  int i;
+  for(i=0;i<IMAGE_X*IMAGE_Y;i++) {
+    if (outputs[frame][i]!=SENTINEL) {
+      return 0;
+    }
+  }
+  return 1;
+}
+
+
+void printUsage(char *s) {
+  printf("usage: %s [option]*\n",s);
+  printf("\
+options :\n\
+  -h or --help : display this help\n\
+  -vendor <name> : vendor name\n\
+  -x <num> : width of the matrix\n\
+  -y <num> : height of the matrix\n\
+  -wi <num> : number of work-items per work-groups\n\
+  -wg0 <num> : number of work-groups, x-axis\n\
+  -wg1 <num> : number of work-groups, y-axis\n\
+  -slots <num> : number of frames in flight\n\
+");
+  exit(0);
+}
+
+void processOptions(int argc, char *argv[]) {
+  int i;
+  for(i=1;i<argc;i++) {
+
+    if ((strcmp(argv[i],"-h")==0)||(strcmp(argv[i],"--help")==0)) {
+      printUsage(argv[0]);
+    }
+    else if (i==argc-1) {
+      fprintf(stderr,"error : missing value after option '%s'\n",argv[i]);
+      exit(1);
+    }
+    else if ((strcmp(argv[i],"-vendor")==0)) {
+      OPENCL_PLT_VENDOR=argv[++i];
+    }
+    else if ((strcmp(argv[i],"-x")==0)) {
+      IMAGE_X=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-y")==0)) {
+      IMAGE_Y=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wi")==0)) {
+      NB_WI=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg0")==0)) {
+      NB_WG0=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-wg1")==0)) {
+      NB_WG1=atoi(argv[++i]);
+    }
+    else if ((strcmp(argv[i],"-slots")==0)) {
+      NB_SLOTS=atoi(argv[++i]);
+    }
+    else {
+      fprintf(stderr,"error : unknown option '%s'\n",argv[i]);
+      exit(1);
+    }
+  }
+  if ((NB_SLOTS<1) || (NB_SLOTS>=NB_FRAMES)) {
+    fprintf(stderr,"error : the number of frames in flight must be in [1,%d]\n",NB_FRAMES-1);
+    exit(1);
+  }
+}
+
+
+int main(int argc, char * argv[]) {
+  // Manage options
+  processOptions(argc,argv);
+
+  // Print configuration
+  printf("** Configuration **\n");
+  printf("  - Image dimensions : [%d,%d]\n",IMAGE_X,IMAGE_Y);
+  printf("  - Nb work-items per work-group: %d\n",NB_WI);
+  printf("  - Nb work-groups: [%d,%d]\n",NB_WG0, NB_WG1);
+  printf("  - Nb frames in flight: %d\n",NB_SLOTS);
+  printf("  - Nb frames: %d\n",NB_FRAMES);
+  printf("\n");
+
+
+  //==================================================================
+  // OpenCL setup
+  //==================================================================
+
+  cl_platform_id platform;
+  if (OPENCL_PLT_VENDOR==NULL) {
+    platform=oclGetFirstPlatform();
+  }
+  else {
+    platform=oclGetFirstPlatformFromVendor(OPENCL_PLT_VENDOR);
+  }
+  oclDisplayPlatformInfo(platform);
+  cl_device_id device = oclGetFirstDevice(platform);
+  cl_context context = oclCreateContext(platform,device);
+  cl_command_queue commandQueue = oclCreateCommandQueueOOO(context, device);
+
+#ifdef AHEAD_OF_TIME
+  cl_program program = createPipelineProgramFromBinary(context, device);
+#else
+  cl_program program = createPipelineProgramFromSource(context, device, NULL);
+#endif
+
+  int frame, i;
+  for(frame=0;frame<NB_FRAMES;frame++) {
+    inputs[frame]=malloc(sizeof(float)*IMAGE_X*IMAGE_Y);
+    outputs[frame]=malloc(sizeof(float)*IMAGE_X*IMAGE_Y);
+  }
+  check_output=malloc(sizeof(float)*IMAGE_X*IMAGE_Y);
+
+
+  //==================================================================
+  // Full and empty ring
+  //==================================================================
+
+  {
+    Sobel3x3_Gx_stream *stream=createStream_Sobel3x3_Gx(context, commandQueue, program, NB_SLOTS);
+    CHECK(!stream_Sobel3x3_Gx_pop(stream,NULL),"frame popped from an empty stream");
+
+    /* Fill the ring, the next push is rejected without enqueuing anything */
+    for(frame=0;frame<=NB_SLOTS;frame++) {
+      initFrame(frame);
+    }
+    for(frame=0;frame<NB_SLOTS;frame++) {
+      CHECK(push(stream,frame),"frame rejected by a stream which is not full");
+    }
+    CHECK(!push(stream,NB_SLOTS),"frame accepted by a full stream");
+
+    /* Empty it, in the push order */
+    for(frame=0;frame<NB_SLOTS;frame++) {
+      pop(stream,frame);
+    }
+    CHECK(!stream_Sobel3x3_Gx_pop(stream,NULL),"frame popped from an emptied stream");
+    CHECK(untouchedFrame(NB_SLOTS),"rejected frame executed");
+
+    /* The rejected frame can then be pushed */
+    CHECK(push(stream,NB_SLOTS),"frame rejected by an emptied stream");
+    pop(stream,NB_SLOTS);
+
+    releaseStream_Sobel3x3_Gx(stream);
+    printf("-> Full and empty ring checked\n");
+  }
+
+
+  //==================================================================
+  // Frames in flight wrapping around the ring
+  //==================================================================
+
+  {
+    Sobel3x3_Gx_stream *stream=createStream_Sobel3x3_Gx(context, commandQueue, program, NB_SLOTS);
+    int next=0;
+    for(frame=0;frame<NB_FRAMES;frame++) {
+      initFrame(frame);
+      if (!push(stream,frame)) {
+	CHECK(frame-next==NB_SLOTS,"frame rejected before the stream is full");
+	pop(stream,next++);
+	CHECK(push(stream,frame),"frame rejected after a pop");
+      }
+    }
+    for(;next<NB_FRAMES;next++) {
+      pop(stream,next);
+    }
+    CHECK(!stream_Sobel3x3_Gx_pop(stream,NULL),"frame popped from an emptied stream");
+    releaseStream_Sobel3x3_Gx(stream);
+    printf("-> Frames wrapping around the ring checked\n");
+  }
+
+
+  //==================================================================
+  // Release of a stream with frames in flight
+  //==================================================================
+
+  {
+    Sobel3x3_Gx_stream *stream=createStream_Sobel3x3_Gx(context, commandQueue, program, NB_SLOTS);
+    for(frame=0;frame<NB_SLOTS;frame++) {
+      initFrame(frame);
+      CHECK(push(stream,frame),"frame rejected by a stream which is not full");
+    }
+    releaseStream_Sobel3x3_Gx(stream);
+    for(frame=0;frame<NB_SLOTS;frame++) {
+      checkFrame(frame);
+    }
+    printf("-> Release with frames in flight checked\n");
+  }
+
+
+  //==================================================================
+  // Stream with at least one frame in flight
+  //==================================================================
+
+  {
+    Sobel3x3_Gx_stream *stream=createStream_Sobel3x3_Gx(context, commandQueue, program, 0);
+    for(frame=0;frame<2;frame++) {
+      initFrame(frame);
+    }
+    CHECK(push(stream,0),"frame rejected by an empty stream");
+    CHECK(!push(stream,1),"second frame accepted by a stream of one frame");
+    pop(stream,0);
+    CHECK(untouchedFrame(1),"rejected frame executed");
+    releaseStream_Sobel3x3_Gx(stream);
+    printf("-> Stream of one frame checked\n");
+  }
+
+
+  //==================================================================
+  // Termination
+  //==================================================================
+
+  for(i=0;i<NB_FRAMES;i++) {
+    free(inputs[i]);
+    free(outputs[i]);
+  }
+  free(check_output);
+  clReleaseProgram(program);
+  clReleaseCommandQueue(commandQueue);
+  clReleaseContext(context);
+
+  if (nok) {
+    printf("ERROR on stream verification !\n");
+    return 1;
+  }
+  else {
+    printf("Stream completed OK\n");
+    return 0;
+  }
+}